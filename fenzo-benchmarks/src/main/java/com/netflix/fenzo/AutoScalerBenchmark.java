@@ -0,0 +1,90 @@
+/*
+ * Copyright 2017 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.fenzo;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures an evaluation of the autoscaler after a scheduling iteration, with all hosts idle and a number of tasks
+ * that failed assignment. The rules have a long cool down, so that after the first evaluation the scaling actions
+ * are not repeated and each evaluation sees the same cluster.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AutoScalerBenchmark {
+
+    @Param({"1000", "10000", "50000"})
+    int numHosts;
+
+    @Param({"1", "10"})
+    int numGroups;
+
+    @Param({"100", "1000"})
+    int numFailedTasks;
+
+    private TaskScheduler taskScheduler;
+    private AutoScalerInput autoScalerInput;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        final TaskScheduler.Builder builder = new TaskScheduler.Builder()
+                .withLeaseOfferExpirySecs(1000000)
+                .withLeaseRejectAction(lease -> {})
+                .withAutoScaleByAttributeName(BenchmarkClusters.ASG_ATTR)
+                .withAutoScalerCallback(action -> {});
+        for (int g = 0; g < numGroups; g++)
+            builder.withAutoScaleRule(AutoScaleRuleProvider.createRule(BenchmarkClusters.getGroup(g),
+                    5, 20, 86400, 1.0, 1000.0));
+        taskScheduler = builder.build();
+        final List<VirtualMachineLease> leases = BenchmarkClusters.createLeases(numHosts, numGroups);
+        taskScheduler.scheduleOnce(Collections.emptyList(), leases);
+        final List<TaskRequest> failedTasks = new BenchmarkClusters.Jobs().createTasks(numFailedTasks, 10, 0,
+                BenchmarkClusters.ConstraintMix.none);
+        autoScalerInput = new AutoScalerInput(leases, Collections.emptyList(), new HashSet<>(failedTasks));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        taskScheduler.shutdown();
+    }
+
+    @Benchmark
+    public void evaluate() {
+        taskScheduler.getAutoScaler().doAutoscale(autoScalerInput);
+    }
+}
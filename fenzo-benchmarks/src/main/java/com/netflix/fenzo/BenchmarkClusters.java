@@ -0,0 +1,163 @@
+/*
+ * Copyright 2017 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.fenzo;
+
+import com.netflix.fenzo.functions.Func1;
+import com.netflix.fenzo.plugins.BalancedHostAttrConstraint;
+import com.netflix.fenzo.plugins.ExclusiveHostConstraint;
+import com.netflix.fenzo.plugins.HostAttrValueConstraint;
+import com.netflix.fenzo.plugins.UniqueHostAttrConstraint;
+import org.apache.mesos.Protos;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Clusters and workloads shared by the benchmarks. Hosts have 8 cores, 32GB memory, and 100 ports, and carry a zone
+ * attribute and an autoscale group attribute. Tasks belong to jobs whose tasks are each other's co-tasks for the
+ * constraints of the {@link ConstraintMix}.
+ */
+final class BenchmarkClusters {
+
+    static final String ZONE_ATTR = "zone";
+    static final String ASG_ATTR = "asg";
+    static final int NUM_ZONES = 3;
+    static final double HOST_CPUS = 8.0;
+    static final double HOST_MEMORY = 32000.0;
+
+    /**
+     * The hard constraints put on each task.
+     */
+    enum ConstraintMix {
+        none,
+        uniqueHost,
+        balancedZone,
+        zoneValue,
+        exclusiveHost,
+        /**
+         * Unique host and balanced zone constraints together.
+         */
+        mixed
+    }
+
+    private BenchmarkClusters() {
+    }
+
+    static List<VirtualMachineLease> createLeases(int numHosts, int numGroups) {
+        final List<VirtualMachineLease.Range> ports = Collections.singletonList(new VirtualMachineLease.Range(1, 100));
+        final List<VirtualMachineLease> leases = new ArrayList<>(numHosts);
+        for (int i = 0; i < numHosts; i++) {
+            final Map<String, Protos.Attribute> attributes = new HashMap<>();
+            attributes.put(ZONE_ATTR, createAttribute(ZONE_ATTR, getZone(i)));
+            attributes.put(ASG_ATTR, createAttribute(ASG_ATTR, getGroup(i % numGroups)));
+            leases.add(LeaseProvider.getLeaseOffer("host" + i, HOST_CPUS, HOST_MEMORY, 0.0, 0.0, ports, attributes));
+        }
+        return leases;
+    }
+
+    static String getZone(int index) {
+        return "zone" + (index % NUM_ZONES);
+    }
+
+    static String getGroup(int index) {
+        return "asg" + index;
+    }
+
+    private static Protos.Attribute createAttribute(String name, String value) {
+        return Protos.Attribute.newBuilder()
+                .setName(name)
+                .setType(Protos.Value.Type.TEXT)
+                .setText(Protos.Value.Text.newBuilder().setValue(value))
+                .build();
+    }
+
+    /**
+     * Jobs of tasks, which tell the constraints of a task which tasks are its co-tasks.
+     */
+    static class Jobs {
+        private final Map<Integer, Set<String>> jobTasks = new HashMap<>();
+        private final Map<String, Set<String>> coTasks = new HashMap<>();
+        private final Map<String, String> zones = new HashMap<>();
+        private final Func1<String, Set<String>> coTasksGetter = taskId -> coTasks.get(taskId);
+
+        /**
+         * Create tasks of 1 core, 1GB memory, and 1 port, assigning them to jobs of the given size in order.
+         *
+         * @param numTasks The number of tasks to create.
+         * @param tasksPerJob The number of tasks in each job.
+         * @param firstJob The number of the first job, to add tasks to jobs created earlier.
+         * @param mix The hard constraints to put on each task.
+         * @return The tasks.
+         */
+        List<TaskRequest> createTasks(int numTasks, int tasksPerJob, int firstJob, ConstraintMix mix) {
+            final List<TaskRequest> tasks = new ArrayList<>(numTasks);
+            final List<ConstraintEvaluator> constraints = getConstraints(mix);
+            for (int i = 0; i < numTasks; i++) {
+                final int job = firstJob + i / tasksPerJob;
+                final TaskRequest task = TaskRequestProvider.getTaskRequest("job" + job, 1.0, 1000.0, 0.0, 0.0, 1,
+                        constraints, null);
+                final Set<String> taskIds = jobTasks.computeIfAbsent(job, j -> new HashSet<>());
+                taskIds.add(task.getId());
+                coTasks.put(task.getId(), taskIds);
+                zones.put(task.getId(), getZone(job));
+                tasks.add(task);
+            }
+            return tasks;
+        }
+
+        List<ConstraintEvaluator> getConstraints(ConstraintMix mix) {
+            switch (mix) {
+                case none:
+                    return Collections.emptyList();
+                case uniqueHost:
+                    return Collections.singletonList(new UniqueHostAttrConstraint(coTasksGetter));
+                case balancedZone:
+                    return Collections.singletonList(new BalancedHostAttrConstraint(coTasksGetter, ZONE_ATTR, NUM_ZONES));
+                case zoneValue:
+                    return Collections.singletonList(new HostAttrValueConstraint(ZONE_ATTR, zones::get));
+                case exclusiveHost:
+                    return Collections.singletonList(new ExclusiveHostConstraint());
+                case mixed:
+                    final List<ConstraintEvaluator> constraints = new ArrayList<>(2);
+                    constraints.add(new UniqueHostAttrConstraint(coTasksGetter));
+                    constraints.add(new BalancedHostAttrConstraint(coTasksGetter, ZONE_ATTR, NUM_ZONES));
+                    return constraints;
+                default:
+                    throw new IllegalArgumentException("Unknown constraint mix " + mix);
+            }
+        }
+    }
+
+    /**
+     * Get the leases used by the assignments of a scheduling iteration, to offer them again in the next iteration so
+     * that each iteration of a benchmark sees the same cluster.
+     *
+     * @param result The result of the scheduling iteration.
+     * @return The leases used.
+     */
+    static List<VirtualMachineLease> getLeasesUsed(SchedulingResult result) {
+        final List<VirtualMachineLease> leases = new ArrayList<>();
+        for (VMAssignmentResult r : result.getResultMap().values())
+            leases.addAll(r.getLeasesUsed());
+        return leases;
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright 2017 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.fenzo;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures evaluating the hard constraints of a {@link BenchmarkClusters.ConstraintMix} for a pending task on every
+ * host of a cluster that runs the other tasks of the task's job.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ConstraintsBenchmark {
+
+    @Param({"1000", "10000"})
+    int numHosts;
+
+    @Param({"10", "100"})
+    int runningTasksPerJob;
+
+    @Param({"uniqueHost", "balancedZone", "zoneValue", "exclusiveHost", "mixed"})
+    BenchmarkClusters.ConstraintMix constraints;
+
+    private TaskScheduler taskScheduler;
+    private List<VirtualMachineCurrentState> vmStates;
+    private TaskRequest pendingTask;
+    private List<? extends ConstraintEvaluator> hardConstraints;
+    private TaskTrackerState taskTrackerState;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        taskScheduler = new TaskScheduler.Builder()
+                .withLeaseOfferExpirySecs(1000000)
+                .withLeaseRejectAction(lease -> {})
+                .build();
+        taskScheduler.scheduleOnce(Collections.emptyList(), BenchmarkClusters.createLeases(numHosts, 1));
+        // running tasks of 10 jobs, spread across the hosts; the pending task belongs to the first job
+        final BenchmarkClusters.Jobs jobs = new BenchmarkClusters.Jobs();
+        final List<TaskRequest> running = jobs.createTasks(10 * runningTasksPerJob, runningTasksPerJob, 0, constraints);
+        for (int i = 0; i < running.size(); i++)
+            taskScheduler.getTaskAssigner().call(running.get(i), "host" + (i * 7 % numHosts));
+        pendingTask = jobs.createTasks(1, 1, 0, constraints).get(0);
+        hardConstraints = pendingTask.getHardConstraints();
+        vmStates = taskScheduler.getVmCurrentStates();
+        final TaskTracker taskTracker = taskScheduler.getTaskTracker();
+        taskTrackerState = new TaskTrackerState() {
+            @Override
+            public Map<String, TaskTracker.ActiveTask> getAllRunningTasks() {
+                return taskTracker.getAllRunningTasks();
+            }
+
+            @Override
+            public Map<String, TaskTracker.ActiveTask> getAllCurrentlyAssignedTasks() {
+                return taskTracker.getAllAssignedTasks();
+            }
+        };
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        taskScheduler.shutdown();
+    }
+
+    @Benchmark
+    public int evaluateOnAllHosts() {
+        int numSuccessful = 0;
+        for (VirtualMachineCurrentState vmState : vmStates) {
+            boolean success = true;
+            for (ConstraintEvaluator constraint : hardConstraints) {
+                if (!constraint.evaluate(pendingTask, vmState, taskTrackerState).isSuccessful()) {
+                    success = false;
+                    break;
+                }
+            }
+            if (success)
+                numSuccessful++;
+        }
+        return numSuccessful;
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright 2017 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.fenzo;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures a scheduling iteration of {@link TaskScheduler#scheduleOnce(List, List)} assigning a batch of pending
+ * tasks. Assigned tasks are not launched, and the leases they used are offered again for the next iteration, so that
+ * every iteration assigns the same tasks to the same cluster.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TaskSchedulerBenchmark {
+
+    @Param({"1000", "10000", "50000"})
+    int numHosts;
+
+    @Param({"100", "1000"})
+    int numTasks;
+
+    @Param({"10"})
+    int tasksPerJob;
+
+    @Param({"none", "uniqueHost", "balancedZone", "mixed"})
+    BenchmarkClusters.ConstraintMix constraints;
+
+    private TaskScheduler taskScheduler;
+    private List<TaskRequest> tasks;
+    private List<VirtualMachineLease> leases;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        taskScheduler = new TaskScheduler.Builder()
+                .withLeaseOfferExpirySecs(1000000)
+                .withLeaseRejectAction(lease -> {})
+                .build();
+        tasks = new BenchmarkClusters.Jobs().createTasks(numTasks, tasksPerJob, 0, constraints);
+        leases = BenchmarkClusters.createLeases(numHosts, 1);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        taskScheduler.shutdown();
+    }
+
+    @Benchmark
+    public SchedulingResult scheduleOnce() {
+        final SchedulingResult result = taskScheduler.scheduleOnce(tasks, leases);
+        leases = BenchmarkClusters.getLeasesUsed(result);
+        return result;
+    }
+}
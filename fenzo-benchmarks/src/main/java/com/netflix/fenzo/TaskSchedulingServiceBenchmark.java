@@ -0,0 +1,141 @@
+/*
+ * Copyright 2017 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.fenzo;
+
+import com.netflix.fenzo.queues.QAttributes;
+import com.netflix.fenzo.queues.QueuableTask;
+import com.netflix.fenzo.queues.TaskQueue;
+import com.netflix.fenzo.queues.TaskQueues;
+import com.netflix.fenzo.queues.tiered.QueuableTaskProvider;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures one loop of {@link TaskSchedulingService}: resetting the task queue, the scheduling iteration over the
+ * queue, and launching the assigned tasks. Tasks launched in a loop are removed again and replaced by as many new
+ * tasks in the next loop, and their leases are offered again, so the queue depth and the cluster stay the same.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TaskSchedulingServiceBenchmark {
+
+    @Param({"1000", "10000"})
+    int numHosts;
+
+    @Param({"1000", "10000"})
+    int queueDepth;
+
+    @Param({"1", "3"})
+    int numTiers;
+
+    @Param({"1", "10"})
+    int bucketsPerTier;
+
+    @Param({"none", "mixed"})
+    BenchmarkClusters.ConstraintMix constraints;
+
+    private TaskScheduler taskScheduler;
+    private TaskQueue taskQueue;
+    private TaskSchedulingService schedulingService;
+    private BenchmarkClusters.Jobs jobs;
+    private final List<QAttributes> buckets = new ArrayList<>();
+    private final Map<String, QueuableTask> queuedTasks = new HashMap<>();
+    private SchedulingResult lastResult;
+    private int numTasksCreated = 0;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        taskScheduler = new TaskScheduler.Builder()
+                .withLeaseOfferExpirySecs(1000000)
+                .withLeaseRejectAction(lease -> {})
+                .build();
+        taskQueue = TaskQueues.createTieredQueue(numTiers);
+        schedulingService = new TaskSchedulingService.Builder()
+                .withTaskScheduler(taskScheduler)
+                .withTaskQuue(taskQueue)
+                .withSchedulingResultCallback(result -> lastResult = result)
+                .build();
+        for (int t = 0; t < numTiers; t++)
+            for (int b = 0; b < bucketsPerTier; b++)
+                buckets.add(new QAttributes.QAttributesAdaptor(t, "bucket" + b));
+        jobs = new BenchmarkClusters.Jobs();
+        queueTasks(queueDepth);
+        schedulingService.addLeases(BenchmarkClusters.createLeases(numHosts, 1));
+    }
+
+    private void queueTasks(int numTasks) {
+        for (TaskRequest request : jobs.createTasks(numTasks, 10, numTasksCreated / 10, constraints)) {
+            final QueuableTask task = QueuableTaskProvider.wrapTask(buckets.get(numTasksCreated++ % buckets.size()),
+                    request);
+            queuedTasks.put(task.getId(), task);
+            taskQueue.queueTask(task);
+        }
+    }
+
+    /**
+     * Remove the tasks launched in the previous loop, queue new tasks in their place, and offer their leases again.
+     * The removals and additions are carried out by the next loop, as they are when running the service.
+     */
+    @Setup(Level.Invocation)
+    public void replaceLaunchedTasks() {
+        if (lastResult == null)
+            return;
+        int numLaunched = 0;
+        for (VMAssignmentResult result : lastResult.getResultMap().values()) {
+            for (TaskAssignmentResult assigned : result.getTasksAssigned()) {
+                final QueuableTask task = queuedTasks.remove(assigned.getTaskId());
+                schedulingService.removeTask(task.getId(), task.getQAttributes(), result.getHostname());
+                numLaunched++;
+            }
+        }
+        queueTasks(numLaunched);
+        schedulingService.addLeases(BenchmarkClusters.getLeasesUsed(lastResult));
+        lastResult = null;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        schedulingService.shutdown();
+        taskScheduler.shutdown();
+    }
+
+    @Benchmark
+    public void schedulingLoop() {
+        schedulingService.scheduleOnce();
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2017 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.fenzo;
+
+import com.netflix.fenzo.queues.Assignable;
+import com.netflix.fenzo.queues.QAttributes;
+import com.netflix.fenzo.queues.QueuableTask;
+import com.netflix.fenzo.queues.TaskQueueException;
+import com.netflix.fenzo.queues.TaskQueueMultiException;
+import com.netflix.fenzo.queues.UsageTrackedQueue;
+import com.netflix.fenzo.queues.tiered.QueuableTaskProvider;
+import com.netflix.fenzo.queues.tiered.TieredQueue;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures a cycle of {@link TieredQueue} as driven by a scheduling iteration: resetting the queue, iterating over all
+ * of its tasks while assigning some of them, and launching the assigned tasks. Launched tasks are removed and queued
+ * again, to be added back by the next cycle's reset, so that each cycle sees the same queue.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TieredQueueBenchmark {
+
+    @Param({"1", "4"})
+    int numTiers;
+
+    @Param({"1", "10", "100"})
+    int bucketsPerTier;
+
+    @Param({"1000", "10000"})
+    int queueDepth;
+
+    @Param({"100"})
+    int assignedPerCycle;
+
+    private TieredQueue queue;
+    private UsageTrackedQueue usageTracker;
+    private List<QueuableTask> assigned;
+
+    @Setup(Level.Trial)
+    public void setUp() throws TaskQueueException {
+        queue = new TieredQueue(numTiers);
+        usageTracker = queue.getUsageTracker();
+        final List<QAttributes> buckets = new ArrayList<>();
+        for (int t = 0; t < numTiers; t++)
+            for (int b = 0; b < bucketsPerTier; b++)
+                buckets.add(new QAttributes.QAttributesAdaptor(t, "bucket" + b));
+        for (int i = 0; i < queueDepth; i++)
+            queue.queueTask(QueuableTaskProvider.wrapTask(buckets.get(i % buckets.size()),
+                    TaskRequestProvider.getTaskRequest(1.0, 1000.0, 1)));
+        final Map<VMResource, Double> totals = new HashMap<>();
+        totals.put(VMResource.CPU, queueDepth * 2.0);
+        totals.put(VMResource.Memory, queueDepth * 2000.0);
+        totals.put(VMResource.Network, queueDepth * 2000.0);
+        totals.put(VMResource.Disk, queueDepth * 2000.0);
+        usageTracker.setTotalResources(totals);
+        assigned = new ArrayList<>(assignedPerCycle);
+    }
+
+    @Benchmark
+    public void cycle(Blackhole blackhole) throws TaskQueueException, TaskQueueMultiException {
+        queue.reset();
+        Assignable<QueuableTask> taskOrFailure;
+        while ((taskOrFailure = queue.next()) != null) {
+            blackhole.consume(taskOrFailure);
+            if (assigned.size() < assignedPerCycle && !taskOrFailure.hasFailure()) {
+                usageTracker.assignTask(taskOrFailure.getTask());
+                assigned.add(taskOrFailure.getTask());
+            }
+        }
+        usageTracker.reset();
+        for (QueuableTask task : assigned)
+            usageTracker.launchTask(task);
+        for (QueuableTask task : assigned) {
+            usageTracker.removeTask(task.getId(), task.getQAttributes());
+            queue.queueTask(task);
+        }
+        assigned.clear();
+    }
+}
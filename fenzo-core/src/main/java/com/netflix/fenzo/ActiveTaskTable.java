@@ -0,0 +1,355 @@
+/*
+ * Copyright 2017 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.fenzo;
+
+import com.netflix.fenzo.functions.Action1;
+
+import java.util.AbstractCollection;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * The running and assigned tasks of {@link TaskTracker}, in one open addressing table keyed by task ID. Each task
+ * has a row in parallel arrays holding its ID, the hash of its ID, and its request and VM in each of the two states,
+ * instead of a map entry and an {@link TaskTracker.ActiveTask} for each state it is in. A task that is both running
+ * and assigned has a single row. Rows stay in place while the task is in either state, and are reused after that.
+ * <P>
+ * Each state is read through an unmodifiable map view. The {@link TaskTracker.ActiveTask} values of the view are
+ * created when first read and kept in the row until the task changes state, so that repeated lookups, such as those
+ * of constraints over co-tasks on each VM, don't allocate. The assigned view is iterated over the rows of the assigned
+ * tasks alone. Like the maps it replaces, the table is not thread safe; it may be read concurrently as long as it is
+ * not being changed.
+ */
+class ActiveTaskTable {
+
+    static final int RUNNING = 0;
+    static final int ASSIGNED = 1;
+
+    private static final int INITIAL_ROWS = 16;
+
+    // row index + 1 of the task in each slot, 0 for empty slots, with linear probing from the slot of the ID's hash
+    private int[] slots = new int[INITIAL_ROWS * 2];
+    private String[] ids = new String[INITIAL_ROWS];
+    private int[] hashes = new int[INITIAL_ROWS];
+    private final TaskRequest[][] requests = {new TaskRequest[INITIAL_ROWS], new TaskRequest[INITIAL_ROWS]};
+    private final AssignableVirtualMachine[][] vms =
+            {new AssignableVirtualMachine[INITIAL_ROWS], new AssignableVirtualMachine[INITIAL_ROWS]};
+    // the values read from the views, created on the first read of the task in each state
+    private final TaskTracker.ActiveTask[][] activeTasks =
+            {new TaskTracker.ActiveTask[INITIAL_ROWS], new TaskTracker.ActiveTask[INITIAL_ROWS]};
+    // rows below this were used at some point, free ones among them are in freeRows
+    private int usedRows = 0;
+    private int[] freeRows = new int[INITIAL_ROWS];
+    private int numFreeRows = 0;
+    private final int[] sizes = new int[2];
+    // rows of the assigned tasks, for iterating and clearing them without going over the running tasks
+    private int[] assignedRows = new int[INITIAL_ROWS];
+    private int numAssignedRows = 0;
+    private final Map<String, TaskTracker.ActiveTask> runningView = new StateView(RUNNING);
+    private final Map<String, TaskTracker.ActiveTask> assignedView = new StateView(ASSIGNED);
+
+    /**
+     * Add or replace the task in the given state.
+     *
+     * @param state {@link #RUNNING} or {@link #ASSIGNED}.
+     * @param request The task.
+     * @param avm The VM the task is on.
+     * @return {@code true} if the task was not in the state already.
+     */
+    boolean put(int state, TaskRequest request, AssignableVirtualMachine avm) {
+        final String id = request.getId();
+        final int hash = hash(id);
+        int row = findRow(id, hash);
+        if (row < 0)
+            row = addRow(id, hash);
+        final boolean added = requests[state][row] == null;
+        requests[state][row] = request;
+        vms[state][row] = avm;
+        activeTasks[state][row] = null;
+        if (added) {
+            sizes[state]++;
+            if (state == ASSIGNED) {
+                if (numAssignedRows == assignedRows.length)
+                    assignedRows = Arrays.copyOf(assignedRows, assignedRows.length * 2);
+                assignedRows[numAssignedRows++] = row;
+            }
+        }
+        return added;
+    }
+
+    /**
+     * Remove the task from the running state.
+     *
+     * @param taskId The ID of the task.
+     * @return The task removed, or {@code null} if it was not running.
+     */
+    TaskRequest removeRunning(String taskId) {
+        final int hash = hash(taskId);
+        final int slot = findSlot(taskId, hash);
+        if (slot < 0)
+            return null;
+        final int row = slots[slot] - 1;
+        final TaskRequest removed = requests[RUNNING][row];
+        if (removed == null)
+            return null;
+        requests[RUNNING][row] = null;
+        vms[RUNNING][row] = null;
+        activeTasks[RUNNING][row] = null;
+        sizes[RUNNING]--;
+        if (requests[ASSIGNED][row] == null)
+            removeRow(slot, row);
+        return removed;
+    }
+
+    /**
+     * Remove all tasks from the assigned state.
+     *
+     * @param action Called with each assigned task, before it is removed.
+     */
+    void clearAssigned(Action1<TaskRequest> action) {
+        for (int i = 0; i < numAssignedRows; i++)
+            action.call(requests[ASSIGNED][assignedRows[i]]);
+        for (int i = 0; i < numAssignedRows; i++) {
+            final int row = assignedRows[i];
+            requests[ASSIGNED][row] = null;
+            vms[ASSIGNED][row] = null;
+            activeTasks[ASSIGNED][row] = null;
+            if (requests[RUNNING][row] == null)
+                removeRow(findSlot(ids[row], hashes[row]), row);
+        }
+        numAssignedRows = 0;
+        sizes[ASSIGNED] = 0;
+    }
+
+    boolean contains(int state, String taskId) {
+        final int row = findRow(taskId, hash(taskId));
+        return row >= 0 && requests[state][row] != null;
+    }
+
+    int size(int state) {
+        return sizes[state];
+    }
+
+    /**
+     * Get an unmodifiable view of the tasks in the given state, from task ID to the task.
+     *
+     * @param state {@link #RUNNING} or {@link #ASSIGNED}.
+     * @return The view of the tasks.
+     */
+    Map<String, TaskTracker.ActiveTask> getView(int state) {
+        return state == RUNNING ? runningView : assignedView;
+    }
+
+    private static int hash(String id) {
+        final int h = id.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    private int findSlot(String id, int hash) {
+        final int mask = slots.length - 1;
+        for (int s = hash & mask; ; s = (s + 1) & mask) {
+            final int row = slots[s] - 1;
+            if (row < 0)
+                return -1;
+            if (hashes[row] == hash && ids[row].equals(id))
+                return s;
+        }
+    }
+
+    private int findRow(String id, int hash) {
+        final int slot = findSlot(id, hash);
+        return slot < 0 ? -1 : slots[slot] - 1;
+    }
+
+    private int addRow(String id, int hash) {
+        final int row;
+        if (numFreeRows > 0)
+            row = freeRows[--numFreeRows];
+        else {
+            if (usedRows == ids.length)
+                growRows();
+            row = usedRows++;
+        }
+        ids[row] = id;
+        hashes[row] = hash;
+        final int mask = slots.length - 1;
+        int s = hash & mask;
+        while (slots[s] != 0)
+            s = (s + 1) & mask;
+        slots[s] = row + 1;
+        return row;
+    }
+
+    // Remove the row's ID from its slot, moving later entries of the probe sequence back into the hole left
+    private void removeRow(int slot, int row) {
+        ids[row] = null;
+        if (numFreeRows == freeRows.length)
+            freeRows = Arrays.copyOf(freeRows, freeRows.length * 2);
+        freeRows[numFreeRows++] = row;
+        final int mask = slots.length - 1;
+        int hole = slot;
+        for (int s = (slot + 1) & mask; slots[s] != 0; s = (s + 1) & mask) {
+            final int home = hashes[slots[s] - 1] & mask;
+            if (((s - home) & mask) >= ((s - hole) & mask)) {
+                slots[hole] = slots[s];
+                hole = s;
+            }
+        }
+        slots[hole] = 0;
+    }
+
+    // Double the rows, and the slots with them to keep the table at most half full
+    private void growRows() {
+        final int length = ids.length * 2;
+        ids = Arrays.copyOf(ids, length);
+        hashes = Arrays.copyOf(hashes, length);
+        for (int state = RUNNING; state <= ASSIGNED; state++) {
+            requests[state] = Arrays.copyOf(requests[state], length);
+            vms[state] = Arrays.copyOf(vms[state], length);
+            activeTasks[state] = Arrays.copyOf(activeTasks[state], length);
+        }
+        slots = new int[length * 2];
+        final int mask = slots.length - 1;
+        for (int row = 0; row < usedRows; row++) {
+            if (ids[row] == null)
+                continue;
+            int s = hashes[row] & mask;
+            while (slots[s] != 0)
+                s = (s + 1) & mask;
+            slots[s] = row + 1;
+        }
+    }
+
+    private TaskTracker.ActiveTask getActiveTask(int state, int row) {
+        TaskTracker.ActiveTask task = activeTasks[state][row];
+        if (task == null) {
+            task = new TaskTracker.ActiveTask(requests[state][row], vms[state][row]);
+            activeTasks[state][row] = task;
+        }
+        return task;
+    }
+
+    private class StateView extends AbstractMap<String, TaskTracker.ActiveTask> {
+        private final int state;
+        private final Set<Entry<String, TaskTracker.ActiveTask>> entrySet =
+                new AbstractSet<Entry<String, TaskTracker.ActiveTask>>() {
+            @Override
+            public Iterator<Entry<String, TaskTracker.ActiveTask>> iterator() {
+                return new RowIterator<Entry<String, TaskTracker.ActiveTask>>() {
+                    @Override
+                    Entry<String, TaskTracker.ActiveTask> get(int row) {
+                        return new SimpleImmutableEntry<>(ids[row], getActiveTask(state, row));
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return sizes[state];
+            }
+        };
+        private final Collection<TaskTracker.ActiveTask> values = new AbstractCollection<TaskTracker.ActiveTask>() {
+            @Override
+            public Iterator<TaskTracker.ActiveTask> iterator() {
+                return new RowIterator<TaskTracker.ActiveTask>() {
+                    @Override
+                    TaskTracker.ActiveTask get(int row) {
+                        return getActiveTask(state, row);
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return sizes[state];
+            }
+        };
+
+        private StateView(int state) {
+            this.state = state;
+        }
+
+        // Iterates over the rows of the tasks in the state. Positions are rows for the running tasks, and indexes
+        // into assignedRows for the assigned tasks.
+        private abstract class RowIterator<T> implements Iterator<T> {
+            private int position = skip(0);
+
+            abstract T get(int row);
+
+            @Override
+            public boolean hasNext() {
+                return position < end();
+            }
+
+            @Override
+            public T next() {
+                if (position >= end())
+                    throw new NoSuchElementException();
+                final int row = state == ASSIGNED ? assignedRows[position] : position;
+                position = skip(position + 1);
+                return get(row);
+            }
+        }
+
+        private int end() {
+            return state == ASSIGNED ? numAssignedRows : usedRows;
+        }
+
+        private int skip(int position) {
+            if (state == ASSIGNED)
+                return position;
+            final TaskRequest[] runningRequests = requests[RUNNING];
+            while (position < usedRows && runningRequests[position] == null)
+                position++;
+            return position;
+        }
+
+        @Override
+        public Set<Entry<String, TaskTracker.ActiveTask>> entrySet() {
+            return entrySet;
+        }
+
+        @Override
+        public Collection<TaskTracker.ActiveTask> values() {
+            return values;
+        }
+
+        @Override
+        public int size() {
+            return sizes[state];
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return key instanceof String && contains(state, (String) key);
+        }
+
+        @Override
+        public TaskTracker.ActiveTask get(Object key) {
+            if (!(key instanceof String))
+                return null;
+            final int row = findRow((String) key, hash((String) key));
+            return row < 0 || requests[state][row] == null ? null : getActiveTask(state, row);
+        }
+    }
+}
@@ -25,8 +25,13 @@ import java.util.*;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.FutureTask;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntConsumer;
 import java.util.stream.Collectors;
 
 class AssignableVMs {
@@ -67,6 +72,35 @@ class AssignableVMs {
         }
     }
 
+    // State of one partition of the VMs being prepared for a scheduling iteration. It is merged into the shared state
+    // by the thread running the iteration once all partitions are done.
+    private static class Partition {
+        private final List<VirtualMachineLease> leases = new ArrayList<>();
+        private final List<VirtualMachineLease> rejectedLeases = new ArrayList<>();
+        private final List<String> unassignedTaskIds = new ArrayList<>();
+        private final List<AssignableVirtualMachine> vms = new ArrayList<>();
+        private final List<AssignableVirtualMachine> changedVMs = new ArrayList<>();
+        private final Map<VMResource, Double> totalResourcesDelta = new EnumMap<>(VMResource.class);
+        private int numVMsInTotalsDelta=0;
+        private final Map<String, Map<VMResource, Double>> maxResources = new HashMap<>();
+        private int numLeasesAdded=0;
+
+        private void clear() {
+            leases.clear();
+            rejectedLeases.clear();
+            unassignedTaskIds.clear();
+            vms.clear();
+            changedVMs.clear();
+            totalResourcesDelta.clear();
+            numVMsInTotalsDelta=0;
+            maxResources.clear();
+            numLeasesAdded=0;
+        }
+    }
+
+    // VMs are prepared in parallel only in partitions of at least this many VMs
+    static final int MIN_VMS_PER_PARTITION = 500;
+
     private final VMCollection vmCollection;
     private static final Logger logger = LoggerFactory.getLogger(AssignableVMs.class);
     private final ConcurrentMap<String, String> leaseIdToHostnameMap = new ConcurrentHashMap<>();
@@ -77,7 +111,9 @@ class AssignableVMs {
     private final Map<String, Map<VMResource, Double>> maxResourcesMap;
     private final Map<VMResource, Double> totalResourcesMap;
     private final VMRejectLimiter vmRejectLimiter;
-    private final AssignableVirtualMachine dummyVM = new AssignableVirtualMachine(null, null, "", null, 0L, null) {
+    private final ScalarResourceRegistry scalarRegistry = new ScalarResourceRegistry();
+    private final AssignableVirtualMachine dummyVM =
+            new AssignableVirtualMachine(null, null, "", null, 0L, null, scalarRegistry) {
         @Override
         void assignResult(TaskAssignmentResult result) {
             throw new UnsupportedOperationException();
@@ -86,16 +122,25 @@ class AssignableVMs {
     private final ActiveVmGroups activeVmGroups;
     private String activeVmGroupAttributeName=null;
     private final List<String> unknownLeaseIdsToExpire = new ArrayList<>();
+    private final CapacityFrontier capacityFrontier = new CapacityFrontier(scalarRegistry);
+    private final HostAttributeIndex hostAttributeIndex;
+    private int numVMsInTotals=0;
+    private final Action1<VirtualMachineLease> leaseRejectAction;
+    private ExecutorService preparationExecutor=null;
+    private int preparationParallelism=1;
+    private Partition[] partitions = new Partition[0];
 
     AssignableVMs(TaskTracker taskTracker, Action1<VirtualMachineLease> leaseRejectAction,
                   long leaseOfferExpirySecs, int maxOffersToReject,
                   String attrNameToGroupMaxResources, boolean singleLeaseMode, String autoScaleByAttributeName) {
         this.taskTracker = taskTracker;
+        this.leaseRejectAction = leaseRejectAction;
         vmCollection = new VMCollection(
                 hostname -> new AssignableVirtualMachine(vmIdToHostnameMap, leaseIdToHostnameMap, hostname,
-                        leaseRejectAction, leaseOfferExpirySecs, taskTracker, singleLeaseMode),
-                autoScaleByAttributeName
+                        leaseRejectAction, leaseOfferExpirySecs, taskTracker, singleLeaseMode, scalarRegistry),
+                autoScaleByAttributeName, vmIdToHostnameMap, leaseIdToHostnameMap
         );
+        hostAttributeIndex = new HostAttributeIndex(vmCollection);
         this.attrNameToGroupMaxResources = attrNameToGroupMaxResources;
         maxResourcesMap = new HashMap<>();
         totalResourcesMap = new HashMap<>();
@@ -107,6 +152,21 @@ class AssignableVMs {
         return vmCollection;
     }
 
+    /**
+     * Prepare VMs for scheduling iterations in parallel, in up to the given number of partitions, using the given
+     * executor. The thread running the scheduling iteration prepares one of the partitions, and also any partition
+     * that the executor has not started by the time it is done with its own. Partitions have at least
+     * {@link #MIN_VMS_PER_PARTITION} VMs each, smaller clusters are prepared in fewer partitions. The lease reject
+     * action is called only from the thread running the scheduling iteration.
+     *
+     * @param executor The executor, or {@code null} to prepare VMs serially.
+     * @param parallelism Maximum number of partitions to prepare VMs in.
+     */
+    void setPreparationExecutor(ExecutorService executor, int parallelism) {
+        this.preparationExecutor = executor;
+        this.preparationParallelism = Math.max(1, parallelism);
+    }
+
     Map<String, List<String>> createPseudoHosts(Map<String, Integer> groupCounts, Func1<String, AutoScaleRule> ruleGetter) {
         return vmCollection.clonePseudoVMsForGroups(groupCounts, ruleGetter, lease ->
             lease != null &&
@@ -122,8 +182,11 @@ class AssignableVMs {
             for (Map.Entry<String, List<String>> entry: hostsMap.entrySet()) {
                 for (String h: entry.getValue()) {
                     final AssignableVirtualMachine avm = vmCollection.unsafeRemoveVm(h, entry.getKey());
-                    if (avm != null)
+                    if (avm != null) {
                         avm.removeExpiredLeases(true, false);
+                        updateTotalResources(avm, false);
+                        hostAttributeIndex.remove(avm);
+                    }
                 }
             }
         }
@@ -149,50 +212,20 @@ class AssignableVMs {
             logger.warn("No VM for host " + host + " to unassign task " + taskId);
     }
 
-    private int addLeases(List<VirtualMachineLease> leases) {
-        if(logger.isDebugEnabled())
-            logger.debug("Adding leases");
-        for(AssignableVirtualMachine avm: vmCollection.getAllVMs())
-            avm.resetResources();
-        int rejected=0;
-        for(VirtualMachineLease l: leases) {
-            if(vmCollection.addLease(l))
-                rejected++;
-        }
-        for(AssignableVirtualMachine avm: vmCollection.getAllVMs()) {
-            if(logger.isDebugEnabled())
-                logger.debug("Updating total lease on " + avm.getHostname());
-            avm.updateCurrTotalLease();
-            final VirtualMachineLease currTotalLease = avm.getCurrTotalLease();
-            if(logger.isDebugEnabled()) {
-                if (currTotalLease == null)
-                    logger.debug("Updated total lease is null for " + avm.getHostname());
-                else {
-                    logger.debug("Updated total lease for {} has cpu={}, mem={}, disk={}, network={}",
-                            avm.getHostname(), currTotalLease.cpuCores(), currTotalLease.memoryMB(),
-                            currTotalLease.diskMB(), currTotalLease.networkMbps()
-                    );
-                }
-            }
-        }
-        return rejected;
-    }
-
     void expireLease(String leaseId) {
-        final String hostname = leaseIdToHostnameMap.get(leaseId);
-        if(hostname==null) {
+        if(leaseIdToHostnameMap.get(leaseId)==null) {
             unknownLeaseIdsToExpire.add(leaseId);
             return;
         }
-        internalExpireLease(leaseId, hostname);
+        internalExpireLease(leaseId);
     }
 
-    private void internalExpireLease(String leaseId, String hostname) {
-        final Optional<AssignableVirtualMachine> vmByName = vmCollection.getVmByName(hostname);
-        if(vmByName.isPresent()) {
+    private void internalExpireLease(String leaseId) {
+        final Optional<AssignableVirtualMachine> vmByLeaseId = vmCollection.getVmByLeaseId(leaseId);
+        if(vmByLeaseId.isPresent()) {
             if(logger.isDebugEnabled())
-                logger.debug("Expiring lease offer id " + leaseId + " on host " + hostname);
-            vmByName.get().expireLease(leaseId);
+                logger.debug("Expiring lease offer id " + leaseId + " on host " + vmByLeaseId.get().getHostname());
+            vmByLeaseId.get().expireLease(leaseId);
         }
     }
 
@@ -254,68 +287,265 @@ class AssignableVMs {
 
     private void expireAnyUnknownLeaseIds() {
         if(!unknownLeaseIdsToExpire.isEmpty()) {
-            for(String leaseId: unknownLeaseIdsToExpire) {
-                final String hostname = leaseIdToHostnameMap.get(leaseId);
-                if(hostname!=null)
-                    internalExpireLease(leaseId, hostname);
-            }
+            for(String leaseId: unknownLeaseIdsToExpire)
+                internalExpireLease(leaseId);
             unknownLeaseIdsToExpire.clear();
         }
     }
 
     List<AssignableVirtualMachine> prepareAndGetOrderedVMs(List<VirtualMachineLease> newLeases, AtomicInteger rejectedCount) {
         disableVMs();
-        removeExpiredLeases();
-        rejectedCount.addAndGet(addLeases(newLeases));
+        final List<AssignableVirtualMachine> existingVMs = vmCollection.getAllVMs();
+        int numPartitions = getPartitions(existingVMs.size());
+        // VMs that haven't changed since the previous iteration still have their resources reset from then
+        runPartitions(numPartitions, p -> {
+            final Partition partition = partitions[p];
+            for (AssignableVirtualMachine avm: getPartition(existingVMs, p, partitions.length)) {
+                avm.deferLeaseRejects(partition.rejectedLeases);
+                avm.removeExpiredLeases(!isInActiveVmGroup(avm));
+                if(avm.isChangedSincePrepared())
+                    avm.resetResources();
+                avm.deferLeaseRejects(null);
+            }
+        });
+        if(logger.isDebugEnabled())
+            logger.debug("Adding leases");
+        // all leases of a host go to the same partition, so that each VM is changed by only one thread
+        for(VirtualMachineLease l: newLeases)
+            partitions[(l.hostname().hashCode() & Integer.MAX_VALUE) % numPartitions].leases.add(l);
+        runPartitions(numPartitions, p -> {
+            final Partition partition = partitions[p];
+            for(VirtualMachineLease l: partition.leases) {
+                final AssignableVirtualMachine avm = vmCollection.getOrCreate(l);
+                avm.deferLeaseRejects(partition.rejectedLeases);
+                if(avm.addLease(l))
+                    partition.numLeasesAdded++;
+                avm.deferLeaseRejects(null);
+            }
+        });
+        for (int p = 0; p < numPartitions; p++)
+            rejectedCount.addAndGet(partitions[p].numLeasesAdded);
+        rejectLeasesAndClear(numPartitions);
+        // this only queues the leases to expire in the next iteration
         expireAnyUnknownLeaseIds();
-        List<AssignableVirtualMachine> vms = new ArrayList<>();
         taskTracker.clearAssignedTasks();
         vmRejectLimiter.reset();
-        resetTotalResources();
-        // ToDo make this parallel maybe?
-        for(AssignableVirtualMachine avm: vmCollection.getAllVMs()) {
-            avm.prepareForScheduling();
-            if(isInActiveVmGroup(avm) && avm.isAssignableNow()) {
-                // for now, only add it if it is available right now
-                if(logger.isDebugEnabled())
-                    logger.debug("Host " + avm.getHostname() + " available for assignments");
-                vms.add(avm);
-            }
-            else if(logger.isDebugEnabled())
-                logger.debug("Host " + avm.getHostname() + " not available for assignments");
-            saveMaxResources(avm);
-            if (isInActiveVmGroup(avm) && !avm.isDisabled())
-                addTotalResources(avm);
+        final List<AssignableVirtualMachine> allVMs = vmCollection.getAllVMs();
+        numPartitions = getPartitions(allVMs.size());
+        runPartitions(numPartitions, p -> {
+            final Partition partition = partitions[p];
+            for(AssignableVirtualMachine avm: getPartition(allVMs, p, partitions.length))
+                prepare(avm, partition);
+        });
+        List<AssignableVirtualMachine> vms = new ArrayList<>();
+        for (int p = 0; p < numPartitions; p++) {
+            final Partition partition = partitions[p];
+            for(String taskId: partition.unassignedTaskIds)
+                taskTracker.removeRunningTask(taskId);
+            vms.addAll(partition.vms);
+            for(AssignableVirtualMachine avm: partition.changedVMs)
+                hostAttributeIndex.update(avm);
+            for(Map.Entry<String, Map<VMResource, Double>> entry: partition.maxResources.entrySet())
+                saveMaxResources(maxResourcesMap, entry.getKey(), entry.getValue());
+            numVMsInTotals += partition.numVMsInTotalsDelta;
+            for(Map.Entry<VMResource, Double> entry: partition.totalResourcesDelta.entrySet())
+                totalResourcesMap.merge(entry.getKey(), entry.getValue(), Double::sum);
         }
+        if (numVMsInTotals == 0)
+            totalResourcesMap.clear();
+        rejectLeasesAndClear(numPartitions);
         taskTracker.setTotalResources(totalResourcesMap);
         //Collections.sort(vms);
+        capacityFrontier.reset(vms.size());
+        for (int i = 0; i < vms.size(); i++)
+            vms.get(i).saveCapacity(capacityFrontier, i);
+        capacityFrontier.buildIndex();
         return vms;
     }
 
-    List<AssignableVirtualMachine> getInactiveVMs() {
-        return vmCollection.getAllVMs().stream().filter(avm -> !isInActiveVmGroup(avm)).collect(Collectors.toList());
+    // Prepare the VM for the scheduling iteration, collecting its changes to state shared across VMs in the partition.
+    private void prepare(AssignableVirtualMachine avm, Partition partition) {
+        if(avm.isChangedSincePrepared()) {
+            if(logger.isDebugEnabled())
+                logger.debug("Updating total lease on " + avm.getHostname());
+            avm.updateCurrTotalLease();
+            final VirtualMachineLease currTotalLease = avm.getCurrTotalLease();
+            if(logger.isDebugEnabled()) {
+                if (currTotalLease == null)
+                    logger.debug("Updated total lease is null for " + avm.getHostname());
+                else {
+                    logger.debug("Updated total lease for {} has cpu={}, mem={}, disk={}, network={}",
+                            avm.getHostname(), currTotalLease.cpuCores(), currTotalLease.memoryMB(),
+                            currTotalLease.diskMB(), currTotalLease.networkMbps()
+                    );
+                }
+            }
+        }
+        avm.prepareForScheduling(partition.unassignedTaskIds);
+        final boolean changed = avm.isChangedSincePrepared();
+        if(isInActiveVmGroup(avm) && avm.isAssignableNow()) {
+            // for now, only add it if it is available right now
+            if(logger.isDebugEnabled())
+                logger.debug("Host " + avm.getHostname() + " available for assignments");
+            partition.vms.add(avm);
+        }
+        else if(logger.isDebugEnabled())
+            logger.debug("Host " + avm.getHostname() + " not available for assignments");
+        if (changed) {
+            saveMaxResources(avm, partition.maxResources);
+            partition.changedVMs.add(avm);
+        }
+        final boolean inTotals = isInActiveVmGroup(avm) && !avm.isDisabled();
+        if (changed || inTotals != (avm.getTotalResourcesContribution() != null))
+            partition.numVMsInTotalsDelta += updateTotalResources(avm, inTotals, partition.totalResourcesDelta);
+        avm.setPrepared();
+    }
+
+    // Get the number of partitions to prepare the given number of VMs in, with that many partitions cleared.
+    private int getPartitions(int numVMs) {
+        final int numPartitions = preparationExecutor == null ? 1 :
+                Math.max(1, Math.min(preparationParallelism, numVMs / MIN_VMS_PER_PARTITION));
+        if (partitions.length != numPartitions) {
+            partitions = new Partition[numPartitions];
+            for (int p = 0; p < numPartitions; p++)
+                partitions[p] = new Partition();
+        }
+        else {
+            for (Partition partition: partitions)
+                partition.clear();
+        }
+        return numPartitions;
+    }
+
+    private static List<AssignableVirtualMachine> getPartition(List<AssignableVirtualMachine> vms, int partition,
+                                                               int numPartitions) {
+        final int size = vms.size();
+        return vms.subList((int) ((long) partition * size / numPartitions),
+                (int) ((long) (partition + 1) * size / numPartitions));
     }
 
-    private void resetTotalResources() {
-        totalResourcesMap.clear();
+    private void rejectLeasesAndClear(int numPartitions) {
+        for (int p = 0; p < numPartitions; p++) {
+            for (VirtualMachineLease l: partitions[p].rejectedLeases)
+                leaseRejectAction.call(l);
+            partitions[p].rejectedLeases.clear();
+        }
     }
 
-    private void addTotalResources(AssignableVirtualMachine avm) {
-        final Map<VMResource, Double> maxResources = avm.getMaxResources();
-        for (VMResource r: maxResources.keySet()) {
-            Double v = maxResources.get(r);
-            if (v != null) {
-                if (totalResourcesMap.get(r) == null)
-                    totalResourcesMap.put(r, v);
-                else
-                    totalResourcesMap.put(r, totalResourcesMap.get(r) + v);
+    // Run the stage for each partition, partition 0 in this thread and the others in the preparation executor.
+    private void runPartitions(int numPartitions, IntConsumer stage) {
+        if (numPartitions == 1) {
+            stage.accept(0);
+            return;
+        }
+        final List<FutureTask<Void>> tasks = new ArrayList<>(numPartitions - 1);
+        for (int p = 1; p < numPartitions; p++) {
+            final int partition = p;
+            final FutureTask<Void> task = new FutureTask<>(() -> stage.accept(partition), null);
+            tasks.add(task);
+            try {
+                preparationExecutor.execute(task);
+            }
+            catch (RejectedExecutionException e) {
+                // run by this thread below
             }
         }
+        RuntimeException failure = null;
+        try {
+            stage.accept(0);
+        }
+        catch (RuntimeException e) {
+            failure = e;
+        }
+        for (FutureTask<Void> task: tasks) {
+            // runs the partition in this thread if the executor hasn't started it yet, does nothing otherwise
+            task.run();
+            try {
+                task.get();
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                if (failure == null)
+                    failure = new IllegalStateException("Interrupted while preparing VMs", e);
+            }
+            catch (ExecutionException e) {
+                if (failure == null)
+                    failure = e.getCause() instanceof RuntimeException ?
+                            (RuntimeException) e.getCause() :
+                            new IllegalStateException("Error preparing VMs", e.getCause());
+            }
+        }
+        if (failure != null)
+            throw failure;
     }
 
-    private void removeExpiredLeases() {
-        for(AssignableVirtualMachine avm: vmCollection.getAllVMs())
-            avm.removeExpiredLeases(!isInActiveVmGroup(avm));
+    /**
+     * Get the index of the host attribute values of all VMs, current as of the last call to
+     * {@link #prepareAndGetOrderedVMs(List, AtomicInteger)}.
+     *
+     * @return The host attribute index.
+     */
+    HostAttributeIndex getHostAttributeIndex() {
+        return hostAttributeIndex;
+    }
+
+    /**
+     * Get the capacity frontier of the VMs returned by the last call to {@link #prepareAndGetOrderedVMs(List, AtomicInteger)},
+     * with slots in the same order as the VMs returned.
+     *
+     * @return The capacity frontier of the current scheduling iteration.
+     */
+    CapacityFrontier getCapacityFrontier() {
+        return capacityFrontier;
+    }
+
+    ScalarResourceRegistry getScalarResourceRegistry() {
+        return scalarRegistry;
+    }
+
+    List<AssignableVirtualMachine> getInactiveVMs() {
+        return vmCollection.getAllVMs().stream().filter(avm -> !isInActiveVmGroup(avm)).collect(Collectors.toList());
+    }
+
+    /**
+     * Get the cluster wide total resources, as of the last call to {@link #prepareAndGetOrderedVMs(List, AtomicInteger)}.
+     *
+     * @return Total resources of VMs that are in active VM groups and not disabled.
+     */
+    Map<VMResource, Double> getTotalResources() {
+        return totalResourcesMap;
+    }
+
+    private void updateTotalResources(AssignableVirtualMachine avm, boolean inTotals) {
+        numVMsInTotals += updateTotalResources(avm, inTotals, totalResourcesMap);
+        if (numVMsInTotals == 0)
+            totalResourcesMap.clear();
+    }
+
+    // Replace the VM's previous contribution to the total resources with its current one, adding the difference to the
+    // given totals, and return the change in the number of VMs contributing. Totals are kept as deltas so that only
+    // VMs that changed are visited, and are cleared once no VM contributes, to not carry rounding errors.
+    private static int updateTotalResources(AssignableVirtualMachine avm, boolean inTotals,
+                                            Map<VMResource, Double> totals) {
+        int numVMsDelta = 0;
+        final Map<VMResource, Double> prevResources = avm.getTotalResourcesContribution();
+        if (prevResources != null) {
+            numVMsDelta--;
+            for (Map.Entry<VMResource, Double> entry: prevResources.entrySet()) {
+                if (entry.getValue() != null)
+                    totals.merge(entry.getKey(), -entry.getValue(), Double::sum);
+            }
+        }
+        final Map<VMResource, Double> maxResources = inTotals ? avm.getMaxResources() : null;
+        avm.setTotalResourcesContribution(maxResources);
+        if (maxResources != null) {
+            numVMsDelta++;
+            for (Map.Entry<VMResource, Double> entry: maxResources.entrySet()) {
+                if (entry.getValue() != null)
+                    totals.merge(entry.getKey(), entry.getValue(), Double::sum);
+            }
+        }
+        return numVMsDelta;
     }
 
     int removeLimitedLeases(List<VirtualMachineLease> idleResourcesList) {
@@ -343,6 +573,8 @@ class AssignableVMs {
                 if (!excludeVms.contains(avm.getHostname())) {
                     if (!avm.isActive()) {
                         vmCollection.remove(avm);
+                        updateTotalResources(avm, false);
+                        hostAttributeIndex.remove(avm);
                         if (avm.getCurrVMId() != null)
                             vmIdToHostnameMap.remove(avm.getCurrVMId(), avm.getHostname());
                         logger.info("Removed inactive host " + avm.getHostname());
@@ -352,27 +584,30 @@ class AssignableVMs {
         }
     }
 
-    private void saveMaxResources(AssignableVirtualMachine avm) {
+    private void saveMaxResources(AssignableVirtualMachine avm, Map<String, Map<VMResource, Double>> into) {
         if(attrNameToGroupMaxResources!=null && !attrNameToGroupMaxResources.isEmpty()) {
             String attrValue = avm.getAttrValue(attrNameToGroupMaxResources);
-            if(attrValue !=null) {
-                Map<VMResource, Double> maxResources = avm.getMaxResources();
-                Map<VMResource, Double> savedMaxResources = maxResourcesMap.get(attrValue);
-                if(savedMaxResources==null) {
-                    savedMaxResources = new HashMap<>();
-                    maxResourcesMap.put(attrValue, savedMaxResources);
-                }
-                for(VMResource r: VMResource.values()) {
-                    switch (r) {
-                        case CPU:
-                        case Disk:
-                        case Memory:
-                        case Ports:
-                        case Network:
-                            Double savedVal = savedMaxResources.get(r)==null? 0.0 : savedMaxResources.get(r);
-                            savedMaxResources.put(r, Math.max(savedVal, maxResources.get(r)));
-                    }
-                }
+            if(attrValue !=null)
+                saveMaxResources(into, attrValue, avm.getMaxResources());
+        }
+    }
+
+    private static void saveMaxResources(Map<String, Map<VMResource, Double>> into, String attrValue,
+                                         Map<VMResource, Double> maxResources) {
+        Map<VMResource, Double> savedMaxResources = into.get(attrValue);
+        if(savedMaxResources==null) {
+            savedMaxResources = new HashMap<>();
+            into.put(attrValue, savedMaxResources);
+        }
+        for(VMResource r: VMResource.values()) {
+            switch (r) {
+                case CPU:
+                case Disk:
+                case Memory:
+                case Ports:
+                case Network:
+                    Double savedVal = savedMaxResources.get(r)==null? 0.0 : savedMaxResources.get(r);
+                    savedMaxResources.put(r, Math.max(savedVal, maxResources.get(r)));
             }
         }
     }
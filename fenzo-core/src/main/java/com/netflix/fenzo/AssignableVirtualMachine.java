@@ -35,36 +35,78 @@ import java.util.concurrent.atomic.AtomicBoolean;
 class AssignableVirtualMachine implements Comparable<AssignableVirtualMachine>{
 
     /* package */ static final String PseuoHostNamePrefix = "FenzoPsueodHost-";
-
-    private static class PortRange {
-        private final VirtualMachineLease.Range range;
-        private PortRange(VirtualMachineLease.Range range) {
-            this.range = range;
-        }
-        int size() {
-            return range.getEnd()-range.getBeg()+1;
-        }
-    }
-
+    // indexes into the array that tryRequest() adds the time taken by each of its steps to
+    static final int HARD_CONSTRAINTS_NANOS = 0;
+    static final int RESOURCES_NANOS = 1;
+    static final int FITNESS_NANOS = 2;
+    // outcomes of evaluate()
+    static final int EVAL_SUCCESS = 0;
+    static final int EVAL_NO_LEASES = 1;
+    static final int EVAL_EXCLUSIVE_HOST = 2;
+    static final int EVAL_HARD_CONSTRAINT = 3;
+    static final int EVAL_RESOURCES = 4;
+    static final int EVAL_FITNESS = 5;
+    // outcome of evaluateUpToFitness() when the task fits, until its fitness is given to applyFitness()
+    static final int EVAL_FITNESS_PENDING = 6;
+
+    // The ports of the leases of this VM. Ports are numbered by their offset into the ranges, in the order the ranges
+    // were added, and the offsets of used ports are set in a bit set, so that ports can be released one at a time and
+    // handed out again without rebuilding the ranges. Ports are handed out lowest offset first.
     private static class PortRanges {
-        private List<VirtualMachineLease.Range> ranges = new ArrayList<>();
-        private List<PortRange> portRanges = new ArrayList<>();
+        private static final int[] NO_OFFSETS = new int[0];
+        private final List<VirtualMachineLease.Range> ranges = new ArrayList<>();
+        // first port, last port, and offset of the first port, of each non-empty range sorted by first port
+        private int[] sortedBegs = NO_OFFSETS;
+        private int[] sortedEnds = NO_OFFSETS;
+        private int[] sortedOffsets = NO_OFFSETS;
+        // offset of the first port and first port, of each non-empty range in the order added
+        private int[] offsets = NO_OFFSETS;
+        private int[] begs = NO_OFFSETS;
+        private final BitSet usedOffsets = new BitSet();
+        // no offset below this one is free
+        private int nextFreeOffset=0;
         private int totalPorts=0;
         private int currUsedPorts=0;
 
         void addRanges(List<VirtualMachineLease.Range> ranges) {
-            if(ranges!=null) {
-                this.ranges.addAll(ranges);
-                for(VirtualMachineLease.Range range: ranges) {
-                    PortRange pRange = new PortRange(range);
-                    portRanges.add(pRange);
-                    totalPorts += pRange.size();
-                }
+            if(ranges==null || ranges.isEmpty())
+                return;
+            this.ranges.addAll(ranges);
+            int n=0;
+            for(VirtualMachineLease.Range range: this.ranges)
+                if(range.getEnd() >= range.getBeg())
+                    n++;
+            offsets = new int[n];
+            begs = new int[n];
+            // sort ranges by first port, keeping the range's index in the low bits
+            final long[] byBeg = new long[n];
+            int i=0;
+            totalPorts=0;
+            for(VirtualMachineLease.Range range: this.ranges) {
+                if(range.getEnd() < range.getBeg())
+                    continue;
+                offsets[i] = totalPorts;
+                begs[i] = range.getBeg();
+                byBeg[i] = ((long)range.getBeg() << 32) | i;
+                totalPorts += range.getEnd() - range.getBeg() + 1;
+                i++;
+            }
+            Arrays.sort(byBeg);
+            sortedBegs = new int[n];
+            sortedEnds = new int[n];
+            sortedOffsets = new int[n];
+            for(int s=0; s<n; s++) {
+                final int r = (int)byBeg[s];
+                sortedBegs[s] = begs[r];
+                sortedOffsets[s] = offsets[r];
+                sortedEnds[s] = begs[r] + (r+1<n? offsets[r+1] : totalPorts) - offsets[r] - 1;
             }
         }
         void clear() {
             ranges.clear();
-            portRanges.clear();
+            sortedBegs = sortedEnds = sortedOffsets = offsets = begs = NO_OFFSETS;
+            usedOffsets.clear();
+            nextFreeOffset=0;
             currUsedPorts=0;
             totalPorts=0;
         }
@@ -75,17 +117,31 @@ class AssignableVirtualMachine implements Comparable<AssignableVirtualMachine>{
             return num + currUsedPorts <= totalPorts;
         }
         private int consumeNextPort() {
-            int forward=0;
-            for(PortRange range: portRanges) {
-                if(forward+range.size()>currUsedPorts) {
-                    // consume in this range
-                    return range.range.getBeg() + (currUsedPorts++ - forward);
-                }
-                else {
-                    forward += range.size();
-                }
-            }
-            throw new IllegalStateException("All ports (" + totalPorts + ") already used up");
+            final int offset = usedOffsets.nextClearBit(nextFreeOffset);
+            if(offset >= totalPorts)
+                throw new IllegalStateException("All ports (" + totalPorts + ") already used up");
+            usedOffsets.set(offset);
+            nextFreeOffset = offset+1;
+            currUsedPorts++;
+            int r = Arrays.binarySearch(offsets, offset);
+            if(r < 0)
+                r = -r - 2;
+            return begs[r] + offset - offsets[r];
+        }
+        // Mark the given port free again, returns false if it isn't a used port of these ranges
+        private boolean releasePort(int port) {
+            int s = Arrays.binarySearch(sortedBegs, port);
+            if(s < 0)
+                s = -s - 2;
+            if(s < 0 || port > sortedEnds[s])
+                return false;
+            final int offset = sortedOffsets[s] + port - sortedBegs[s];
+            if(!usedOffsets.get(offset))
+                return false;
+            usedOffsets.clear(offset);
+            nextFreeOffset = Math.min(nextFreeOffset, offset);
+            currUsedPorts--;
+            return true;
         }
     }
 
@@ -106,8 +162,12 @@ class AssignableVirtualMachine implements Comparable<AssignableVirtualMachine>{
     private final Action1<VirtualMachineLease> leaseRejectAction;
     private final long leaseOfferExpirySecs;
     private final String hostname;
-    private final Map<String, Double> currTotalScalars = new HashMap<>();
-    private final Map<String, Double> currUsedScalars = new HashMap<>();
+    private final ScalarResourceRegistry scalarRegistry;
+    // scalar resources indexed by their ScalarResourceRegistry slot, both arrays are kept the same length. Slots of
+    // the scalar resources this VM has are set in currScalarSlots.
+    private double[] currTotalScalars = ScalarResourceRegistry.NO_SCALARS;
+    private double[] currUsedScalars = ScalarResourceRegistry.NO_SCALARS;
+    private final BitSet currScalarSlots = new BitSet();
     private double currTotalCpus=0.0;
     private double currUsedCpus=0.0;
     private double currTotalMemory=0.0;
@@ -116,8 +176,18 @@ class AssignableVirtualMachine implements Comparable<AssignableVirtualMachine>{
     private double currUsedNetworkMbps=0.0;
     private double currTotalDisk=0.0;
     private double currUsedDisk=0.0;
+    // resources of the tasks in previouslyAssignedTasksMap, for fitness calculators reading the capacity frontier
+    private double runningCpus=0.0;
+    private double runningMemory=0.0;
+    private double runningNetworkMbps=0.0;
+    private double runningDisk=0.0;
     private VirtualMachineLease currTotalLease=null;
     private PortRanges currPortRanges = new PortRanges();
+    // In single lease mode, the lease's ports stay with the VM across iterations. Ports assigned in the current
+    // iteration are kept by task ID until the task is launched, when they move to the running task's ports, or until
+    // the next iteration, when they are released. Ports of running tasks are released when the tasks complete.
+    private final Map<String, List<Integer>> assignedPorts = new HashMap<>();
+    private final Map<String, List<Integer>> runningTaskPorts = new HashMap<>();
     private volatile Map<String, Protos.Attribute> currAttributesMap = Collections.emptyMap();
     private final Map<String, PreferentialNamedConsumableResourceSet> resourceSets = new HashMap<>();
     // previouslyAssignedTasksMap contains tasks on this VM before current scheduling iteration started. This is
@@ -139,18 +209,39 @@ class AssignableVirtualMachine implements Comparable<AssignableVirtualMachine>{
     private final boolean singleLeaseMode;
     private boolean firstLeaseAdded=false;
     private final List<TaskRequest> consumedResourcesToAssign = new ArrayList<>();
+    // changeVersion is incremented when leases, tasks, or used resources of this VM change. A VM whose version is the
+    // same as when it was last prepared for a scheduling iteration does not need its resources recomputed.
+    private long changeVersion=1L;
+    private long preparedVersion=0L;
+    // the resources this VM last added to the cluster wide totals, null if not included in the totals
+    private Map<VMResource, Double> totalResourcesContribution=null;
+    // views of this VM and of the task tracker passed to constraints and fitness calculators, reused across evaluations
+    private final VirtualMachineCurrentState vmCurrentState;
+    private final TaskTrackerState taskTrackerState;
+    private List<VirtualMachineLease> deferredLeaseRejects=null;
+    // outcome of the last evaluate(), from which getEvaluationResult() creates the assignment result when asked for
+    private int lastEvalOutcome=EVAL_NO_LEASES;
+    private double lastEvalFitness=0.0;
+    private double lastResAsgmntFitness=0.0;
+    private ConstraintEvaluator lastFailedConstraint=null;
+    private ConstraintEvaluator.Result lastFailedConstraintResult=null;
+    // slot of this VM in the capacity frontier it was last saved to, valid only while it is in that iteration's VMs
+    private int frontierSlot=-1;
 
     public AssignableVirtualMachine(ConcurrentMap<String, String> vmIdToHostnameMap,
                                     ConcurrentMap<String, String> leaseIdToHostnameMap,
                                     String hostname, Action1<VirtualMachineLease> leaseRejectAction,
-                                    long leaseOfferExpirySecs, TaskTracker taskTracker) {
-        this(vmIdToHostnameMap, leaseIdToHostnameMap, hostname, leaseRejectAction, leaseOfferExpirySecs, taskTracker, false);
+                                    long leaseOfferExpirySecs, TaskTracker taskTracker,
+                                    ScalarResourceRegistry scalarRegistry) {
+        this(vmIdToHostnameMap, leaseIdToHostnameMap, hostname, leaseRejectAction, leaseOfferExpirySecs, taskTracker,
+                false, scalarRegistry);
     }
 
     public AssignableVirtualMachine(ConcurrentMap<String, String> vmIdToHostnameMap,
                                     ConcurrentMap<String, String> leaseIdToHostnameMap,
                                     String hostname, Action1<VirtualMachineLease> leaseRejectAction,
-                                    long leaseOfferExpirySecs, TaskTracker taskTracker, boolean singleLeaseMode) {
+                                    long leaseOfferExpirySecs, TaskTracker taskTracker, boolean singleLeaseMode,
+                                    ScalarResourceRegistry scalarRegistry) {
         this.vmIdToHostnameMap = vmIdToHostnameMap;
         this.leaseIdToHostnameMap = leaseIdToHostnameMap;
         this.hostname = hostname;
@@ -164,6 +255,67 @@ class AssignableVirtualMachine implements Comparable<AssignableVirtualMachine>{
         this.previouslyAssignedTasksMap = new HashMap<>();
         this.assignmentResults = new HashMap<>();
         this.singleLeaseMode = singleLeaseMode;
+        this.scalarRegistry = scalarRegistry;
+        this.vmCurrentState = createVmCurrentStateView();
+        this.taskTrackerState = new TaskTrackerState() {
+            @Override
+            public Map<String, TaskTracker.ActiveTask> getAllRunningTasks() {
+                return taskTracker.getAllRunningTasks();
+            }
+
+            @Override
+            public Map<String, TaskTracker.ActiveTask> getAllCurrentlyAssignedTasks() {
+                return taskTracker.getAllAssignedTasks();
+            }
+
+            @Override
+            public AttributeValueCounts getCoTaskAttributeCounts(TaskRequest taskRequest, String attributeName) {
+                return taskTracker.getCoTaskAttributeCounts(taskRequest, attributeName);
+            }
+        };
+    }
+
+    // A live view of this VM's state, unlike the snapshot from getVmCurrentState(). The offers are collected only if a
+    // plugin asks for them.
+    private VirtualMachineCurrentState createVmCurrentStateView() {
+        final Collection<TaskAssignmentResult> tasksCurrentlyAssigned =
+                Collections.unmodifiableCollection(assignmentResults.values());
+        final Collection<TaskRequest> runningTasks =
+                Collections.unmodifiableCollection(previouslyAssignedTasksMap.values());
+        return new VirtualMachineCurrentState() {
+            @Override
+            public String getHostname() {
+                return hostname;
+            }
+            @Override
+            public Map<String, PreferentialNamedConsumableResourceSet> getResourceSets() {
+                return resourceSets;
+            }
+            @Override
+            public VirtualMachineLease getCurrAvailableResources() {
+                return currTotalLease;
+            }
+            @Override
+            public Collection<Protos.Offer> getAllCurrentOffers() {
+                final List<Protos.Offer> offers = new LinkedList<>();
+                for (VirtualMachineLease l: leasesMap.values()) {
+                    offers.add(l.getOffer());
+                }
+                return offers;
+            }
+            @Override
+            public Collection<TaskAssignmentResult> getTasksCurrentlyAssigned() {
+                return tasksCurrentlyAssigned;
+            }
+            @Override
+            public Collection<TaskRequest> getRunningTasks() {
+                return runningTasks;
+            }
+            @Override
+            public long getDisabledUntil() {
+                return disabledUntil;
+            }
+        };
     }
 
     private Action1<VirtualMachineLease> getWrappedLeaseRejectAction(final Action1<VirtualMachineLease> leaseRejectAction) {
@@ -171,11 +323,28 @@ class AssignableVirtualMachine implements Comparable<AssignableVirtualMachine>{
                 lease -> logger.warn("No lease reject action registered to reject lease id " + lease.getId() +
                         " on host " + lease.hostname()) :
                 lease -> {
-                    if (isRejectable(lease))
-                        leaseRejectAction.call(lease);
+                    if (isRejectable(lease)) {
+                        final List<VirtualMachineLease> deferred = deferredLeaseRejects;
+                        if (deferred != null)
+                            deferred.add(lease);
+                        else
+                            leaseRejectAction.call(lease);
+                    }
                 };
     }
 
+    /**
+     * Collect the leases this VM rejects into the given list, instead of calling the lease reject action, until
+     * called again with {@code null}. This lets VMs be prepared for a scheduling iteration in other threads, while
+     * the lease reject action is called only from the thread running the scheduling iteration. Leases are added to
+     * the list only if a lease reject action was given to this VM.
+     *
+     * @param rejects The list to collect rejected leases into, or {@code null} to call the lease reject action.
+     */
+    void deferLeaseRejects(List<VirtualMachineLease> rejects) {
+        deferredLeaseRejects = rejects;
+    }
+
     private boolean isRejectable(VirtualMachineLease l) {
         return l != null && l.getOffer() != null;
     }
@@ -187,10 +356,8 @@ class AssignableVirtualMachine implements Comparable<AssignableVirtualMachine>{
         final Map<String, Double> scalars = l.getScalarValues();
         if(scalars != null && !scalars.isEmpty()) {
             for(Map.Entry<String, Double> entry: scalars.entrySet()) {
-                Double currVal = currTotalScalars.get(entry.getKey());
-                if(currVal == null)
-                    currVal = 0.0;
-                currTotalScalars.put(entry.getKey(), currVal + entry.getValue());
+                final int slot = ensureScalarSlot(entry.getKey());
+                currTotalScalars[slot] += entry.getValue();
             }
         }
         currTotalCpus += l.cpuCores();
@@ -262,14 +429,17 @@ class AssignableVirtualMachine implements Comparable<AssignableVirtualMachine>{
             currTotalNetworkMbps=0.0;
             currTotalDisk=0.0;
             currPortRanges.clear();
-            currTotalScalars.clear();
+            Arrays.fill(currTotalScalars, 0.0);
+            currScalarSlots.clear();
         }
         currUsedCpus=0.0;
         currUsedMemory=0.0;
         currUsedNetworkMbps=0.0;
         currUsedDisk=0.0;
-        currUsedScalars.clear();
-        // ToDo: in single offer mode, need to resolve used ports somehow
+        Arrays.fill(currUsedScalars, 0.0);
+        if(singleLeaseMode)
+            releasePorts(assignedPorts.values());
+        assignedPorts.clear();
         // don't clear attribute map
         for(VirtualMachineLease l: leasesMap.values())
             addToAvailableResources(l);
@@ -327,20 +497,102 @@ class AssignableVirtualMachine implements Comparable<AssignableVirtualMachine>{
             }
             @Override
             public Double getScalarValue(String name) {
-                return currTotalScalars.get(name);
+                final int slot = scalarRegistry.findSlot(name);
+                return slot >= 0 && currScalarSlots.get(slot) ? currTotalScalars[slot] : null;
+            }
+            @Override
+            public Map<String, Double> getScalarValues() {
+                return scalarRegistry.toMap(currTotalScalars, currScalarSlots);
+            }
+        };
+    }
+
+    // A copy of the totaled lease with the current values, which does not change with this VM
+    private VirtualMachineLease copyTotaledLease() {
+        final long offeredTime = System.currentTimeMillis();
+        final double cpus = currTotalCpus;
+        final double memory = currTotalMemory;
+        final double network = currTotalNetworkMbps;
+        final double disk = currTotalDisk;
+        final List<VirtualMachineLease.Range> ports =
+                Collections.unmodifiableList(new ArrayList<>(currPortRanges.getRanges()));
+        final Map<String, Protos.Attribute> attributes = currAttributesMap;
+        final Map<String, Double> scalars = scalarRegistry.toMap(currTotalScalars, currScalarSlots);
+        return new VirtualMachineLease() {
+            @Override
+            public String getId() {
+                return "InternalVMLeaseObject";
+            }
+            @Override
+            public long getOfferedTime() {
+                return offeredTime;
+            }
+            @Override
+            public String hostname() {
+                return hostname;
+            }
+            @Override
+            public String getVMID() {
+                return "NoVMID-InternalVMLease";
+            }
+            @Override
+            public double cpuCores() {
+                return cpus;
+            }
+            @Override
+            public double memoryMB() {
+                return memory;
+            }
+            @Override
+            public double networkMbps() {
+                return network;
+            }
+            @Override
+            public double diskMB() {
+                return disk;
+            }
+            @Override
+            public List<Range> portRanges() {
+                return ports;
+            }
+            @Override
+            public Protos.Offer getOffer() {
+                return null;
+            }
+            @Override
+            public Map<String, Protos.Attribute> getAttributeMap() {
+                return attributes;
+            }
+            @Override
+            public Double getScalarValue(String name) {
+                return scalars.get(name);
             }
             @Override
             public Map<String, Double> getScalarValues() {
-                return Collections.unmodifiableMap(currTotalScalars);
+                return scalars;
             }
         };
     }
 
+    // Get the slot of the named scalar resource, making sure this VM's scalar vectors have it and marking the VM as
+    // having the resource.
+    private int ensureScalarSlot(String name) {
+        final int slot = scalarRegistry.getSlot(name);
+        if(slot >= currTotalScalars.length) {
+            currTotalScalars = scalarRegistry.ensureSlot(currTotalScalars, slot);
+            currUsedScalars = Arrays.copyOf(currUsedScalars, currTotalScalars.length);
+        }
+        currScalarSlots.set(slot);
+        return slot;
+    }
+
     void removeExpiredLeases(boolean all) {
         removeExpiredLeases(all, true);
     }
 
     void removeExpiredLeases(boolean all, boolean doRejectCallback) {
+        if(!all && leasesToExpire.isEmpty() && !expireAllLeasesNow.get())
+            return;
         @SuppressWarnings("MismatchedQueryAndUpdateOfCollection") Set<String> leasesToExpireIds = new HashSet<>();
         leasesToExpire.drainTo(leasesToExpireIds);
         Iterator<Map.Entry<String,VirtualMachineLease>> iterator = leasesMap.entrySet().iterator();
@@ -356,12 +608,15 @@ class AssignableVirtualMachine implements Comparable<AssignableVirtualMachine>{
                         leaseRejectAction.call(l);
                 }
                 iterator.remove();
+                changeVersion++;
                 if (logger.isDebugEnabled())
                     logger.debug("Removed lease on {}, all={}", hostname, all);
             }
         }
-        if(expireAll && !hasPreviouslyAssignedTasks())
+        if(expireAll && !hasPreviouslyAssignedTasks() && !resourceSets.isEmpty()) {
             resourceSets.clear();
+            changeVersion++;
+        }
     }
 
     int expireLimitedLeases(AssignableVMs.VMRejectLimiter vmRejectLimiter) {
@@ -378,6 +633,7 @@ class AssignableVirtualMachine implements Comparable<AssignableVirtualMachine>{
                 }
                 int size = leasesMap.values().size();
                 leasesMap.clear();
+                changeVersion++;
                 if (logger.isDebugEnabled())
                     logger.debug(hostname + ": cleared leases");
                 return size;
@@ -413,6 +669,7 @@ class AssignableVirtualMachine implements Comparable<AssignableVirtualMachine>{
             logger.debug(getHostname() + ": adding lease offer id " + lease.getId());
         leasesMap.put(lease.getId(), lease);
         addToAvailableResources(lease);
+        changeVersion++;
         return true;
     }
 
@@ -426,6 +683,7 @@ class AssignableVirtualMachine implements Comparable<AssignableVirtualMachine>{
             leaseIdToHostnameMap.remove(entry.getValue().getId());
             leaseRejectAction.call(entry.getValue());
             entriesIterator.remove();
+            changeVersion++;
             if (logger.isDebugEnabled())
                 logger.debug("Removed lease on " + hostname + " due to being disabled");
         }
@@ -465,13 +723,27 @@ class AssignableVirtualMachine implements Comparable<AssignableVirtualMachine>{
         }
         else
             logger.error("Unexpected to add duplicate task id=" + request.getId());
-        previouslyAssignedTasksMap.put(request.getId(), request);
+        final TaskRequest replaced = previouslyAssignedTasksMap.put(request.getId(), request);
+        if(replaced != null)
+            addRunningResources(replaced, -1.0);
+        addRunningResources(request, 1.0);
+        changeVersion++;
         setIfExclusive(request);
         if(singleLeaseMode && added) {
             removeResourcesOf(request);
+            final List<Integer> ports = assignedPorts.remove(request.getId());
+            if(ports != null)
+                runningTaskPorts.put(request.getId(), ports);
         }
     }
 
+    private void addRunningResources(TaskRequest request, double sign) {
+        runningCpus += sign * request.getCPUs();
+        runningMemory += sign * request.getMemory();
+        runningNetworkMbps += sign * request.getNetworkMbps();
+        runningDisk += sign * request.getDisk();
+    }
+
     private void assignResourceSets(TaskRequest request) {
         if(request.getAssignedResources() != null) {
             final List<PreferentialNamedConsumableResourceSet.ConsumeResult> consumedNamedResources =
@@ -517,21 +789,61 @@ class AssignableVirtualMachine implements Comparable<AssignableVirtualMachine>{
     }
 
     void prepareForScheduling() {
+        final List<String> unassigned = new ArrayList<>();
+        prepareForScheduling(unassigned);
+        for(String t: unassigned)
+            taskTracker.removeRunningTask(t);
+    }
+
+    /**
+     * Prepare this VM for a scheduling iteration as {@link #prepareForScheduling()} does, except that the tasks
+     * unassigned from this VM are added to the given collection instead of being removed from the task tracker. The
+     * caller must remove them from the task tracker. This does not change state shared with other VMs, and can be
+     * called for different VMs from different threads.
+     *
+     * @param unassignedTaskIds Collection to add the IDs of the tasks unassigned from this VM to.
+     */
+    void prepareForScheduling(Collection<String> unassignedTaskIds) {
         @SuppressWarnings("MismatchedQueryAndUpdateOfCollection") List<String> tasks = new ArrayList<>();
         workersToUnAssign.drainTo(tasks);
         for(String t: tasks) {
             if(logger.isDebugEnabled())
                 logger.debug("{}: removing previously assigned task {}", hostname, t);
-            taskTracker.removeRunningTask(t);
+            unassignedTaskIds.add(t);
             TaskRequest r = previouslyAssignedTasksMap.remove(t);
+            if(r != null)
+                addRunningResources(r, -1.0);
             if(singleLeaseMode && r!=null)
                 addBackResourcesOf(r);
             releaseResourceSets(r);
             clearIfExclusive(t);
+            changeVersion++;
         }
         assignmentResults.clear();
     }
 
+    /**
+     * Find out if this VM changed since it was last prepared for a scheduling iteration, that is, if it has new,
+     * expired, or rejected leases, or tasks launched or completed on it, or resources used by assignments.
+     *
+     * @return {@code true} if this VM's resources need to be recomputed.
+     */
+    boolean isChangedSincePrepared() {
+        return changeVersion != preparedVersion;
+    }
+
+    void setPrepared() {
+        preparedVersion = changeVersion;
+    }
+
+    Map<VMResource, Double> getTotalResourcesContribution() {
+        return totalResourcesContribution;
+    }
+
+    void setTotalResourcesContribution(Map<VMResource, Double> totalResourcesContribution) {
+        this.totalResourcesContribution = totalResourcesContribution;
+    }
+
     private void releaseResourceSets(TaskRequest r) {
         if(r==null) {
             logger.warn("Can't release resource sets for null task");
@@ -552,20 +864,20 @@ class AssignableVirtualMachine implements Comparable<AssignableVirtualMachine>{
         final Map<String, Double> scalarRequests = request.getScalarRequests();
         if(scalarRequests != null && !scalarRequests.isEmpty()) {
             for(Map.Entry<String, Double> entry: scalarRequests.entrySet()) {
-                Double oldVal = currTotalScalars.get(entry.getKey());
-                if(oldVal != null) {
-                    double newVal = oldVal - entry.getValue();
+                final int slot = scalarRegistry.findSlot(entry.getKey());
+                if(slot >= 0 && currScalarSlots.get(slot)) {
+                    double newVal = currTotalScalars[slot] - entry.getValue();
                     if(newVal < 0.0) {
                         logger.warn(hostname + ": Scalar resource " + entry.getKey() + " is " + newVal + " after removing " +
                                 entry.getValue() + " from task " + request.getId());
-                        currTotalScalars.put(entry.getKey(), 0.0);
+                        currTotalScalars[slot] = 0.0;
                     }
                     else
-                        currTotalScalars.put(entry.getKey(), newVal);
+                        currTotalScalars[slot] = newVal;
                 }
             }
         }
-        // ToDo need to figure out ports as well
+        // ports stay used from the task's assignment, see setAssignedTask()
     }
 
     private void addBackResourcesOf(TaskRequest r) {
@@ -576,13 +888,20 @@ class AssignableVirtualMachine implements Comparable<AssignableVirtualMachine>{
         final Map<String, Double> scalarRequests = r.getScalarRequests();
         if(scalarRequests != null && !scalarRequests.isEmpty()) {
             for(Map.Entry<String, Double> entry: scalarRequests.entrySet()) {
-                Double oldVal = currTotalScalars.get(entry.getKey());
-                if(oldVal == null)
-                    oldVal = 0.0;
-                currTotalScalars.put(entry.getKey(), oldVal + entry.getValue());
+                final int slot = ensureScalarSlot(entry.getKey());
+                currTotalScalars[slot] += entry.getValue();
             }
         }
-        // ToDo queueTask back ports
+        final List<Integer> ports = runningTaskPorts.remove(r.getId());
+        if(ports != null)
+            releasePorts(Collections.singletonList(ports));
+    }
+
+    private void releasePorts(Collection<List<Integer>> portLists) {
+        for(List<Integer> ports: portLists)
+            for(Integer port: ports)
+                if(!currPortRanges.releasePort(port))
+                    logger.warn("{}: port {} to release is not in use", hostname, port);
     }
 
     String getAttrValue(String attrName) {
@@ -595,12 +914,7 @@ class AssignableVirtualMachine implements Comparable<AssignableVirtualMachine>{
     }
 
     Map<String, Double> getMaxScalars() {
-        Map<String, Double> result = new HashMap<>();
-        if (currTotalScalars != null) {
-            for (Map.Entry<String, Double> e : currTotalScalars.entrySet()) {
-                result.put(e.getKey(), e.getValue());
-            }
-        }
+        Map<String, Double> result = new HashMap<>(scalarRegistry.toMap(currTotalScalars, currScalarSlots));
         if (hasPreviouslyAssignedTasks()) {
             for (TaskRequest t: previouslyAssignedTasksMap.values()) {
                 final Map<String, Double> scalarRequests = t.getScalarRequests();
@@ -659,44 +973,129 @@ class AssignableVirtualMachine implements Comparable<AssignableVirtualMachine>{
      * @return Assignment result.
      */
     TaskAssignmentResult tryRequest(TaskRequest request, VMTaskFitnessCalculator fitnessCalculator) {
+        evaluate(request, fitnessCalculator, null);
+        return getEvaluationResult(request);
+    }
+
+    /**
+     * Evaluate assigning resources for a given task as in {@link #tryRequest(TaskRequest, VMTaskFitnessCalculator)},
+     * without creating an assignment result. The outcome is remembered by this VM until its next evaluation, and the
+     * result, along with any failures, is created only if asked for with {@link #getEvaluationResult(TaskRequest)}.
+     * Rejecting a task does not allocate, other than what constraint plugins allocate. If not {@code null}, the time
+     * taken by each step is added to the given array, indexed by {@link #HARD_CONSTRAINTS_NANOS},
+     * {@link #RESOURCES_NANOS}, and {@link #FITNESS_NANOS}.
+     *
+     * @param request The task request to assign resources to.
+     * @param fitnessCalculator The fitness calculator to use for resource assignment.
+     * @param evalNanos The array to add the time taken to, or {@code null} to not time the steps.
+     * @return {@link #EVAL_SUCCESS} if the task can be assigned to this VM, or one of the other {@code EVAL_*} codes
+     * telling why it cannot be.
+     */
+    int evaluate(TaskRequest request, VMTaskFitnessCalculator fitnessCalculator, long[] evalNanos) {
+        return evaluate(request, scalarRegistry.toVector(request.getScalarRequests()), fitnessCalculator,
+                null, evalNanos);
+    }
+
+    /**
+     * Evaluate assigning resources for a given task as in
+     * {@link #evaluate(TaskRequest, VMTaskFitnessCalculator, long[])}, with the task's scalar resource requests
+     * already converted to a vector by {@link ScalarResourceRegistry#toVector(Map)}. Use this to evaluate the same
+     * task on many VMs without converting its requests for each of them, and reusing the results of its hard
+     * constraints that depend only on host attributes.
+     *
+     * @param request The task request to assign resources to.
+     * @param scalarRequests The scalar resources requested by the task, indexed by slot.
+     * @param fitnessCalculator The fitness calculator to use for resource assignment.
+     * @param constraintResults The cached results of the task's hard constraints, or {@code null} to evaluate them.
+     * @param evalNanos The array to add the time taken to, or {@code null} to not time the steps.
+     * @return {@link #EVAL_SUCCESS} if the task can be assigned to this VM, or one of the other {@code EVAL_*} codes
+     * telling why it cannot be.
+     */
+    int evaluate(TaskRequest request, double[] scalarRequests, VMTaskFitnessCalculator fitnessCalculator,
+                 ConstraintResultCache.Entry constraintResults, long[] evalNanos) {
+        final int outcome = evaluateUpToFitness(request, scalarRequests, constraintResults, evalNanos);
+        if(outcome != EVAL_FITNESS_PENDING)
+            return outcome;
+        final long start = evalNanos == null ? 0L : System.nanoTime();
+        final double fitness = fitnessCalculator.calculateFitness(request, vmCurrentState, taskTrackerState);
+        if(evalNanos != null)
+            addNanosSince(evalNanos, FITNESS_NANOS, start);
+        return applyFitness(request, fitness, evalNanos);
+    }
+
+    /**
+     * Evaluate assigning resources for a given task as in
+     * {@link #evaluate(TaskRequest, double[], VMTaskFitnessCalculator, ConstraintResultCache.Entry, long[])},
+     * up to calculating the fitness of the task on this VM. If the task can be assigned, the evaluation is completed
+     * by giving its fitness, as calculated by the caller, to {@link #applyFitness(TaskRequest, double, long[])}. This
+     * lets the caller score the task on many VMs at once with a {@link BatchVMTaskFitnessCalculator}.
+     *
+     * @param request The task request to assign resources to.
+     * @param scalarRequests The scalar resources requested by the task, indexed by slot.
+     * @param constraintResults The cached results of the task's hard constraints, or {@code null} to evaluate them.
+     * @param evalNanos The array to add the time taken to, or {@code null} to not time the steps.
+     * @return {@link #EVAL_FITNESS_PENDING} if the task can be assigned to this VM subject to its fitness, or one of
+     * the other {@code EVAL_*} codes telling why it cannot be.
+     */
+    int evaluateUpToFitness(TaskRequest request, double[] scalarRequests,
+                            ConstraintResultCache.Entry constraintResults, long[] evalNanos) {
+        lastEvalFitness = 0.0;
+        lastFailedConstraint = null;
+        lastFailedConstraintResult = null;
         if(logger.isDebugEnabled())
-            logger.debug("Host {} task {}: #leases=", getHostname(), request.getId(), leasesMap.size());
+            logger.debug("Host {} task {}: #leases={}", getHostname(), request.getId(), leasesMap.size());
         if(leasesMap.isEmpty())
-            return null;
+            return lastEvalOutcome = EVAL_NO_LEASES;
         if(exclusiveTaskId!=null) {
             if(logger.isDebugEnabled())
                 logger.debug("Host {}: can't assign task {}, already have task {} assigned with exclusive host constraint",
                         hostname, request.getId(), exclusiveTaskId);
-            ConstraintFailure failure = new ConstraintFailure(ExclusiveHostConstraint.class.getName(),
-                    "Already has task " + exclusiveTaskId + " with exclusive host constraint");
-            return new TaskAssignmentResult(this, request, false, null, failure, 0.0);
-        }
-        VirtualMachineCurrentState vmCurrentState = vmCurrentState();
-        TaskTrackerState taskTrackerState = taskTrackerState();
-        ConstraintFailure failedHardConstraint = findFailedHardConstraints(request, vmCurrentState, taskTrackerState);
-        if(failedHardConstraint!=null) {
+            return lastEvalOutcome = EVAL_EXCLUSIVE_HOST;
+        }
+        long start = evalNanos == null ? 0L : System.nanoTime();
+        final boolean hardConstraintsMet = evalHardConstraints(request, constraintResults);
+        if(evalNanos != null)
+            start = addNanosSince(evalNanos, HARD_CONSTRAINTS_NANOS, start);
+        if(!hardConstraintsMet) {
             if(logger.isDebugEnabled())
-                logger.debug("Host {}: task {} failed hard constraint: ", hostname, request.getId(), failedHardConstraint);
-            return new TaskAssignmentResult(this, request, false, null, failedHardConstraint, 0.0);
+                logger.debug("Host {}: task {} failed hard constraint: {}", hostname, request.getId(),
+                        lastFailedConstraint.getName());
+            return lastEvalOutcome = EVAL_HARD_CONSTRAINT;
         }
-        final ResAsgmntResult resAsgmntResult = evalAndGetResourceAssignmentFailures(request);
-        if(!resAsgmntResult.failures.isEmpty()) {
+        final double resAsgmntFitness = evalResources(request, scalarRequests);
+        if(evalNanos != null)
+            addNanosSince(evalNanos, RESOURCES_NANOS, start);
+        if(resAsgmntFitness < 0.0) {
             if(logger.isDebugEnabled()) {
                 StringBuilder b = new StringBuilder();
-                for(AssignmentFailure f: resAsgmntResult.failures)
+                for(AssignmentFailure f: evalAndGetResourceAssignmentFailures(request).failures)
                     b.append(f.toString()).append(" ; ");
                 logger.debug("{}: task {} failed assignment: {}", hostname, request.getId(), b.toString());
             }
-            return new TaskAssignmentResult(this, request, false, resAsgmntResult.failures, null, 0.0);
+            return lastEvalOutcome = EVAL_RESOURCES;
         }
-        final double resAsgmntFitness = resAsgmntResult.fitness;
-        double fitness = fitnessCalculator.calculateFitness(request, vmCurrentState, taskTrackerState);
+        lastResAsgmntFitness = resAsgmntFitness;
+        return lastEvalOutcome = EVAL_FITNESS_PENDING;
+    }
+
+    /**
+     * Complete the evaluation of a task started with
+     * {@link #evaluateUpToFitness(TaskRequest, double[], ConstraintResultCache.Entry, long[])}, with the fitness
+     * calculated for the task on this VM. The task's soft constraints are evaluated here.
+     *
+     * @param request The task request last evaluated on this VM.
+     * @param fitness The fitness calculated for the task on this VM.
+     * @param evalNanos The array to add the time taken to, or {@code null} to not time the steps.
+     * @return {@link #EVAL_SUCCESS} if the task can be assigned to this VM, {@link #EVAL_FITNESS} otherwise.
+     */
+    int applyFitness(TaskRequest request, double fitness, long[] evalNanos) {
+        final long start = evalNanos == null ? 0L : System.nanoTime();
         if(fitness == 0.0) {
+            if(evalNanos != null)
+                addNanosSince(evalNanos, FITNESS_NANOS, start);
             if(logger.isDebugEnabled())
                 logger.debug("{}: task {} fitness calculator returned 0.0", hostname, request.getId());
-            List<AssignmentFailure> failures = Collections.singletonList(
-                    new AssignmentFailure(VMResource.Fitness, 0.0, 0.0, 0.0, "fitnessCalculator: 0.0"));
-            return new TaskAssignmentResult(this, request, false, failures, null, fitness);
+            return lastEvalOutcome = EVAL_FITNESS;
         }
         List<? extends VMTaskFitnessCalculator> softConstraints = request.getSoftConstraints();
         // we don't fail on soft constraints
@@ -704,8 +1103,86 @@ class AssignableVirtualMachine implements Comparable<AssignableVirtualMachine>{
         if(softConstraints!=null && !softConstraints.isEmpty()) {
             softConstraintFitness = getSoftConstraintsFitness(request, vmCurrentState, taskTrackerState);
         }
-        fitness = combineFitnessValues(resAsgmntFitness, fitness, softConstraintFitness);
-        return new TaskAssignmentResult(this, request, true, null, null, fitness);
+        lastEvalFitness = combineFitnessValues(lastResAsgmntFitness, fitness, softConstraintFitness);
+        if(evalNanos != null)
+            addNanosSince(evalNanos, FITNESS_NANOS, start);
+        return lastEvalOutcome = EVAL_SUCCESS;
+    }
+
+    /**
+     * Get the fitness found by the last {@link #evaluate(TaskRequest, VMTaskFitnessCalculator, long[])} of a task
+     * that can be assigned to this VM.
+     *
+     * @return The fitness of the last evaluation, 0.0 if the task could not be assigned.
+     */
+    double getLastEvalFitness() {
+        return lastEvalFitness;
+    }
+
+    /**
+     * Create the assignment result of the last {@link #evaluate(TaskRequest, VMTaskFitnessCalculator, long[])} on this
+     * VM. Resource assignment failures are computed again here, this must therefore be called before any other
+     * assignments are made on this VM.
+     *
+     * @param request The task request last evaluated on this VM.
+     * @return The assignment result, or {@code null} if this VM had no leases.
+     */
+    TaskAssignmentResult getEvaluationResult(TaskRequest request) {
+        switch (lastEvalOutcome) {
+            case EVAL_SUCCESS:
+                return new TaskAssignmentResult(this, request, true, null, null, lastEvalFitness);
+            case EVAL_EXCLUSIVE_HOST:
+                return new TaskAssignmentResult(this, request, false, null,
+                        new ConstraintFailure(ExclusiveHostConstraint.class.getName(),
+                                "Already has task " + exclusiveTaskId + " with exclusive host constraint"),
+                        0.0);
+            case EVAL_HARD_CONSTRAINT:
+                return new TaskAssignmentResult(this, request, false, null,
+                        new ConstraintFailure(lastFailedConstraint.getName(), lastFailedConstraintResult.getFailureReason()),
+                        0.0);
+            case EVAL_RESOURCES:
+                return new TaskAssignmentResult(this, request, false,
+                        evalAndGetResourceAssignmentFailures(request).failures, null, 0.0);
+            case EVAL_FITNESS:
+                return new TaskAssignmentResult(this, request, false, Collections.singletonList(
+                        new AssignmentFailure(VMResource.Fitness, 0.0, 0.0, 0.0, "fitnessCalculator: 0.0")),
+                        null, 0.0);
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Get the name of the constraint that the last {@link #evaluate(TaskRequest, VMTaskFitnessCalculator, long[])} on
+     * this VM failed, the same as in the constraint failure of the result created by
+     * {@link #getEvaluationResult(TaskRequest)}, without creating the result.
+     *
+     * @return The name of the failed constraint, or {@code null} if the last evaluation did not fail a constraint.
+     */
+    String getLastFailedConstraintName() {
+        switch (lastEvalOutcome) {
+            case EVAL_EXCLUSIVE_HOST:
+                return ExclusiveHostConstraint.class.getName();
+            case EVAL_HARD_CONSTRAINT:
+                return lastFailedConstraint.getName();
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Get the outcome of the last {@link #evaluate(TaskRequest, VMTaskFitnessCalculator, long[])} on this VM.
+     *
+     * @return One of the {@code EVAL_*} codes.
+     */
+    int getLastEvalOutcome() {
+        return lastEvalOutcome;
+    }
+
+    private static long addNanosSince(long[] evalNanos, int index, long start) {
+        final long now = System.nanoTime();
+        evalNanos[index] += now - start;
+        return now;
     }
 
     private double combineFitnessValues(double resAsgmntFitness, double fitness, double softConstraintFitness) {
@@ -726,17 +1203,155 @@ class AssignableVirtualMachine implements Comparable<AssignableVirtualMachine>{
         return sum/n;
     }
 
+    /**
+     * Get the resource assignment failures for the given request on this VM, without evaluating constraints or
+     * fitness.
+     *
+     * @param request The task request.
+     * @return List of resource assignment failures, empty if the VM has enough resources for the request.
+     */
+    List<AssignmentFailure> getResourceAssignmentFailures(TaskRequest request) {
+        return evalAndGetResourceAssignmentFailures(request).failures;
+    }
+
+    int getFrontierSlot() {
+        return frontierSlot;
+    }
+
+    /**
+     * Count the resource assignment failures for the given request on this VM, the same failures that
+     * {@link #getResourceAssignmentFailures(TaskRequest)} returns, without creating them. The count of the resource of
+     * each failure is incremented in the given array, indexed by {@link VMResource#ordinal()}.
+     *
+     * @param request The task request.
+     * @param resourceCounts The counts of failures by resource to add to.
+     * @return How far the request is from fitting on this VM, as {@link FailureReporter#getMissDistance} finds it
+     * from the failures, 0.0 if the VM has enough resources for the request.
+     */
+    double countResourceFailures(TaskRequest request, int[] resourceCounts) {
+        double distance = 0.0;
+        boolean failed = false;
+        final Map<String, Double> scalarRequests = request.getScalarRequests();
+        if(scalarRequests != null && !scalarRequests.isEmpty()) {
+            for(Map.Entry<String, Double> entry: scalarRequests.entrySet()) {
+                if(entry.getValue() == null || entry.getValue() == 0.0)
+                    continue;
+                final int slot = scalarRegistry.findSlot(entry.getKey());
+                final double u = slot >= 0 && slot < currUsedScalars.length ? currUsedScalars[slot] : 0.0;
+                final double t = slot >= 0 && slot < currTotalScalars.length ? currTotalScalars[slot] : 0.0;
+                if(u + entry.getValue() > t) {
+                    distance += countFailure(resourceCounts, VMResource.Other, entry.getValue(), u, t);
+                    failed = true;
+                }
+            }
+        }
+        if((currUsedCpus+request.getCPUs()) > currTotalCpus) {
+            distance += countFailure(resourceCounts, VMResource.CPU, request.getCPUs(), currUsedCpus, currTotalCpus);
+            failed = true;
+        }
+        if((currUsedMemory+request.getMemory()) > currTotalMemory) {
+            distance += countFailure(resourceCounts, VMResource.Memory, request.getMemory(), currUsedMemory,
+                    currTotalMemory);
+            failed = true;
+        }
+        if((currUsedNetworkMbps+request.getNetworkMbps()) > currTotalNetworkMbps) {
+            distance += countFailure(resourceCounts, VMResource.Network, request.getNetworkMbps(),
+                    currUsedNetworkMbps, currTotalNetworkMbps);
+            failed = true;
+        }
+        if((currUsedDisk+request.getDisk()) > currTotalDisk) {
+            distance += countFailure(resourceCounts, VMResource.Disk, request.getDisk(), currUsedDisk, currTotalDisk);
+            failed = true;
+        }
+        if(!currPortRanges.hasPorts(request.getPorts())) {
+            distance += countFailure(resourceCounts, VMResource.Ports, request.getPorts(),
+                    currPortRanges.currUsedPorts, currPortRanges.totalPorts);
+            failed = true;
+        }
+        if(failed)
+            return distance;
+        // resource sets are checked only if no other resources failed
+        for(PreferentialNamedConsumableResourceSet rSet: resourceSets.values()) {
+            if(rSet.getFitness(request) == 0.0)
+                distance += countFailure(resourceCounts, VMResource.ResourceSet, 0.0, 0.0, 0.0);
+        }
+        final Map<String, TaskRequest.NamedResourceSetRequest> namedResources = request.getCustomNamedResources();
+        if(namedResources != null) {
+            for(String name: namedResources.keySet()) {
+                if(!resourceSets.containsKey(name))
+                    return distance + countFailure(resourceCounts, VMResource.ResourceSet, 0.0, 0.0, 0.0);
+            }
+        }
+        return distance;
+    }
+
+    private static double countFailure(int[] resourceCounts, VMResource resource, double asking, double used,
+                                       double available) {
+        resourceCounts[resource.ordinal()]++;
+        return asking > 0.0 ? Math.max(0.0, used + asking - available) / asking : 1.0;
+    }
+
+    /**
+     * Save the current capacity of this VM into the given slot of the capacity frontier.
+     *
+     * @param frontier The capacity frontier of the current scheduling iteration.
+     * @param slot This VM's slot in the frontier.
+     */
+    void saveCapacity(CapacityFrontier frontier, int slot) {
+        frontierSlot = slot;
+        frontier.set(slot, currUsedCpus, currTotalCpus, currUsedMemory, currTotalMemory,
+                currUsedNetworkMbps, currTotalNetworkMbps, currUsedDisk, currTotalDisk,
+                currPortRanges.currUsedPorts, currPortRanges.totalPorts);
+        frontier.setScalars(slot, currUsedScalars, currTotalScalars);
+        frontier.setRunning(slot, runningCpus, runningMemory, runningNetworkMbps, runningDisk);
+    }
+
+    // The same checks as evalAndGetResourceAssignmentFailures(), without creating the failures. Returns the fitness of
+    // the resource sets, or -1.0 if the VM does not have enough of any of the resources requested.
+    private double evalResources(TaskRequest request, double[] scalarRequests) {
+        for(int s=0; s<scalarRequests.length; s++) {
+            final double r = scalarRequests[s];
+            if(r == 0.0)
+                continue;
+            if(s < currTotalScalars.length ? currUsedScalars[s] + r > currTotalScalars[s] : r > 0.0)
+                return -1.0;
+        }
+        if((currUsedCpus+request.getCPUs()) > currTotalCpus ||
+                (currUsedMemory+request.getMemory()) > currTotalMemory ||
+                (currUsedNetworkMbps+request.getNetworkMbps()) > currTotalNetworkMbps ||
+                (currUsedDisk+request.getDisk()) > currTotalDisk ||
+                !currPortRanges.hasPorts(request.getPorts()))
+            return -1.0;
+        final Map<String, TaskRequest.NamedResourceSetRequest> namedResources = request.getCustomNamedResources();
+        if(namedResources != null && !namedResources.isEmpty()) {
+            for(String name: namedResources.keySet())
+                if(!resourceSets.containsKey(name))
+                    return -1.0;
+        }
+        if(resourceSets.isEmpty())
+            return 0.0;
+        double rSetFitness=0.0;
+        int numRSets=0;
+        for(PreferentialNamedConsumableResourceSet rSet: resourceSets.values()) {
+            final double fitness = rSet.getFitness(request);
+            if(fitness == 0.0)
+                return -1.0;
+            rSetFitness += fitness;
+            numRSets++;
+        }
+        return numRSets > 1 ? rSetFitness / numRSets : rSetFitness;
+    }
+
     private ResAsgmntResult evalAndGetResourceAssignmentFailures(TaskRequest request) {
         List<AssignmentFailure> failures = new ArrayList<>();
         final Map<String, Double> scalarRequests = request.getScalarRequests();
         if(scalarRequests != null && !scalarRequests.isEmpty()) {
             for(Map.Entry<String, Double> entry: scalarRequests.entrySet()) {
-                if(entry.getValue() == null)
+                if(entry.getValue() == null || entry.getValue() == 0.0)
                     continue;
-                Double u = currUsedScalars.get(entry.getKey());
-                if(u == null)  u = 0.0;
-                Double t = currTotalScalars.get(entry.getKey());
-                if(t == null)  t=0.0;
+                final int slot = scalarRegistry.findSlot(entry.getKey());
+                final double u = slot >= 0 && slot < currUsedScalars.length ? currUsedScalars[slot] : 0.0;
+                final double t = slot >= 0 && slot < currTotalScalars.length ? currTotalScalars[slot] : 0.0;
                 if(u + entry.getValue() > t) {
                     failures.add(new AssignmentFailure(
                             VMResource.Other, entry.getValue(), u, t, entry.getKey()
@@ -813,25 +1428,23 @@ class AssignableVirtualMachine implements Comparable<AssignableVirtualMachine>{
         return new ResAsgmntResult(failures, rSetFitness);
     }
 
-    private TaskTrackerState taskTrackerState() {
-        return new TaskTrackerState() {
-            @Override
-            public Map<String, TaskTracker.ActiveTask> getAllRunningTasks() {
-                return taskTracker.getAllRunningTasks();
-            }
-
-            @Override
-            public Map<String, TaskTracker.ActiveTask> getAllCurrentlyAssignedTasks() {
-                return taskTracker.getAllAssignedTasks();
-            }
-        };
-    }
-
+    // A snapshot of this VM's state, with everything copied so that it does not change with the VM, for reading
+    // outside of the scheduling iteration
     VirtualMachineCurrentState getVmCurrentState() {
         final List<Protos.Offer> offers = new LinkedList<>();
         for (VirtualMachineLease l: leasesMap.values()) {
             offers.add(l.getOffer());
         }
+        final Map<String, PreferentialNamedConsumableResourceSet> resourceSetsCopy = new HashMap<>();
+        for (Map.Entry<String, PreferentialNamedConsumableResourceSet> entry: resourceSets.entrySet())
+            resourceSetsCopy.put(entry.getKey(), entry.getValue().copy());
+        final Map<String, PreferentialNamedConsumableResourceSet> unmodifiableResourceSets =
+                Collections.unmodifiableMap(resourceSetsCopy);
+        final VirtualMachineLease availableResources = copyTotaledLease();
+        final Collection<Protos.Offer> unmodifiableOffers = Collections.unmodifiableCollection(offers);
+        final Collection<TaskRequest> runningTasks =
+                Collections.unmodifiableCollection(new ArrayList<>(previouslyAssignedTasksMap.values()));
+        final long disabledUntilCopy = disabledUntil;
         return new VirtualMachineCurrentState() {
             @Override
             public String getHostname() {
@@ -839,17 +1452,17 @@ class AssignableVirtualMachine implements Comparable<AssignableVirtualMachine>{
             }
             @Override
             public Map<String, PreferentialNamedConsumableResourceSet> getResourceSets() {
-                return resourceSets;
+                return unmodifiableResourceSets;
             }
             @Override
             public VirtualMachineLease getCurrAvailableResources() {
-                return currTotalLease;
+                return availableResources;
             }
 
             @Override
             public Collection<Protos.Offer> getAllCurrentOffers() {
                 System.out.println("****************************** ");
-                return offers;
+                return unmodifiableOffers;
             }
 
             @Override
@@ -858,64 +1471,31 @@ class AssignableVirtualMachine implements Comparable<AssignableVirtualMachine>{
             }
             @Override
             public Collection<TaskRequest> getRunningTasks() {
-                return Collections.unmodifiableCollection(previouslyAssignedTasksMap.values());
+                return runningTasks;
             }
             @Override
             public long getDisabledUntil() {
-                return disabledUntil;
+                return disabledUntilCopy;
             }
         };
     }
 
-    private VirtualMachineCurrentState vmCurrentState() {
-        final List<Protos.Offer> offers = new LinkedList<>();
-        for (VirtualMachineLease l: leasesMap.values()) {
-            offers.add(l.getOffer());
-        }
-        return new VirtualMachineCurrentState() {
-            @Override
-            public String getHostname() {
-                return hostname;
-            }
-            @Override
-            public Map<String, PreferentialNamedConsumableResourceSet> getResourceSets() {
-                return resourceSets;
-            }
-            @Override
-            public VirtualMachineLease getCurrAvailableResources() {
-                return currTotalLease;
-            }
-
-            @Override
-            public Collection<Protos.Offer> getAllCurrentOffers() {
-                return offers;
-            }
-
-            @Override
-            public Collection<TaskAssignmentResult> getTasksCurrentlyAssigned() {
-                return Collections.unmodifiableCollection(assignmentResults.values());
-            }
-            @Override
-            public Collection<TaskRequest> getRunningTasks() {
-                return Collections.unmodifiableCollection(previouslyAssignedTasksMap.values());
-            }
-            @Override
-            public long getDisabledUntil() {
-                return disabledUntil;
-            }
-        };
-    }
-
-    private ConstraintFailure findFailedHardConstraints(TaskRequest request, VirtualMachineCurrentState vmCurrentState, TaskTrackerState taskTrackerState) {
+    private boolean evalHardConstraints(TaskRequest request, ConstraintResultCache.Entry constraintResults) {
         List<? extends ConstraintEvaluator> hardConstraints = request.getHardConstraints();
         if(hardConstraints==null || hardConstraints.isEmpty())
-            return null;
-        for(ConstraintEvaluator c: hardConstraints) {
-            ConstraintEvaluator.Result r = c.evaluate(request, vmCurrentState, taskTrackerState);
-            if(!r.isSuccessful())
-                return new ConstraintFailure(c.getName(), r.getFailureReason());
+            return true;
+        for(int i=0; i<hardConstraints.size(); i++) {
+            final ConstraintEvaluator c = hardConstraints.get(i);
+            ConstraintEvaluator.Result r = constraintResults==null?
+                    c.evaluate(request, vmCurrentState, taskTrackerState) :
+                    constraintResults.evaluate(i, c, request, this, vmCurrentState, taskTrackerState);
+            if(!r.isSuccessful()) {
+                lastFailedConstraint = c;
+                lastFailedConstraintResult = r;
+                return false;
+            }
         }
-        return null;
+        return true;
     }
 
     String getHostname() {
@@ -938,9 +1518,14 @@ class AssignableVirtualMachine implements Comparable<AssignableVirtualMachine>{
             for(Map.Entry<String, Double> entry: scalarRequests.entrySet()) {
                 if(entry.getValue() == null)
                     continue;
-                Double u = currUsedScalars.get(entry.getKey());
-                if(u == null)  u = 0.0;
-                currUsedScalars.put(entry.getKey(), u + entry.getValue());
+                final int slot = scalarRegistry.findSlot(entry.getKey());
+                if(slot < 0)
+                    continue; // no VM has the resource, so no later evaluation can depend on its use
+                if(slot >= currUsedScalars.length) {
+                    currUsedScalars = scalarRegistry.ensureSlot(currUsedScalars, slot);
+                    currTotalScalars = Arrays.copyOf(currTotalScalars, currUsedScalars.length);
+                }
+                currUsedScalars[slot] += entry.getValue();
             }
         }
         currUsedCpus += result.getRequest().getCPUs();
@@ -950,12 +1535,15 @@ class AssignableVirtualMachine implements Comparable<AssignableVirtualMachine>{
         for(int p=0; p<result.getRequest().getPorts(); p++){
             result.addPort(currPortRanges.consumeNextPort());
         }
+        if(singleLeaseMode && result.getRequest().getPorts() > 0)
+            assignedPorts.put(result.getRequest().getId(), result.getAssignedPorts());
         for(Map.Entry<String, PreferentialNamedConsumableResourceSet> entry: resourceSets.entrySet()) {
             result.addResourceSet(entry.getValue().consume(result.getRequest()));
         }
         if(!taskTracker.addAssignedTask(result.getRequest(), this))
             logger.error("Unexpected to re-add task to assigned state, id=" + result.getRequest().getId());
         assignmentResults.put(result.getRequest(), result);
+        changeVersion++;
     }
 
     /**
@@ -0,0 +1,163 @@
+/*
+ * Copyright 2017 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.fenzo;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Counts of the values of a host attribute across the hosts that a group of co-tasks are running on or assigned to,
+ * as returned by {@link TaskTrackerState#getCoTaskAttributeCounts(TaskRequest, String)}. Each co-task is counted
+ * once, for the value of the attribute on its host. Co-tasks on hosts that do not have the attribute are counted
+ * separately, see {@link #getNumWithoutValue()}.
+ * <P>
+ * The minimum and maximum counts are kept as the counts change, so that constraints can check a host against the
+ * counts without iterating over the co-tasks or the values.
+ */
+public final class AttributeValueCounts {
+
+    /**
+     * Counts of a group without any co-tasks.
+     */
+    public static final AttributeValueCounts EMPTY = new AttributeValueCounts();
+
+    private final Map<String, Integer> counts = new HashMap<>();
+    private int total = 0;
+    private int numWithoutValue = 0;
+    private int minCount = 0;
+    private int maxCount = 0;
+
+    // Counts are only changed by the task tracker, or by the fall back computation in TaskTrackerState
+    AttributeValueCounts() {
+    }
+
+    /**
+     * Get the number of co-tasks on hosts with the given value of the attribute.
+     *
+     * @param value The attribute value.
+     * @return The number of co-tasks, 0 if there are none.
+     */
+    public int getCount(String value) {
+        final Integer count = counts.get(value);
+        return count == null ? 0 : count;
+    }
+
+    /**
+     * Get the number of distinct values of the attribute across the hosts of the co-tasks.
+     *
+     * @return The number of values with a count greater than 0.
+     */
+    public int getNumValues() {
+        return counts.size();
+    }
+
+    /**
+     * Get the smallest count among the values of the attribute that have a count.
+     *
+     * @return The smallest count greater than 0, or 0 if there are no values.
+     */
+    public int getMinCount() {
+        return minCount;
+    }
+
+    /**
+     * Get the largest count among the values of the attribute.
+     *
+     * @return The largest count, or 0 if there are no values.
+     */
+    public int getMaxCount() {
+        return maxCount;
+    }
+
+    /**
+     * Get the number of co-tasks counted across all values of the attribute.
+     *
+     * @return The sum of the counts of all values.
+     */
+    public int getTotal() {
+        return total;
+    }
+
+    /**
+     * Get the number of co-tasks on hosts that do not have the attribute.
+     *
+     * @return The number of co-tasks without a value for the attribute.
+     */
+    public int getNumWithoutValue() {
+        return numWithoutValue;
+    }
+
+    /**
+     * Get the counts of all values of the attribute.
+     *
+     * @return An unmodifiable map of the counts, keyed by attribute value.
+     */
+    public Map<String, Integer> getCounts() {
+        return Collections.unmodifiableMap(counts);
+    }
+
+    boolean isEmpty() {
+        return total == 0 && numWithoutValue == 0;
+    }
+
+    void add(String value) {
+        if (value == null) {
+            numWithoutValue++;
+            return;
+        }
+        final int count = getCount(value) + 1;
+        counts.put(value, count);
+        total++;
+        maxCount = Math.max(maxCount, count);
+        // the value may have been the only one with the smallest count
+        minCount = count == 1 ? 1 : minCount == count - 1 ? computeMinCount() : minCount;
+    }
+
+    void remove(String value) {
+        if (value == null) {
+            numWithoutValue = Math.max(0, numWithoutValue - 1);
+            return;
+        }
+        final int count = getCount(value) - 1;
+        if (count < 0)
+            return;
+        if (count == 0)
+            counts.remove(value);
+        else
+            counts.put(value, count);
+        total--;
+        if (maxCount == count + 1)
+            maxCount = computeMaxCount();
+        // a value whose count dropped to 0 may have been the only one with the smallest count
+        minCount = count > 0 ? Math.min(minCount, count) : computeMinCount();
+    }
+
+    private int computeMinCount() {
+        int min = Integer.MAX_VALUE;
+        for (Integer c : counts.values())
+            min = Math.min(min, c);
+        return counts.isEmpty() ? 0 : min;
+    }
+
+    private int computeMaxCount() {
+        int max = 0;
+        for (Integer c : counts.values())
+            max = Math.max(max, c);
+        return max;
+    }
+}
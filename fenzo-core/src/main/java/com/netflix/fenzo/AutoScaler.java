@@ -164,19 +164,7 @@ class AutoScaler {
             executor.submit(() -> {
                 if(isShutdown.get())
                     return;
-                shortfallEvaluator.setTaskToClustersGetter(taskToClustersGetter);
-                autoScaleRules.prepare();
-                Map<String, HostAttributeGroup> hostAttributeGroupMap = setupHostAttributeGroupMap(autoScaleRules, scalingActivityMap);
-                if (!disableShortfallEvaluation) {
-                    Map<String, Integer> shortfall = shortfallEvaluator.getShortfall(hostAttributeGroupMap.keySet(), autoScalerInput.getFailures(), autoScaleRules);
-                    for (Map.Entry<String, Integer> entry : shortfall.entrySet()) {
-                        hostAttributeGroupMap.get(entry.getKey()).shortFall = entry.getValue() == null ? 0 : entry.getValue();
-                    }
-                }
-                populateIdleResources(autoScalerInput.getIdleResourcesList(), autoScalerInput.getIdleInactiveResourceList(), hostAttributeGroupMap);
-                for (HostAttributeGroup hostAttributeGroup : hostAttributeGroupMap.values()) {
-                    processScalingNeeds(hostAttributeGroup, scalingActivityMap, assignableVMs);
-                }
+                doAutoscale(autoScalerInput);
             });
         }
         catch (RejectedExecutionException e) {
@@ -184,6 +172,22 @@ class AutoScaler {
         }
     }
 
+    /* package */ void doAutoscale(AutoScalerInput autoScalerInput) {
+        shortfallEvaluator.setTaskToClustersGetter(taskToClustersGetter);
+        autoScaleRules.prepare();
+        Map<String, HostAttributeGroup> hostAttributeGroupMap = setupHostAttributeGroupMap(autoScaleRules, scalingActivityMap);
+        if (!disableShortfallEvaluation) {
+            Map<String, Integer> shortfall = shortfallEvaluator.getShortfall(hostAttributeGroupMap.keySet(), autoScalerInput.getFailures(), autoScaleRules);
+            for (Map.Entry<String, Integer> entry : shortfall.entrySet()) {
+                hostAttributeGroupMap.get(entry.getKey()).shortFall = entry.getValue() == null ? 0 : entry.getValue();
+            }
+        }
+        populateIdleResources(autoScalerInput.getIdleResourcesList(), autoScalerInput.getIdleInactiveResourceList(), hostAttributeGroupMap);
+        for (HostAttributeGroup hostAttributeGroup : hostAttributeGroupMap.values()) {
+            processScalingNeeds(hostAttributeGroup, scalingActivityMap, assignableVMs);
+        }
+    }
+
     private boolean shouldScaleNow(boolean scaleUp, long now, ScalingActivity prevScalingActivity, AutoScaleRule rule) {
         return scaleUp?
                 now > (Math.max(activeVmGroups.getLastSetAt(), prevScalingActivity.scaleUpAt) + rule.getCoolDownSecs() * 1000) :
@@ -0,0 +1,56 @@
+/*
+ * Copyright 2017 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.fenzo;
+
+/**
+ * A fitness calculator that scores a task against a batch of hosts at a time, reading their resources from a
+ * {@link VMResourcesView}. The task scheduler scores the hosts that a task fits on in batches with
+ * {@link #calculateFitness(TaskRequest, VMResourcesView, int[], int, double[], TaskTrackerState)}, which does not
+ * require creating objects for each host, or boxing resource values.
+ * <P>
+ * Calculators of this type can be used wherever a {@link VMTaskFitnessCalculator} is expected. Scoring a single
+ * host with {@link #calculateFitness(TaskRequest, VirtualMachineCurrentState, TaskTrackerState)} adapts the host's
+ * state into a view of one host and scores it as a batch of one.
+ */
+public interface BatchVMTaskFitnessCalculator extends VMTaskFitnessCalculator {
+
+    /**
+     * Calculate how well the task fits on each of the given hosts. As with
+     * {@link VMTaskFitnessCalculator#calculateFitness(TaskRequest, VirtualMachineCurrentState, TaskTrackerState)},
+     * the hosts are known to have sufficient resources for the task.
+     *
+     * @param taskRequest      the task whose resource requirements can be met by the hosts
+     * @param vms              the resources of the hosts
+     * @param candidates       indices into {@code vms} of the hosts to score
+     * @param numCandidates    number of hosts to score, from the beginning of {@code candidates}
+     * @param fitness          array to write the fitness of each host into, at the same position as the host's index
+     *                         in {@code candidates}, each a value between 0.0 and 1.0, with higher values
+     *                         representing better fit of the task on the host
+     * @param taskTrackerState state of the task tracker that contains all tasks currently running and assigned
+     */
+    void calculateFitness(TaskRequest taskRequest, VMResourcesView vms, int[] candidates, int numCandidates,
+                          double[] fitness, TaskTrackerState taskTrackerState);
+
+    @Override
+    default double calculateFitness(TaskRequest taskRequest, VirtualMachineCurrentState targetVM,
+                                    TaskTrackerState taskTrackerState) {
+        final double[] fitness = new double[1];
+        calculateFitness(taskRequest, new CurrentStateResourcesView(targetVM), CurrentStateResourcesView.ONLY_VM, 1,
+                fitness, taskTrackerState);
+        return fitness[0];
+    }
+}
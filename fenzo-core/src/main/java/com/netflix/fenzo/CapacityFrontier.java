@@ -0,0 +1,363 @@
+/*
+ * Copyright 2017 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.fenzo;
+
+import java.util.Arrays;
+
+/**
+ * The remaining capacity of each VM available for assignments in a scheduling iteration, held column wise, in one
+ * primitive array per resource indexed by the VM's position (slot) in the list of VMs of the iteration. Used resources
+ * only grow within an iteration, so a VM found unable to fit a request stays unable to fit it, and any request asking
+ * for at least as much of every resource, until the next iteration. Checking a task against the frontier first lets
+ * such VMs be skipped without evaluating the task's constraints and resources on them.
+ * <P>
+ * CPUs, memory, network bandwidth, disk, ports, and scalar resources are tracked, the latter in one column per
+ * {@link ScalarResourceRegistry} slot, created when a VM with that scalar resource is set. The checks use the same
+ * expressions as {@link AssignableVirtualMachine}, so that the frontier never rejects a VM that the VM itself would
+ * accept. Resource sets are left to the VM's own evaluation. The frontier also holds the resources of the tasks
+ * running on each VM, so that {@link BatchVMTaskFitnessCalculator}s can score VMs from its columns.
+ * <P>
+ * Candidates for a task are found by a linear scan over the columns that produces a bit set of the VMs that fit, in
+ * a loop without data dependent branches on the VMs, which the JIT compiler can unroll and vectorize. When the
+ * {@link FreeResourceIndex} can narrow down the VMs by their free CPUs and memory, only the VMs it marks are checked.
+ * The slots are indexed once all slots are set and {@link #buildIndex()} is called. The index is kept current as
+ * slots are set after that.
+ * <P>
+ * Slots are updated only between task evaluations, from the scheduling thread, and read concurrently by the
+ * evaluation workers.
+ */
+class CapacityFrontier {
+
+    private static final double[][] NO_COLUMNS = new double[0][];
+
+    private final ScalarResourceRegistry scalarRegistry;
+    private double[] usedCpus = new double[0];
+    private double[] totalCpus = new double[0];
+    private double[] usedMemory = new double[0];
+    private double[] totalMemory = new double[0];
+    private double[] usedNetworkMbps = new double[0];
+    private double[] totalNetworkMbps = new double[0];
+    private double[] usedDisk = new double[0];
+    private double[] totalDisk = new double[0];
+    private int[] usedPorts = new int[0];
+    private int[] totalPorts = new int[0];
+    // resources of the tasks running on each VM, for fitness calculators, not checked against requests
+    private double[] runningCpus = new double[0];
+    private double[] runningMemory = new double[0];
+    private double[] runningNetworkMbps = new double[0];
+    private double[] runningDisk = new double[0];
+    // scalar resource columns, indexed by scalar resource slot and then by VM slot
+    private double[][] usedScalars = NO_COLUMNS;
+    private double[][] totalScalars = NO_COLUMNS;
+    private long[] candidateBits = new long[0];
+    private int capacity = 0;
+    private int size = 0;
+    private final FreeResourceIndex index = new FreeResourceIndex();
+    private final VMResourcesView resourcesView = new ResourcesView();
+    private boolean indexed = false;
+
+    /**
+     * @param scalarRegistry The registry of the scheduler's scalar resources, whose slots index the scalar columns.
+     */
+    CapacityFrontier(ScalarResourceRegistry scalarRegistry) {
+        this.scalarRegistry = scalarRegistry;
+    }
+
+    /**
+     * Reset the frontier to hold the given number of VM slots. Contents of the slots are undefined until set.
+     *
+     * @param size Number of VMs in the scheduling iteration.
+     */
+    void reset(int size) {
+        if (capacity < size) {
+            usedCpus = new double[size];
+            totalCpus = new double[size];
+            usedMemory = new double[size];
+            totalMemory = new double[size];
+            usedNetworkMbps = new double[size];
+            totalNetworkMbps = new double[size];
+            usedDisk = new double[size];
+            totalDisk = new double[size];
+            usedPorts = new int[size];
+            totalPorts = new int[size];
+            runningCpus = new double[size];
+            runningMemory = new double[size];
+            runningNetworkMbps = new double[size];
+            runningDisk = new double[size];
+            candidateBits = new long[(size + 63) / 64];
+            usedScalars = NO_COLUMNS;
+            totalScalars = NO_COLUMNS;
+            capacity = size;
+        }
+        else {
+            // VMs without scalar resources don't set the scalar columns
+            for (int k = 0; k < totalScalars.length; k++) {
+                Arrays.fill(usedScalars[k], 0, size, 0.0);
+                Arrays.fill(totalScalars[k], 0, size, 0.0);
+            }
+        }
+        this.size = size;
+        indexed = false;
+    }
+
+    /**
+     * Build the free resource index over all slots, which must have been set.
+     */
+    void buildIndex() {
+        index.build(this);
+        indexed = true;
+    }
+
+    int size() {
+        return size;
+    }
+
+    void set(int slot, double usedCpus, double totalCpus, double usedMemory, double totalMemory,
+             double usedNetworkMbps, double totalNetworkMbps, double usedDisk, double totalDisk,
+             int usedPorts, int totalPorts) {
+        this.usedCpus[slot] = usedCpus;
+        this.totalCpus[slot] = totalCpus;
+        this.usedMemory[slot] = usedMemory;
+        this.totalMemory[slot] = totalMemory;
+        this.usedNetworkMbps[slot] = usedNetworkMbps;
+        this.totalNetworkMbps[slot] = totalNetworkMbps;
+        this.usedDisk[slot] = usedDisk;
+        this.totalDisk[slot] = totalDisk;
+        this.usedPorts[slot] = usedPorts;
+        this.totalPorts[slot] = totalPorts;
+        if (indexed)
+            index.update(slot, getFreeCpus(slot), getFreeMemory(slot));
+    }
+
+    /**
+     * Set the scalar resources of the VM at the given slot.
+     *
+     * @param slot The VM's slot.
+     * @param used Used scalar resources, indexed by scalar resource slot.
+     * @param total Total scalar resources, indexed by scalar resource slot, as long as {@code used}.
+     */
+    void setScalars(int slot, double[] used, double[] total) {
+        if (total.length > totalScalars.length)
+            addScalarColumns(total.length);
+        for (int k = 0; k < totalScalars.length; k++) {
+            usedScalars[k][slot] = k < used.length ? used[k] : 0.0;
+            totalScalars[k][slot] = k < total.length ? total[k] : 0.0;
+        }
+    }
+
+    /**
+     * Set the resources of the tasks running on the VM at the given slot, which are not part of its used resources.
+     *
+     * @param slot The VM's slot.
+     * @param cpus CPUs of the running tasks.
+     * @param memory Memory of the running tasks.
+     * @param networkMbps Network bandwidth of the running tasks.
+     * @param disk Disk of the running tasks.
+     */
+    void setRunning(int slot, double cpus, double memory, double networkMbps, double disk) {
+        runningCpus[slot] = cpus;
+        runningMemory[slot] = memory;
+        runningNetworkMbps[slot] = networkMbps;
+        runningDisk[slot] = disk;
+    }
+
+    /**
+     * Get a view of the resources of the VMs, indexed by slot, for {@link BatchVMTaskFitnessCalculator}s. Resources of
+     * running tasks are included in both the used and total resources of the view.
+     *
+     * @return The view, reflecting the current contents of the slots.
+     */
+    VMResourcesView getResourcesView() {
+        return resourcesView;
+    }
+
+    private void addScalarColumns(int numColumns) {
+        final int from = totalScalars.length;
+        usedScalars = Arrays.copyOf(usedScalars, numColumns);
+        totalScalars = Arrays.copyOf(totalScalars, numColumns);
+        for (int k = from; k < numColumns; k++) {
+            usedScalars[k] = new double[capacity];
+            totalScalars[k] = new double[capacity];
+        }
+    }
+
+    double getFreeCpus(int slot) {
+        return totalCpus[slot] - usedCpus[slot];
+    }
+
+    double getFreeMemory(int slot) {
+        return totalMemory[slot] - usedMemory[slot];
+    }
+
+    /**
+     * Get the slots that have enough of the resources tracked by the frontier for the request, in ascending order.
+     *
+     * @param request The task request.
+     * @param out Array to fill the candidate slots into, at least as large as the number of slots.
+     * @return The number of candidate slots filled into {@code out}.
+     */
+    int getCandidates(TaskRequest request, int[] out) {
+        return getCandidates(request, scalarRegistry.toVector(request.getScalarRequests()), out);
+    }
+
+    /**
+     * Get the slots that have enough of the resources tracked by the frontier for the request, in ascending order.
+     *
+     * @param request The task request.
+     * @param scalarRequests The scalar resources requested by the task, indexed by scalar resource slot.
+     * @param out Array to fill the candidate slots into, at least as large as the number of slots.
+     * @return The number of candidate slots filled into {@code out}.
+     */
+    int getCandidates(TaskRequest request, double[] scalarRequests, int[] out) {
+        final int numWords = (size + 63) / 64;
+        final long[] bits = candidateBits;
+        if (indexed && index.markCandidates(request, bits)) {
+            for (int w = 0; w < numWords; w++) {
+                long word = bits[w];
+                for (long rest = word; rest != 0L; rest &= rest - 1) {
+                    final int slot = (w << 6) + Long.numberOfTrailingZeros(rest);
+                    if (!fits(slot, request) || !fitsScalars(slot, scalarRequests))
+                        word &= ~(1L << slot);
+                }
+                bits[w] = word;
+            }
+        }
+        else
+            scan(request, scalarRequests, bits, numWords);
+        int n = 0;
+        for (int w = 0; w < numWords; w++) {
+            for (long word = bits[w]; word != 0L; word &= word - 1)
+                out[n++] = (w << 6) + Long.numberOfTrailingZeros(word);
+        }
+        return n;
+    }
+
+    // Set the bit of every slot that fits the request, a word of 64 slots at a time.
+    private void scan(TaskRequest request, double[] scalarRequests, long[] bits, int numWords) {
+        final double cpus = request.getCPUs();
+        final double memory = request.getMemory();
+        final double networkMbps = request.getNetworkMbps();
+        final double disk = request.getDisk();
+        final int ports = request.getPorts();
+        for (int w = 0; w < numWords; w++) {
+            final int to = Math.min(size, (w + 1) << 6);
+            long word = 0L;
+            for (int s = w << 6; s < to; s++) {
+                final boolean misfit = (usedCpus[s] + cpus) > totalCpus[s] |
+                        (usedMemory[s] + memory) > totalMemory[s] |
+                        (usedNetworkMbps[s] + networkMbps) > totalNetworkMbps[s] |
+                        (usedDisk[s] + disk) > totalDisk[s] |
+                        ports + usedPorts[s] > totalPorts[s];
+                word |= (misfit ? 0L : 1L) << s;
+            }
+            bits[w] = word;
+        }
+        for (int k = 0; k < scalarRequests.length; k++) {
+            final double r = scalarRequests[k];
+            if (r == 0.0)
+                continue;
+            if (k >= totalScalars.length) {
+                // no VM has this resource
+                if (r > 0.0)
+                    Arrays.fill(bits, 0, numWords, 0L);
+                continue;
+            }
+            final double[] used = usedScalars[k];
+            final double[] total = totalScalars[k];
+            for (int w = 0; w < numWords; w++) {
+                final int to = Math.min(size, (w + 1) << 6);
+                long word = 0L;
+                for (int s = w << 6; s < to; s++)
+                    word |= ((used[s] + r) > total[s] ? 0L : 1L) << s;
+                bits[w] &= word;
+            }
+        }
+    }
+
+    /**
+     * Check if the VM at the given slot may have enough of the resources tracked by the frontier for the request,
+     * other than scalar resources.
+     *
+     * @param slot The VM's slot.
+     * @param request The task request.
+     * @return {@code false} if the VM is known to not have enough resources, {@code true} otherwise.
+     */
+    boolean fits(int slot, TaskRequest request) {
+        if ((usedCpus[slot] + request.getCPUs()) > totalCpus[slot])
+            return false;
+        if ((usedMemory[slot] + request.getMemory()) > totalMemory[slot])
+            return false;
+        if ((usedNetworkMbps[slot] + request.getNetworkMbps()) > totalNetworkMbps[slot])
+            return false;
+        if ((usedDisk[slot] + request.getDisk()) > totalDisk[slot])
+            return false;
+        return request.getPorts() + usedPorts[slot] <= totalPorts[slot];
+    }
+
+    private boolean fitsScalars(int slot, double[] scalarRequests) {
+        for (int k = 0; k < scalarRequests.length; k++) {
+            final double r = scalarRequests[k];
+            if (r == 0.0)
+                continue;
+            if (k < totalScalars.length ? usedScalars[k][slot] + r > totalScalars[k][slot] : r > 0.0)
+                return false;
+        }
+        return true;
+    }
+
+    private class ResourcesView implements VMResourcesView {
+        @Override
+        public double getUsedCpus(int vm) {
+            return runningCpus[vm] + usedCpus[vm];
+        }
+
+        @Override
+        public double getTotalCpus(int vm) {
+            return runningCpus[vm] + totalCpus[vm];
+        }
+
+        @Override
+        public double getUsedMemory(int vm) {
+            return runningMemory[vm] + usedMemory[vm];
+        }
+
+        @Override
+        public double getTotalMemory(int vm) {
+            return runningMemory[vm] + totalMemory[vm];
+        }
+
+        @Override
+        public double getUsedNetworkMbps(int vm) {
+            return runningNetworkMbps[vm] + usedNetworkMbps[vm];
+        }
+
+        @Override
+        public double getTotalNetworkMbps(int vm) {
+            return runningNetworkMbps[vm] + totalNetworkMbps[vm];
+        }
+
+        @Override
+        public double getUsedDisk(int vm) {
+            return runningDisk[vm] + usedDisk[vm];
+        }
+
+        @Override
+        public double getTotalDisk(int vm) {
+            return runningDisk[vm] + totalDisk[vm];
+        }
+    }
+}
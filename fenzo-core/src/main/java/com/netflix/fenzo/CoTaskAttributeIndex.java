@@ -0,0 +1,122 @@
+/*
+ * Copyright 2017 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.fenzo;
+
+import com.netflix.fenzo.functions.Func1;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Index of the values of one host attribute across the hosts of the tasks tracked by the {@link TaskTracker}, with
+ * {@link AttributeValueCounts} for each group of co-tasks. Tasks are grouped by the co-task group key of the task
+ * tracker. The index is updated as tasks are added to and removed from the task tracker.
+ * <P>
+ * The value of a task's attribute is read from its host when the task is added. Tasks whose host does not have the
+ * attribute yet, such as tasks assigned to a host before any of its offers were received, are looked up again by
+ * {@link #resolveMissingValues()} before each scheduling iteration.
+ */
+class CoTaskAttributeIndex {
+
+    // same as the host name attribute of the host attribute constraints
+    static final String HOSTNAME_ATTRIBUTE = "HOSTNAME";
+
+    private static class Entry {
+        private final String groupKey;
+        private final AssignableVirtualMachine avm;
+        private String value;
+
+        private Entry(String groupKey, AssignableVirtualMachine avm, String value) {
+            this.groupKey = groupKey;
+            this.avm = avm;
+            this.value = value;
+        }
+    }
+
+    private final String attributeName;
+    private final Func1<TaskRequest, String> groupKeyGetter;
+    private final Map<String, AttributeValueCounts> countsByGroup = new HashMap<>();
+    private final Map<String, Entry> entries = new HashMap<>();
+    private final Set<Entry> missingValues = new LinkedHashSet<>();
+
+    CoTaskAttributeIndex(String attributeName, Func1<TaskRequest, String> groupKeyGetter) {
+        this.attributeName = attributeName;
+        this.groupKeyGetter = groupKeyGetter;
+    }
+
+    void add(TaskRequest task, AssignableVirtualMachine avm) {
+        final String groupKey = groupKeyGetter.call(task);
+        if (groupKey == null || entries.containsKey(task.getId()))
+            return;
+        final Entry entry = new Entry(groupKey, avm, getAttrValue(avm, attributeName));
+        entries.put(task.getId(), entry);
+        AttributeValueCounts counts = countsByGroup.get(groupKey);
+        if (counts == null) {
+            counts = new AttributeValueCounts();
+            countsByGroup.put(groupKey, counts);
+        }
+        counts.add(entry.value);
+        if (entry.value == null)
+            missingValues.add(entry);
+    }
+
+    void remove(String taskId) {
+        final Entry entry = entries.remove(taskId);
+        if (entry == null)
+            return;
+        if (entry.value == null)
+            missingValues.remove(entry);
+        final AttributeValueCounts counts = countsByGroup.get(entry.groupKey);
+        if (counts != null) {
+            counts.remove(entry.value);
+            if (counts.isEmpty())
+                countsByGroup.remove(entry.groupKey);
+        }
+    }
+
+    void resolveMissingValues() {
+        if (missingValues.isEmpty())
+            return;
+        for (Iterator<Entry> iterator = missingValues.iterator(); iterator.hasNext(); ) {
+            final Entry entry = iterator.next();
+            final String value = getAttrValue(entry.avm, attributeName);
+            if (value != null) {
+                final AttributeValueCounts counts = countsByGroup.get(entry.groupKey);
+                counts.remove(null);
+                counts.add(value);
+                entry.value = value;
+                iterator.remove();
+            }
+        }
+    }
+
+    AttributeValueCounts getCounts(TaskRequest task) {
+        final String groupKey = groupKeyGetter.call(task);
+        final AttributeValueCounts counts = groupKey == null ? null : countsByGroup.get(groupKey);
+        return counts == null ? AttributeValueCounts.EMPTY : counts;
+    }
+
+    static String getAttrValue(AssignableVirtualMachine avm, String attributeName) {
+        if (HOSTNAME_ATTRIBUTE.equals(attributeName))
+            return avm.getHostname();
+        final String value = avm.getAttrValue(attributeName);
+        return value == null || value.isEmpty() ? null : value;
+    }
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright 2017 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.fenzo;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A per scheduling iteration cache of the results of hard constraints of type
+ * {@link HostAttributeConstraintEvaluator}. Results are kept for each constraint and task key, by the values of the
+ * host attributes the constraint depends on. A task's constraint is evaluated on the first host with each combination
+ * of values, and the result is reused on the other hosts with the same values, and for later tasks with the same
+ * constraint and task key.
+ * <P>
+ * Results are written by the evaluation workers concurrently. Entries are created only between evaluations, from the
+ * scheduling thread.
+ */
+class ConstraintResultCache {
+
+    // the values of a constraint that does not depend on any attribute
+    private static final List<String> NO_VALUES = Collections.emptyList();
+
+    private static class Key {
+        private final ConstraintEvaluator constraint;
+        private final Object taskKey;
+
+        private Key(ConstraintEvaluator constraint, Object taskKey) {
+            this.constraint = constraint;
+            this.taskKey = taskKey;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o)
+                return true;
+            if (!(o instanceof Key))
+                return false;
+            final Key key = (Key) o;
+            return constraint.equals(key.constraint) && Objects.equals(taskKey, key.taskKey);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * constraint.hashCode() + Objects.hashCode(taskKey);
+        }
+    }
+
+    /**
+     * The cached results of the hard constraints of a task, at the same positions as the constraints in the task's
+     * list of hard constraints.
+     */
+    static class Entry {
+        // null for constraints that are evaluated on each host
+        private final ConcurrentMap<Object, ConstraintEvaluator.Result>[] results;
+        private final String[][] attributeNames;
+
+        @SuppressWarnings("unchecked")
+        private Entry(int size) {
+            results = (ConcurrentMap<Object, ConstraintEvaluator.Result>[]) new ConcurrentMap<?, ?>[size];
+            attributeNames = new String[size][];
+        }
+
+        /**
+         * Get the result of the task's hard constraint at the given position on the given VM, evaluating the
+         * constraint if its result for the VM's attribute values is not known yet.
+         */
+        ConstraintEvaluator.Result evaluate(int index, ConstraintEvaluator constraint, TaskRequest request,
+                                            AssignableVirtualMachine avm, VirtualMachineCurrentState vmCurrentState,
+                                            TaskTrackerState taskTrackerState) {
+            final ConcurrentMap<Object, ConstraintEvaluator.Result> constraintResults =
+                    index < results.length ? results[index] : null;
+            final Object values = constraintResults == null ? null : getValues(avm, attributeNames[index]);
+            if (values == null)
+                return constraint.evaluate(request, vmCurrentState, taskTrackerState);
+            ConstraintEvaluator.Result result = constraintResults.get(values);
+            if (result == null) {
+                result = constraint.evaluate(request, vmCurrentState, taskTrackerState);
+                constraintResults.putIfAbsent(values, result);
+            }
+            return result;
+        }
+    }
+
+    private final Map<Key, ConcurrentMap<Object, ConstraintEvaluator.Result>> results = new HashMap<>();
+
+    void clear() {
+        results.clear();
+    }
+
+    /**
+     * Get the cache entry for the hard constraints of the given task.
+     *
+     * @param request The task being evaluated.
+     * @return The cache entry for the task, or {@code null} if none of its hard constraints are cached.
+     */
+    Entry getEntry(TaskRequest request) {
+        final List<? extends ConstraintEvaluator> hardConstraints = request.getHardConstraints();
+        if (hardConstraints == null || hardConstraints.isEmpty())
+            return null;
+        Entry entry = null;
+        for (int i = 0; i < hardConstraints.size(); i++) {
+            final ConstraintEvaluator c = hardConstraints.get(i);
+            if (!(c instanceof HostAttributeConstraintEvaluator))
+                continue;
+            final HostAttributeConstraintEvaluator constraint = (HostAttributeConstraintEvaluator) c;
+            final List<String> names = constraint.getHostAttributeNames();
+            if (names == null)
+                continue;
+            final Object taskKey;
+            try {
+                taskKey = constraint.getTaskKey(request);
+            } catch (RuntimeException e) {
+                // evaluate it on each host, where its failure is reported as the task's
+                continue;
+            }
+            if (entry == null)
+                entry = new Entry(hardConstraints.size());
+            entry.results[i] = results.computeIfAbsent(new Key(constraint, taskKey), k -> new ConcurrentHashMap<>());
+            entry.attributeNames[i] = names.toArray(new String[names.size()]);
+        }
+        return entry;
+    }
+
+    // The values of the attributes on the VM, as a key of the results, or null if the VM doesn't have one of them
+    private static Object getValues(AssignableVirtualMachine avm, String[] attributeNames) {
+        switch (attributeNames.length) {
+            case 0:
+                return NO_VALUES;
+            case 1:
+                return CoTaskAttributeIndex.getAttrValue(avm, attributeNames[0]);
+            default:
+                final String[] values = new String[attributeNames.length];
+                for (int i = 0; i < attributeNames.length; i++) {
+                    values[i] = CoTaskAttributeIndex.getAttrValue(avm, attributeNames[i]);
+                    if (values[i] == null)
+                        return null;
+                }
+                return Arrays.asList(values);
+        }
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright 2017 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.fenzo;
+
+/**
+ * A {@link VMResourcesView} of the single host of a {@link VirtualMachineCurrentState}, at index 0. Resources used
+ * are summed from the host's running and currently assigned tasks when the view is created.
+ */
+class CurrentStateResourcesView implements VMResourcesView {
+
+    static final int[] ONLY_VM = {0};
+
+    private final double usedCpus;
+    private final double totalCpus;
+    private final double usedMemory;
+    private final double totalMemory;
+    private final double usedNetworkMbps;
+    private final double totalNetworkMbps;
+    private final double usedDisk;
+    private final double totalDisk;
+
+    CurrentStateResourcesView(VirtualMachineCurrentState vmState) {
+        double runningCpus = 0.0;
+        double runningMemory = 0.0;
+        double runningNetworkMbps = 0.0;
+        double runningDisk = 0.0;
+        for (TaskRequest r : vmState.getRunningTasks()) {
+            runningCpus += r.getCPUs();
+            runningMemory += r.getMemory();
+            runningNetworkMbps += r.getNetworkMbps();
+            runningDisk += r.getDisk();
+        }
+        double assignedCpus = 0.0;
+        double assignedMemory = 0.0;
+        double assignedNetworkMbps = 0.0;
+        double assignedDisk = 0.0;
+        for (TaskAssignmentResult a : vmState.getTasksCurrentlyAssigned()) {
+            assignedCpus += a.getRequest().getCPUs();
+            assignedMemory += a.getRequest().getMemory();
+            assignedNetworkMbps += a.getRequest().getNetworkMbps();
+            assignedDisk += a.getRequest().getDisk();
+        }
+        final VirtualMachineLease available = vmState.getCurrAvailableResources();
+        usedCpus = runningCpus + assignedCpus;
+        totalCpus = runningCpus + available.cpuCores();
+        usedMemory = runningMemory + assignedMemory;
+        totalMemory = runningMemory + available.memoryMB();
+        usedNetworkMbps = runningNetworkMbps + assignedNetworkMbps;
+        totalNetworkMbps = runningNetworkMbps + available.networkMbps();
+        usedDisk = runningDisk + assignedDisk;
+        totalDisk = runningDisk + available.diskMB();
+    }
+
+    @Override
+    public double getUsedCpus(int vm) {
+        return usedCpus;
+    }
+
+    @Override
+    public double getTotalCpus(int vm) {
+        return totalCpus;
+    }
+
+    @Override
+    public double getUsedMemory(int vm) {
+        return usedMemory;
+    }
+
+    @Override
+    public double getTotalMemory(int vm) {
+        return totalMemory;
+    }
+
+    @Override
+    public double getUsedNetworkMbps(int vm) {
+        return usedNetworkMbps;
+    }
+
+    @Override
+    public double getTotalNetworkMbps(int vm) {
+        return totalNetworkMbps;
+    }
+
+    @Override
+    public double getUsedDisk(int vm) {
+        return usedDisk;
+    }
+
+    @Override
+    public double getTotalDisk(int vm) {
+        return totalDisk;
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright 2017 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.fenzo;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A {@link SchedulerMetrics} implementation that keeps a {@link LatencyHistogram} for each phase and for whole
+ * iterations, and counters of what the iterations did. Recording is lock-free and allocation free, and all values can
+ * be read at any time from any thread, making it suitable to keep enabled in production.
+ */
+public class DefaultSchedulerMetrics implements SchedulerMetrics {
+
+    private final Map<Phase, LatencyHistogram> phaseHistograms = new EnumMap<>(Phase.class);
+    private final LatencyHistogram iterationHistogram = new LatencyHistogram();
+    private final LongAdder numIterations = new LongAdder();
+    private final LongAdder numBudgetExhaustedIterations = new LongAdder();
+    private final LongAdder numTasksAssigned = new LongAdder();
+    private final LongAdder numTasksFailed = new LongAdder();
+    private final LongAdder numAllocationTrials = new LongAdder();
+    private final LongAdder numLeasesAdded = new LongAdder();
+    private final LongAdder numLeasesRejected = new LongAdder();
+
+    public DefaultSchedulerMetrics() {
+        // all histograms are created up front so that the map is only read after construction
+        for (Phase phase : Phase.values())
+            phaseHistograms.put(phase, new LatencyHistogram());
+    }
+
+    @Override
+    public void phaseCompleted(Phase phase, long elapsedNanos) {
+        phaseHistograms.get(phase).record(elapsedNanos);
+    }
+
+    @Override
+    public void iterationCompleted(SchedulingResult result, long elapsedNanos) {
+        iterationHistogram.record(elapsedNanos);
+        numIterations.increment();
+        if (result.isBudgetExhausted())
+            numBudgetExhaustedIterations.increment();
+        int assigned = 0;
+        for (VMAssignmentResult r : result.getResultMap().values())
+            assigned += r.getTasksAssigned().size();
+        numTasksAssigned.add(assigned);
+        numTasksFailed.add(result.getFailures().size());
+        numAllocationTrials.add(result.getNumAllocations());
+        numLeasesAdded.add(result.getLeasesAdded());
+        numLeasesRejected.add(result.getLeasesRejected());
+    }
+
+    /**
+     * Get the histogram of the time a phase took in each iteration.
+     *
+     * @param phase The phase.
+     * @return The histogram of the phase.
+     */
+    public LatencyHistogram getPhaseHistogram(Phase phase) {
+        return phaseHistograms.get(phase);
+    }
+
+    /**
+     * Get the histogram of the time each iteration took.
+     *
+     * @return The histogram of iterations.
+     */
+    public LatencyHistogram getIterationHistogram() {
+        return iterationHistogram;
+    }
+
+    public long getNumIterations() {
+        return numIterations.sum();
+    }
+
+    /**
+     * Get the number of iterations that stopped before considering all tasks, see
+     * {@link SchedulingResult#isBudgetExhausted()}.
+     *
+     * @return The number of iterations that ran out of their budget.
+     */
+    public long getNumBudgetExhaustedIterations() {
+        return numBudgetExhaustedIterations.sum();
+    }
+
+    public long getNumTasksAssigned() {
+        return numTasksAssigned.sum();
+    }
+
+    /**
+     * Get the number of times a task could not be assigned. A task that fails in several iterations is counted in
+     * each.
+     *
+     * @return The number of task assignment failures.
+     */
+    public long getNumTasksFailed() {
+        return numTasksFailed.sum();
+    }
+
+    /**
+     * Get the number of times tasks were tried on VMs, see {@link SchedulingResult#getNumAllocations()}.
+     *
+     * @return The number of allocation trials.
+     */
+    public long getNumAllocationTrials() {
+        return numAllocationTrials.sum();
+    }
+
+    public long getNumLeasesAdded() {
+        return numLeasesAdded.sum();
+    }
+
+    public long getNumLeasesRejected() {
+        return numLeasesRejected.sum();
+    }
+}
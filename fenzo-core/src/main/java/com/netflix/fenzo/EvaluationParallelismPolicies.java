@@ -0,0 +1,162 @@
+/*
+ * Copyright 2017 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.fenzo;
+
+/**
+ * Provides the {@link EvaluationParallelismPolicy} implementations available in Fenzo.
+ */
+public final class EvaluationParallelismPolicies {
+
+    /**
+     * The default minimum number of VMs for each worker used by {@link #DEFAULT}.
+     */
+    public static final int DEFAULT_MIN_VMS_PER_WORKER = 30;
+
+    /**
+     * The default number of VMs a worker claims at a time, used by {@link #DEFAULT}. Having it too small increases
+     * overhead of getting next machine to evaluate on, having it too high increases latency of a worker before it
+     * returns when done.
+     */
+    public static final int DEFAULT_VMS_PER_CLAIM = 10;
+
+    /**
+     * The default policy, which uses one worker for each {@link #DEFAULT_MIN_VMS_PER_WORKER} VMs and claims
+     * {@link #DEFAULT_VMS_PER_CLAIM} VMs at a time.
+     */
+    public static final EvaluationParallelismPolicy DEFAULT = fixed(DEFAULT_MIN_VMS_PER_WORKER, DEFAULT_VMS_PER_CLAIM);
+
+    /**
+     * A policy that evaluates all VMs in the thread running the scheduling iteration.
+     */
+    public static final EvaluationParallelismPolicy SERIAL = new EvaluationParallelismPolicy() {
+        @Override
+        public int getNumWorkers(int numVMs, int maxWorkers) {
+            return 1;
+        }
+
+        @Override
+        public int getVMsPerClaim(int numVMs, int numWorkers) {
+            return Math.max(1, numVMs);
+        }
+
+        @Override
+        public void evaluated(int numVMsEvaluated, int numWorkers, long elapsedNanos) {
+        }
+    };
+
+    private EvaluationParallelismPolicies() {
+    }
+
+    /**
+     * Get a policy that uses a fixed number of VMs per worker and per claim, regardless of how long VMs take to
+     * evaluate.
+     *
+     * @param minVMsPerWorker The minimum number of VMs to evaluate for each worker used.
+     * @param vmsPerClaim The number of VMs a worker claims at a time.
+     * @return A fixed batch size policy.
+     */
+    public static EvaluationParallelismPolicy fixed(final int minVMsPerWorker, final int vmsPerClaim) {
+        if (minVMsPerWorker < 1 || vmsPerClaim < 1)
+            throw new IllegalArgumentException("VMs per worker and per claim must be at least 1");
+        return new EvaluationParallelismPolicy() {
+            @Override
+            public int getNumWorkers(int numVMs, int maxWorkers) {
+                return Math.min(maxWorkers, (numVMs + minVMsPerWorker - 1) / minVMsPerWorker);
+            }
+
+            @Override
+            public int getVMsPerClaim(int numVMs, int numWorkers) {
+                return vmsPerClaim;
+            }
+
+            @Override
+            public void evaluated(int numVMsEvaluated, int numWorkers, long elapsedNanos) {
+            }
+        };
+    }
+
+    /**
+     * Get an adaptive policy with default targets: 100 microseconds of work for each worker, and 10 microseconds of
+     * work for each claim.
+     *
+     * @return A new adaptive policy.
+     * @see #adaptive(long, long)
+     */
+    public static EvaluationParallelismPolicy adaptive() {
+        return adaptive(100000L, 10000L);
+    }
+
+    /**
+     * Get a policy that measures the average time it takes to evaluate a task on a VM, and sizes the number of
+     * workers and VMs per claim from it. A worker is added for each {@code minNanosPerWorker} of estimated work,
+     * so that handing work to another thread is worth its overhead, and a worker claims about
+     * {@code nanosPerClaim} of work at a time. Until the first measurement is available, the policy behaves the
+     * same as {@link #DEFAULT}.
+     * <P>
+     * The returned policy keeps state and must not be shared across task schedulers.
+     *
+     * @param minNanosPerWorker The minimum estimated work, in nanoseconds, for each worker used.
+     * @param nanosPerClaim The estimated work, in nanoseconds, for a worker to claim at a time.
+     * @return A new adaptive policy.
+     */
+    public static EvaluationParallelismPolicy adaptive(long minNanosPerWorker, long nanosPerClaim) {
+        if (minNanosPerWorker < 1L || nanosPerClaim < 1L)
+            throw new IllegalArgumentException("Nanos per worker and per claim must be at least 1");
+        return new AdaptivePolicy(minNanosPerWorker, nanosPerClaim);
+    }
+
+    static class AdaptivePolicy implements EvaluationParallelismPolicy {
+        // weight of the latest measurement in the moving average of evaluation time per VM
+        private static final double ALPHA = 0.1;
+        private final long minNanosPerWorker;
+        private final long nanosPerClaim;
+        private double nanosPerVM = 0.0;
+
+        private AdaptivePolicy(long minNanosPerWorker, long nanosPerClaim) {
+            this.minNanosPerWorker = minNanosPerWorker;
+            this.nanosPerClaim = nanosPerClaim;
+        }
+
+        double getNanosPerVM() {
+            return nanosPerVM;
+        }
+
+        @Override
+        public int getNumWorkers(int numVMs, int maxWorkers) {
+            if (nanosPerVM <= 0.0)
+                return DEFAULT.getNumWorkers(numVMs, maxWorkers);
+            return (int) Math.max(1L, Math.min(maxWorkers, (long) (numVMs * nanosPerVM / minNanosPerWorker)));
+        }
+
+        @Override
+        public int getVMsPerClaim(int numVMs, int numWorkers) {
+            if (nanosPerVM <= 0.0)
+                return DEFAULT.getVMsPerClaim(numVMs, numWorkers);
+            // leave at least a couple of claims for each worker
+            final int maxClaim = Math.max(1, numVMs / (2 * numWorkers));
+            return (int) Math.max(1L, Math.min(maxClaim, (long) (nanosPerClaim / nanosPerVM)));
+        }
+
+        @Override
+        public void evaluated(int numVMsEvaluated, int numWorkers, long elapsedNanos) {
+            if (numVMsEvaluated <= 0 || elapsedNanos <= 0L)
+                return;
+            final double sample = (double) elapsedNanos * numWorkers / numVMsEvaluated;
+            nanosPerVM = nanosPerVM <= 0.0 ? sample : nanosPerVM + ALPHA * (sample - nanosPerVM);
+        }
+    }
+}
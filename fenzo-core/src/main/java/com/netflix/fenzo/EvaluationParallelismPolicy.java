@@ -0,0 +1,59 @@
+/*
+ * Copyright 2017 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.fenzo;
+
+/**
+ * A policy that decides how the evaluation of a task's assignment across the VMs of a scheduling iteration is
+ * spread over threads. For each task, the task scheduler asks the policy for the number of workers to use and for
+ * the number of VMs each worker claims at a time, and reports back the time the evaluation took.
+ * <P>
+ * The methods are called only from the thread running the scheduling iteration. Use
+ * {@link EvaluationParallelismPolicies} to get the policies provided by Fenzo, and
+ * {@link TaskScheduler.Builder#withEvaluationParallelismPolicy(EvaluationParallelismPolicy)} to set the policy.
+ */
+public interface EvaluationParallelismPolicy {
+
+    /**
+     * Get the number of workers to evaluate a task with, including the thread running the scheduling iteration.
+     * The task scheduler limits the value returned to its configured minimum and maximum parallelism.
+     *
+     * @param numVMs The number of VMs to evaluate the task on.
+     * @param maxWorkers The maximum number of workers allowed.
+     * @return The number of workers to use.
+     */
+    int getNumWorkers(int numVMs, int maxWorkers);
+
+    /**
+     * Get the number of VMs a worker claims to evaluate at a time. Claiming too few increases the overhead of
+     * getting the next VMs to evaluate, claiming too many increases the time for a worker to notice that another
+     * worker has already found a good enough assignment.
+     *
+     * @param numVMs The number of VMs to evaluate the task on.
+     * @param numWorkers The number of workers evaluating the task.
+     * @return The number of VMs to claim at a time, at least 1.
+     */
+    int getVMsPerClaim(int numVMs, int numWorkers);
+
+    /**
+     * Called after each task's evaluation completes.
+     *
+     * @param numVMsEvaluated The number of VMs the task was evaluated on.
+     * @param numWorkers The number of workers used.
+     * @param elapsedNanos The time taken for the evaluation, in nanoseconds.
+     */
+    void evaluated(int numVMsEvaluated, int numWorkers, long elapsedNanos);
+}
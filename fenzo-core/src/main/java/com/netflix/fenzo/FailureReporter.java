@@ -0,0 +1,278 @@
+/*
+ * Copyright 2017 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.fenzo;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Adds the assignment results of tasks that could not be assigned to the scheduling result, according to the
+ * {@link FailureReportingMode}. In {@link FailureReportingMode#Aggregated} mode, only a summary and the closest misses
+ * are kept for each task. The summary of a task that was evaluated on VMs is counted into {@link Counts}, reused for
+ * every task, so that assignment results are created only for the closest misses, and for all VMs only for the tasks
+ * sampled for full detail.
+ * <P>
+ * This class is not thread safe, it is expected to be called only from within a scheduling iteration.
+ */
+class FailureReporter {
+
+    /**
+     * The failures of a task that could not be assigned, counted without creating its assignment results. Each
+     * result counted is identified by an ID of the caller's choosing, by which the closest misses are returned, for
+     * the caller to create their results.
+     */
+    static class Counts {
+        private final int[] resourceCounts = new int[VMResource.values().length];
+        private final Map<String, Integer> constraintCounts = new HashMap<>();
+        private int numResults;
+        // IDs of the closest misses, sorted by increasing distance, ties keep the earlier result
+        private final int[] closestIds;
+        private final double[] closestDistances;
+        private int numClosest;
+
+        private Counts(int maxClosestMisses) {
+            closestIds = new int[maxClosestMisses];
+            closestDistances = new double[maxClosestMisses];
+        }
+
+        private void reset() {
+            Arrays.fill(resourceCounts, 0);
+            constraintCounts.clear();
+            numResults = 0;
+            numClosest = 0;
+        }
+
+        /**
+         * Get the counts of resource failures, indexed by {@link VMResource#ordinal()}, for a result being counted
+         * to add its resource failures to, before counting it with {@link #addResourceFailures(int, double)}.
+         *
+         * @return The counts of resource failures.
+         */
+        int[] getResourceCounts() {
+            return resourceCounts;
+        }
+
+        /**
+         * Count a result that failed for resources, whose failures were added to {@link #getResourceCounts()}.
+         *
+         * @param id The ID of the result.
+         * @param distance How far the result was from a successful assignment, see
+         *                 {@link FailureReporter#getMissDistance(TaskAssignmentResult)}.
+         */
+        void addResourceFailures(int id, double distance) {
+            numResults++;
+            addIfCloser(id, distance);
+        }
+
+        /**
+         * Count a result that failed for a constraint.
+         *
+         * @param id The ID of the result.
+         * @param constraintName The name of the constraint.
+         */
+        void addConstraintFailure(int id, String constraintName) {
+            numResults++;
+            constraintCounts.merge(constraintName, 1, Integer::sum);
+            addIfCloser(id, Double.MAX_VALUE);
+        }
+
+        private void addResult(int id, TaskAssignmentResult r) {
+            numResults++;
+            if (r.getConstraintFailure() != null)
+                constraintCounts.merge(r.getConstraintFailure().getName(), 1, Integer::sum);
+            if (r.getFailures() != null)
+                for (AssignmentFailure f : r.getFailures())
+                    resourceCounts[f.getResource().ordinal()]++;
+            addIfCloser(id, getMissDistance(r));
+        }
+
+        private void addIfCloser(int id, double distance) {
+            final int max = closestIds.length;
+            if (max == 0 || (numClosest == max && distance >= closestDistances[numClosest - 1]))
+                return;
+            int i = numClosest == max ? numClosest - 1 : numClosest;
+            while (i > 0 && closestDistances[i - 1] > distance) {
+                closestIds[i] = closestIds[i - 1];
+                closestDistances[i] = closestDistances[i - 1];
+                i--;
+            }
+            closestIds[i] = id;
+            closestDistances[i] = distance;
+            numClosest = Math.min(numClosest + 1, max);
+        }
+
+        /**
+         * @return The number of closest misses, at most the maximum number to report per task.
+         */
+        int getNumClosest() {
+            return numClosest;
+        }
+
+        /**
+         * @param i The position of the closest miss, from 0 for the closest.
+         * @return The ID of the result of the closest miss at the given position.
+         */
+        int getClosestId(int i) {
+            return closestIds[i];
+        }
+
+        private TaskFailureSummary toSummary(boolean detailed) {
+            final Map<VMResource, Integer> resources = new EnumMap<>(VMResource.class);
+            final VMResource[] values = VMResource.values();
+            for (int r = 0; r < resourceCounts.length; r++)
+                if (resourceCounts[r] > 0)
+                    resources.put(values[r], resourceCounts[r]);
+            return new TaskFailureSummary(numResults, resources, new HashMap<>(constraintCounts), detailed);
+        }
+    }
+
+    private final FailureReportingMode mode;
+    private final double detailSamplingFraction;
+    private final List<TaskAssignmentResult> buffer = new ArrayList<>();
+    private final Counts counts;
+
+    FailureReporter(FailureReportingMode mode, int maxClosestMisses, double detailSamplingFraction) {
+        this.mode = mode;
+        this.detailSamplingFraction = detailSamplingFraction;
+        counts = new Counts(Math.max(0, maxClosestMisses));
+    }
+
+    /**
+     * Decide whether all assignment results of the next task that could not be assigned are to be reported. They
+     * always are in {@link FailureReportingMode#Full} mode, and only for the tasks sampled for full detail in
+     * {@link FailureReportingMode#Aggregated} mode. The results of the other tasks are counted with
+     * {@link #startCounts()} instead.
+     *
+     * @return {@code true} if the assignment results are to be collected into {@link #getFailuresList(int)}.
+     */
+    boolean reportAllResults() {
+        return mode == FailureReportingMode.Full ||
+                (detailSamplingFraction > 0.0 && ThreadLocalRandom.current().nextDouble() < detailSamplingFraction);
+    }
+
+    /**
+     * Get a list to collect the assignment results of a task that could not be assigned, before passing it to
+     * {@link #addFailures(SchedulingResult, TaskRequest, List, boolean)}.
+     *
+     * @param size Expected number of results.
+     * @return An empty list.
+     */
+    List<TaskAssignmentResult> getFailuresList(int size) {
+        if (mode == FailureReportingMode.Full)
+            return new ArrayList<>(size);
+        buffer.clear();
+        return buffer;
+    }
+
+    /**
+     * Add the assignment results of a task that could not be assigned to the scheduling result, sampling the task
+     * for full detail as {@link #reportAllResults()} does.
+     *
+     * @param schedulingResult The scheduling result of the iteration.
+     * @param task The task that could not be assigned.
+     * @param failures The assignment results of the task.
+     */
+    void addFailures(SchedulingResult schedulingResult, TaskRequest task, List<TaskAssignmentResult> failures) {
+        addFailures(schedulingResult, task, failures, reportAllResults());
+    }
+
+    /**
+     * Add the assignment results of a task that could not be assigned to the scheduling result.
+     *
+     * @param schedulingResult The scheduling result of the iteration.
+     * @param task The task that could not be assigned.
+     * @param failures The assignment results of the task.
+     * @param detailed Whether to report all the results in {@link FailureReportingMode#Aggregated} mode, instead of
+     *                 the closest misses only.
+     */
+    void addFailures(SchedulingResult schedulingResult, TaskRequest task, List<TaskAssignmentResult> failures,
+                     boolean detailed) {
+        if (mode == FailureReportingMode.Full) {
+            schedulingResult.addFailures(task, failures);
+            return;
+        }
+        counts.reset();
+        for (int i = 0; i < failures.size(); i++) {
+            final TaskAssignmentResult r = failures.get(i);
+            if (r != null)
+                counts.addResult(i, r);
+        }
+        final List<TaskAssignmentResult> reported;
+        if (detailed)
+            reported = new ArrayList<>(failures);
+        else {
+            reported = new ArrayList<>(counts.getNumClosest());
+            for (int i = 0; i < counts.getNumClosest(); i++)
+                reported.add(failures.get(counts.getClosestId(i)));
+        }
+        schedulingResult.addFailures(task, reported);
+        schedulingResult.addFailureSummary(task, counts.toSummary(detailed));
+        if (failures == buffer)
+            buffer.clear();
+    }
+
+    /**
+     * Start counting the failures of a task that could not be assigned, in {@link FailureReportingMode#Aggregated}
+     * mode, when not all its results are to be reported. Once counted, they are added with
+     * {@link #addCounts(SchedulingResult, TaskRequest, List)}.
+     *
+     * @return The counts to add the task's failures to, cleared of those of the previous task.
+     */
+    Counts startCounts() {
+        counts.reset();
+        return counts;
+    }
+
+    /**
+     * Add the failures of a task counted since {@link #startCounts()} to the scheduling result.
+     *
+     * @param schedulingResult The scheduling result of the iteration.
+     * @param task The task that could not be assigned.
+     * @param closestMisses The assignment results of the closest misses of the counts, closest first.
+     */
+    void addCounts(SchedulingResult schedulingResult, TaskRequest task, List<TaskAssignmentResult> closestMisses) {
+        schedulingResult.addFailures(task, closestMisses);
+        schedulingResult.addFailureSummary(task, counts.toSummary(false));
+    }
+
+    /**
+     * Get how far the result was from a successful assignment, as the sum over the resources that failed of the
+     * fraction of the ask that was short. Failures without quantities count as a whole resource short, and
+     * constraint failures are farther than any resource failure.
+     */
+    static double getMissDistance(TaskAssignmentResult r) {
+        if (r.getConstraintFailure() != null)
+            return Double.MAX_VALUE;
+        double distance = 0.0;
+        if (r.getFailures() != null) {
+            for (AssignmentFailure f : r.getFailures()) {
+                if (f.getResource() == VMResource.Fitness)
+                    continue;
+                if (f.getAsking() > 0.0)
+                    distance += Math.max(0.0, f.getUsed() + f.getAsking() - f.getAvailable()) / f.getAsking();
+                else
+                    distance += 1.0;
+            }
+        }
+        return distance;
+    }
+}
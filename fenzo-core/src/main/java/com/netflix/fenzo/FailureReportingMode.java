@@ -0,0 +1,37 @@
+/*
+ * Copyright 2017 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.fenzo;
+
+/**
+ * How the task scheduler reports tasks it could not assign in a {@link SchedulingResult}. Set it with
+ * {@link TaskScheduler.Builder#withFailureReportingMode(FailureReportingMode)}.
+ */
+public enum FailureReportingMode {
+    /**
+     * Report the assignment result from every VM evaluated for each task that could not be assigned, in
+     * {@link SchedulingResult#getFailures()}. This is the default.
+     */
+    Full,
+    /**
+     * Report a {@link TaskFailureSummary} with counts of the failures by resource and by constraint name, in
+     * {@link SchedulingResult#getFailureSummaries()}, for each task that could not be assigned.
+     * {@link SchedulingResult#getFailures()} then holds only the few results that came closest to fitting the
+     * task, except for a sample of tasks for which all results are kept, if sampling is enabled.
+     * This bounds the memory held by the scheduling result for large clusters with many pending tasks.
+     */
+    Aggregated
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright 2017 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.fenzo;
+
+import java.util.Arrays;
+
+/**
+ * A two dimensional grid index of VM slots over their free CPUs and memory. Each axis is split into a fixed number
+ * of equal width buckets, from zero up to the largest free amount among the VMs when the index is built. A VM moves
+ * to a lower cell as assignments consume its resources.
+ * <P>
+ * Looking up candidates for a task visits only the cells that may contain VMs with at least as much free CPUs and
+ * memory as the task asks for, and marks their slots in a bit set. Cells are coarse, candidates still need to be
+ * checked against their exact capacity.
+ */
+class FreeResourceIndex {
+
+    static final int BUCKETS = 16;
+
+    private final int[][] cells = new int[BUCKETS * BUCKETS][];
+    private final int[] cellSizes = new int[BUCKETS * BUCKETS];
+    private int[] cellOf = new int[0];
+    private int[] posInCell = new int[0];
+    private double cpuBucketWidth = 1.0;
+    private double memoryBucketWidth = 1.0;
+    private int size = 0;
+
+    FreeResourceIndex() {
+        for (int c = 0; c < cells.length; c++)
+            cells[c] = new int[8];
+    }
+
+    /**
+     * Build the index from the free CPUs and memory of all slots of the given frontier.
+     *
+     * @param frontier The capacity frontier with all slots set.
+     */
+    void build(CapacityFrontier frontier) {
+        size = frontier.size();
+        if (cellOf.length < size) {
+            cellOf = new int[size];
+            posInCell = new int[size];
+        }
+        Arrays.fill(cellSizes, 0);
+        double maxCpus = 0.0;
+        double maxMemory = 0.0;
+        for (int s = 0; s < size; s++) {
+            maxCpus = Math.max(maxCpus, frontier.getFreeCpus(s));
+            maxMemory = Math.max(maxMemory, frontier.getFreeMemory(s));
+        }
+        cpuBucketWidth = maxCpus > 0.0 ? maxCpus / BUCKETS : 1.0;
+        memoryBucketWidth = maxMemory > 0.0 ? maxMemory / BUCKETS : 1.0;
+        for (int s = 0; s < size; s++)
+            addToCell(s, cellFor(frontier.getFreeCpus(s), frontier.getFreeMemory(s)));
+    }
+
+    /**
+     * Move the slot to the cell for its new free resources.
+     */
+    void update(int slot, double freeCpus, double freeMemory) {
+        final int cell = cellFor(freeCpus, freeMemory);
+        if (cell == cellOf[slot])
+            return;
+        removeFromCell(slot);
+        addToCell(slot, cell);
+    }
+
+    /**
+     * Mark the slots that may have enough free CPUs and memory for the request in the given bit set, one bit per
+     * slot. Nothing is marked if the request is too small for the index to rule out any cell, all slots are then
+     * candidates.
+     *
+     * @param request The task request.
+     * @param bits Bit set to mark the candidate slots in, with at least one bit per slot. Bits of the slots not marked
+     *             are cleared.
+     * @return {@code true} if the candidates were marked, {@code false} if all slots are candidates.
+     */
+    boolean markCandidates(TaskRequest request, long[] bits) {
+        // start a bucket lower to stay clear of rounding differences between free amounts and the exact checks
+        final int fromCpu = Math.max(0, bucket(request.getCPUs(), cpuBucketWidth) - 1);
+        final int fromMemory = Math.max(0, bucket(request.getMemory(), memoryBucketWidth) - 1);
+        if (fromCpu == 0 && fromMemory == 0)
+            return false;
+        Arrays.fill(bits, 0, (size + 63) / 64, 0L);
+        for (int c = fromCpu; c < BUCKETS; c++) {
+            for (int m = fromMemory; m < BUCKETS; m++) {
+                final int cell = c * BUCKETS + m;
+                final int[] slots = cells[cell];
+                for (int i = 0; i < cellSizes[cell]; i++)
+                    bits[slots[i] >>> 6] |= 1L << slots[i];
+            }
+        }
+        return true;
+    }
+
+    private int cellFor(double freeCpus, double freeMemory) {
+        return bucket(freeCpus, cpuBucketWidth) * BUCKETS + bucket(freeMemory, memoryBucketWidth);
+    }
+
+    private static int bucket(double value, double width) {
+        if (!(value > 0.0))
+            return 0;
+        return (int) Math.min(BUCKETS - 1, value / width);
+    }
+
+    private void addToCell(int slot, int cell) {
+        if (cellSizes[cell] == cells[cell].length)
+            cells[cell] = Arrays.copyOf(cells[cell], cellSizes[cell] * 2);
+        posInCell[slot] = cellSizes[cell];
+        cells[cell][cellSizes[cell]++] = slot;
+        cellOf[slot] = cell;
+    }
+
+    private void removeFromCell(int slot) {
+        final int cell = cellOf[slot];
+        final int pos = posInCell[slot];
+        final int last = cells[cell][--cellSizes[cell]];
+        cells[cell][pos] = last;
+        posInCell[last] = pos;
+    }
+}
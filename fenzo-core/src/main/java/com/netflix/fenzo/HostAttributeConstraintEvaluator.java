@@ -0,0 +1,71 @@
+/*
+ * Copyright 2017 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.fenzo;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A constraint evaluator whose result for a task depends only on the values of some attributes of the host, and not
+ * on the host's resources, its tasks, or the state of the task tracker. When used as a hard constraint, the task
+ * scheduler evaluates it once per scheduling iteration for each combination of values of these attributes, and
+ * reuses the result on all other hosts with the same values, instead of evaluating it on every host.
+ * <P>
+ * The result is also reused across tasks that have the same key, as returned by {@link #getTaskKey(TaskRequest)}.
+ * Hosts that do not have one of the attributes are always evaluated, so that the result can name the host.
+ * <P>
+ * A constraint that passes only hosts with certain values of some attributes can also return those values from
+ * {@link #getRequiredHostAttributeValues(TaskRequest)}. The task scheduler then tries the task only on the hosts that
+ * have the values, found through an index of the attribute values of all hosts, instead of on every host.
+ */
+public interface HostAttributeConstraintEvaluator extends ConstraintEvaluator {
+
+    /**
+     * Get the names of the host attributes that the result of this constraint depends on. The name {@code HOSTNAME}
+     * refers to the host's name, as with the host attribute constraints in the {@code plugins} package.
+     *
+     * @return the names of the attributes, an empty list if the result is the same on all hosts, or {@code null} if
+     *         the result must be evaluated on each host
+     */
+    List<String> getHostAttributeNames();
+
+    /**
+     * Get the key of the given task for reusing the results of this constraint. Tasks with equal keys are expected
+     * to get the same result on hosts with the same values of the attributes.
+     *
+     * @param taskRequest the task being evaluated
+     * @return the key of the task, the task's ID by default
+     */
+    default Object getTaskKey(TaskRequest taskRequest) {
+        return taskRequest.getId();
+    }
+
+    /**
+     * Get the values of host attributes that a host must have to pass this constraint for the given task. A host
+     * passes only if, for each attribute of the map returned, it has one of the attribute's values. Hosts without
+     * them are not tried for the task. The constraint is still evaluated on the hosts that have them, and on the
+     * other hosts if the reasons for the task's failure to be assigned are reported.
+     *
+     * @param taskRequest the task being evaluated
+     * @return the values allowed for each attribute, or {@code null} if the hosts passing this constraint can't be
+     *         told by attribute values, the default
+     */
+    default Map<String, Set<String>> getRequiredHostAttributeValues(TaskRequest taskRequest) {
+        return null;
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright 2017 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.fenzo;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * An inverted index of host attribute values, from attribute name to attribute value to the VMs whose current lease
+ * has that value. An attribute is indexed from the first time it is looked up, across all VMs, and kept current after
+ * that as VMs are prepared for scheduling iterations with changed leases, and as VMs are removed. The
+ * {@code HOSTNAME} attribute is not indexed, VMs are looked up by hostname instead.
+ */
+class HostAttributeIndex {
+
+    private static class AttributeIndex {
+        private final Map<String, Set<AssignableVirtualMachine>> vmsByValue = new HashMap<>();
+        private final Map<AssignableVirtualMachine, String> valueByVM = new HashMap<>();
+
+        private void update(AssignableVirtualMachine avm, String value) {
+            final String prevValue = value == null ? valueByVM.remove(avm) : valueByVM.put(avm, value);
+            if (value != null && value.equals(prevValue))
+                return;
+            if (prevValue != null) {
+                final Set<AssignableVirtualMachine> vms = vmsByValue.get(prevValue);
+                vms.remove(avm);
+                if (vms.isEmpty())
+                    vmsByValue.remove(prevValue);
+            }
+            if (value != null)
+                vmsByValue.computeIfAbsent(value, v -> new HashSet<>()).add(avm);
+        }
+    }
+
+    private final Map<String, AttributeIndex> indexes = new HashMap<>();
+    private final VMCollection vmCollection;
+
+    HostAttributeIndex(VMCollection vmCollection) {
+        this.vmCollection = vmCollection;
+    }
+
+    /**
+     * Update the indexed attribute values of a VM whose leases may have changed.
+     *
+     * @param avm The VM, with its current lease already updated.
+     */
+    synchronized void update(AssignableVirtualMachine avm) {
+        for (Map.Entry<String, AttributeIndex> entry : indexes.entrySet())
+            entry.getValue().update(avm, CoTaskAttributeIndex.getAttrValue(avm, entry.getKey()));
+    }
+
+    /**
+     * Remove a VM that is no longer known from the index.
+     *
+     * @param avm The VM removed.
+     */
+    synchronized void remove(AssignableVirtualMachine avm) {
+        for (AttributeIndex index : indexes.values())
+            index.update(avm, null);
+    }
+
+    /**
+     * Get the VMs that have the given value of the given attribute. The set returned is a view of the index, and is
+     * expected to be read before the index is updated for the next scheduling iteration.
+     *
+     * @param attributeName The name of the attribute.
+     * @param value The value of the attribute.
+     * @return The VMs with the value.
+     */
+    synchronized Set<AssignableVirtualMachine> getVMs(String attributeName, String value) {
+        if (value == null)
+            return Collections.emptySet();
+        if (CoTaskAttributeIndex.HOSTNAME_ATTRIBUTE.equals(attributeName)) {
+            return vmCollection.getVmByName(value).map(Collections::singleton)
+                    .orElse(Collections.<AssignableVirtualMachine>emptySet());
+        }
+        AttributeIndex index = indexes.get(attributeName);
+        if (index == null) {
+            index = new AttributeIndex();
+            for (AssignableVirtualMachine avm : vmCollection.getAllVMs())
+                index.update(avm, CoTaskAttributeIndex.getAttrValue(avm, attributeName));
+            indexes.put(attributeName, index);
+        }
+        final Set<AssignableVirtualMachine> vms = index.vmsByValue.get(value);
+        return vms == null ? Collections.<AssignableVirtualMachine>emptySet() : Collections.unmodifiableSet(vms);
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright 2017 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.fenzo;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A lock-free histogram of latencies in nano seconds, with buckets of exponentially increasing size. Bucket {@code b}
+ * holds the values that need {@code b} bits, that is, bucket 0 holds 0, and bucket {@code b > 0} holds values from
+ * {@code 2^(b-1)} to {@code 2^b - 1}. Values can be recorded and read concurrently; reads are not atomic across
+ * buckets, but each count is exact.
+ */
+public class LatencyHistogram {
+
+    /**
+     * The number of buckets in the histogram.
+     */
+    public static final int NUM_BUCKETS = 64;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(NUM_BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    /**
+     * Record a latency. Negative values are recorded as 0.
+     *
+     * @param nanos The latency in nano seconds.
+     */
+    public void record(long nanos) {
+        final long value = Math.max(0L, nanos);
+        buckets.incrementAndGet(getBucket(value));
+        count.increment();
+        totalNanos.add(value);
+        long max = maxNanos.get();
+        while (value > max && !maxNanos.compareAndSet(max, value))
+            max = maxNanos.get();
+    }
+
+    static int getBucket(long nanos) {
+        return Long.SIZE - Long.numberOfLeadingZeros(nanos);
+    }
+
+    /**
+     * Get the largest value that falls in the given bucket.
+     *
+     * @param bucket The bucket number, from 0 to {@link #NUM_BUCKETS} - 1.
+     * @return The upper bound of the bucket, in nano seconds.
+     */
+    public static long getBucketUpperBoundNanos(int bucket) {
+        return bucket >= Long.SIZE - 1 ? Long.MAX_VALUE : (1L << bucket) - 1L;
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public long getTotalNanos() {
+        return totalNanos.sum();
+    }
+
+    public long getMaxNanos() {
+        return maxNanos.get();
+    }
+
+    /**
+     * Get the count of values recorded in each bucket.
+     *
+     * @return A copy of the bucket counts, indexed by bucket number.
+     */
+    public long[] getBucketCounts() {
+        final long[] result = new long[NUM_BUCKETS];
+        for (int b = 0; b < NUM_BUCKETS; b++)
+            result[b] = buckets.get(b);
+        return result;
+    }
+
+    /**
+     * Get an estimate of the given percentile, as the upper bound of the bucket that the percentile falls in, but not
+     * more than the largest value recorded.
+     *
+     * @param percentile The percentile, from 0.0 to 100.0.
+     * @return The estimated percentile in nano seconds, or 0 if no values have been recorded.
+     */
+    public long getPercentileNanos(double percentile) {
+        final long[] counts = getBucketCounts();
+        long total = 0L;
+        for (long c : counts)
+            total += c;
+        if (total == 0L)
+            return 0L;
+        final long rank = Math.max(1L, (long) Math.ceil(total * Math.min(100.0, Math.max(0.0, percentile)) / 100.0));
+        long seen = 0L;
+        for (int b = 0; b < NUM_BUCKETS; b++) {
+            seen += counts[b];
+            if (seen >= rank)
+                return Math.min(getBucketUpperBoundNanos(b), getMaxNanos());
+        }
+        return getMaxNanos();
+    }
+}
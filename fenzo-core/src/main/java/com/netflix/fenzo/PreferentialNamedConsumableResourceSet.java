@@ -23,6 +23,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -41,11 +42,20 @@ import java.util.Map;
  * possible and returns a fitness score that helps scheduler pick between multiple VMs that can potentially fit the task.
  * The resulting assignment contains the index of the resource set assigned. The resource sets are assigned indexes
  * starting with 0.
+ * <P>The resource sets are indexed by the name assigned to them, and by whether they are free, so that finding the
+ * resource set for a task looks only at the sets assigned the name the task requests, instead of at all sets.
  */
 public class PreferentialNamedConsumableResourceSet {
 
     final static String attributeName = "ResourceSet";
 
+    private static int getSubResourcesNeed(String name, TaskRequest request) {
+        final Map<String, TaskRequest.NamedResourceSetRequest> customNamedResources = request.getCustomNamedResources();
+        final TaskRequest.NamedResourceSetRequest setRequest = customNamedResources==null?
+                null : customNamedResources.get(name);
+        return setRequest==null? 0 : setRequest.getNumSubResources();
+    }
+
     private static String getResNameVal(String name, TaskRequest request) {
         final Map<String, TaskRequest.NamedResourceSetRequest> customNamedResources = request.getCustomNamedResources();
         if(customNamedResources!=null) {
@@ -91,6 +101,7 @@ public class PreferentialNamedConsumableResourceSet {
     }
 
     public static class PreferentialNamedConsumableResource {
+        private final PreferentialNamedConsumableResourceSet owner;
         private final double maxFitness;
         private final int index;
         private final String attrName;
@@ -99,7 +110,9 @@ public class PreferentialNamedConsumableResourceSet {
         private final Map<String, TaskRequest.NamedResourceSetRequest> usageBy;
         private int usedSubResources=0;
 
-        PreferentialNamedConsumableResource(int i, String attrName, int limit) {
+        PreferentialNamedConsumableResource(PreferentialNamedConsumableResourceSet owner, int i, String attrName,
+                                            int limit) {
+            this.owner = owner;
             this.index = i;
             this.attrName = attrName;
             this.limit = limit;
@@ -109,6 +122,19 @@ public class PreferentialNamedConsumableResourceSet {
             maxFitness = limit + 1.0;
         }
 
+        // A copy of the given resource, for the given copy of its owner
+        private PreferentialNamedConsumableResource(PreferentialNamedConsumableResourceSet owner,
+                                                    PreferentialNamedConsumableResource other) {
+            this.owner = owner;
+            this.maxFitness = other.maxFitness;
+            this.index = other.index;
+            this.attrName = other.attrName;
+            this.resName = other.resName;
+            this.limit = other.limit;
+            this.usageBy = new HashMap<>(other.usageBy);
+            this.usedSubResources = other.usedSubResources;
+        }
+
         public int getIndex() {
             return index;
         }
@@ -157,18 +183,20 @@ public class PreferentialNamedConsumableResourceSet {
             if(resName!=null && !resName.equals(assignedResName))
                 throw new IllegalStateException(this.getClass().getName() + " already consumed by " + resName +
                         ", can't consume for " + assignedResName);
-            if(resName == null) {
-                resName = assignedResName;
-                usageBy.clear();
-            }
             final TaskRequest.NamedResourceSetRequest setRequest = request.getCustomNamedResources()==null?
                     null : request.getCustomNamedResources().get(attrName);
             double subResNeed = setRequest==null? 0.0 : setRequest.getNumSubResources();
             if(usedSubResources + subResNeed > limit)
-                throw new RuntimeException(this.getClass().getName() + " already consumed for " + resName +
+                throw new RuntimeException(this.getClass().getName() + " already consumed for " + assignedResName +
                         " up to the limit of " + limit);
+            final String prevResName = resName;
+            if(resName == null) {
+                resName = assignedResName;
+                usageBy.clear();
+            }
             usageBy.put(request.getId(), setRequest);
             usedSubResources += subResNeed;
+            owner.updateIndex(this, prevResName);
         }
 
         boolean release(TaskRequest request) {
@@ -180,21 +208,71 @@ public class PreferentialNamedConsumableResourceSet {
             if(removed == null)
                 return false;
             usedSubResources -= removed.getNumSubResources();
+            final String prevResName = resName;
             if(usageBy.isEmpty())
                 resName = null;
+            owner.updateIndex(this, prevResName);
             return true;
         }
     }
 
+    // indexes of the resource sets assigned a name
+    private static class NamedSets {
+        private final BitSet assigned = new BitSet();
+        // those with sub-resources left to consume
+        private final BitSet notFull = new BitSet();
+        // those with sub-resources consumed
+        private final BitSet notEmpty = new BitSet();
+    }
+
     public static final String CustomResAbsentKey = "CustomResAbsent";
     private final String name;
     private final List<PreferentialNamedConsumableResource> usageBy;
+    private final Map<String, NamedSets> setsByResName = new HashMap<>();
+    private final BitSet freeSets = new BitSet();
 
     public PreferentialNamedConsumableResourceSet(String name, int val0, int val1) {
         this.name = name;
         usageBy = new ArrayList<>(val0);
         for(int i=0; i<val0; i++)
-            usageBy.add(new PreferentialNamedConsumableResource(i, name, val1));
+            usageBy.add(new PreferentialNamedConsumableResource(this, i, name, val1));
+        freeSets.set(0, val0);
+    }
+
+    // A copy of the given resource set, with the same resources consumed by the same tasks
+    private PreferentialNamedConsumableResourceSet(PreferentialNamedConsumableResourceSet other) {
+        this.name = other.name;
+        usageBy = new ArrayList<>(other.usageBy.size());
+        for(PreferentialNamedConsumableResource r: other.usageBy) {
+            final PreferentialNamedConsumableResource copy = new PreferentialNamedConsumableResource(this, r);
+            usageBy.add(copy);
+            updateIndex(copy, null);
+        }
+    }
+
+    // Update the indexes of the resource set after it was consumed or released, given its name before that
+    private void updateIndex(PreferentialNamedConsumableResource r, String prevResName) {
+        if(prevResName != null && !prevResName.equals(r.resName)) {
+            final NamedSets prev = setsByResName.get(prevResName);
+            prev.assigned.clear(r.index);
+            prev.notFull.clear(r.index);
+            prev.notEmpty.clear(r.index);
+            if(prev.assigned.isEmpty())
+                setsByResName.remove(prevResName);
+        }
+        if(r.resName == null) {
+            freeSets.set(r.index);
+            return;
+        }
+        freeSets.clear(r.index);
+        NamedSets named = setsByResName.get(r.resName);
+        if(named == null) {
+            named = new NamedSets();
+            setsByResName.put(r.resName, named);
+        }
+        named.assigned.set(r.index);
+        named.notFull.set(r.index, r.usedSubResources < r.limit);
+        named.notEmpty.set(r.index, r.usedSubResources > 0);
     }
 
     public String getName() {
@@ -210,7 +288,12 @@ public class PreferentialNamedConsumableResourceSet {
 //    }
 
     ConsumeResult consume(TaskRequest request) {
-        return consumeIntl(request, false);
+        final PreferentialNamedConsumableResource best = getBest(request);
+        if (best == null)
+            throw new RuntimeException("Unexpected to have no availability for job " + request.getId() + " for consumable resource " + name);
+        final double fitness = best.getFitness(request);
+        best.consume(request);
+        return new ConsumeResult(best.index, best.attrName, best.resName, fitness);
     }
 
     void assign(TaskRequest request) {
@@ -234,37 +317,39 @@ public class PreferentialNamedConsumableResourceSet {
 
     // returns 0.0 for no fitness at all, or <=1.0 for fitness
     double getFitness(TaskRequest request) {
-        return consumeIntl(request, true).fitness;
+        final PreferentialNamedConsumableResource best = getBest(request);
+        return best==null? 0.0 : best.getFitness(request);
     }
 
-    private ConsumeResult consumeIntl(TaskRequest request, boolean skipConsume) {
-        PreferentialNamedConsumableResource best = null;
-        double bestFitness=0.0;
-        for(PreferentialNamedConsumableResource r: usageBy) {
-            double f = r.getFitness(request);
-            if(f == 0.0)
-                continue;
-            if(bestFitness < f) {
-                best = r;
-                bestFitness = f;
+    // Get the resource set with the highest fitness for the request, the one with the lowest index among those with
+    // the same fitness, or null if none fit. Resource sets assigned the requested name fit better than free ones. All
+    // of those that fit have a fitness of 1.0, other than those without sub-resources consumed when the request
+    // doesn't need any either.
+    private PreferentialNamedConsumableResource getBest(TaskRequest request) {
+        final NamedSets named = setsByResName.get(getResNameVal(name, request));
+        if(named != null) {
+            final int need = getSubResourcesNeed(name, request);
+            if(need == 0) {
+                final int index = named.notEmpty.nextSetBit(0);
+                return usageBy.get(index < 0? named.assigned.nextSetBit(0) : index);
+            }
+            for(int i = named.notFull.nextSetBit(0); i >= 0; i = named.notFull.nextSetBit(i + 1)) {
+                final PreferentialNamedConsumableResource r = usageBy.get(i);
+                if(r.usedSubResources + need <= r.limit)
+                    return r;
             }
         }
-        if(!skipConsume) {
-            if (best == null)
-                throw new RuntimeException("Unexpected to have no availability for job " + request.getId() + " for consumable resource " + name);
-            best.consume(request);
-        }
-        return new ConsumeResult(
-                best==null? -1 : best.index,
-                best==null? null : best.attrName,
-                best==null? null : best.resName,
-                bestFitness
-        );
+        final int free = freeSets.nextSetBit(0);
+        return free < 0? null : usageBy.get(free);
     }
 
     boolean release(TaskRequest request) {
-        for(PreferentialNamedConsumableResource r: usageBy)
-            if(r.release(request))
+        // only the resource sets assigned the task's name can have it
+        final NamedSets named = setsByResName.get(getResNameVal(name, request));
+        if(named == null)
+            return false;
+        for(int i = named.assigned.nextSetBit(0); i >= 0; i = named.assigned.nextSetBit(i + 1))
+            if(usageBy.get(i).release(request))
                 return true;
         return false;
     }
@@ -273,6 +358,11 @@ public class PreferentialNamedConsumableResourceSet {
         return usageBy.get(0).getLimit()-1;
     }
 
+    // Get a copy of this resource set that does not change with this one
+    PreferentialNamedConsumableResourceSet copy() {
+        return new PreferentialNamedConsumableResourceSet(this);
+    }
+
     List<Double> getUsedCounts() {
         List<Double> counts = new ArrayList<>(usageBy.size());
         for(PreferentialNamedConsumableResource r: usageBy)
@@ -0,0 +1,152 @@
+/*
+ * Copyright 2017 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.fenzo;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Interns the names of scalar resources to dense integer slots, so that scalar resources of VMs and of tasks can be
+ * held in {@code double} arrays indexed by slot instead of maps keyed by resource name. Checking a task's scalar
+ * requests against a VM then needs neither boxing nor hashing of resource names.
+ * <P>
+ * Each scheduler has its own registry. Names are registered only when a VM gets a scalar resource, so the slots are
+ * those of the resources the scheduler's VMs have had. Looking up names, such as those of a task's requests, does not
+ * register them. Slots are assigned in the order names are registered and are never reused. Names may be registered
+ * and looked up from any thread.
+ */
+final class ScalarResourceRegistry {
+
+    static final double[] NO_SCALARS = new double[0];
+
+    // The vector of requests for a resource that is not registered, which no VM has and so no VM can satisfy
+    private static final double[] UNAVAILABLE = {Double.POSITIVE_INFINITY};
+
+    private final ConcurrentMap<String, Integer> slots = new ConcurrentHashMap<>();
+    // names by slot, with room for more, grown by doubling
+    private volatile String[] names = new String[8];
+    private volatile int numSlots = 0;
+
+    /**
+     * Get the slot of the scalar resource with the given name, registering the name if it is not known yet. Use
+     * this when a VM gets the resource.
+     *
+     * @param name Name of the scalar resource.
+     * @return The slot of the resource.
+     */
+    int getSlot(String name) {
+        final Integer slot = slots.get(name);
+        return slot != null ? slot : register(name);
+    }
+
+    /**
+     * Get the slot of the scalar resource with the given name, without registering it.
+     *
+     * @param name Name of the scalar resource.
+     * @return The slot of the resource, or -1 if it is not registered, in which case no VM has the resource.
+     */
+    int findSlot(String name) {
+        final Integer slot = slots.get(name);
+        return slot != null ? slot : -1;
+    }
+
+    private synchronized int register(String name) {
+        final Integer slot = slots.get(name);
+        if (slot != null)
+            return slot;
+        final int newSlot = numSlots;
+        if (newSlot == names.length)
+            names = Arrays.copyOf(names, names.length * 2);
+        // publish the name before its slot, so that the name of any slot handed out can be looked up
+        names[newSlot] = name;
+        numSlots = newSlot + 1;
+        slots.put(name, newSlot);
+        return newSlot;
+    }
+
+    /**
+     * Get the name of the scalar resource in the given slot.
+     *
+     * @param slot A slot returned by {@link #getSlot(String)}.
+     * @return The name of the scalar resource.
+     */
+    String getName(int slot) {
+        return names[slot];
+    }
+
+    /**
+     * Get a vector of the given scalar requests, indexed by slot. Slots of resources not in the map, or with a
+     * {@code null} value, are 0.0. The vector is only as long as needed for the highest slot in the map. Names are
+     * not registered; if a positive amount of a resource that is not registered is requested, the vector has more
+     * of the resource in slot 0 than any VM can have, so that it fits no VM.
+     *
+     * @param values Scalar values keyed by resource name, may be {@code null}.
+     * @return Vector of the values.
+     */
+    double[] toVector(Map<String, Double> values) {
+        if (values == null || values.isEmpty())
+            return NO_SCALARS;
+        double[] vector = NO_SCALARS;
+        for (Map.Entry<String, Double> entry : values.entrySet()) {
+            if (entry.getValue() == null)
+                continue;
+            final int slot = findSlot(entry.getKey());
+            if (slot < 0) {
+                if (entry.getValue() > 0.0)
+                    return UNAVAILABLE;
+                continue;
+            }
+            vector = ensureSlot(vector, slot);
+            vector[slot] = entry.getValue();
+        }
+        return vector;
+    }
+
+    /**
+     * Get a map of the values in the given slots of a vector, keyed by resource name.
+     *
+     * @param vector Values indexed by slot.
+     * @param present The slots to include.
+     * @return An unmodifiable map of the values.
+     */
+    Map<String, Double> toMap(double[] vector, BitSet present) {
+        if (present.isEmpty())
+            return Collections.emptyMap();
+        final Map<String, Double> result = new HashMap<>();
+        for (int slot = present.nextSetBit(0); slot >= 0; slot = present.nextSetBit(slot + 1))
+            result.put(getName(slot), slot < vector.length ? vector[slot] : 0.0);
+        return Collections.unmodifiableMap(result);
+    }
+
+    /**
+     * Make sure the given vector has the given slot, growing it if needed. Added slots are 0.0.
+     *
+     * @param vector Values indexed by slot.
+     * @param slot The slot needed.
+     * @return The given vector if it already has the slot, a longer copy of it otherwise.
+     */
+    double[] ensureSlot(double[] vector, int slot) {
+        if (slot < vector.length)
+            return vector;
+        return Arrays.copyOf(vector, Math.max(slot + 1, numSlots));
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright 2017 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.fenzo;
+
+/**
+ * A listener for metrics of scheduling iterations. Set it with
+ * {@link TaskScheduler.Builder#withSchedulerMetrics(SchedulerMetrics)}, or with
+ * {@link TaskSchedulingService.Builder#withSchedulerMetrics(SchedulerMetrics)} to also get the phases of the
+ * scheduling service loop. {@link DefaultSchedulerMetrics} provides a lock-free implementation that keeps counters
+ * and latency histograms that can be read at any time.
+ * <P>
+ * The methods are called from the thread running the scheduling iteration, once for each phase at the end of the
+ * iteration, and must return quickly. The pseudo scheduling iterations that {@link TaskSchedulingService} runs to
+ * find the resources to scale up for are not reported.
+ */
+public interface SchedulerMetrics {
+
+    /**
+     * The phases of a scheduling iteration that are timed.
+     */
+    enum Phase {
+        /**
+         * Adding and expiring leases, and preparing VMs and their capacity for the iteration.
+         */
+        PrepareVMs,
+        /**
+         * Getting the next task to assign from the task queue or list.
+         */
+        QueueIteration,
+        /**
+         * Evaluating tasks on VMs, as elapsed time of the calling thread, including waiting for parallel workers.
+         */
+        Evaluation,
+        /**
+         * Evaluating hard constraints of tasks on VMs, summed across parallel workers.
+         */
+        HardConstraints,
+        /**
+         * Evaluating resource requirements of tasks on VMs, summed across parallel workers.
+         */
+        Resources,
+        /**
+         * Calculating fitness and soft constraints of tasks on VMs, summed across parallel workers.
+         */
+        Fitness,
+        /**
+         * Assigning tasks to the VMs picked for them, including usage tracking of the task queue.
+         */
+        Assignment,
+        /**
+         * Collecting assignment results and idle leases, rejecting expired leases, and building the input for
+         * the autoscaler.
+         */
+        AutoScalerInput,
+        /**
+         * Applying queued changes to the task queue before an iteration, reported by {@link TaskSchedulingService}.
+         */
+        QueueReset,
+        /**
+         * Launching assigned tasks in the task queue after an iteration, reported by {@link TaskSchedulingService}.
+         */
+        TaskLaunch
+    }
+
+    /**
+     * Called with the total time a phase took in a scheduling iteration.
+     *
+     * @param phase The phase.
+     * @param elapsedNanos The time, in nano seconds, the phase took in the iteration.
+     */
+    void phaseCompleted(Phase phase, long elapsedNanos);
+
+    /**
+     * Called at the end of each scheduling iteration.
+     *
+     * @param result The result of the iteration, with its counts of leases, allocations, assignments, and failures.
+     * @param elapsedNanos The time, in nano seconds, the iteration took.
+     */
+    void iterationCompleted(SchedulingResult result, long elapsedNanos);
+}
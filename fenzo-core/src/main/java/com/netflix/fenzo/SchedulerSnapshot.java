@@ -0,0 +1,123 @@
+/*
+ * Copyright 2017 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.fenzo;
+
+import com.netflix.fenzo.queues.QueuableTask;
+import com.netflix.fenzo.queues.TaskQueue;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The state of the scheduler at the end of a scheduling iteration, as published when enabled with
+ * {@link TaskScheduler.Builder#withPublishedSnapshots()}. A snapshot is created once per iteration by the scheduling
+ * thread and is not changed after that, so that any number of threads can read the latest one, through
+ * {@link TaskScheduler#getLatestSnapshot()} or {@link TaskSchedulingService#getLatestSnapshot()}, without waiting
+ * for or interfering with scheduling iterations.
+ * <P>
+ * The collections of a snapshot are unmodifiable. The VM states are copies taken when the snapshot is created, with
+ * their own available resources, resource sets and lists of running tasks, and do not change as the scheduler goes on
+ * assigning and removing tasks. The tasks themselves are the ones given to the scheduler and must not be modified.
+ */
+public final class SchedulerSnapshot {
+
+    /**
+     * The snapshot returned before the first one is published.
+     */
+    public static final SchedulerSnapshot EMPTY = new SchedulerSnapshot(0L, 0L,
+            Collections.<String, Map<VMResource, Double[]>>emptyMap(),
+            Collections.<VirtualMachineCurrentState>emptyList(),
+            Collections.<String, VMAssignmentResult>emptyMap(),
+            Collections.<TaskQueue.TaskState, Collection<QueuableTask>>emptyMap());
+
+    private final long version;
+    private final long createdAt;
+    private final Map<String, Map<VMResource, Double[]>> resourceStatus;
+    private final List<VirtualMachineCurrentState> vmCurrentStates;
+    private final Map<String, VMAssignmentResult> assignments;
+    private final Map<TaskQueue.TaskState, Collection<QueuableTask>> queuedTasks;
+
+    SchedulerSnapshot(long version, long createdAt, Map<String, Map<VMResource, Double[]>> resourceStatus,
+                      List<VirtualMachineCurrentState> vmCurrentStates, Map<String, VMAssignmentResult> assignments,
+                      Map<TaskQueue.TaskState, Collection<QueuableTask>> queuedTasks) {
+        this.version = version;
+        this.createdAt = createdAt;
+        this.resourceStatus = Collections.unmodifiableMap(resourceStatus);
+        this.vmCurrentStates = Collections.unmodifiableList(vmCurrentStates);
+        this.assignments = Collections.unmodifiableMap(assignments);
+        this.queuedTasks = Collections.unmodifiableMap(queuedTasks);
+    }
+
+    /**
+     * Get the version of this snapshot. Versions start at 1 and increase by 1 with each snapshot published.
+     *
+     * @return the version, or 0 for the {@link #EMPTY} snapshot
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Get the time at which this snapshot was created.
+     *
+     * @return the time in milliseconds since the epoch
+     */
+    public long getCreatedAt() {
+        return createdAt;
+    }
+
+    /**
+     * Get the state of resources on all known hosts, as returned by {@link TaskScheduler#getResourceStatus()}.
+     *
+     * @return a Map with the hostname as the key and a Map of resource state as the value
+     */
+    public Map<String, Map<VMResource, Double[]>> getResourceStatus() {
+        return resourceStatus;
+    }
+
+    /**
+     * Get the state of all known hosts, as returned by {@link TaskScheduler#getVmCurrentStates()}.
+     *
+     * @return a list containing the state of all known VMs
+     */
+    public List<VirtualMachineCurrentState> getVmCurrentStates() {
+        return vmCurrentStates;
+    }
+
+    /**
+     * Get the task assignments made in the scheduling iteration, as returned by
+     * {@link SchedulingResult#getResultMap()}.
+     *
+     * @return a Map with the hostname as the key and the assignments on the host as the value
+     */
+    public Map<String, VMAssignmentResult> getAssignments() {
+        return assignments;
+    }
+
+    /**
+     * Get the tasks of the queue of the {@link TaskSchedulingService}, as given to
+     * {@link TaskSchedulingService#requestAllTasks(com.netflix.fenzo.functions.Action1)}. The tasks assigned in the
+     * iteration are included as launched.
+     *
+     * @return the tasks by their state, or an empty Map if the scheduler is not used by a scheduling service
+     */
+    public Map<TaskQueue.TaskState, Collection<QueuableTask>> getQueuedTasks() {
+        return queuedTasks;
+    }
+}
@@ -35,6 +35,7 @@ import java.util.Map;
 public class SchedulingResult {
     private final Map<String, VMAssignmentResult> resultMap;
     private final Map<TaskRequest, List<TaskAssignmentResult>> failures;
+    private final Map<TaskRequest, TaskFailureSummary> failureSummaries;
     private final List<Exception> exceptions;
     private int leasesAdded;
     private int leasesRejected;
@@ -42,10 +43,12 @@ public class SchedulingResult {
     private int numAllocations;
     private int totalVMsCount;
     private int idleVMsCount;
+    private boolean budgetExhausted;
 
     public SchedulingResult(Map<String, VMAssignmentResult> resultMap) {
         this.resultMap = resultMap;
         failures = new HashMap<>();
+        failureSummaries = new HashMap<>();
         exceptions = new ArrayList<>();
     }
 
@@ -69,6 +72,10 @@ public class SchedulingResult {
         failures.put(request, f);
     }
 
+    void addFailureSummary(TaskRequest request, TaskFailureSummary summary) {
+        failureSummaries.put(request, summary);
+    }
+
     public void addException(Exception e) {
         exceptions.add(e);
     }
@@ -82,12 +89,26 @@ public class SchedulingResult {
      * scheduler was unable to assign. The map values are a List of all of the failures that prevented the
      * task scheduler from assigning the task.
      *
+     * <p>
+     * When using {@link FailureReportingMode#Aggregated}, the List holds only the failures that came closest to
+     * fitting the task, unless the task was sampled for full detail.
+     *
      * @return a Map of the tasks the task scheduler failed to assign in this scheduling round
      */
     public Map<TaskRequest, List<TaskAssignmentResult>> getFailures() {
         return failures;
     }
 
+    /**
+     * Get the summaries of failures for tasks that the task scheduler was unable to assign. Summaries are
+     * available only when using {@link FailureReportingMode#Aggregated}, the map is empty otherwise.
+     *
+     * @return a Map of the tasks the task scheduler failed to assign in this scheduling round to their failure summary
+     */
+    public Map<TaskRequest, TaskFailureSummary> getFailureSummaries() {
+        return failureSummaries;
+    }
+
     /**
      * Get the number of leases (resource offers) added during this scheduling trial.
      *
@@ -167,6 +188,24 @@ public class SchedulingResult {
         this.idleVMsCount = idleVMsCount;
     }
 
+    /**
+     * Find out if this scheduling trial stopped before considering all tasks because it ran out of its time or
+     * task budget. The assignments made before stopping are included in this result. Tasks that were not considered
+     * have neither assignments nor failures in this result. When scheduling from a task queue, the next scheduling
+     * trial continues from where this one stopped.
+     *
+     * @return {@code true} if the scheduling trial ran out of its budget, {@code false} otherwise
+     * @see TaskScheduler.Builder#withMaxSchedulingIterationMillis(long)
+     * @see TaskScheduler.Builder#withMaxTasksPerSchedulingIteration(int)
+     */
+    public boolean isBudgetExhausted() {
+        return budgetExhausted;
+    }
+
+    void setBudgetExhausted(boolean budgetExhausted) {
+        this.budgetExhausted = budgetExhausted;
+    }
+
     @Override
     public String toString() {
         return "SchedulingResult{" +
@@ -178,6 +217,7 @@ public class SchedulingResult {
                 ", numAllocations=" + numAllocations +
                 ", totalVMsCount=" + totalVMsCount +
                 ", idleVMsCount=" + idleVMsCount +
+                ", budgetExhausted=" + budgetExhausted +
                 '}';
     }
 }
@@ -0,0 +1,106 @@
+/*
+ * Copyright 2017 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.fenzo;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A per scheduling iteration cache of VMs known to not have enough resources for a {@link TaskShape}. VMs are
+ * referred to by their position (slot) in the array of VMs evaluated in the iteration. A VM found short of resources
+ * when a task is tried on it is remembered against the task's shape, and later tasks of the same shape are not tried
+ * on the VM again. The failures are not kept; they are computed from the VM's usage if they need to be reported.
+ * The entries of a VM are invalidated when the VM receives an assignment.
+ * <P>
+ * Slots of an entry are written by the evaluation workers concurrently, but each worker writes only the slots it
+ * has claimed. Entries are created and invalidated only between evaluations, from the scheduling thread.
+ */
+class ShapeFeasibilityCache {
+
+    // Caching a shape needs arrays as large as the number of VMs. Create them only for shapes seen more than
+    // once, and only for a limited number of shapes per iteration.
+    private static final int MAX_SHAPES = 128;
+
+    static class Entry {
+        // the VM version at which the VM was found infeasible, plus one, so that 0 means not known to be infeasible
+        private final int[] infeasibleAt;
+
+        private Entry(int size) {
+            infeasibleAt = new int[size];
+        }
+    }
+
+    private final Map<TaskShape, Entry> entries = new HashMap<>();
+    private final Map<TaskShape, Boolean> seenShapes = new HashMap<>();
+    private int[] vmVersions = new int[0];
+    private int numVMs = 0;
+
+    void prepare(int numVMs) {
+        clear();
+        this.numVMs = numVMs;
+        if (vmVersions.length < numVMs)
+            vmVersions = new int[numVMs];
+        else
+            for (int i = 0; i < numVMs; i++)
+                vmVersions[i] = 0;
+    }
+
+    void clear() {
+        entries.clear();
+        seenShapes.clear();
+        numVMs = 0;
+    }
+
+    /**
+     * Get the cache entry for the given task's shape.
+     *
+     * @param request The task being evaluated.
+     * @return The cache entry for the task's shape, or {@code null} if the shape is not being cached.
+     */
+    Entry getEntry(TaskRequest request) {
+        final TaskShape shape = new TaskShape(request);
+        Entry entry = entries.get(shape);
+        if (entry == null && entries.size() < MAX_SHAPES && seenShapes.put(shape, Boolean.TRUE) != null) {
+            entry = new Entry(numVMs);
+            entries.put(shape, entry);
+        }
+        return entry;
+    }
+
+    /**
+     * Tell whether the VM at the given slot is known to not have enough resources for the entry's shape.
+     */
+    boolean isKnownInfeasible(Entry entry, int slot) {
+        return entry.infeasibleAt[slot] == vmVersions[slot] + 1;
+    }
+
+    /**
+     * Remember that the VM at the given slot does not have enough resources for a task of the entry's shape. Only
+     * resource failures must be recorded, not failures due to constraints or fitness.
+     */
+    void recordInfeasible(Entry entry, int slot) {
+        entry.infeasibleAt[slot] = vmVersions[slot] + 1;
+    }
+
+    /**
+     * Invalidate cached failures of the VM at the given slot, upon the VM receiving an assignment.
+     */
+    void invalidate(int slot) {
+        if (slot >= 0 && slot < numVMs)
+            vmVersions[slot]++;
+    }
+}
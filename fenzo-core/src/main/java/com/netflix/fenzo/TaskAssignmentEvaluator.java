@@ -0,0 +1,785 @@
+/*
+ * Copyright 2017 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.fenzo;
+
+import com.netflix.fenzo.functions.Func1;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Evaluates assignment of one task at a time against all VMs available in a scheduling iteration. The VMs are
+ * held in an array for the whole iteration, and a fixed set of worker slots claim chunks of that array through a
+ * shared cursor. The worker slots, including their result buffers, are created once and reused for every task,
+ * so that evaluating a task does not create queues, callables, or futures.
+ * <P>
+ * For tasks without hard constraints, only the VMs that the {@link CapacityFrontier} finds to have enough resources
+ * for the task are visited, the others are skipped without trying the task on them. Assignment results for them are
+ * created only if the task cannot be assigned, when they are needed to report assignment failures.
+ * <P>
+ * For tasks with hard constraints that require hosts to have certain values of attributes, see
+ * {@link HostAttributeConstraintEvaluator#getRequiredHostAttributeValues(TaskRequest)}, only the VMs with those values
+ * are visited, found through the {@link HostAttributeIndex}. The others are evaluated, for the failures of the
+ * constraints, only if the task cannot be assigned.
+ * <P>
+ * When a sample size K is set, evaluation of a task stops once K VMs have been found that the task can be assigned to,
+ * and the best of them is picked. The VMs are visited starting at a position that rotates across tasks, so that
+ * successive tasks sample different VMs. If fewer than K VMs fit, all VMs end up being evaluated, the same as
+ * without sampling.
+ * <P>
+ * With a {@link BatchVMTaskFitnessCalculator}, each worker scores the VMs of a claimed chunk that the task fits on
+ * in a single call, reading their resources from the capacity frontier, instead of calling the fitness calculator
+ * for each VM.
+ * <P>
+ * The number of worker slots used for a task, and the number of VMs they claim at a time, come from the
+ * {@link EvaluationParallelismPolicy}. The calling thread takes part in the evaluation as the first worker slot, and
+ * once it runs out of VMs to claim, withdraws the worker slots that the executor has not started yet instead of
+ * waiting for them. This keeps a busy or shared executor from delaying the evaluation. Withdrawn worker slots are
+ * removed from the queue of a {@link ThreadPoolExecutor}. With other executors, a worker slot still queued is used
+ * for the next task instead of being queued again, so that at most one runnable per worker slot is ever queued.
+ * This class is not thread safe, it is expected to be called only from within a scheduling iteration.
+ */
+class TaskAssignmentEvaluator {
+
+    private static final Logger logger = LoggerFactory.getLogger(TaskAssignmentEvaluator.class);
+
+    private static final int IDLE = 0;
+    private static final int QUEUED = 1;
+    private static final int RUNNING = 2;
+
+    // the IDs of the results counted by countFailuresTo() are the slot of the VM shifted left by 2, or'ed with how
+    // the result of the VM is created
+    private static final int EVALUATED = 0;
+    private static final int SKIPPED = 1;
+    private static final int FILTERED = 2;
+
+    private class Worker implements Runnable {
+        private final AtomicInteger state = new AtomicInteger(IDLE);
+        // whether this worker is in the executor's queue and not started yet, so that a worker withdrawn from one
+        // task and not removed from the queue is used for the next task instead of being queued again
+        private final AtomicBoolean inExecutor = new AtomicBoolean();
+        // slots of the VMs the task was tried on, whose results are created from the VMs only when asked for
+        private int[] evaluatedSlots = new int[16];
+        private int numEvaluated;
+        // slots of the VMs known to not have enough resources without trying the task on them
+        private int[] skippedSlots = new int[16];
+        private int numSkipped;
+        // slots of the VMs the task fits on, waiting to be scored by the batch fitness calculator, and their fitness
+        private int[] pendingSlots = new int[16];
+        private double[] pendingFitness = new double[16];
+        private int numPending;
+        // time taken by each step of trying tasks on VMs, accumulated across the scheduling iteration
+        private final long[] evalNanos = new long[3];
+        private int bestSlot;
+        private double bestFitness;
+        private Exception exception;
+
+        private void reset() {
+            numEvaluated = 0;
+            numSkipped = 0;
+            numPending = 0;
+            bestSlot = -1;
+            bestFitness = 0.0;
+            exception = null;
+        }
+
+        private void addEvaluated(int slot) {
+            if (numEvaluated == evaluatedSlots.length)
+                evaluatedSlots = Arrays.copyOf(evaluatedSlots, numEvaluated * 2);
+            evaluatedSlots[numEvaluated++] = slot;
+        }
+
+        private void addSkipped(int slot) {
+            if (numSkipped == skippedSlots.length)
+                skippedSlots = Arrays.copyOf(skippedSlots, numSkipped * 2);
+            skippedSlots[numSkipped++] = slot;
+        }
+
+        private void addPending(int slot) {
+            if (numPending == pendingSlots.length) {
+                pendingSlots = Arrays.copyOf(pendingSlots, numPending * 2);
+                pendingFitness = new double[numPending * 2];
+            }
+            pendingSlots[numPending++] = slot;
+        }
+
+        private int getNumEvaluated() {
+            return numEvaluated + numSkipped;
+        }
+
+        @Override
+        public void run() {
+            inExecutor.set(false);
+            // the worker may have been withdrawn by the calling thread before the executor got to it
+            if (state.compareAndSet(QUEUED, RUNNING))
+                evaluateAndSignal();
+        }
+
+        private void evaluateAndSignal() {
+            try {
+                evalAssignments(this);
+            }
+            catch (Exception e) {
+                exception = e;
+            }
+            finally {
+                state.set(IDLE);
+                if (pending.decrementAndGet() == 0)
+                    LockSupport.unpark(waiter);
+            }
+        }
+    }
+
+    private final ExecutorService executorService;
+    private final int minWorkers;
+    private final int maxWorkers;
+    private final int serialBelowNumVMs;
+    private final EvaluationParallelismPolicy parallelismPolicy;
+    private final int sampleSize;
+    private final boolean recordEvalNanos;
+    private final VMTaskFitnessCalculator fitnessCalculator;
+    // the fitness calculator, if it scores VMs in batches, null otherwise
+    private final BatchVMTaskFitnessCalculator batchFitnessCalculator;
+    private final TaskTrackerState taskTrackerState;
+    private final Func1<Double, Boolean> isFitnessGoodEnoughFunction;
+    private final ScalarResourceRegistry scalarRegistry;
+    private final Worker[] workers;
+    private final AtomicInteger cursor = new AtomicInteger();
+    private final AtomicInteger pending = new AtomicInteger();
+    private final AtomicInteger numSuccessful = new AtomicInteger();
+    private final ShapeFeasibilityCache feasibilityCache = new ShapeFeasibilityCache();
+    private final ConstraintResultCache constraintResults = new ConstraintResultCache();
+    private AssignableVirtualMachine[] vms = new AssignableVirtualMachine[0];
+    private CapacityFrontier frontier;
+    private HostAttributeIndex attributeIndex;
+    // slots of the VMs with each attribute value required by the tasks of this iteration, as bits
+    private final Map<String, Map<String, long[]>> attributeValueSlots = new HashMap<>();
+    private long[] requiredSlotBits = new long[0];
+    private long[] valueSlotBits = new long[0];
+    // the constraints of the current task that require attribute values, and the slots of the VMs with them as bits,
+    // for counting the failures of the constraints on the VMs without the values
+    private ConstraintEvaluator[] requiringConstraints = new ConstraintEvaluator[0];
+    private long[][] requiringConstraintSlotBits = new long[0][];
+    private int numRequiringConstraints = 0;
+    // whether the candidates of the current task are the VMs with the attribute values it requires
+    private boolean candidatesByAttributes = false;
+    private int[] candidates = new int[0];
+    private int numCandidates = 0;
+    private int numVMs = 0;
+    private int numWorkersUsed = 0;
+    private int bestSlot = -1;
+    private TaskAssignmentResult bestResult;
+    private volatile int vmsPerClaim = 1;
+    private volatile int startOffset = 0;
+    private int rotation = 0;
+    private volatile TaskRequest task;
+    // the task's scalar resource requests, converted once for evaluating it on all VMs
+    private volatile double[] taskScalarRequests = ScalarResourceRegistry.NO_SCALARS;
+    private volatile ShapeFeasibilityCache.Entry shapeEntry;
+    private volatile ConstraintResultCache.Entry constraintEntry;
+    private volatile boolean done;
+    private volatile Thread waiter;
+
+    /**
+     * @param executorService The executor to run worker slots other than the first on, may be {@code null} if
+     *                        {@code maxWorkers} is 1.
+     * @param minWorkers Minimum number of worker slots to use for a task when evaluating in parallel.
+     * @param maxWorkers Maximum number of worker slots to use for a task, including the calling thread.
+     * @param serialBelowNumVMs Evaluate tasks in the calling thread alone when there are fewer VMs than this.
+     * @param parallelismPolicy The policy deciding the number of worker slots and VMs per claim.
+     * @param sampleSize Number of VMs to find that fit a task before stopping its evaluation, or 0 to evaluate
+     *                   until a good enough fitness is found.
+     * @param recordEvalNanos Whether to time the steps of trying tasks on VMs, see {@link #addEvalNanosTo(long[])}.
+     * @param fitnessCalculator The fitness calculator to evaluate assignments with.
+     * @param isFitnessGoodEnoughFunction The function that decides if a fitness is good enough to stop evaluating.
+     * @param taskTracker The task tracker whose state is passed to a batch fitness calculator.
+     * @param scalarRegistry The registry of the scheduler's scalar resources, to convert task requests with.
+     */
+    TaskAssignmentEvaluator(ExecutorService executorService, int minWorkers, int maxWorkers, int serialBelowNumVMs,
+                            EvaluationParallelismPolicy parallelismPolicy, int sampleSize, boolean recordEvalNanos,
+                            VMTaskFitnessCalculator fitnessCalculator,
+                            Func1<Double, Boolean> isFitnessGoodEnoughFunction, final TaskTracker taskTracker,
+                            ScalarResourceRegistry scalarRegistry) {
+        this.executorService = executorService;
+        this.maxWorkers = executorService == null ? 1 : Math.max(1, maxWorkers);
+        this.minWorkers = Math.min(this.maxWorkers, Math.max(1, minWorkers));
+        this.serialBelowNumVMs = serialBelowNumVMs;
+        this.parallelismPolicy = parallelismPolicy;
+        this.sampleSize = Math.max(0, sampleSize);
+        this.recordEvalNanos = recordEvalNanos;
+        this.fitnessCalculator = fitnessCalculator;
+        this.isFitnessGoodEnoughFunction = isFitnessGoodEnoughFunction;
+        this.scalarRegistry = scalarRegistry;
+        batchFitnessCalculator = fitnessCalculator instanceof BatchVMTaskFitnessCalculator ?
+                (BatchVMTaskFitnessCalculator) fitnessCalculator : null;
+        taskTrackerState = new TaskTrackerState() {
+            @Override
+            public Map<String, TaskTracker.ActiveTask> getAllRunningTasks() {
+                return taskTracker.getAllRunningTasks();
+            }
+
+            @Override
+            public Map<String, TaskTracker.ActiveTask> getAllCurrentlyAssignedTasks() {
+                return taskTracker.getAllAssignedTasks();
+            }
+
+            @Override
+            public AttributeValueCounts getCoTaskAttributeCounts(TaskRequest taskRequest, String attributeName) {
+                return taskTracker.getCoTaskAttributeCounts(taskRequest, attributeName);
+            }
+        };
+        workers = new Worker[this.maxWorkers];
+        for (int w = 0; w < workers.length; w++)
+            workers[w] = new Worker();
+    }
+
+    /**
+     * Set the VMs to evaluate assignments on for the tasks of the current scheduling iteration.
+     *
+     * @param avms The VMs available for assignments in this iteration.
+     * @param frontier The capacity frontier of the VMs, with slots in the same order as {@code avms}.
+     * @param attributeIndex The index of the attribute values of the VMs, or {@code null} to visit all VMs for tasks
+     *                       with hard constraints.
+     */
+    void prepare(List<AssignableVirtualMachine> avms, CapacityFrontier frontier, HostAttributeIndex attributeIndex) {
+        clear();
+        this.frontier = frontier;
+        this.attributeIndex = attributeIndex;
+        if (vms.length < avms.size())
+            vms = new AssignableVirtualMachine[avms.size()];
+        for (AssignableVirtualMachine avm : avms)
+            vms[numVMs++] = avm;
+        if (candidates.length < numVMs)
+            candidates = new int[numVMs];
+        final int numWords = (numVMs + 63) >>> 6;
+        if (requiredSlotBits.length < numWords) {
+            requiredSlotBits = new long[numWords];
+            valueSlotBits = new long[numWords];
+        }
+        feasibilityCache.prepare(numVMs);
+        for (Worker w : workers)
+            Arrays.fill(w.evalNanos, 0L);
+    }
+
+    /**
+     * Add the time taken, summed across worker slots, by each step of trying the tasks of the current scheduling
+     * iteration on VMs, if recording it was enabled. The array is indexed by
+     * {@link AssignableVirtualMachine#HARD_CONSTRAINTS_NANOS}, {@link AssignableVirtualMachine#RESOURCES_NANOS}, and
+     * {@link AssignableVirtualMachine#FITNESS_NANOS}.
+     *
+     * @param totals The array to add the times to.
+     */
+    void addEvalNanosTo(long[] totals) {
+        for (Worker w : workers)
+            for (int i = 0; i < w.evalNanos.length; i++)
+                totals[i] += w.evalNanos[i];
+    }
+
+    /**
+     * Release references to the VMs and results held from the scheduling iteration that just completed.
+     */
+    void clear() {
+        for (int i = 0; i < numVMs; i++)
+            vms[i] = null;
+        numVMs = 0;
+        numCandidates = 0;
+        frontier = null;
+        attributeIndex = null;
+        attributeValueSlots.clear();
+        Arrays.fill(requiringConstraints, null);
+        numRequiringConstraints = 0;
+        candidatesByAttributes = false;
+        for (Worker w : workers)
+            w.reset();
+        numWorkersUsed = 0;
+        bestSlot = -1;
+        bestResult = null;
+        task = null;
+        shapeEntry = null;
+        constraintEntry = null;
+        taskScalarRequests = ScalarResourceRegistry.NO_SCALARS;
+        feasibilityCache.clear();
+        constraintResults.clear();
+    }
+
+    /**
+     * Evaluate assignment of the given task across all VMs of this iteration. Results are available from this
+     * object until the next call to this method.
+     *
+     * @param request The task to evaluate.
+     */
+    void evaluate(TaskRequest request) {
+        taskScalarRequests = scalarRegistry.toVector(request.getScalarRequests());
+        final long[] requiredSlots = attributeIndex == null ? null : getRequiredSlots(request);
+        candidatesByAttributes = requiredSlots != null;
+        if (requiredSlots != null)
+            numCandidates = toSlots(requiredSlots, candidates);
+        else if (useFrontierFor(request))
+            numCandidates = frontier.getCandidates(request, taskScalarRequests, candidates);
+        else {
+            for (int m = 0; m < numVMs; m++)
+                candidates[m] = m;
+            numCandidates = numVMs;
+        }
+        final long start = System.nanoTime();
+        final int nWorkers = getNumWorkers(numCandidates);
+        vmsPerClaim = Math.max(1, parallelismPolicy.getVMsPerClaim(numCandidates, nWorkers));
+        if (logger.isDebugEnabled())
+            logger.debug("Using {} workers, claiming {} VMs at a time, for evaluating assignments for task {}",
+                    nWorkers, vmsPerClaim, request.getId());
+        for (int w = 0; w < nWorkers; w++)
+            workers[w].reset();
+        numWorkersUsed = nWorkers;
+        bestSlot = -1;
+        bestResult = null;
+        cursor.set(0);
+        numSuccessful.set(0);
+        startOffset = sampleSize > 0 && numCandidates > 0 ? rotation % numCandidates : 0;
+        done = false;
+        shapeEntry = feasibilityCache.getEntry(request);
+        constraintEntry = constraintResults.getEntry(request);
+        task = request;
+        waiter = Thread.currentThread();
+        pending.set(nWorkers);
+        for (int w = 1; w < nWorkers; w++) {
+            final Worker worker = workers[w];
+            // set before checking if the worker is still queued from an earlier task, for it to take this task if
+            // the executor starts it in between
+            worker.state.set(QUEUED);
+            if (worker.inExecutor.get())
+                continue;
+            worker.inExecutor.set(true);
+            try {
+                executorService.execute(worker);
+            }
+            catch (RejectedExecutionException e) {
+                worker.inExecutor.set(false);
+                // the calling thread evaluates the VMs this worker would have
+                withdraw(worker);
+            }
+        }
+        workers[0].evaluateAndSignal();
+        // all VMs have been claimed by now, workers not started yet have nothing left to do
+        for (int w = 1; w < nWorkers; w++)
+            withdraw(workers[w]);
+        while (pending.get() > 0)
+            LockSupport.park(this);
+        int numEvaluated = 0;
+        for (int w = 0; w < nWorkers; w++)
+            numEvaluated += workers[w].getNumEvaluated();
+        if (sampleSize > 0)
+            rotation = (rotation + numEvaluated) & Integer.MAX_VALUE;
+        parallelismPolicy.evaluated(numEvaluated, nWorkers, System.nanoTime() - start);
+    }
+
+    private int getNumWorkers(int numVMs) {
+        if (maxWorkers == 1 || numVMs < serialBelowNumVMs)
+            return 1;
+        int n = Math.min(maxWorkers, Math.max(minWorkers, parallelismPolicy.getNumWorkers(numVMs, maxWorkers)));
+        return Math.max(1, Math.min(n, numVMs));
+    }
+
+    private void withdraw(Worker worker) {
+        if (worker.state.compareAndSet(QUEUED, IDLE)) {
+            pending.decrementAndGet();
+            // don't leave it in a shared executor's queue for other tasks to wait behind
+            if (executorService instanceof ThreadPoolExecutor && worker.inExecutor.get() &&
+                    ((ThreadPoolExecutor) executorService).remove(worker))
+                worker.inExecutor.set(false);
+        }
+    }
+
+    private void evalAssignments(Worker worker) {
+        final TaskRequest request = task;
+        final double[] scalarRequests = taskScalarRequests;
+        final ShapeFeasibilityCache.Entry entry = shapeEntry;
+        final ConstraintResultCache.Entry cachedConstraints = constraintEntry;
+        final int claim = vmsPerClaim;
+        final int start = startOffset;
+        while (!done) {
+            final int from = cursor.getAndAdd(claim);
+            if (from >= numCandidates)
+                return;
+            final int to = Math.min(from + claim, numCandidates);
+            for (int c = from; c < to; c++) {
+                if (sampleSize > 0 && done)
+                    break; // the sample is complete, no need to finish the machines claimed
+                final int p = c + start < numCandidates ? c + start : c + start - numCandidates;
+                final int m = candidates[p];
+                final AssignableVirtualMachine avm = vms[m];
+                if (logger.isDebugEnabled()) {
+                    logger.debug("Evaluting task assignment on host " + avm.getHostname());
+                    logger.debug("CurrTotalRes on host {}: {}", avm.getHostname(), avm.getCurrTotalLease());
+                }
+                if (entry != null && feasibilityCache.isKnownInfeasible(entry, m)) {
+                    // a task of the same shape already found this VM short of resources
+                    worker.addSkipped(m);
+                    continue;
+                }
+                final long[] evalNanos = recordEvalNanos ? worker.evalNanos : null;
+                final int outcome = batchFitnessCalculator == null ?
+                        avm.evaluate(request, scalarRequests, fitnessCalculator, cachedConstraints, evalNanos) :
+                        avm.evaluateUpToFitness(request, scalarRequests, cachedConstraints, evalNanos);
+                worker.addEvaluated(m);
+                if (entry != null && outcome == AssignableVirtualMachine.EVAL_RESOURCES)
+                    feasibilityCache.recordInfeasible(entry, m);
+                if (outcome == AssignableVirtualMachine.EVAL_FITNESS_PENDING)
+                    worker.addPending(m);
+                else if (outcome == AssignableVirtualMachine.EVAL_SUCCESS)
+                    addSuccess(worker, m);
+            }
+            if (worker.numPending > 0)
+                scorePending(worker, request);
+        }
+    }
+
+    // Score the VMs of the chunk just evaluated that the task fits on in one call to the batch fitness calculator,
+    // reading their resources from the capacity frontier, and complete their evaluations.
+    private void scorePending(Worker worker, TaskRequest request) {
+        final int n = worker.numPending;
+        worker.numPending = 0;
+        final long[] evalNanos = recordEvalNanos ? worker.evalNanos : null;
+        final long start = evalNanos == null ? 0L : System.nanoTime();
+        batchFitnessCalculator.calculateFitness(request, frontier.getResourcesView(), worker.pendingSlots, n,
+                worker.pendingFitness, taskTrackerState);
+        if (evalNanos != null)
+            evalNanos[AssignableVirtualMachine.FITNESS_NANOS] += System.nanoTime() - start;
+        for (int i = 0; i < n; i++) {
+            final int m = worker.pendingSlots[i];
+            if (vms[m].applyFitness(request, worker.pendingFitness[i], evalNanos) ==
+                    AssignableVirtualMachine.EVAL_SUCCESS)
+                addSuccess(worker, m);
+        }
+    }
+
+    private void addSuccess(Worker worker, int slot) {
+        final double fitness = vms[slot].getLastEvalFitness();
+        if (isBetter(fitness, slot, worker.bestFitness, worker.bestSlot)) {
+            worker.bestFitness = fitness;
+            worker.bestSlot = slot;
+        }
+        if (isFitnessGoodEnoughFunction.call(fitness) ||
+                (sampleSize > 0 && numSuccessful.incrementAndGet() >= sampleSize)) {
+            // nobody needs to do more work, but we finish computing on rest of the machines claimed
+            done = true;
+        }
+    }
+
+    // Hard constraints are evaluated before resources, and are expected to be called on every VM for a task that has
+    // them, so such tasks are not checked against the capacity frontier.
+    private static boolean useFrontierFor(TaskRequest request) {
+        return request.getHardConstraints() == null || request.getHardConstraints().isEmpty();
+    }
+
+    // The slots of the VMs that have the attribute values required by the task's hard constraints, as bits, or null if
+    // its constraints don't require any.
+    private long[] getRequiredSlots(TaskRequest request) {
+        final List<? extends ConstraintEvaluator> hardConstraints = request.getHardConstraints();
+        if (hardConstraints == null)
+            return null;
+        final int numWords = (numVMs + 63) >>> 6;
+        boolean required = false;
+        numRequiringConstraints = 0;
+        for (ConstraintEvaluator c : hardConstraints) {
+            if (!(c instanceof HostAttributeConstraintEvaluator))
+                continue;
+            final Map<String, Set<String>> requiredValues;
+            try {
+                requiredValues = ((HostAttributeConstraintEvaluator) c).getRequiredHostAttributeValues(request);
+            } catch (RuntimeException e) {
+                // evaluate it on each VM, where its failure is reported as the task's
+                continue;
+            }
+            if (requiredValues == null || requiredValues.isEmpty())
+                continue;
+            final long[] constraintSlots = addRequiringConstraint(c, numWords);
+            boolean first = true;
+            for (Map.Entry<String, Set<String>> entry : requiredValues.entrySet()) {
+                Arrays.fill(valueSlotBits, 0, numWords, 0L);
+                for (String value : entry.getValue()) {
+                    final long[] slots = getValueSlots(entry.getKey(), value);
+                    for (int w = 0; w < numWords; w++)
+                        valueSlotBits[w] |= slots[w];
+                }
+                if (first)
+                    System.arraycopy(valueSlotBits, 0, constraintSlots, 0, numWords);
+                else {
+                    for (int w = 0; w < numWords; w++)
+                        constraintSlots[w] &= valueSlotBits[w];
+                }
+                first = false;
+            }
+            if (required) {
+                for (int w = 0; w < numWords; w++)
+                    requiredSlotBits[w] &= constraintSlots[w];
+            }
+            else
+                System.arraycopy(constraintSlots, 0, requiredSlotBits, 0, numWords);
+            required = true;
+        }
+        return required ? requiredSlotBits : null;
+    }
+
+    private long[] addRequiringConstraint(ConstraintEvaluator c, int numWords) {
+        final int n = numRequiringConstraints++;
+        if (n == requiringConstraints.length) {
+            requiringConstraints = Arrays.copyOf(requiringConstraints, n * 2 + 1);
+            requiringConstraintSlotBits = Arrays.copyOf(requiringConstraintSlotBits, n * 2 + 1);
+        }
+        requiringConstraints[n] = c;
+        if (requiringConstraintSlotBits[n] == null || requiringConstraintSlotBits[n].length < numWords)
+            requiringConstraintSlotBits[n] = new long[numWords];
+        return requiringConstraintSlotBits[n];
+    }
+
+    // The name of the first of the task's constraints that requires attribute values the VM in the slot doesn't have
+    private String getRequiringConstraintName(int slot) {
+        for (int i = 0; i < numRequiringConstraints; i++) {
+            if ((requiringConstraintSlotBits[i][slot >>> 6] & (1L << slot)) == 0L)
+                return requiringConstraints[i].getName();
+        }
+        return null;
+    }
+
+    private long[] getValueSlots(String attributeName, String value) {
+        final Map<String, long[]> slotsByValue = attributeValueSlots.computeIfAbsent(attributeName, a -> new HashMap<>());
+        long[] slots = slotsByValue.get(value);
+        if (slots == null) {
+            slots = new long[(numVMs + 63) >>> 6];
+            for (AssignableVirtualMachine avm : attributeIndex.getVMs(attributeName, value)) {
+                // VMs not available in this iteration have no slot, or that of an earlier one
+                final int slot = avm.getFrontierSlot();
+                if (slot >= 0 && slot < numVMs && vms[slot] == avm)
+                    slots[slot >>> 6] |= 1L << slot;
+            }
+            slotsByValue.put(value, slots);
+        }
+        return slots;
+    }
+
+    private int toSlots(long[] bits, int[] out) {
+        final int numWords = (numVMs + 63) >>> 6;
+        int n = 0;
+        for (int w = 0; w < numWords; w++) {
+            for (long word = bits[w]; word != 0L; word &= word - 1)
+                out[n++] = (w << 6) + Long.numberOfTrailingZeros(word);
+        }
+        return n;
+    }
+
+    private boolean isBetter(double fitness, int slot, double currentFitness, int currentSlot) {
+        return currentSlot < 0 || fitness > currentFitness ||
+                (fitness == currentFitness && vms[slot].getHostname().compareTo(vms[currentSlot].getHostname()) < 0);
+    }
+
+    /**
+     * Get exceptions encountered by the workers during the last evaluation.
+     *
+     * @return Exceptions from the workers, or an empty list if there were none.
+     */
+    List<Exception> getExceptions() {
+        List<Exception> exceptions = null;
+        for (int w = 0; w < numWorkersUsed; w++) {
+            if (workers[w].exception != null) {
+                if (exceptions == null)
+                    exceptions = new ArrayList<>();
+                exceptions.add(workers[w].exception);
+            }
+        }
+        return exceptions == null ? Collections.<Exception>emptyList() : exceptions;
+    }
+
+    /**
+     * Get the best successful assignment result from the last evaluation.
+     *
+     * @return Best assignment result, or {@code null} if there were no successful assignments.
+     */
+    TaskAssignmentResult getBestResult() {
+        if (bestResult != null)
+            return bestResult;
+        bestSlot = -1;
+        double bestFitness = 0.0;
+        for (int w = 0; w < numWorkersUsed; w++) {
+            final Worker worker = workers[w];
+            if (worker.bestSlot >= 0 && isBetter(worker.bestFitness, worker.bestSlot, bestFitness, bestSlot)) {
+                bestFitness = worker.bestFitness;
+                bestSlot = worker.bestSlot;
+            }
+        }
+        if (bestSlot >= 0)
+            bestResult = vms[bestSlot].getEvaluationResult(task);
+        return bestResult;
+    }
+
+    /**
+     * Assign the best result of the last evaluation, as returned by {@link #getBestResult()}, to its VM.
+     *
+     * @param result The best result returned by {@link #getBestResult()}.
+     */
+    void assignBestResult(TaskAssignmentResult result) {
+        result.assignResult();
+        if (bestSlot >= 0)
+            vms[bestSlot].saveCapacity(frontier, bestSlot);
+        feasibilityCache.invalidate(bestSlot);
+    }
+
+    /**
+     * Get the number of VMs on which assignment was evaluated during the last evaluation, including the VMs skipped
+     * for not having enough capacity, or the attribute values required by the task.
+     *
+     * @return Number of assignment trials.
+     */
+    int getNumAllocationTrials() {
+        int n = numVMs - numCandidates;
+        for (int w = 0; w < numWorkersUsed; w++)
+            n += workers[w].getNumEvaluated();
+        return n;
+    }
+
+    /**
+     * Copy all assignment results of the last evaluation into the given list. The results, and their failures, are
+     * created here from the outcomes remembered by the VMs and from the VMs' current usage, they must therefore be
+     * obtained before any assignments are made.
+     *
+     * @param to The list to add the results to.
+     */
+    void addResultsTo(List<TaskAssignmentResult> to) {
+        final TaskRequest request = task;
+        for (int w = 0; w < numWorkersUsed; w++) {
+            final Worker worker = workers[w];
+            for (int i = 0; i < worker.numEvaluated; i++)
+                to.add(vms[worker.evaluatedSlots[i]].getEvaluationResult(request));
+            for (int i = 0; i < worker.numSkipped; i++)
+                to.add(createSkippedResult(vms[worker.skippedSlots[i]], request));
+        }
+        if (numCandidates < numVMs) {
+            // candidates are in ascending order of slots
+            int c = 0;
+            for (int m = 0; m < numVMs; m++) {
+                if (c < numCandidates && candidates[c] == m)
+                    c++;
+                else if (candidatesByAttributes)
+                    to.add(createFilteredResult(vms[m], request));
+                else
+                    to.add(createSkippedResult(vms[m], request));
+            }
+        }
+    }
+
+    /**
+     * Count the failures of the last evaluation, as {@link #addResultsTo(List)} would report them, without creating
+     * the assignment results of all VMs. The results are created only for the closest misses. The VMs that the task
+     * was not tried on are not evaluated: those skipped for not having enough resources are counted from a check of
+     * their resources, and those without the attribute values required by the task's hard constraints are counted as
+     * failures of the first constraint whose values they don't have. Like {@link #addResultsTo(List)}, this must be
+     * called before any assignments are made.
+     *
+     * @param counts The counts to add the failures to.
+     * @return The assignment results of the closest misses, closest first.
+     */
+    List<TaskAssignmentResult> countFailuresTo(FailureReporter.Counts counts) {
+        final TaskRequest request = task;
+        for (int w = 0; w < numWorkersUsed; w++) {
+            final Worker worker = workers[w];
+            for (int i = 0; i < worker.numEvaluated; i++)
+                countEvaluated(counts, worker.evaluatedSlots[i]);
+            for (int i = 0; i < worker.numSkipped; i++)
+                countSkipped(counts, worker.skippedSlots[i], request);
+        }
+        if (numCandidates < numVMs) {
+            // candidates are in ascending order of slots
+            int c = 0;
+            for (int m = 0; m < numVMs; m++) {
+                if (c < numCandidates && candidates[c] == m)
+                    c++;
+                else if (candidatesByAttributes) {
+                    final String constraintName = getRequiringConstraintName(m);
+                    if (constraintName != null)
+                        counts.addConstraintFailure(m << 2 | FILTERED, constraintName);
+                }
+                else
+                    countSkipped(counts, m, request);
+            }
+        }
+        final List<TaskAssignmentResult> closest = new ArrayList<>(counts.getNumClosest());
+        for (int i = 0; i < counts.getNumClosest(); i++) {
+            final int id = counts.getClosestId(i);
+            final AssignableVirtualMachine avm = vms[id >>> 2];
+            switch (id & 3) {
+                case EVALUATED:
+                    closest.add(avm.getEvaluationResult(request));
+                    break;
+                case SKIPPED:
+                    closest.add(createSkippedResult(avm, request));
+                    break;
+                default:
+                    closest.add(createFilteredResult(avm, request));
+            }
+        }
+        return closest;
+    }
+
+    private void countEvaluated(FailureReporter.Counts counts, int slot) {
+        final AssignableVirtualMachine avm = vms[slot];
+        switch (avm.getLastEvalOutcome()) {
+            case AssignableVirtualMachine.EVAL_EXCLUSIVE_HOST:
+            case AssignableVirtualMachine.EVAL_HARD_CONSTRAINT:
+                counts.addConstraintFailure(slot << 2 | EVALUATED, avm.getLastFailedConstraintName());
+                break;
+            case AssignableVirtualMachine.EVAL_RESOURCES:
+                counts.addResourceFailures(slot << 2 | EVALUATED,
+                        avm.countResourceFailures(task, counts.getResourceCounts()));
+                break;
+            case AssignableVirtualMachine.EVAL_FITNESS:
+                counts.getResourceCounts()[VMResource.Fitness.ordinal()]++;
+                counts.addResourceFailures(slot << 2 | EVALUATED, 0.0);
+                break;
+            default:
+                // no leases, no result to count
+        }
+    }
+
+    private void countSkipped(FailureReporter.Counts counts, int slot, TaskRequest request) {
+        counts.addResourceFailures(slot << 2 | SKIPPED,
+                vms[slot].countResourceFailures(request, counts.getResourceCounts()));
+    }
+
+    // The result of a VM that the task was not tried on for not having the attribute values required by its hard
+    // constraints, from evaluating the constraints on it now.
+    private TaskAssignmentResult createFilteredResult(AssignableVirtualMachine avm, TaskRequest request) {
+        avm.evaluateUpToFitness(request, taskScalarRequests, constraintEntry, null);
+        final TaskAssignmentResult result = avm.getEvaluationResult(request);
+        return result == null ? createSkippedResult(avm, request) : result;
+    }
+
+    private static TaskAssignmentResult createSkippedResult(AssignableVirtualMachine avm, TaskRequest request) {
+        return new TaskAssignmentResult(avm, request, false, avm.getResourceAssignmentFailures(request), null, 0.0);
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright 2017 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.fenzo;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * An aggregated summary of why a task could not be assigned, reported when using
+ * {@link FailureReportingMode#Aggregated}.
+ */
+public class TaskFailureSummary {
+    private final int numVMsEvaluated;
+    private final Map<VMResource, Integer> resourceFailureCounts;
+    private final Map<String, Integer> constraintFailureCounts;
+    private final boolean detailed;
+
+    TaskFailureSummary(int numVMsEvaluated, Map<VMResource, Integer> resourceFailureCounts,
+                       Map<String, Integer> constraintFailureCounts, boolean detailed) {
+        this.numVMsEvaluated = numVMsEvaluated;
+        this.resourceFailureCounts = Collections.unmodifiableMap(resourceFailureCounts);
+        this.constraintFailureCounts = Collections.unmodifiableMap(constraintFailureCounts);
+        this.detailed = detailed;
+    }
+
+    /**
+     * Get the number of assignment results the summary was aggregated from, usually one for each VM evaluated.
+     *
+     * @return Number of assignment results aggregated.
+     */
+    public int getNumVMsEvaluated() {
+        return numVMsEvaluated;
+    }
+
+    /**
+     * Get the number of assignment results that reported a failure for each resource. A result that failed for
+     * more than one resource is counted for each of them.
+     *
+     * @return Map of resource to the number of failures for that resource.
+     */
+    public Map<VMResource, Integer> getResourceFailureCounts() {
+        return resourceFailureCounts;
+    }
+
+    /**
+     * Get the number of assignment results that reported a failure for each constraint, keyed by the name of the
+     * constraint.
+     *
+     * @return Map of constraint name to the number of failures for that constraint.
+     */
+    public Map<String, Integer> getConstraintFailureCounts() {
+        return constraintFailureCounts;
+    }
+
+    /**
+     * Indicate whether the task was sampled for full detail, in which case {@link SchedulingResult#getFailures()}
+     * holds the assignment results from all VMs evaluated for the task, instead of only the closest misses.
+     *
+     * @return {@code true} if full detail is available for the task.
+     */
+    public boolean isDetailed() {
+        return detailed;
+    }
+
+    @Override
+    public String toString() {
+        return "TaskFailureSummary{" +
+                "numVMsEvaluated=" + numVMsEvaluated +
+                ", resourceFailureCounts=" + resourceFailureCounts +
+                ", constraintFailureCounts=" + constraintFailureCounts +
+                ", detailed=" + detailed +
+                '}';
+    }
+}
@@ -28,4 +28,13 @@ public interface TaskIterator {
      * @throws TaskQueueException if there were errors retrieving the next task from the queue.
      */
     Assignable<? extends TaskRequest> next() throws TaskQueueException;
+
+    /**
+     * Called when the scheduling iteration stops before this iterator returned {@code null}, because the iteration
+     * ran out of its time or task budget. Implementations may record where they stopped, so that the next
+     * scheduling iteration continues from there instead of from the first task. The default implementation does
+     * nothing.
+     */
+    default void suspend() {
+    }
 }
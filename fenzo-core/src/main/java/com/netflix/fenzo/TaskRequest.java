@@ -18,6 +18,7 @@ package com.netflix.fenzo;
 
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 
 /**
  * Describes a task to be assigned to a host and its requirements.
@@ -52,6 +53,24 @@ public interface TaskRequest {
         public int getNumSubResources() {
             return numSubResources;
         }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o)
+                return true;
+            if (o == null || getClass() != o.getClass())
+                return false;
+            NamedResourceSetRequest that = (NamedResourceSetRequest) o;
+            return numSets == that.numSets &&
+                    numSubResources == that.numSubResources &&
+                    Objects.equals(resName, that.resName) &&
+                    Objects.equals(resValue, that.resValue);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(resName, resValue, numSets, numSubResources);
+        }
     }
 
     class AssignedResources {
@@ -19,6 +19,7 @@ package com.netflix.fenzo;
 import com.netflix.fenzo.plugins.NoOpScaleDownOrderEvaluator;
 import com.netflix.fenzo.queues.Assignable;
 import com.netflix.fenzo.queues.QueuableTask;
+import com.netflix.fenzo.queues.TaskQueue;
 import com.netflix.fenzo.sla.ResAllocs;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -27,13 +28,8 @@ import com.netflix.fenzo.functions.Action2;
 import com.netflix.fenzo.functions.Func1;
 
 import java.util.*;
-import java.util.concurrent.ArrayBlockingQueue;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.Callable;
-import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
@@ -66,8 +62,6 @@ import java.util.stream.Collectors;
  */
 public class TaskScheduler {
 
-    private static final int PARALLEL_SCHED_EVAL_MIN_BATCH_SIZE = 30;
-
     /**
      * The Builder is how you construct a {@link TaskScheduler} object with particular characteristics. Chain
      * its methods and then call {@link #build build()} to create a {@code TaskScheduler}.
@@ -99,6 +93,20 @@ public class TaskScheduler {
         private boolean disableShortfallEvaluation=false;
         private Map<String, ResAllocs> resAllocs=null;
         private boolean singleOfferMode=false;
+        private ExecutorService schedulingExecutor=null;
+        private int minSchedulingParallelism=1;
+        private int maxSchedulingParallelism=Runtime.getRuntime().availableProcessors();
+        private int serialEvaluationBelowNumVMs=0;
+        private EvaluationParallelismPolicy evaluationParallelismPolicy=EvaluationParallelismPolicies.DEFAULT;
+        private FailureReportingMode failureReportingMode=FailureReportingMode.Full;
+        private int maxClosestMissesPerTask=5;
+        private double failureDetailSamplingFraction=0.0;
+        private int evaluationSampleSize=0;
+        private long maxSchedulingIterationMillis=0L;
+        private int maxTasksPerSchedulingIteration=0;
+        private SchedulerMetrics schedulerMetrics=null;
+        private Func1<TaskRequest, String> coTaskGroupKeyGetter=null;
+        private boolean publishSnapshots=false;
 
         /**
          * (Required) Call this method to establish a method that your task scheduler will call to notify you
@@ -260,6 +268,23 @@ public class TaskScheduler {
             return this;
         }
 
+        /**
+         * Use this method to set how tasks are grouped into co-tasks for
+         * {@link TaskTrackerState#getCoTaskAttributeCounts(TaskRequest, String)}, which host attribute constraints
+         * such as {@link com.netflix.fenzo.plugins.UniqueHostAttrConstraint} and
+         * {@link com.netflix.fenzo.plugins.BalancedHostAttrConstraint} use when created without a co-tasks getter.
+         * Tasks with the same key are co-tasks of each other, tasks for which the function returns {@code null}
+         * have no co-tasks. By default, tasks are grouped by their task group name.
+         *
+         * @param getter a single-argument function that accepts a task and returns its co-task group key, for
+         *               example the ID of the job the task belongs to
+         * @return this same {@code Builder}, suitable for further chaining or to build the {@link TaskScheduler}
+         */
+        public Builder withCoTaskGroupKeyGetter(Func1<TaskRequest, String> getter) {
+            this.coTaskGroupKeyGetter = getter;
+            return this;
+        }
+
         /**
          * Disable resource shortfall evaluation. The shortfall evaluation is performed when evaluating the
          * autoscaling needs. This is useful for evaluating the actual resources needed to scale up by, for
@@ -392,6 +417,212 @@ public class TaskScheduler {
             return this;
         }
 
+        /**
+         * Use the given executor to evaluate task assignments in parallel, instead of a thread pool created by the
+         * task scheduler. This allows several task schedulers in the same JVM to share one pool of threads, for
+         * example, a {@link java.util.concurrent.ForkJoinPool}. The task scheduler does not shut down the given
+         * executor when it is shut down. The thread running the scheduling iteration always takes part in the
+         * evaluation, and does not wait for evaluations that the executor has not started by the time it is done.
+         * The executor is also used to prepare the VMs of large clusters for each scheduling iteration in parallel.
+         *
+         * @param executor The executor to use for evaluating task assignments.
+         * @return this same {@code Builder}, suitable for further chaining or to build the {@link TaskScheduler}
+         */
+        public Builder withSchedulingExecutor(ExecutorService executor) {
+            this.schedulingExecutor = executor;
+            return this;
+        }
+
+        /**
+         * Set the minimum and maximum number of threads to evaluate a task's assignment with, including the thread
+         * running the scheduling iteration. The minimum applies only when a task is evaluated in parallel. If no
+         * executor is set with {@link #withSchedulingExecutor(ExecutorService)}, the task scheduler creates a thread
+         * pool with the maximum number of threads, unless the maximum is 1. By default, the maximum is the number
+         * of available processors, and the minimum is 1. The maximum also limits the number of threads that prepare
+         * VMs for a scheduling iteration.
+         *
+         * @param min The minimum number of threads to use for evaluating a task in parallel.
+         * @param max The maximum number of threads to use for evaluating a task.
+         * @return this same {@code Builder}, suitable for further chaining or to build the {@link TaskScheduler}
+         */
+        public Builder withSchedulingParallelism(int min, int max) {
+            if(min < 1 || max < min)
+                throw new IllegalArgumentException("Invalid scheduling parallelism, min=" + min + ", max=" + max);
+            this.minSchedulingParallelism = min;
+            this.maxSchedulingParallelism = max;
+            return this;
+        }
+
+        /**
+         * Evaluate task assignments serially, in the thread running the scheduling iteration, when fewer than the
+         * given number of VMs are available for assignments. Handing off the evaluation to other threads costs
+         * more than it saves for small clusters. By default, parallel evaluation is decided by the
+         * {@link EvaluationParallelismPolicy} alone.
+         *
+         * @param numVMs The number of VMs below which tasks are evaluated serially.
+         * @return this same {@code Builder}, suitable for further chaining or to build the {@link TaskScheduler}
+         */
+        public Builder withSerialEvaluationBelowNumVMs(int numVMs) {
+            this.serialEvaluationBelowNumVMs = numVMs;
+            return this;
+        }
+
+        /**
+         * Set the policy that decides how many threads evaluate each task's assignment, and how many VMs each of
+         * them claims at a time. By default, {@link EvaluationParallelismPolicies#DEFAULT} is used. Use
+         * {@link EvaluationParallelismPolicies#adaptive()} to size them from the measured time to evaluate tasks
+         * on VMs.
+         *
+         * @param policy The evaluation parallelism policy.
+         * @return this same {@code Builder}, suitable for further chaining or to build the {@link TaskScheduler}
+         */
+        public Builder withEvaluationParallelismPolicy(EvaluationParallelismPolicy policy) {
+            if(policy == null)
+                throw new IllegalArgumentException("Evaluation parallelism policy must be non-null");
+            this.evaluationParallelismPolicy = policy;
+            return this;
+        }
+
+        /**
+         * Evaluate each task on a sample of VMs instead of all of them. Evaluation of a task stops once the given
+         * number of VMs are found that the task can be assigned to, and the task is assigned to the best of them.
+         * Successive tasks start sampling at different VMs. Only VMs that have enough free resources for the task are
+         * sampled. If fewer VMs than the sample size fit the task, all VMs are evaluated, the same as without
+         * sampling.
+         * <P>
+         * This trades some placement quality for scheduling time that stays about the same as the number of VMs
+         * grows, which suits large clusters of similar VMs. By default, tasks are evaluated until a VM with a good
+         * enough fitness is found, see {@link #withFitnessGoodEnoughFunction(Func1)}, or all VMs are evaluated.
+         *
+         * @param numVMs The number of VMs that fit a task to find before assigning it, 0 to not sample.
+         * @return this same {@code Builder}, suitable for further chaining or to build the {@link TaskScheduler}
+         */
+        public Builder withSampledEvaluation(int numVMs) {
+            if(numVMs < 0)
+                throw new IllegalArgumentException("Invalid sample size " + numVMs);
+            this.evaluationSampleSize = numVMs;
+            return this;
+        }
+
+        /**
+         * Limit the time a scheduling iteration spends assigning tasks. Once the limit is reached, the iteration stops
+         * considering more tasks and returns the assignments made so far, with
+         * {@link SchedulingResult#isBudgetExhausted()} set. This keeps a deep queue of pending tasks from holding up
+         * an iteration long enough for new leases to pile up and offers to go stale. By default, there is no limit.
+         * <P>
+         * The time counts from when the iteration starts considering tasks, after the VMs are prepared with the new
+         * leases, and each iteration considers at least one task, so that queued tasks keep getting assigned even when
+         * preparing the VMs takes longer than the limit. The pseudo scheduling iterations of
+         * {@link TaskSchedulingService} that find the resources to scale up for are not limited.
+         * <P>
+         * When scheduling from a task queue, such as with {@link TaskSchedulingService}, the queue records where the
+         * iteration stopped and the next iteration continues from there instead of from the highest tier, until all
+         * tasks in the queue have been considered once. Tiers and queue buckets keep their order within each
+         * iteration, and a task is considered again only after all other tasks have been considered since its last
+         * turn.
+         *
+         * @param maxMillis The maximum time, in milli seconds, to spend assigning tasks in an iteration, 0 for no
+         *                  limit.
+         * @return this same {@code Builder}, suitable for further chaining or to build the {@link TaskScheduler}
+         */
+        public Builder withMaxSchedulingIterationMillis(long maxMillis) {
+            if(maxMillis < 0L)
+                throw new IllegalArgumentException("Invalid max iteration time " + maxMillis);
+            this.maxSchedulingIterationMillis = maxMillis;
+            return this;
+        }
+
+        /**
+         * Limit the number of tasks a scheduling iteration considers for assignment. Once the limit is reached, the
+         * iteration stops the same as when running out of time, see {@link #withMaxSchedulingIterationMillis(long)}.
+         * Pseudo scheduling iterations are not limited either. By default, there is no limit.
+         *
+         * @param maxTasks The maximum number of tasks to consider in an iteration, 0 for no limit.
+         * @return this same {@code Builder}, suitable for further chaining or to build the {@link TaskScheduler}
+         */
+        public Builder withMaxTasksPerSchedulingIteration(int maxTasks) {
+            if(maxTasks < 0)
+                throw new IllegalArgumentException("Invalid max tasks per iteration " + maxTasks);
+            this.maxTasksPerSchedulingIteration = maxTasks;
+            return this;
+        }
+
+        /**
+         * Set a listener for the metrics of each scheduling iteration, such as {@link DefaultSchedulerMetrics}. When
+         * set, the scheduler times each {@link SchedulerMetrics.Phase phase} of an iteration and reports the time to
+         * the listener at the end of the iteration, followed by the iteration's {@link SchedulingResult}. The steps of
+         * evaluating tasks on VMs are timed in each evaluation and summed across the threads evaluating in parallel.
+         * By default, no metrics are recorded and iterations are not timed.
+         *
+         * @param schedulerMetrics The listener to report metrics to.
+         * @return this same {@code Builder}, suitable for further chaining or to build the {@link TaskScheduler}
+         */
+        public Builder withSchedulerMetrics(SchedulerMetrics schedulerMetrics) {
+            this.schedulerMetrics = schedulerMetrics;
+            return this;
+        }
+
+        /**
+         * Set how tasks that could not be assigned are reported in the {@link SchedulingResult}. By default,
+         * {@link FailureReportingMode#Full} is used, which reports the assignment result from every VM evaluated
+         * for every task that could not be assigned. With many pending tasks on large clusters, that can hold a very
+         * large number of objects per scheduling iteration. {@link FailureReportingMode#Aggregated} reports a summary
+         * of failure counts and only the closest misses for each task instead. The counts are taken without creating
+         * the assignment results of all VMs, and without evaluating the task on the VMs that it was not tried on, other
+         * than for the tasks sampled with {@link #withSampledFailureDetails(double)}.
+         *
+         * @param mode The failure reporting mode.
+         * @return this same {@code Builder}, suitable for further chaining or to build the {@link TaskScheduler}
+         */
+        public Builder withFailureReportingMode(FailureReportingMode mode) {
+            if(mode == null)
+                throw new IllegalArgumentException("Failure reporting mode must be non-null");
+            this.failureReportingMode = mode;
+            return this;
+        }
+
+        /**
+         * Set the maximum number of assignment results, closest to fitting the task, to report for each task that
+         * could not be assigned when using {@link FailureReportingMode#Aggregated}. The default is 5.
+         *
+         * @param n The maximum number of closest misses to report per task.
+         * @return this same {@code Builder}, suitable for further chaining or to build the {@link TaskScheduler}
+         */
+        public Builder withMaxClosestMissesPerTask(int n) {
+            this.maxClosestMissesPerTask = n;
+            return this;
+        }
+
+        /**
+         * Report the assignment results from all VMs for a random sample of the tasks that could not be assigned,
+         * when using {@link FailureReportingMode#Aggregated}. This is meant for diagnosing assignment failures at a
+         * bounded cost. By default, no tasks are sampled.
+         *
+         * @param fraction The fraction of failed tasks, between 0.0 and 1.0, to report full detail for.
+         * @return this same {@code Builder}, suitable for further chaining or to build the {@link TaskScheduler}
+         */
+        public Builder withSampledFailureDetails(double fraction) {
+            if(fraction < 0.0 || fraction > 1.0)
+                throw new IllegalArgumentException("Sampling fraction must be between 0.0 and 1.0: " + fraction);
+            this.failureDetailSamplingFraction = fraction;
+            return this;
+        }
+
+        /**
+         * Publish a {@link SchedulerSnapshot} of the state of resources, assignments, and queued tasks at the end of
+         * each scheduling iteration. Threads that only read the scheduler's state, such as dashboards, can then get
+         * the latest snapshot with {@link TaskScheduler#getLatestSnapshot()} at any time, instead of calling
+         * {@link TaskScheduler#getResourceStatus()} and the like, which fail while an iteration is running. Creating
+         * the snapshot adds work proportional to the number of VMs, and queued tasks, to each iteration. By default,
+         * snapshots are not published.
+         *
+         * @return this same {@code Builder}, suitable for further chaining or to build the {@link TaskScheduler}
+         */
+        public Builder withPublishedSnapshots() {
+            this.publishSnapshots = true;
+            return this;
+        }
+
         /**
          * Creates a {@link TaskScheduler} based on the various builder methods you have chained.
          *
@@ -412,33 +643,30 @@ public class TaskScheduler {
         }
     }
 
-    private static class EvalResult {
-        List<TaskAssignmentResult> assignmentResults;
-        TaskAssignmentResult result;
-        int numAllocationTrials;
-        Exception exception;
-
-        private EvalResult(List<TaskAssignmentResult> assignmentResults, TaskAssignmentResult result, int numAllocationTrials, Exception e) {
-            this.assignmentResults = assignmentResults;
-            this.result = result;
-            this.numAllocationTrials = numAllocationTrials;
-            this.exception = e;
-        }
-    }
-
     private final AssignableVMs assignableVMs;
     private static final Logger logger = LoggerFactory.getLogger(TaskScheduler.class);
     private static final long purgeVMsIntervalSecs = 60;
+    // indexes of the phases timed in doSchedule(), other than the steps timed by the assignment evaluator
+    private static final int PREPARE_VMS = 0;
+    private static final int QUEUE_ITERATION = 1;
+    private static final int EVALUATION = 2;
+    private static final int ASSIGNMENT = 3;
+    private static final int AUTOSCALER_INPUT = 4;
+    private static final int NUM_TIMED_PHASES = 5;
     private long lastVMPurgeAt=System.currentTimeMillis();
     private final Builder builder;
     private final StateMonitor stateMonitor;
     private final AutoScaler autoScaler;
-    private final int EXEC_SVC_THREADS=Runtime.getRuntime().availableProcessors();
-    private final ExecutorService executorService = Executors.newFixedThreadPool(EXEC_SVC_THREADS);
+    private final ExecutorService executorService;
+    private final boolean ownsExecutorService;
+    private final TaskAssignmentEvaluator assignmentEvaluator;
+    private final FailureReporter failureReporter;
     private final AtomicBoolean isShutdown = new AtomicBoolean();
     private final ResAllocsEvaluater resAllocsEvaluator;
     private final TaskTracker taskTracker;
     private volatile boolean usingSchedulingService = false;
+    // written only by the scheduling thread, read by any thread
+    private volatile SchedulerSnapshot latestSnapshot = SchedulerSnapshot.EMPTY;
     private final String usingSchedSvcMesg = "Invalid call when using task scheduling service";
 
     private TaskScheduler(Builder builder) {
@@ -447,10 +675,29 @@ public class TaskScheduler {
         this.builder = builder;
         this.stateMonitor = new StateMonitor();
         taskTracker = new TaskTracker();
+        if(builder.coTaskGroupKeyGetter != null)
+            taskTracker.setCoTaskGroupKeyGetter(builder.coTaskGroupKeyGetter);
         resAllocsEvaluator = new ResAllocsEvaluater(taskTracker, builder.resAllocs);
         assignableVMs = new AssignableVMs(taskTracker, builder.leaseRejectAction,
                 builder.leaseOfferExpirySecs, builder.maxOffersToReject, builder.autoScaleByAttributeName,
                 builder.singleOfferMode, builder.autoScaleByAttributeName);
+        if(builder.schedulingExecutor != null) {
+            executorService = builder.schedulingExecutor;
+            ownsExecutorService = false;
+        }
+        else {
+            executorService = builder.maxSchedulingParallelism > 1 ?
+                    Executors.newFixedThreadPool(builder.maxSchedulingParallelism) : null;
+            ownsExecutorService = true;
+        }
+        assignableVMs.setPreparationExecutor(executorService, builder.maxSchedulingParallelism);
+        assignmentEvaluator = new TaskAssignmentEvaluator(executorService, builder.minSchedulingParallelism,
+                builder.maxSchedulingParallelism, builder.serialEvaluationBelowNumVMs,
+                builder.evaluationParallelismPolicy, builder.evaluationSampleSize,
+                builder.schedulerMetrics != null, builder.fitnessCalculator,
+                builder.isFitnessGoodEnoughFunction, taskTracker, assignableVMs.getScalarResourceRegistry());
+        failureReporter = new FailureReporter(builder.failureReportingMode, builder.maxClosestMissesPerTask,
+                builder.failureDetailSamplingFraction);
         if(builder.autoScaleByAttributeName != null && !builder.autoScaleByAttributeName.isEmpty()) {
 
             ScaleDownConstraintExecutor scaleDownConstraintExecutor = builder.scaleDownOrderEvaluator == null
@@ -498,23 +745,6 @@ public class TaskScheduler {
         return taskTracker;
     }
 
-    private TaskAssignmentResult getSuccessfulResult(List<TaskAssignmentResult> results) {
-        double bestFitness=0.0;
-        TaskAssignmentResult bestResult=null;
-        for(int r=results.size()-1; r>=0; r--) {
-            // change to using fitness value from assignment result
-            TaskAssignmentResult res = results.get(r);
-            if(res!=null && res.isSuccessful()) {
-                if(bestResult==null || res.getFitness()>bestFitness ||
-                        (res.getFitness()==bestFitness && res.getHostname().compareTo(bestResult.getHostname())<0)) {
-                    bestFitness = res.getFitness();
-                    bestResult = res;
-                }
-            }
-        }
-        return bestResult;
-    }
-
     private boolean isGoodEnough(TaskAssignmentResult result) {
         return builder.isFitnessGoodEnoughFunction.call(result.getFitness());
     }
@@ -681,11 +911,31 @@ public class TaskScheduler {
     /* package */ SchedulingResult scheduleOnce(
             TaskIterator taskIterator,
             List<VirtualMachineLease> newLeases) throws IllegalStateException {
+        return scheduleOnce(taskIterator, newLeases, false);
+    }
+
+    /**
+     * Variant of {@link #scheduleOnce(TaskIterator, List)} for the pseudo scheduling iterations that find the
+     * resources the autoscaler is short of. A pseudo iteration considers all tasks of the iterator regardless of the
+     * iteration's time and task budgets, so that the shortfall covers all pending tasks, and it is not reported to
+     * the {@link SchedulerMetrics}.
+     */
+    /* package */ SchedulingResult pseudoScheduleOnce(
+            TaskIterator taskIterator,
+            List<VirtualMachineLease> newLeases) throws IllegalStateException {
+        return scheduleOnce(taskIterator, newLeases, true);
+    }
+
+    private SchedulingResult scheduleOnce(
+            TaskIterator taskIterator,
+            List<VirtualMachineLease> newLeases,
+            boolean pseudoScheduling) throws IllegalStateException {
         checkIfShutdown();
         try (AutoCloseable
                      ac = stateMonitor.enter()) {
             long start = System.currentTimeMillis();
-            final SchedulingResult schedulingResult = doSchedule(taskIterator, newLeases);
+            final long startNanos = System.nanoTime();
+            final SchedulingResult schedulingResult = doSchedule(taskIterator, newLeases, pseudoScheduling);
             if((lastVMPurgeAt + purgeVMsIntervalSecs*1000) < System.currentTimeMillis()) {
                 lastVMPurgeAt = System.currentTimeMillis();
                 logger.info("Purging inactive VMs");
@@ -695,7 +945,13 @@ public class TaskScheduler {
                                 new HashSet<>(schedulingResult.getResultMap().keySet())
                 );
             }
+            // the scheduling service publishes its snapshots after launching the assigned tasks, and doesn't publish
+            // those of pseudo scheduling iterations
+            if(builder.publishSnapshots && !usingSchedulingService)
+                publishSnapshot(schedulingResult, Collections.emptyMap());
             schedulingResult.setRuntime(System.currentTimeMillis() - start);
+            if(builder.schedulerMetrics != null && !pseudoScheduling)
+                builder.schedulerMetrics.iterationCompleted(schedulingResult, System.nanoTime() - startNanos);
             return schedulingResult;
         } catch (Exception e) {
             logger.error("Error with scheduling run: " + e.getMessage(), e);
@@ -710,15 +966,22 @@ public class TaskScheduler {
 
     private SchedulingResult doSchedule(
             TaskIterator taskIterator,
-            List<VirtualMachineLease> newLeases) throws Exception {
+            List<VirtualMachineLease> newLeases,
+            boolean pseudoScheduling) throws Exception {
+        final long iterationStart = System.nanoTime();
+        final SchedulerMetrics metrics = pseudoScheduling ? null : builder.schedulerMetrics;
+        final long[] phaseNanos = metrics == null ? null : new long[NUM_TIMED_PHASES];
+        final long[] evalNanos = metrics == null ? null : new long[3];
         AtomicInteger rejectedCount = new AtomicInteger();
         List<AssignableVirtualMachine> avms = assignableVMs.prepareAndGetOrderedVMs(newLeases, rejectedCount);
+        taskTracker.resolveCoTaskAttributes();
         if(logger.isDebugEnabled())
             logger.debug("Got {} avms", avms.size());
         List<AssignableVirtualMachine> inactiveAVMs = assignableVMs.getInactiveVMs();
         if(logger.isDebugEnabled())
             logger.debug("Found {} VMs with non-zero offers to assign from", avms.size());
         final boolean hasResAllocs = resAllocsEvaluator.prepare();
+        long phaseStart = metrics == null ? 0L : addPhaseNanos(phaseNanos, PREPARE_VMS, iterationStart);
         //logger.info("Got " + avms.size() + " AVMs to schedule on");
         int totalNumAllocations=0;
         Set<TaskRequest> failedTasksForAutoScaler = new HashSet<>();
@@ -732,14 +995,37 @@ public class TaskScheduler {
                 failedTasksForAutoScaler.add(taskOrFailure.getTask());
             }
         } else {
+            assignmentEvaluator.prepare(avms, assignableVMs.getCapacityFrontier(),
+                    assignableVMs.getHostAttributeIndex());
+            // the budget starts with the first task, so that slow preparation of VMs cannot use it up
+            final long deadline = builder.maxSchedulingIterationMillis > 0L && !pseudoScheduling ?
+                    System.nanoTime() + builder.maxSchedulingIterationMillis * 1000000L : 0L;
+            final int maxTasks = pseudoScheduling ? 0 : builder.maxTasksPerSchedulingIteration;
+            int numTasksConsidered = 0;
             while (true) {
+                if(numTasksConsidered > 0 &&
+                        ((maxTasks > 0 && numTasksConsidered >= maxTasks) ||
+                                (deadline != 0L && System.nanoTime() - deadline >= 0L))) {
+                    if(logger.isDebugEnabled())
+                        logger.debug("Stopping scheduling iteration after {} tasks, budget exhausted",
+                                numTasksConsidered);
+                    taskIterator.suspend();
+                    schedulingResult.setBudgetExhausted(true);
+                    break;
+                }
+                numTasksConsidered++;
+                if(metrics != null)
+                    phaseStart = System.nanoTime();
                 final Assignable<? extends TaskRequest> taskOrFailure = taskIterator.next();
+                if(metrics != null)
+                    addPhaseNanos(phaseNanos, QUEUE_ITERATION, phaseStart);
                 if(logger.isDebugEnabled())
                     logger.debug("TaskSched: task=" + (taskOrFailure == null? "null" : taskOrFailure.getTask().getId()));
                 if (taskOrFailure == null)
                     break;
                 if(taskOrFailure.hasFailure()) {
-                    schedulingResult.addFailures(
+                    failureReporter.addFailures(
+                            schedulingResult,
                             taskOrFailure.getTask(),
                             Collections.singletonList(new TaskAssignmentResult(
                                     assignableVMs.getDummyVM(),
@@ -764,7 +1050,7 @@ public class TaskScheduler {
                     if(resAllocsFailure != null) {
                         final List<TaskAssignmentResult> failures = Collections.singletonList(new TaskAssignmentResult(assignableVMs.getDummyVM(),
                                 task, false, Collections.singletonList(resAllocsFailure), null, 0.0));
-                        schedulingResult.addFailures(task, failures);
+                        failureReporter.addFailures(schedulingResult, task, failures);
                         failedTasksForAutoScaler.remove(task); // don't scale up for resAllocs failures
                         if(logger.isDebugEnabled())
                             logger.debug("Resource allocation limit reached for task " + task.getId() + ": " + resAllocsFailure);
@@ -775,66 +1061,59 @@ public class TaskScheduler {
                 if(maxResourceFailure != null) {
                     final List<TaskAssignmentResult> failures = Collections.singletonList(new TaskAssignmentResult(assignableVMs.getDummyVM(), task, false,
                             Collections.singletonList(maxResourceFailure), null, 0.0));
-                    schedulingResult.addFailures(task, failures);
+                    failureReporter.addFailures(schedulingResult, task, failures);
                     if(logger.isDebugEnabled())
                         logger.debug("Task {}: maxResource failure: {}", task.getId(), maxResourceFailure);
                     continue;
                 }
-                // create batches of VMs to evaluate assignments concurrently across the batches
-                final BlockingQueue<AssignableVirtualMachine> virtualMachines = new ArrayBlockingQueue<>(avms.size(), false, avms);
-                int nThreads = (int)Math.ceil((double)avms.size()/ PARALLEL_SCHED_EVAL_MIN_BATCH_SIZE);
-                List<Future<EvalResult>> futures = new ArrayList<>();
-                if(logger.isDebugEnabled())
-                    logger.debug("Launching {} threads for evaluating assignments for task {}", nThreads, task.getId());
-                for(int b=0; b<nThreads && b<EXEC_SVC_THREADS; b++) {
-                    futures.add(executorService.submit(new Callable<EvalResult>() {
-                        @Override
-                        public EvalResult call() throws Exception {
-                            return evalAssignments(task, virtualMachines);
-                        }
-                    }));
-                }
-                List<EvalResult> results = new ArrayList<>();
-                List<TaskAssignmentResult> bestResults = new ArrayList<>();
-                for(Future<EvalResult> f: futures) {
-                    try {
-                        EvalResult evalResult = f.get();
-                        if(evalResult.exception!=null) {
-                            logger.warn("Error during concurrent task assignment eval - " + evalResult.exception.getMessage(),
-                                    evalResult.exception);
-                            schedulingResult.addException(evalResult.exception);
-                        }
-                        else {
-                            results.add(evalResult);
-                            bestResults.add(evalResult.result);
-                            if(logger.isDebugEnabled())
-                                logger.debug("Task {}: best result so far: {}", task.getId(), evalResult.result);
-                            totalNumAllocations += evalResult.numAllocationTrials;
-                        }
-                    } catch (InterruptedException|ExecutionException e) {
-                        logger.error("Unexpected during concurrent task assignment eval - " + e.getMessage(), e);
+                if(metrics != null)
+                    phaseStart = System.nanoTime();
+                assignmentEvaluator.evaluate(task);
+                if(metrics != null)
+                    addPhaseNanos(phaseNanos, EVALUATION, phaseStart);
+                final List<Exception> exceptions = assignmentEvaluator.getExceptions();
+                if(!exceptions.isEmpty()) {
+                    for(Exception e: exceptions) {
+                        logger.warn("Error during concurrent task assignment eval - " + e.getMessage(), e);
+                        schedulingResult.addException(e);
                     }
-                }
-                if(!schedulingResult.getExceptions().isEmpty())
                     break;
-                TaskAssignmentResult successfulResult = getSuccessfulResult(bestResults);
-                List<TaskAssignmentResult> failures = new ArrayList<>();
+                }
+                totalNumAllocations += assignmentEvaluator.getNumAllocationTrials();
+                TaskAssignmentResult successfulResult = assignmentEvaluator.getBestResult();
                 if(successfulResult == null) {
                     if(logger.isDebugEnabled())
                         logger.debug("Task {}: no successful results", task.getId());
-                    for(EvalResult er: results)
-                        failures.addAll(er.assignmentResults);
-                    schedulingResult.addFailures(task, failures);
+                    if(failureReporter.reportAllResults()) {
+                        List<TaskAssignmentResult> failures =
+                                failureReporter.getFailuresList(assignmentEvaluator.getNumAllocationTrials());
+                        assignmentEvaluator.addResultsTo(failures);
+                        failureReporter.addFailures(schedulingResult, task, failures, true);
+                    }
+                    else {
+                        final List<TaskAssignmentResult> closestMisses =
+                                assignmentEvaluator.countFailuresTo(failureReporter.startCounts());
+                        failureReporter.addCounts(schedulingResult, task, closestMisses);
+                    }
                 }
                 else {
                     if(logger.isDebugEnabled())
                         logger.debug("Task {}: found successful assignment on host {}", task.getId(),
                                 successfulResult.getHostname());
-                    successfulResult.assignResult();
+                    if(metrics != null)
+                        phaseStart = System.nanoTime();
+                    assignmentEvaluator.assignBestResult(successfulResult);
+                    if(metrics != null)
+                        addPhaseNanos(phaseNanos, ASSIGNMENT, phaseStart);
                     failedTasksForAutoScaler.remove(task);
                 }
             }
+            if(metrics != null)
+                assignmentEvaluator.addEvalNanosTo(evalNanos);
+            assignmentEvaluator.clear();
         }
+        if(metrics != null)
+            phaseStart = System.nanoTime();
         List<VirtualMachineLease> idleResourcesList = new ArrayList<>();
         if(schedulingResult.getExceptions().isEmpty()) {
             List<VirtualMachineLease> expirableLeases = new ArrayList<>();
@@ -865,9 +1144,35 @@ public class TaskScheduler {
         schedulingResult.setNumAllocations(totalNumAllocations);
         schedulingResult.setTotalVMsCount(assignableVMs.getTotalNumVMs());
         schedulingResult.setIdleVMsCount(idleResourcesList.size());
+        if(metrics != null) {
+            addPhaseNanos(phaseNanos, AUTOSCALER_INPUT, phaseStart);
+            reportPhases(metrics, phaseNanos, evalNanos);
+        }
         return schedulingResult;
     }
 
+    private static long addPhaseNanos(long[] phaseNanos, int phase, long start) {
+        final long now = System.nanoTime();
+        phaseNanos[phase] += now - start;
+        return now;
+    }
+
+    private static void reportPhases(SchedulerMetrics metrics, long[] phaseNanos, long[] evalNanos) {
+        metrics.phaseCompleted(SchedulerMetrics.Phase.PrepareVMs, phaseNanos[PREPARE_VMS]);
+        metrics.phaseCompleted(SchedulerMetrics.Phase.QueueIteration, phaseNanos[QUEUE_ITERATION]);
+        metrics.phaseCompleted(SchedulerMetrics.Phase.Evaluation, phaseNanos[EVALUATION]);
+        metrics.phaseCompleted(SchedulerMetrics.Phase.HardConstraints,
+                evalNanos[AssignableVirtualMachine.HARD_CONSTRAINTS_NANOS]);
+        metrics.phaseCompleted(SchedulerMetrics.Phase.Resources, evalNanos[AssignableVirtualMachine.RESOURCES_NANOS]);
+        metrics.phaseCompleted(SchedulerMetrics.Phase.Fitness, evalNanos[AssignableVirtualMachine.FITNESS_NANOS]);
+        metrics.phaseCompleted(SchedulerMetrics.Phase.Assignment, phaseNanos[ASSIGNMENT]);
+        metrics.phaseCompleted(SchedulerMetrics.Phase.AutoScalerInput, phaseNanos[AUTOSCALER_INPUT]);
+    }
+
+    /* package */ SchedulerMetrics getSchedulerMetrics() {
+        return builder.schedulerMetrics;
+    }
+
     /* package */ Map<String, List<String>> createPseudoHosts(Map<String, Integer> groupCounts) {
         return assignableVMs.createPseudoHosts(groupCounts, autoScaler == null? name -> null : autoScaler::getRule);
     }
@@ -908,6 +1213,42 @@ public class TaskScheduler {
         }
     }
 
+    /**
+     * Returns the latest snapshot of the scheduler's state, published at the end of the last scheduling iteration.
+     * This doesn't wait for or interfere with scheduling iterations, and can be called by any number of threads,
+     * including when using a {@link TaskSchedulingService}.
+     *
+     * @return the latest snapshot, or {@link SchedulerSnapshot#EMPTY} if none was published yet, or if publishing
+     *         was not enabled with {@link Builder#withPublishedSnapshots()}
+     */
+    public SchedulerSnapshot getLatestSnapshot() {
+        return latestSnapshot;
+    }
+
+    /* package */ boolean isPublishingSnapshots() {
+        return builder.publishSnapshots;
+    }
+
+    /* package */ void publishSnapshotIntl(SchedulingResult schedulingResult,
+                                           Map<TaskQueue.TaskState, Collection<QueuableTask>> queuedTasks) {
+        try (AutoCloseable ac = stateMonitor.enter()) {
+            publishSnapshot(schedulingResult, queuedTasks);
+        }
+        catch (Exception e) {
+            logger.error("Unexpected error from state monitor: " + e.getMessage(), e);
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private void publishSnapshot(SchedulingResult schedulingResult,
+                                 Map<TaskQueue.TaskState, Collection<QueuableTask>> queuedTasks) {
+        final Map<String, VMAssignmentResult> assignments = schedulingResult.getResultMap();
+        latestSnapshot = new SchedulerSnapshot(latestSnapshot.getVersion() + 1, System.currentTimeMillis(),
+                assignableVMs.getResourceStatus(), assignableVMs.getVmCurrentStates(),
+                assignments == null ? Collections.<String, VMAssignmentResult>emptyMap() : new HashMap<>(assignments),
+                queuedTasks);
+    }
+
     /**
      * Returns the current state of all known hosts. You might occasionally use this for debugging or
      * informational purposes. If you call this method, it will obtain and hold a lock for as long as it takes
@@ -934,40 +1275,6 @@ public class TaskScheduler {
         }
     }
 
-    private EvalResult evalAssignments(TaskRequest task, BlockingQueue<AssignableVirtualMachine> virtualMachines) {
-        // This number below sort of controls minimum machines to eval, choose carefully.
-        // Having it too small increases overhead of getting next machine to evaluate on.
-        // Having it too high increases latency of thread before it returns when done
-        try {
-            int N=10;
-            List<AssignableVirtualMachine> buf = new ArrayList<>(N);
-            List<TaskAssignmentResult> results = new ArrayList<>();
-            while(true) {
-                buf.clear();
-                int n = virtualMachines.drainTo(buf, N);
-                if(n == 0)
-                    return new EvalResult(results, getSuccessfulResult(results), results.size(), null);
-                for(int m=0; m<n; m++) {
-                    final AssignableVirtualMachine avm = buf.get(m);
-                    if(logger.isDebugEnabled()) {
-                        logger.debug("Evaluting task assignment on host " + avm.getHostname());
-                        logger.debug("CurrTotalRes on host {}: {}", avm.getHostname(), avm.getCurrTotalLease());
-                    }
-                    TaskAssignmentResult result = avm.tryRequest(task, builder.fitnessCalculator);
-                    results.add(result);
-                    if(result.isSuccessful() && builder.isFitnessGoodEnoughFunction.call(result.getFitness())) {
-                        // drain rest of the queue, nobody needs to do more work.
-                        virtualMachines.clear();
-                        // Instead of returning here, we finish computing on rest of the machines in buf
-                    }
-                }
-            }
-        }
-        catch (Exception e) {
-            return new EvalResult(null, null, 0, e);
-        }
-    }
-
     /**
      * Call this method to instruct the task scheduler to reject a particular resource offer.
      *
@@ -1163,11 +1470,13 @@ public class TaskScheduler {
     }
 
     /**
-     * Mark task scheduler as shutdown and shutdown any thread pool executors created.
+     * Mark task scheduler as shutdown and shutdown any thread pool executors created. An executor set with
+     * {@link Builder#withSchedulingExecutor(ExecutorService)} is not shut down.
      */
     public void shutdown() {
         if(isShutdown.compareAndSet(false, true)) {
-            executorService.shutdown();
+            if(ownsExecutorService && executorService != null)
+                executorService.shutdown();
             if(autoScaler != null)
                 autoScaler.shutdown();
         }
@@ -105,6 +105,9 @@ public class TaskSchedulingService {
     private final BlockingQueue<Action1<List<VirtualMachineCurrentState>>> vmCurrStateRequest = new LinkedBlockingQueue<>(10);
     private final AtomicLong lastSchedIterationAt = new AtomicLong();
     private final long maxSchedIterDelay;
+    private final SchedulerMetrics schedulerMetrics;
+    // previous iteration ran out of its budget, continue it in the next loop even if nothing changed
+    private boolean resumeIteration = false;
     private volatile Func1<QueuableTask, List<String>> taskToClusterAutoScalerMapGetter = null;
 
     private TaskSchedulingService(Builder builder) {
@@ -117,6 +120,8 @@ public class TaskSchedulingService {
         loopIntervalMillis = builder.loopIntervalMillis;
         preHook = builder.preHook;
         maxSchedIterDelay = Math.max(builder.maxDelayMillis, loopIntervalMillis);
+        schedulerMetrics = builder.schedulerMetrics != null ?
+                builder.schedulerMetrics : taskScheduler.getSchedulerMetrics();
     }
 
     /**
@@ -124,7 +129,8 @@ public class TaskSchedulingService {
      * iterations of at least the value specified via {@link Builder#withLoopIntervalMillis(long)}, and at most delay
      * specified via {@link Builder#withMaxDelayMillis(long)}. The delay between consecutive iterations is longer if the
      * service notices no change since the previous iteration. Changes include additions of new tasks and additions of
-     * new leases.
+     * new leases. An iteration that ran out of its time or task budget, see
+     * {@link TaskScheduler.Builder#withMaxSchedulingIterationMillis(long)}, is continued in the next loop.
      */
     public void start() {
         executorService.scheduleWithFixedDelay(new Runnable() {
@@ -186,7 +192,7 @@ public class TaskSchedulingService {
                     // temporarily replace usage tracker in taskTracker to the pseudoQ and then put back the original one
                     taskScheduler.getTaskTracker().setUsageTrackedQueue(pTaskQueue.getUsageTracker());
                     logger.debug("Scheduling with pseudoQ and " + newLeases.size() + " new leases");
-                    final SchedulingResult schedulingResult = taskScheduler.scheduleOnce(pTaskQueue, newLeases);
+                    final SchedulingResult schedulingResult = taskScheduler.pseudoScheduleOnce(pTaskQueue, newLeases);
                     final Map<String, VMAssignmentResult> resultMap = schedulingResult.getResultMap();
                     Map<String, Integer> result = new HashMap<>();
                     if (!resultMap.isEmpty()) {
@@ -256,7 +262,7 @@ public class TaskSchedulingService {
         return Collections.emptyMap();
     }
 
-    private void scheduleOnce() {
+    /* package */ void scheduleOnce() {
         try {
             taskScheduler.checkIfShutdown();
         }
@@ -267,12 +273,14 @@ public class TaskSchedulingService {
         }
         try {
             // check if next scheduling iteration is actually needed right away
+            final long resetStart = schedulerMetrics == null ? 0L : System.nanoTime();
             final boolean qModified = taskQueue.reset();
             addPendingRunningTasks();
             removeTasks();
+            final long resetNanos = schedulerMetrics == null ? 0L : System.nanoTime() - resetStart;
             final boolean newLeaseExists = leaseBlockingQueue.peek() != null;
             final Action1<List<VirtualMachineLease>> pseudoSchedAction = pseudoSchedulingRequestQ.poll();
-            if ( qModified || newLeaseExists || doNextIteration() || pseudoSchedAction != null) {
+            if ( qModified || newLeaseExists || resumeIteration || doNextIteration() || pseudoSchedAction != null) {
                 taskScheduler.setTaskToClusterAutoScalerMapGetter(taskToClusterAutoScalerMapGetter);
                 lastSchedIterationAt.set(System.currentTimeMillis());
                 if (preHook != null)
@@ -284,9 +292,17 @@ public class TaskSchedulingService {
                     currentLeases.clear();
                 }
                 final SchedulingResult schedulingResult = taskScheduler.scheduleOnce(taskQueue, currentLeases);
+                resumeIteration = schedulingResult.isBudgetExhausted();
                 // mark end of scheduling iteration before assigning tasks.
                 taskQueue.getUsageTracker().reset();
+                final long launchStart = schedulerMetrics == null ? 0L : System.nanoTime();
                 assignTasks(schedulingResult, taskScheduler);
+                if (taskScheduler.isPublishingSnapshots())
+                    publishSnapshot(schedulingResult);
+                if (schedulerMetrics != null) {
+                    schedulerMetrics.phaseCompleted(SchedulerMetrics.Phase.QueueReset, resetNanos);
+                    schedulerMetrics.phaseCompleted(SchedulerMetrics.Phase.TaskLaunch, System.nanoTime() - launchStart);
+                }
                 schedulingResultCallback.call(schedulingResult);
                 doPendingActions();
             }
@@ -352,6 +368,17 @@ public class TaskSchedulingService {
         }
     }
 
+    private void publishSnapshot(SchedulingResult schedulingResult) {
+        final Map<TaskQueue.TaskState, Collection<QueuableTask>> queuedTasks = new HashMap<>();
+        try {
+            for (Map.Entry<TaskQueue.TaskState, Collection<QueuableTask>> entry: taskQueue.getAllTasks().entrySet())
+                queuedTasks.put(entry.getKey(), Collections.unmodifiableCollection(entry.getValue()));
+        } catch (TaskQueueException e) {
+            logger.warn("Unexpected when trying to get task list for snapshot: " + e.getMessage(), e);
+        }
+        taskScheduler.publishSnapshotIntl(schedulingResult, queuedTasks);
+    }
+
     private boolean doNextIteration() {
         return (System.currentTimeMillis() - lastSchedIterationAt.get()) > maxSchedIterDelay;
     }
@@ -425,6 +452,18 @@ public class TaskSchedulingService {
             throw new TaskQueueException("Too many pending actions submitted for getting VM current state");
     }
 
+    /**
+     * Get the latest snapshot of the scheduler's state, published at the end of the last scheduling iteration, after
+     * the tasks assigned in it were launched. Unlike {@link #requestAllTasks(Action1)} and the like, this returns
+     * right away, from any number of threads, without waiting for the scheduling loop. Snapshots are published only
+     * if enabled with {@link TaskScheduler.Builder#withPublishedSnapshots()} on the scheduler used by this service.
+     *
+     * @return the latest snapshot, or {@link SchedulerSnapshot#EMPTY} if none was published yet
+     */
+    public SchedulerSnapshot getLatestSnapshot() {
+        return taskScheduler.getLatestSnapshot();
+    }
+
     /**
      * Mark the given tasks as running. This is expected to be called for all tasks that were already running from before
      * {@link com.netflix.fenzo.TaskSchedulingService} started running. For example, when the scheduling service
@@ -477,6 +516,7 @@ public class TaskSchedulingService {
         private Action0 preHook = null;
         private long maxDelayMillis = 5000L;
         private boolean optimizingShortfallEvaluator = false;
+        private SchedulerMetrics schedulerMetrics = null;
 
         public Builder() {
             executorService = new ScheduledThreadPoolExecutor(1);
@@ -570,6 +610,21 @@ public class TaskSchedulingService {
             return this;
         }
 
+        /**
+         * Set a listener for the timing of the {@link SchedulerMetrics.Phase#QueueReset QueueReset} and
+         * {@link SchedulerMetrics.Phase#TaskLaunch TaskLaunch} phases of the scheduling loop, reported for each loop
+         * that runs a scheduling iteration. The phases of the iteration itself are reported to the listener set with
+         * {@link TaskScheduler.Builder#withSchedulerMetrics(SchedulerMetrics)}, which is also used here when this
+         * method is not called.
+         *
+         * @param schedulerMetrics The listener to report metrics to.
+         * @return this same {@code Builder}, suitable for further chaining or to build the {@link TaskSchedulingService}.
+         */
+        public Builder withSchedulerMetrics(SchedulerMetrics schedulerMetrics) {
+            this.schedulerMetrics = schedulerMetrics;
+            return this;
+        }
+
         /**
          * Creates a {@link TaskSchedulingService} based on the various builder methods you have chained.
          *
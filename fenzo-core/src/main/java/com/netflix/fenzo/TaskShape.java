@@ -0,0 +1,99 @@
+/*
+ * Copyright 2017 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.fenzo;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * The resource shape of a task request. Two tasks with equal shapes ask for exactly the same amounts of all
+ * resources that {@link AssignableVirtualMachine} checks for, including scalar resources and named resource sets.
+ * Therefore, a VM that does not have enough resources for one of them does not have enough for the other either.
+ * <P>
+ * Hard constraints are deliberately not part of the shape. Their result may depend on the assignments made
+ * elsewhere in the cluster, which makes it unsafe to reuse across tasks.
+ */
+class TaskShape {
+    private final double cpus;
+    private final double memory;
+    private final double networkMbps;
+    private final double disk;
+    private final int ports;
+    private final Map<String, Double> scalars;
+    private final Map<String, TaskRequest.NamedResourceSetRequest> namedResources;
+    private final int hashCode;
+
+    TaskShape(TaskRequest request) {
+        cpus = request.getCPUs();
+        memory = request.getMemory();
+        networkMbps = request.getNetworkMbps();
+        disk = request.getDisk();
+        ports = request.getPorts();
+        scalars = request.getScalarRequests() == null ?
+                Collections.<String, Double>emptyMap() : request.getScalarRequests();
+        namedResources = request.getCustomNamedResources() == null ?
+                Collections.<String, TaskRequest.NamedResourceSetRequest>emptyMap() : request.getCustomNamedResources();
+        hashCode = computeHashCode();
+    }
+
+    private int computeHashCode() {
+        int result = Double.hashCode(cpus);
+        result = 31 * result + Double.hashCode(memory);
+        result = 31 * result + Double.hashCode(networkMbps);
+        result = 31 * result + Double.hashCode(disk);
+        result = 31 * result + ports;
+        result = 31 * result + scalars.hashCode();
+        result = 31 * result + namedResources.hashCode();
+        return result;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o)
+            return true;
+        if (o == null || getClass() != o.getClass())
+            return false;
+        TaskShape that = (TaskShape) o;
+        return hashCode == that.hashCode &&
+                Double.compare(that.cpus, cpus) == 0 &&
+                Double.compare(that.memory, memory) == 0 &&
+                Double.compare(that.networkMbps, networkMbps) == 0 &&
+                Double.compare(that.disk, disk) == 0 &&
+                ports == that.ports &&
+                Objects.equals(scalars, that.scalars) &&
+                Objects.equals(namedResources, that.namedResources);
+    }
+
+    @Override
+    public int hashCode() {
+        return hashCode;
+    }
+
+    @Override
+    public String toString() {
+        return "TaskShape{" +
+                "cpus=" + cpus +
+                ", memory=" + memory +
+                ", networkMbps=" + networkMbps +
+                ", disk=" + disk +
+                ", ports=" + ports +
+                ", scalars=" + scalars +
+                ", namedResources=" + namedResources.keySet() +
+                '}';
+    }
+}
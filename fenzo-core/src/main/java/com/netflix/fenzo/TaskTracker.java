@@ -16,6 +16,7 @@
 
 package com.netflix.fenzo;
 
+import com.netflix.fenzo.functions.Func1;
 import com.netflix.fenzo.queues.QueuableTask;
 import com.netflix.fenzo.queues.TaskQueueException;
 import com.netflix.fenzo.queues.UsageTrackedQueue;
@@ -23,9 +24,10 @@ import com.netflix.fenzo.sla.ResAllocs;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * Class to keep track of task assignments.
@@ -128,13 +130,20 @@ public class TaskTracker {
         public VirtualMachineLease getTotalLease() {
             return avm.getCurrTotalLease();
         }
+
+        AssignableVirtualMachine getAvm() {
+            return avm;
+        }
     }
 
     private static final Logger logger = LoggerFactory.getLogger(TaskTracker.class);
-    private final Map<String, ActiveTask> runningTasks = new HashMap<>();
-    private final Map<String, ActiveTask> assignedTasks = new HashMap<>();
+    // running and assigned tasks, read through the unmodifiable views of each state
+    private final ActiveTaskTable activeTasks = new ActiveTaskTable();
     private final Map<String, TaskGroupUsage> taskGroupUsages = new HashMap<>();
     private UsageTrackedQueue usageTrackedQueue = null;
+    private Func1<TaskRequest, String> coTaskGroupKeyGetter = TaskRequest::taskGroupName;
+    // co-task attribute indexes, keyed by attribute name, created when first asked for by a constraint evaluation
+    private final ConcurrentMap<String, CoTaskAttributeIndex> coTaskIndexes = new ConcurrentHashMap<>();
 
     // package scoped
     TaskTracker() {
@@ -144,10 +153,17 @@ public class TaskTracker {
         usageTrackedQueue = t;
     }
 
+    /* package */ void setCoTaskGroupKeyGetter(Func1<TaskRequest, String> getter) {
+        coTaskGroupKeyGetter = getter;
+        coTaskIndexes.clear();
+    }
+
     boolean addRunningTask(TaskRequest request, AssignableVirtualMachine avm) {
-        final boolean added = runningTasks.put(request.getId(), new ActiveTask(request, avm)) == null;
+        final boolean added = activeTasks.put(ActiveTaskTable.RUNNING, request, avm);
         if(added) {
             addUsage(request);
+            if(!activeTasks.contains(ActiveTaskTable.ASSIGNED, request.getId()))
+                addToCoTaskIndexes(request, avm);
             if (usageTrackedQueue != null && request instanceof QueuableTask)
                 try {
                     usageTrackedQueue.launchTask((QueuableTask)request);
@@ -160,35 +176,38 @@ public class TaskTracker {
     }
 
     boolean removeRunningTask(String taskId) {
-        final ActiveTask removed = runningTasks.remove(taskId);
-        if(removed != null) {
-            final TaskRequest task = removed.getTaskRequest();
+        final TaskRequest task = activeTasks.removeRunning(taskId);
+        if(task != null) {
+            if(!activeTasks.contains(ActiveTaskTable.ASSIGNED, taskId))
+                removeFromCoTaskIndexes(taskId);
             final TaskGroupUsage usage = taskGroupUsages.get(task.taskGroupName());
             if(usage==null)
                 logger.warn("Unexpected to not find usage for task group " + task.taskGroupName() +
                         " to unqueueTask usage of task " + task.getId());
             else
                 usage.subtractUsage(task);
-            if (usageTrackedQueue != null && removed.getTaskRequest() instanceof QueuableTask)
+            if (usageTrackedQueue != null && task instanceof QueuableTask)
                 try {
-                    final QueuableTask queuableTask = (QueuableTask) removed.getTaskRequest();
+                    final QueuableTask queuableTask = (QueuableTask) task;
                     usageTrackedQueue.removeTask(queuableTask.getId(), queuableTask.getQAttributes());
                 } catch (TaskQueueException e) {
                     // We don't expect this to happen since we call this only outside scheduling iteration
                     logger.warn("Unexpected: " + e.getMessage());
                 }
         }
-        return removed != null;
+        return task != null;
     }
 
     Map<String, ActiveTask> getAllRunningTasks() {
-        return Collections.unmodifiableMap(runningTasks);
+        return activeTasks.getView(ActiveTaskTable.RUNNING);
     }
 
     boolean addAssignedTask(TaskRequest request, AssignableVirtualMachine avm) {
-        final boolean assigned = assignedTasks.put(request.getId(), new ActiveTask(request, avm)) == null;
+        final boolean assigned = activeTasks.put(ActiveTaskTable.ASSIGNED, request, avm);
         if(assigned) {
             addUsage(request);
+            if(!activeTasks.contains(ActiveTaskTable.RUNNING, request.getId()))
+                addToCoTaskIndexes(request, avm);
             if (usageTrackedQueue != null && request instanceof QueuableTask)
                 try {
                     usageTrackedQueue.assignTask((QueuableTask) request);
@@ -210,13 +229,66 @@ public class TaskTracker {
     }
 
     void clearAssignedTasks() {
-        for(ActiveTask t: assignedTasks.values())
-            taskGroupUsages.get(t.getTaskRequest().taskGroupName()).subtractUsage(t.getTaskRequest());
-        assignedTasks.clear();
+        activeTasks.clearAssigned(task -> {
+            taskGroupUsages.get(task.taskGroupName()).subtractUsage(task);
+            if(!activeTasks.contains(ActiveTaskTable.RUNNING, task.getId()))
+                removeFromCoTaskIndexes(task.getId());
+        });
+    }
+
+    private void addToCoTaskIndexes(TaskRequest request, AssignableVirtualMachine avm) {
+        if(coTaskIndexes.isEmpty())
+            return;
+        for(CoTaskAttributeIndex index: coTaskIndexes.values())
+            index.add(request, avm);
+    }
+
+    private void removeFromCoTaskIndexes(String taskId) {
+        if(coTaskIndexes.isEmpty())
+            return;
+        for(CoTaskAttributeIndex index: coTaskIndexes.values())
+            index.remove(taskId);
+    }
+
+    /**
+     * Get the counts of the values of the given host attribute across the hosts of the running and assigned co-tasks
+     * of the given task, as described by {@link TaskTrackerState#getCoTaskAttributeCounts(TaskRequest, String)}. The
+     * index of the attribute is built from the tracked tasks the first time it is asked for, and kept as tasks are
+     * added and removed after that. This may be called concurrently from the threads evaluating task assignments, as
+     * long as tasks are not being added or removed at the same time.
+     *
+     * @param request The task whose co-tasks to count.
+     * @param attributeName The name of the host attribute.
+     * @return The counts of the attribute's values.
+     */
+    AttributeValueCounts getCoTaskAttributeCounts(TaskRequest request, String attributeName) {
+        CoTaskAttributeIndex index = coTaskIndexes.get(attributeName);
+        if(index == null)
+            index = coTaskIndexes.computeIfAbsent(attributeName, this::createCoTaskIndex);
+        return index.getCounts(request);
+    }
+
+    private CoTaskAttributeIndex createCoTaskIndex(String attributeName) {
+        final CoTaskAttributeIndex index = new CoTaskAttributeIndex(attributeName, coTaskGroupKeyGetter);
+        for(ActiveTask t: getAllRunningTasks().values())
+            index.add(t.getTaskRequest(), t.getAvm());
+        // tasks both running and assigned are indexed once, for the host they are running on
+        for(ActiveTask t: getAllAssignedTasks().values())
+            index.add(t.getTaskRequest(), t.getAvm());
+        return index;
+    }
+
+    /**
+     * Look up the host attribute values of indexed tasks whose hosts did not have the attribute when the tasks were
+     * added. Called before each scheduling iteration.
+     */
+    void resolveCoTaskAttributes() {
+        for(CoTaskAttributeIndex index: coTaskIndexes.values())
+            index.resolveMissingValues();
     }
 
     Map<String, ActiveTask> getAllAssignedTasks() {
-        return Collections.unmodifiableMap(assignedTasks);
+        return activeTasks.getView(ActiveTaskTable.ASSIGNED);
     }
 
     TaskGroupUsage getUsage(String taskGroupName) {
@@ -40,4 +40,34 @@ public interface TaskTrackerState {
      * @return a Map of all assigned tasks
      */
     public Map<String, TaskTracker.ActiveTask> getAllCurrentlyAssignedTasks();
+
+    /**
+     * Get the counts of the values of a host attribute across the hosts that the co-tasks of the given task are
+     * running on or assigned to. Co-tasks are the tasks with the same co-task group key as the given task, see
+     * {@link TaskScheduler.Builder#withCoTaskGroupKeyGetter(com.netflix.fenzo.functions.Func1)}. The attribute name
+     * {@code HOSTNAME} counts host names.
+     * <P>
+     * The task scheduler answers this from an index kept as tasks are assigned, launched, and completed, without
+     * iterating over the co-tasks. This default implementation iterates over all running and assigned tasks, and
+     * groups them by their task group name.
+     *
+     * @param taskRequest the task whose co-tasks to count
+     * @param attributeName the name of the host attribute to count the values of
+     * @return the counts of the attribute's values, never {@code null}
+     */
+    default AttributeValueCounts getCoTaskAttributeCounts(TaskRequest taskRequest, String attributeName) {
+        final String groupKey = taskRequest.taskGroupName();
+        if (groupKey == null)
+            return AttributeValueCounts.EMPTY;
+        final AttributeValueCounts counts = new AttributeValueCounts();
+        final Map<String, TaskTracker.ActiveTask> runningTasks = getAllRunningTasks();
+        for (TaskTracker.ActiveTask t : runningTasks.values())
+            if (groupKey.equals(t.getTaskRequest().taskGroupName()))
+                counts.add(CoTaskAttributeIndex.getAttrValue(t.getAvm(), attributeName));
+        for (TaskTracker.ActiveTask t : getAllCurrentlyAssignedTasks().values())
+            if (groupKey.equals(t.getTaskRequest().taskGroupName()) &&
+                    !runningTasks.containsKey(t.getTaskRequest().getId()))
+                counts.add(CoTaskAttributeIndex.getAttrValue(t.getAvm(), attributeName));
+        return counts;
+    }
 }
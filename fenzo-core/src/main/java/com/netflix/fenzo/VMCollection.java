@@ -21,6 +21,8 @@ import org.apache.mesos.Protos;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
@@ -30,28 +32,83 @@ import java.util.Map;
 import java.util.Optional;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
-import java.util.function.Function;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
-import java.util.stream.Stream;
 
+/**
+ * The collection of all known VMs, each a member of exactly one group. VMs are registered by hostname, so that
+ * looking up a VM by its hostname, or by the ID of its VM or of one of its leases, takes constant time, and moving
+ * a VM to another group only touches the two groups. Iterating over all VMs uses a snapshot array that is rebuilt
+ * only after VMs are added, removed, or moved. Lookups and iteration may be done from any thread, VMs are expected
+ * to be added and removed from the scheduling thread.
+ */
 class VMCollection {
     private static final String defaultGroupName = "DEFAULT";
     private static final Logger logger = LoggerFactory.getLogger(VMCollection.class);
+
+    private static class Snapshot {
+        private final long version;
+        private final List<AssignableVirtualMachine> vms;
+
+        Snapshot(long version, List<AssignableVirtualMachine> vms) {
+            this.version = version;
+            this.vms = vms;
+        }
+    }
+
+    // group name to the VMs of the group, by hostname
     private final ConcurrentMap<String, ConcurrentMap<String, AssignableVirtualMachine>> vms;
+    private final ConcurrentMap<String, AssignableVirtualMachine> vmsByHostname = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, String> groupByHostname = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, String> vmIdToHostnameMap;
+    private final ConcurrentMap<String, String> leaseIdToHostnameMap;
     private final Func1<String, AssignableVirtualMachine> newVmCreator;
     private final String groupingAttrName;
+    // incremented when VMs are added, removed, or moved to another group
+    private final AtomicLong membershipVersion = new AtomicLong();
+    private volatile Snapshot snapshot = new Snapshot(0L, Collections.<AssignableVirtualMachine>emptyList());
 
     VMCollection(Func1<String, AssignableVirtualMachine> func1, String groupingAttrName) {
+        this(func1, groupingAttrName, new ConcurrentHashMap<>(), new ConcurrentHashMap<>());
+    }
+
+    /**
+     * Create a VM collection that finds VMs by the IDs of their VMs and leases through the given maps, which the
+     * VMs created by {@code func1} are expected to keep current.
+     *
+     * @param func1 Creator of a new VM for a hostname.
+     * @param groupingAttrName Name of the lease attribute whose value is the VM's group.
+     * @param vmIdToHostnameMap Map of VM IDs to hostnames.
+     * @param leaseIdToHostnameMap Map of lease IDs to hostnames.
+     */
+    VMCollection(Func1<String, AssignableVirtualMachine> func1, String groupingAttrName,
+                 ConcurrentMap<String, String> vmIdToHostnameMap, ConcurrentMap<String, String> leaseIdToHostnameMap) {
         vms = new ConcurrentHashMap<>();
         this.newVmCreator = func1;
         this.groupingAttrName = groupingAttrName;
+        this.vmIdToHostnameMap = vmIdToHostnameMap;
+        this.leaseIdToHostnameMap = leaseIdToHostnameMap;
     }
 
-    Collection<AssignableVirtualMachine> getAllVMs() {
-        List<AssignableVirtualMachine> result = new LinkedList<>();
-        vms.values().forEach(m -> result.addAll(m.values()));
-        return result;
+    /**
+     * Get all VMs. The collection returned is an unmodifiable snapshot that is shared by callers until VMs are added,
+     * removed, or moved to another group.
+     *
+     * @return All VMs.
+     */
+    List<AssignableVirtualMachine> getAllVMs() {
+        final long version = membershipVersion.get();
+        Snapshot s = snapshot;
+        if (s.version != version) {
+            final List<AssignableVirtualMachine> result = new ArrayList<>(vmsByHostname.size());
+            vms.values().forEach(m -> result.addAll(m.values()));
+            // a change made while building bumps the version again, the next call rebuilds
+            s = new Snapshot(version, Collections.unmodifiableList(Arrays.asList(
+                    result.toArray(new AssignableVirtualMachine[result.size()]))));
+            snapshot = s;
+        }
+        return s.vms;
     }
 
     Collection<String> getGroups() {
@@ -134,69 +191,121 @@ class VMCollection {
      * @param group
      */
     /* package */ AssignableVirtualMachine unsafeRemoveVm(String name, String group) {
-        final ConcurrentMap<String, AssignableVirtualMachine> vmsMap = vms.get(group);
-        if (vmsMap != null) {
-            return vmsMap.remove(name);
-        }
-        return null;
+        if (!group.equals(groupByHostname.get(name)))
+            return null;
+        return removeVm(name);
     }
 
     Optional<AssignableVirtualMachine> getVmByName(String name) {
-        return vms.values().stream()
-                .flatMap(
-                        (Function<ConcurrentMap<String, AssignableVirtualMachine>, Stream<AssignableVirtualMachine>>) m
-                                -> m.values().stream()
-                )
-                .filter(avm -> name.equals(avm.getHostname()))
-                .findFirst();
+        return Optional.ofNullable(vmsByHostname.get(name));
+    }
+
+    /**
+     * Get the VM that has the lease of the given ID.
+     *
+     * @param leaseId The ID of the lease.
+     * @return The VM with the lease, if the lease is known.
+     */
+    Optional<AssignableVirtualMachine> getVmByLeaseId(String leaseId) {
+        final String hostname = leaseIdToHostnameMap.get(leaseId);
+        return hostname == null ? Optional.empty() : getVmByName(hostname);
+    }
+
+    /**
+     * Get the VM of the given VM ID.
+     *
+     * @param vmId The VM ID, as given by {@link VirtualMachineLease#getVMID()}.
+     * @return The VM, if the VM ID is known.
+     */
+    Optional<AssignableVirtualMachine> getVmByVMId(String vmId) {
+        final String hostname = vmIdToHostnameMap.get(vmId);
+        return hostname == null ? Optional.empty() : getVmByName(hostname);
     }
 
     AssignableVirtualMachine create(String host) {
         return create(host, defaultGroupName);
     }
 
-    AssignableVirtualMachine create(String host, String group) {
-        vms.putIfAbsent(group, new ConcurrentHashMap<>());
-        AssignableVirtualMachine prev = null;
-        if (!defaultGroupName.equals(group)) {
-            if (vms.get(defaultGroupName) != null)
-                prev = vms.get(defaultGroupName).remove(host);
+    /**
+     * Get the VM of the given hostname in the given group, creating it if it does not exist. A VM of the hostname
+     * that is in another group is moved to the given group.
+     *
+     * @param host The hostname.
+     * @param group The group.
+     * @return The VM.
+     */
+    synchronized AssignableVirtualMachine create(String host, String group) {
+        final AssignableVirtualMachine avm = vmsByHostname.get(host);
+        if (avm == null) {
+            final AssignableVirtualMachine created = newVmCreator.call(host);
+            vmsByHostname.put(host, created);
+            addToGroup(host, group, created);
+            return created;
+        }
+        final String prevGroup = groupByHostname.get(host);
+        if (!group.equals(prevGroup)) {
+            if (logger.isDebugEnabled())
+                logger.debug("Moving host " + host + " from group " + prevGroup + " to " + group);
+            vms.get(prevGroup).remove(host);
+            addToGroup(host, group, avm);
+        }
+        return avm;
+    }
+
+    private void addToGroup(String host, String group, AssignableVirtualMachine avm) {
+        vms.computeIfAbsent(group, g -> new ConcurrentHashMap<>()).put(host, avm);
+        groupByHostname.put(host, group);
+        membershipVersion.incrementAndGet();
+    }
+
+    private synchronized AssignableVirtualMachine removeVm(String host) {
+        final AssignableVirtualMachine avm = vmsByHostname.remove(host);
+        if (avm != null) {
+            vms.get(groupByHostname.remove(host)).remove(host);
+            membershipVersion.incrementAndGet();
         }
-        vms.get(group).putIfAbsent(host, prev == null? newVmCreator.call(host) : prev);
-        return vms.get(group).get(host);
+        return avm;
     }
 
     AssignableVirtualMachine getOrCreate(String host) {
-        final Optional<AssignableVirtualMachine> vmByName = getVmByName(host);
-        if (vmByName.isPresent())
-            return vmByName.get();
+        final AssignableVirtualMachine avm = vmsByHostname.get(host);
+        if (avm != null)
+            return avm;
         return create(host, defaultGroupName);
     }
 
     private AssignableVirtualMachine getOrCreate(String host, String group) {
-        vms.putIfAbsent(group, new ConcurrentHashMap<>());
-        final AssignableVirtualMachine avm = vms.get(group).get(host);
-        if (avm != null)
+        final AssignableVirtualMachine avm = vmsByHostname.get(host);
+        if (avm != null && group.equals(groupByHostname.get(host)))
             return avm;
-        if (logger.isDebugEnabled())
+        if (avm == null && logger.isDebugEnabled())
             logger.debug("Creating new host " + host);
         return create(host, group);
     }
 
     boolean addLease(VirtualMachineLease l) {
+        return getOrCreate(l).addLease(l);
+    }
+
+    /**
+     * Get the VM for the given lease, in the group named by the lease's grouping attribute, creating the VM or moving
+     * it to that group if needed. The lease is not added to the VM.
+     *
+     * @param l The lease.
+     * @return The VM of the lease's host.
+     */
+    AssignableVirtualMachine getOrCreate(VirtualMachineLease l) {
         String group = l.getAttributeMap() == null? null :
                 l.getAttributeMap().get(groupingAttrName) == null?
                         null :
                         l.getAttributeMap().get(groupingAttrName).getText().getValue();
         if (group == null)
             group = defaultGroupName;
-        final AssignableVirtualMachine avm = getOrCreate(l.hostname(), group);
-        return avm.addLease(l);
+        return getOrCreate(l.hostname(), group);
     }
 
     public int size() {
-        final Optional<Integer> size = vms.values().stream().map(Map::size).reduce((i1, i2) -> i1 + i2);
-        return size.orElse(0);
+        return vmsByHostname.size();
     }
 
     public int size(String group) {
@@ -204,20 +313,9 @@ class VMCollection {
         return m == null? 0 : m.size();
     }
 
-    public AssignableVirtualMachine remove(AssignableVirtualMachine avm) {
-        final String group = avm.getAttrValue(groupingAttrName);
-        AssignableVirtualMachine removed = null;
-        if (group != null) {
-            final ConcurrentMap<String, AssignableVirtualMachine> m = vms.get(group);
-            if (m != null) {
-                removed = m.remove(avm.getHostname());
-            }
-        }
-        if (removed != null)
-            return removed;
-        final ConcurrentMap<String, AssignableVirtualMachine> m = vms.get(defaultGroupName);
-        if (m != null)
-            m.remove(avm.getHostname());
-        return null;
+    public synchronized AssignableVirtualMachine remove(AssignableVirtualMachine avm) {
+        if (vmsByHostname.get(avm.getHostname()) != avm)
+            return null;
+        return removeVm(avm.getHostname());
     }
 }
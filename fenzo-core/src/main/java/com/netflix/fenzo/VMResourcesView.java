@@ -0,0 +1,75 @@
+/*
+ * Copyright 2017 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.fenzo;
+
+/**
+ * A read only view of the resources of a number of hosts (VMs), addressed by an integer index, as passed to a
+ * {@link BatchVMTaskFitnessCalculator}. The indices are only meaningful within the call they are passed to.
+ * <P>
+ * Used resources are those of the tasks running on the host and of the tasks assigned to it in the current
+ * scheduling iteration. Total resources are the used resources plus the resources still available on the host.
+ */
+public interface VMResourcesView {
+
+    /**
+     * @param vm Index of the host.
+     * @return Number of CPUs used on the host.
+     */
+    double getUsedCpus(int vm);
+
+    /**
+     * @param vm Index of the host.
+     * @return Total number of CPUs of the host.
+     */
+    double getTotalCpus(int vm);
+
+    /**
+     * @param vm Index of the host.
+     * @return Memory used on the host, in MB.
+     */
+    double getUsedMemory(int vm);
+
+    /**
+     * @param vm Index of the host.
+     * @return Total memory of the host, in MB.
+     */
+    double getTotalMemory(int vm);
+
+    /**
+     * @param vm Index of the host.
+     * @return Network bandwidth used on the host, in Mbps.
+     */
+    double getUsedNetworkMbps(int vm);
+
+    /**
+     * @param vm Index of the host.
+     * @return Total network bandwidth of the host, in Mbps.
+     */
+    double getTotalNetworkMbps(int vm);
+
+    /**
+     * @param vm Index of the host.
+     * @return Disk space used on the host, in MB.
+     */
+    double getUsedDisk(int vm);
+
+    /**
+     * @param vm Index of the host.
+     * @return Total disk space of the host, in MB.
+     */
+    double getTotalDisk(int vm);
+}
@@ -16,8 +16,10 @@
 
 package com.netflix.fenzo.plugins;
 
+import com.netflix.fenzo.AttributeValueCounts;
 import com.netflix.fenzo.ConstraintEvaluator;
 import com.netflix.fenzo.TaskRequest;
+import com.netflix.fenzo.TaskScheduler;
 import com.netflix.fenzo.TaskTracker;
 import com.netflix.fenzo.TaskTrackerState;
 import com.netflix.fenzo.VMTaskFitnessCalculator;
@@ -31,6 +33,11 @@ import java.util.Set;
 /**
  * A balanced host attribute constraint attempts to distribute co-tasks evenly among host types, where their
  * types are determined by the values of particular host attributes.
+ * <p>
+ * If you construct this constraint without a co-tasks getter, the co-tasks of a task are the tasks with the same
+ * co-task group key, as set with {@link TaskScheduler.Builder#withCoTaskGroupKeyGetter(Func1)}. The constraint then
+ * checks each host against counts of the attribute values of the co-tasks' hosts, which the task scheduler keeps
+ * as tasks are assigned and completed, instead of looking up every co-task for every host.
  */
 public class BalancedHostAttrConstraint implements ConstraintEvaluator {
     private final String name;
@@ -38,6 +45,18 @@ public class BalancedHostAttrConstraint implements ConstraintEvaluator {
     private final String hostAttributeName;
     private final int expectedValues;
 
+    /**
+     * Create a constraint evaluator to balance the co-tasks of the task scheduler's co-task groups across hosts
+     * based on a given host attribute.
+     *
+     * @param hostAttributeName the name of the host attribute whose values need to be balanced across the
+     *                          co-tasks
+     * @param expectedValues the number of distinct values to expect for {@code hostAttributeName}
+     */
+    public BalancedHostAttrConstraint(String hostAttributeName, int expectedValues) {
+        this(null, hostAttributeName, expectedValues);
+    }
+
     /**
      * Create a constraint evaluator to balance tasks across hosts based on a given host attribute. For example,
      * if ten hosts have three distinct host attribute values between them of A, B, and C, when nine tasks are
@@ -46,7 +65,7 @@ public class BalancedHostAttrConstraint implements ConstraintEvaluator {
      *
      * @param coTasksGetter a one-argument function that, given a task ID being considered for assignment,
      *                      returns the set of Task IDs of the tasks that form the group of tasks which need to
-     *                      be balanced
+     *                      be balanced, or {@code null} to use the task scheduler's co-task groups
      * @param hostAttributeName the name of the host attribute whose values need to be balanced across the
      *                          co-tasks
      * @param expectedValues the number of distinct values to expect for {@code hostAttributeName}
@@ -72,11 +91,18 @@ public class BalancedHostAttrConstraint implements ConstraintEvaluator {
 
     @Override
     public Result evaluate(TaskRequest taskRequest, VirtualMachineCurrentState targetVM, TaskTrackerState taskTrackerState) {
-        Set<String> coTasks = coTasksGetter.call(taskRequest.getId());
         String targetHostAttrVal = AttributeUtilities.getAttrValue(targetVM.getCurrAvailableResources(), hostAttributeName);
         if(targetHostAttrVal==null || targetHostAttrVal.isEmpty()) {
             return new Result(false, hostAttributeName + " attribute unavailable on host " + targetVM.getCurrAvailableResources().hostname());
         }
+        if(coTasksGetter==null) {
+            final AttributeValueCounts counts = taskTrackerState.getCoTaskAttributeCounts(taskRequest, hostAttributeName);
+            if(counts.getNumWithoutValue() > 0)
+                return new Result(false, hostAttributeName + " attribute unavailable on a host running a co-task");
+            return evaluate(counts.getCount(targetHostAttrVal), counts.getNumValues(), counts.getMinCount(),
+                    counts.getMaxCount());
+        }
+        Set<String> coTasks = coTasksGetter.call(taskRequest.getId());
         Map<String, Integer> usedAttribsMap = null;
         try {
             usedAttribsMap = getUsedAttributesMap(coTasks, taskTrackerState);
@@ -92,8 +118,14 @@ public class BalancedHostAttrConstraint implements ConstraintEvaluator {
             min = Math.min(min, i);
             max = Math.max(max, i);
         }
-        min = expectedValues>usedAttribsMap.size()? 0 : min;
-        if(min == max || integer<max)
+        return evaluate(integer, usedAttribsMap.size(), min, max);
+    }
+
+    private Result evaluate(int targetCount, int numValues, int minCount, int maxCount) {
+        if(targetCount==0)
+            return new Result(true, "");
+        final int min = expectedValues>numValues? 0 : minCount;
+        if(min == maxCount || targetCount<maxCount)
             return new Result(true, "");
         return new Result(false, "Would further imbalance by host attribute " + hostAttributeName);
     }
@@ -141,6 +173,13 @@ public class BalancedHostAttrConstraint implements ConstraintEvaluator {
                 if(targetHostAttrVal==null || targetHostAttrVal.isEmpty()) {
                     return 0.0;
                 }
+                if(coTasksGetter==null) {
+                    final AttributeValueCounts counts =
+                            taskTrackerState.getCoTaskAttributeCounts(taskRequest, hostAttributeName);
+                    if(counts.getNumWithoutValue() > 0)
+                        return 0.0;
+                    return getFitness(counts.getCount(targetHostAttrVal), counts.getNumValues(), counts.getTotal());
+                }
                 Set<String> coTasks = coTasksGetter.call(taskRequest.getId());
                 Map<String, Integer> usedAttribsMap = null;
                 try {
@@ -151,16 +190,21 @@ public class BalancedHostAttrConstraint implements ConstraintEvaluator {
                 final Integer integer = usedAttribsMap.get(targetHostAttrVal);
                 if(integer==null)
                     return 1.0;
-                if(usedAttribsMap.isEmpty())
-                    return 1.0;
-                double avg=0.0;
+                int total=0;
                 for(Integer i: usedAttribsMap.values())
-                    avg += i;
-                avg = Math.ceil(avg+1 / Math.max(expectedValues, usedAttribsMap.size()));
-                if(integer<=avg)
-                    return (avg-(double)integer) / avg;
-                return 0.0;
+                    total += i;
+                return getFitness(integer, usedAttribsMap.size(), total);
             }
         };
     }
+
+    private double getFitness(int targetCount, int numValues, int total) {
+        if(targetCount==0 || numValues==0)
+            return 1.0;
+        double avg = total;
+        avg = Math.ceil(avg+1 / Math.max(expectedValues, numValues));
+        if(targetCount<=avg)
+            return (avg-(double)targetCount) / avg;
+        return 0.0;
+    }
 }
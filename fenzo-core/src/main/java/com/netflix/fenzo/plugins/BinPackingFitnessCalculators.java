@@ -16,18 +16,15 @@
 
 package com.netflix.fenzo.plugins;
 
-import com.netflix.fenzo.TaskAssignmentResult;
+import com.netflix.fenzo.BatchVMTaskFitnessCalculator;
 import com.netflix.fenzo.TaskRequest;
 import com.netflix.fenzo.TaskTrackerState;
+import com.netflix.fenzo.VMResourcesView;
 import com.netflix.fenzo.VMTaskFitnessCalculator;
-import com.netflix.fenzo.VirtualMachineCurrentState;
-import com.netflix.fenzo.VirtualMachineLease;
-import com.netflix.fenzo.functions.Func1;
-
-import java.util.Iterator;
 
 /**
- * A collection of bin packing fitness calculators.
+ * A collection of bin packing fitness calculators. Each of them is a {@link BatchVMTaskFitnessCalculator}, scoring a
+ * task on many hosts in one call, and can also be used to score a single host.
  */
 public class BinPackingFitnessCalculators {
 
@@ -35,26 +32,19 @@ public class BinPackingFitnessCalculators {
      * A CPU bin packing fitness calculator. This fitness calculator has the effect of assigning a task to a
      * host that has the least number of available CPUs that are sufficient to fit the task.
      */
-    public final static VMTaskFitnessCalculator cpuBinPacker = new VMTaskFitnessCalculator() {
+    public final static VMTaskFitnessCalculator cpuBinPacker = new BatchVMTaskFitnessCalculator() {
         @Override
         public String getName() {
             return "CPUBinPacker";
         }
         @Override
-        public double calculateFitness(TaskRequest taskRequest, VirtualMachineCurrentState targetVM, TaskTrackerState taskTrackerState) {
-            return calculateResourceFitness(taskRequest, targetVM, taskTrackerState,
-                    new Func1<TaskRequest, Double>() {
-                        @Override
-                        public Double call(TaskRequest request) {
-                            return request.getCPUs();
-                        }
-                    },
-                    new Func1<VirtualMachineLease, Double>() {
-                        @Override
-                        public Double call(VirtualMachineLease l) {
-                            return l.cpuCores();
-                        }
-                    });
+        public void calculateFitness(TaskRequest taskRequest, VMResourcesView vms, int[] candidates, int numCandidates,
+                                     double[] fitness, TaskTrackerState taskTrackerState) {
+            final double cpus = taskRequest.getCPUs();
+            for (int i = 0; i < numCandidates; i++) {
+                final int vm = candidates[i];
+                fitness[i] = (vms.getUsedCpus(vm) + cpus) / vms.getTotalCpus(vm);
+            }
         }
     };
 
@@ -62,26 +52,19 @@ public class BinPackingFitnessCalculators {
      * A memory bin packing fitness calcualtor. This fitness calculator has the effect of assigning a task to a
      * host that has the least amount of available memory that is sufficient to fit the task.
      */
-    public final static VMTaskFitnessCalculator memoryBinPacker = new VMTaskFitnessCalculator() {
+    public final static VMTaskFitnessCalculator memoryBinPacker = new BatchVMTaskFitnessCalculator() {
         @Override
         public String getName() {
             return "MemoryBinPacker";
         }
         @Override
-        public double calculateFitness(TaskRequest taskRequest, VirtualMachineCurrentState targetVM, TaskTrackerState taskTrackerState) {
-            return calculateResourceFitness(taskRequest, targetVM, taskTrackerState,
-                    new Func1<TaskRequest, Double>() {
-                        @Override
-                        public Double call(TaskRequest request) {
-                            return request.getMemory();
-                        }
-                    },
-                    new Func1<VirtualMachineLease, Double>() {
-                        @Override
-                        public Double call(VirtualMachineLease l) {
-                            return l.memoryMB();
-                        }
-                    });
+        public void calculateFitness(TaskRequest taskRequest, VMResourcesView vms, int[] candidates, int numCandidates,
+                                     double[] fitness, TaskTrackerState taskTrackerState) {
+            final double memory = taskRequest.getMemory();
+            for (int i = 0; i < numCandidates; i++) {
+                final int vm = candidates[i];
+                fitness[i] = (vms.getUsedMemory(vm) + memory) / vms.getTotalMemory(vm);
+            }
         }
     };
 
@@ -89,16 +72,22 @@ public class BinPackingFitnessCalculators {
      * A bin packing fitness calculator that achieves both CPU and Memory bin packing with equal weights to
      * both goals.
      */
-    public final static VMTaskFitnessCalculator cpuMemBinPacker = new VMTaskFitnessCalculator() {
+    public final static VMTaskFitnessCalculator cpuMemBinPacker = new BatchVMTaskFitnessCalculator() {
         @Override
         public String getName() {
             return "CPUAndMemoryBinPacker";
         }
         @Override
-        public double calculateFitness(TaskRequest taskRequest, VirtualMachineCurrentState targetVM, TaskTrackerState taskTrackerState) {
-            double cpuFitness = cpuBinPacker.calculateFitness(taskRequest, targetVM, taskTrackerState);
-            double memoryFitness = memoryBinPacker.calculateFitness(taskRequest, targetVM, taskTrackerState);
-            return (cpuFitness + memoryFitness) / 2.0;
+        public void calculateFitness(TaskRequest taskRequest, VMResourcesView vms, int[] candidates, int numCandidates,
+                                     double[] fitness, TaskTrackerState taskTrackerState) {
+            final double cpus = taskRequest.getCPUs();
+            final double memory = taskRequest.getMemory();
+            for (int i = 0; i < numCandidates; i++) {
+                final int vm = candidates[i];
+                final double cpuFitness = (vms.getUsedCpus(vm) + cpus) / vms.getTotalCpus(vm);
+                final double memoryFitness = (vms.getUsedMemory(vm) + memory) / vms.getTotalMemory(vm);
+                fitness[i] = (cpuFitness + memoryFitness) / 2.0;
+            }
         }
     };
 
@@ -106,26 +95,19 @@ public class BinPackingFitnessCalculators {
      * A network bandwidth bin packing fitness calculator. This fitness calculator has the effect of assigning a
      * task to a host that has the least amount of available network bandwidth that is sufficient for the task.
      */
-    public final static VMTaskFitnessCalculator networkBinPacker = new VMTaskFitnessCalculator() {
+    public final static VMTaskFitnessCalculator networkBinPacker = new BatchVMTaskFitnessCalculator() {
         @Override
         public String getName() {
             return "NetworkBinPacker";
         }
         @Override
-        public double calculateFitness(TaskRequest taskRequest, VirtualMachineCurrentState targetVM, TaskTrackerState taskTrackerState) {
-            return calculateResourceFitness(taskRequest, targetVM, taskTrackerState,
-                    new Func1<TaskRequest, Double>() {
-                        @Override
-                        public Double call(TaskRequest request) {
-                            return request.getNetworkMbps();
-                        }
-                    },
-                    new Func1<VirtualMachineLease, Double>() {
-                        @Override
-                        public Double call(VirtualMachineLease l) {
-                            return l.networkMbps();
-                        }
-                    });
+        public void calculateFitness(TaskRequest taskRequest, VMResourcesView vms, int[] candidates, int numCandidates,
+                                     double[] fitness, TaskTrackerState taskTrackerState) {
+            final double networkMbps = taskRequest.getNetworkMbps();
+            for (int i = 0; i < numCandidates; i++) {
+                final int vm = candidates[i];
+                fitness[i] = (vms.getUsedNetworkMbps(vm) + networkMbps) / vms.getTotalNetworkMbps(vm);
+            }
         }
     };
 
@@ -133,35 +115,25 @@ public class BinPackingFitnessCalculators {
      * A fitness calculator that achieves CPU, Memory, and network bandwidth bin packing with equal weights to
      * each of the three goals.
      */
-    public final static VMTaskFitnessCalculator cpuMemNetworkBinPacker = new VMTaskFitnessCalculator() {
+    public final static VMTaskFitnessCalculator cpuMemNetworkBinPacker = new BatchVMTaskFitnessCalculator() {
         @Override
         public String getName() {
             return "CPUAndMemoryAndNetworkBinPacker";
         }
         @Override
-        public double calculateFitness(TaskRequest taskRequest, VirtualMachineCurrentState targetVM, TaskTrackerState taskTrackerState) {
-            double cpuFitness = cpuBinPacker.calculateFitness(taskRequest, targetVM, taskTrackerState);
-            double memFitness = memoryBinPacker.calculateFitness(taskRequest, targetVM, taskTrackerState);
-            double networkFitness = networkBinPacker.calculateFitness(taskRequest, targetVM, taskTrackerState);
-            return (cpuFitness + memFitness + networkFitness)/3.0;
+        public void calculateFitness(TaskRequest taskRequest, VMResourcesView vms, int[] candidates, int numCandidates,
+                                     double[] fitness, TaskTrackerState taskTrackerState) {
+            final double cpus = taskRequest.getCPUs();
+            final double memory = taskRequest.getMemory();
+            final double networkMbps = taskRequest.getNetworkMbps();
+            for (int i = 0; i < numCandidates; i++) {
+                final int vm = candidates[i];
+                final double cpuFitness = (vms.getUsedCpus(vm) + cpus) / vms.getTotalCpus(vm);
+                final double memFitness = (vms.getUsedMemory(vm) + memory) / vms.getTotalMemory(vm);
+                final double networkFitness = (vms.getUsedNetworkMbps(vm) + networkMbps) / vms.getTotalNetworkMbps(vm);
+                fitness[i] = (cpuFitness + memFitness + networkFitness)/3.0;
+            }
         }
     };
 
-    private static double calculateResourceFitness(TaskRequest request, VirtualMachineCurrentState targetVM, TaskTrackerState taskTrackerState,
-                                                   Func1<TaskRequest, Double> taskResourceGetter,
-                                                   Func1<VirtualMachineLease, Double> leaseResourceGetter) {
-        double totalRes = leaseResourceGetter.call(targetVM.getCurrAvailableResources());
-        Iterator<TaskRequest> iterator = targetVM.getRunningTasks().iterator();
-        double oldJobsTotal=0.0;
-        while(iterator.hasNext())
-            oldJobsTotal += taskResourceGetter.call(iterator.next());
-        double usedResource = taskResourceGetter.call(request);
-        Iterator<TaskAssignmentResult> taskAssignmentResultIterator = targetVM.getTasksCurrentlyAssigned().iterator();
-        while(taskAssignmentResultIterator.hasNext())
-            usedResource += taskResourceGetter.call(taskAssignmentResultIterator.next().getRequest());
-        totalRes += oldJobsTotal;
-        usedResource += oldJobsTotal;
-        return usedResource / totalRes;
-    }
-
 }
@@ -16,7 +16,7 @@
 
 package com.netflix.fenzo.plugins;
 
-import com.netflix.fenzo.ConstraintEvaluator;
+import com.netflix.fenzo.HostAttributeConstraintEvaluator;
 import com.netflix.fenzo.TaskRequest;
 import com.netflix.fenzo.TaskTrackerState;
 import com.netflix.fenzo.VirtualMachineCurrentState;
@@ -24,19 +24,26 @@ import com.netflix.fenzo.VirtualMachineLease;
 import org.apache.mesos.Protos;
 import com.netflix.fenzo.functions.Func1;
 
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 /**
- * A constraint that ensures that a task gets a host with an attribute of a specified value.
+ * A constraint that ensures that a task gets a host with an attribute of a specified value. The result depends only
+ * on the host's value of the attribute and the value required by the task, so it is evaluated once per scheduling
+ * iteration for each pair of values.
  */
-public class HostAttrValueConstraint implements ConstraintEvaluator {
+public class HostAttrValueConstraint implements HostAttributeConstraintEvaluator {
     private static final String HOSTNAME="HOSTNAME";
     private final String hostAttributeName;
     private final Func1<String, String> hostAttributeValueGetter;
+    private final List<String> hostAttributeNames;
 
     public HostAttrValueConstraint(String hostAttributeName, Func1<String, String> hostAttributeValueGetter) {
         this.hostAttributeName = hostAttributeName==null? HOSTNAME:hostAttributeName;
         this.hostAttributeValueGetter = hostAttributeValueGetter;
+        this.hostAttributeNames = Collections.singletonList(this.hostAttributeName);
     }
 
     /**
@@ -72,6 +79,42 @@ public class HostAttrValueConstraint implements ConstraintEvaluator {
                 new Result(false, "Host attribute " + hostAttributeName + ": required=" + requiredAttrVal + ", got=" + targetHostAttrVal);
     }
 
+    /**
+     * Returns the name of the host attribute this constraint checks, as set when this object was constructed.
+     *
+     * @return a list of the name of the host attribute
+     */
+    @Override
+    public List<String> getHostAttributeNames() {
+        return hostAttributeNames;
+    }
+
+    /**
+     * Returns the value of the host attribute required by the task, so that tasks requiring the same value share
+     * the results of this constraint.
+     *
+     * @param taskRequest describes the task being evaluated
+     * @return the value of the host attribute required by the task
+     */
+    @Override
+    public Object getTaskKey(TaskRequest taskRequest) {
+        return hostAttributeValueGetter.call(taskRequest.getId());
+    }
+
+    /**
+     * Returns the value of the host attribute required by the task, so that only hosts with that value are tried
+     * for the task.
+     *
+     * @param taskRequest describes the task being evaluated
+     * @return a map of the name of the host attribute to the value required by the task
+     */
+    @Override
+    public Map<String, Set<String>> getRequiredHostAttributeValues(TaskRequest taskRequest) {
+        final String requiredAttrVal = hostAttributeValueGetter.call(taskRequest.getId());
+        return Collections.singletonMap(hostAttributeName, requiredAttrVal == null ?
+                Collections.<String>emptySet() : Collections.singleton(requiredAttrVal));
+    }
+
     private String getAttrValue(VirtualMachineLease lease) {
         switch (hostAttributeName) {
             case HOSTNAME:
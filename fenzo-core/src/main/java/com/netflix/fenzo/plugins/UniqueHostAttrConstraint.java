@@ -16,8 +16,10 @@
 
 package com.netflix.fenzo.plugins;
 
+import com.netflix.fenzo.AttributeValueCounts;
 import com.netflix.fenzo.ConstraintEvaluator;
 import com.netflix.fenzo.TaskRequest;
+import com.netflix.fenzo.TaskScheduler;
 import com.netflix.fenzo.TaskTracker;
 import com.netflix.fenzo.TaskTrackerState;
 import com.netflix.fenzo.VirtualMachineCurrentState;
@@ -37,12 +39,36 @@ import java.util.Set;
  * <p>
  * If you construct this evaluator without passing in a host attribute name, it will use the host name as the
  * host attribute by which it uniquely identifies hosts.
+ * <p>
+ * If you construct this evaluator without a co-tasks getter, the co-tasks of a task are the tasks with the same
+ * co-task group key, as set with {@link TaskScheduler.Builder#withCoTaskGroupKeyGetter(Func1)}. The evaluator then
+ * checks each host against counts of the attribute values of the co-tasks' hosts, which the task scheduler keeps
+ * as tasks are assigned and completed, instead of looking up every co-task for every host.
  */
 public class UniqueHostAttrConstraint implements ConstraintEvaluator {
     private final Func1<String, Set<String>> coTasksGetter;
     private final String hostAttributeName;
     private final String name;
 
+    /**
+     * Create this constraint evaluator for the co-tasks of the task scheduler's co-task groups, with the host name as
+     * the host attribute. This is equivalent to {@code UniqueHostAttrConstraint(HOSTNAME)}.
+     */
+    public UniqueHostAttrConstraint() {
+        this(AttributeUtilities.DEFAULT_ATTRIBUTE);
+    }
+
+    /**
+     * Create this constraint evaluator for the co-tasks of the task scheduler's co-task groups and a given host
+     * attribute name.
+     *
+     * @param hostAttributeName the name of the host attribute whose value is to be unique for each co-task's
+     *                          host assignment
+     */
+    public UniqueHostAttrConstraint(String hostAttributeName) {
+        this(null, hostAttributeName);
+    }
+
     /**
      * Create this constraint evaluator with the given co-tasks of a group. This is equivalent to
      * {@code UniqueHostAttrConstraint(coTasksGetter, null)}.
@@ -58,7 +84,7 @@ public class UniqueHostAttrConstraint implements ConstraintEvaluator {
      * Create this constraint evaluator with the given co-tasks of a group and a given host attribute name.
      *
      * @param coTasksGetter a single-argument function that, given a task ID, returns the set of task IDs of its
-     *                      co-tasks
+     *                      co-tasks, or {@code null} to use the task scheduler's co-task groups
      * @param hostAttributeName the name of the host attribute whose value is to be unique for each co-task's
      *                          host assignment. If this is {@code null}, this indicates that the host name is
      *                          to be unique for each co-task's host assignment.
@@ -95,11 +121,19 @@ public class UniqueHostAttrConstraint implements ConstraintEvaluator {
      */
     @Override
     public Result evaluate(TaskRequest taskRequest, VirtualMachineCurrentState targetVM, TaskTrackerState taskTrackerState) {
-        Set<String> coTasks = coTasksGetter.call(taskRequest.getId());
         String targetHostAttrVal = AttributeUtilities.getAttrValue(targetVM.getCurrAvailableResources(), hostAttributeName);
         if(targetHostAttrVal==null || targetHostAttrVal.isEmpty()) {
             return new Result(false, hostAttributeName + " attribute unavailable on host " + targetVM.getCurrAvailableResources().hostname());
         }
+        if(coTasksGetter==null) {
+            final AttributeValueCounts counts = taskTrackerState.getCoTaskAttributeCounts(taskRequest, hostAttributeName);
+            if(counts.getNumWithoutValue() > 0)
+                return new Result(false, hostAttributeName + " attribute unavailable on a host running a co-task");
+            if(counts.getCount(targetHostAttrVal) > 0)
+                return new Result(false, hostAttributeName+" " + targetHostAttrVal + " already used for another co-task");
+            return new Result(true, "");
+        }
+        Set<String> coTasks = coTasksGetter.call(taskRequest.getId());
         for(String coTask: coTasks) {
             TaskTracker.ActiveTask activeTask = taskTrackerState.getAllRunningTasks().get(coTask);
             if(activeTask==null)
@@ -49,6 +49,10 @@ class QueueBucket implements UsageTrackedQueue {
     // that scheduler's taskTracker will trigger call into assignTask() during the scheduling iteration.
     private final LinkedHashMap<String, QueuableTask> assignedTasks;
     private Iterator<Map.Entry<String, QueuableTask>> iterator = null;
+    // where to continue from in the next scheduling iteration, after the previous one was suspended: the id of the
+    // first task not returned yet, and whether all tasks were returned already
+    private String resumeTaskId = null;
+    private boolean resumeDone = false;
     private ResAllocs tierResources;
     private final BiFunction<Integer, String, Double> allocsShareGetter;
     private final ResUsage tierUsage;
@@ -94,6 +98,21 @@ class QueueBucket implements UsageTrackedQueue {
             iterator = queuedTasks.entrySet().iterator();
             if (!assignedTasks.isEmpty())
                 throw new TaskQueueException(assignedTasks.size() + " tasks still assigned but not launched");
+            final String resumeAt = resumeTaskId;
+            final boolean done = resumeDone;
+            clearResumePoint();
+            if (done) {
+                iterator = Collections.emptyIterator();
+                return null;
+            }
+            // the task to resume at may have been removed since, start over from the first task then
+            if (resumeAt != null && queuedTasks.containsKey(resumeAt)) {
+                while (iterator.hasNext()) {
+                    final Map.Entry<String, QueuableTask> entry = iterator.next();
+                    if (entry.getKey().equals(resumeAt))
+                        return Assignable.success(entry.getValue());
+                }
+            }
         }
         if (iterator.hasNext())
             return Assignable.success(iterator.next().getValue());
@@ -193,6 +212,28 @@ class QueueBucket implements UsageTrackedQueue {
         return sb.toString();
     }
 
+    /**
+     * Record the position the current scheduling iteration reached in this bucket, for the next iteration to continue
+     * from. A bucket that was not reached in the current iteration keeps its previous position.
+     */
+    void suspend() {
+        if (iterator == null)
+            return;
+        if (iterator.hasNext()) {
+            resumeTaskId = iterator.next().getKey();
+            resumeDone = false;
+        }
+        else {
+            resumeTaskId = null;
+            resumeDone = true;
+        }
+    }
+
+    void clearResumePoint() {
+        resumeTaskId = null;
+        resumeDone = false;
+    }
+
     @Override
     public void reset() {
         iterator = null;
@@ -17,43 +17,87 @@
 package com.netflix.fenzo.queues.tiered;
 
 import com.netflix.fenzo.queues.UsageTrackedQueue;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 
-import java.util.*;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
 
 /**
- * The buckets are sorted using a comparison method that makes it inconsistent with equals. This class maintains
- * the ordering while being able to also perform methods such as contains, add, and remove without depending on
- * comparisons being strictly consistent with equals. Comparisons use the bucket's resource usage values, where as
- * the equals is defined by the bucket name being equal. Duplicate entries with the same bucket name are not allowed.
- * There may be multiple buckets with the same resource usage values, and therefore, comparator returns 0 while the
- * equals check returns {@code true} only when the bucket name matches. The Collections classes such as SortedMap or
- * SortedSet cannot be used due to this inconsistency.
+ * The buckets of a tier, sorted by their dominant resource usage share. Each bucket is kept in a balanced tree under
+ * the share it had when it was added, along with a sequence number of the addition that orders buckets with equal
+ * shares by when they were added, so that a bucket re-added after its usage changes goes after the others with the
+ * same share. Since a bucket's key doesn't change while it is in the tree, the bucket can always be found to remove
+ * it, even if its usage, or the usage it is relative to, changed since it was added. Such changes are reflected in the
+ * order when the bucket is removed and added again, as is done when its tasks are assigned, launched, or removed,
+ * or when all buckets are re-sorted with {@link #resort()}. Duplicate entries with the same bucket name are not
+ * allowed.
  * <P>
- * This implementation provides {@code O(logN)} performance for adding an item, constant-time performance for get,
- * and {@code O(logN+M)} performance for remove, where, {@code N} is the number of items in the collection and
- * {@code M} is the average number of items with same resource usage values.
+ * This implementation provides {@code O(logN)} performance for adding and removing a bucket, and constant-time
+ * performance for get, where {@code N} is the number of buckets.
  * <P>
  * This implementation is not synchronized. Invocations of methods of this class must be synchronized externally if
  * there is a chance of calling them concurrently.
  */
 class SortedBuckets {
-    // TODO performance can be improved by changing List<> here to a two level map - outer map will have keys
-    // of bucket's resource usage and values will be a Map<String, QueueBucket>.
-    private static final Logger logger = LoggerFactory.getLogger(SortedBuckets.class);
-    private final List<QueueBucket> buckets;
-    private final Map<String, QueueBucket> bucketMap;
-    private final Comparator<QueueBucket> comparator;
+
+    private static class Entry {
+        private final QueueBucket bucket;
+        private final double share;
+        private final long sequence;
+
+        private Entry(QueueBucket bucket, long sequence) {
+            this.bucket = bucket;
+            this.share = bucket.getDominantUsageShare();
+            this.sequence = sequence;
+        }
+    }
+
+    private final TreeSet<Entry> buckets;
+    private final Map<String, Entry> bucketMap;
+    private final List<QueueBucket> sortedList;
     private final UsageTrackedQueue.ResUsage parentUsage;
+    private long nextSequence = 0L;
 
     SortedBuckets(final UsageTrackedQueue.ResUsage parentUsage) {
-        buckets = new ArrayList<>();
+        buckets = new TreeSet<>((e1, e2) -> {
+            final int c = Double.compare(e1.share, e2.share);
+            return c != 0 ? c : Long.compare(e1.sequence, e2.sequence);
+        });
         bucketMap = new HashMap<>();
-        comparator = new Comparator<QueueBucket>() {
+        sortedList = new AbstractList<QueueBucket>() {
+            @Override
+            public QueueBucket get(int index) {
+                if (index < 0 || index >= buckets.size())
+                    throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + buckets.size());
+                final Iterator<QueueBucket> iterator = iterator();
+                for (int i = 0; i < index; i++)
+                    iterator.next();
+                return iterator.next();
+            }
+
             @Override
-            public int compare(QueueBucket o1, QueueBucket o2) {
-                return Double.compare(o1.getDominantUsageShare(), o2.getDominantUsageShare());
+            public Iterator<QueueBucket> iterator() {
+                final Iterator<Entry> iterator = buckets.iterator();
+                return new Iterator<QueueBucket>() {
+                    @Override
+                    public boolean hasNext() {
+                        return iterator.hasNext();
+                    }
+
+                    @Override
+                    public QueueBucket next() {
+                        return iterator.next().bucket;
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return buckets.size();
             }
         };
         this.parentUsage = parentUsage;
@@ -62,117 +106,40 @@ class SortedBuckets {
     boolean add(QueueBucket bucket) {
         if (bucketMap.containsKey(bucket.getName()))
             return false;
-        if (buckets.isEmpty())
-            buckets.add(bucket);
-        else
-            buckets.add(findInsertionPoint(bucket, buckets), bucket);
-        bucketMap.put(bucket.getName(), bucket);
+        final Entry entry = new Entry(bucket, nextSequence++);
+        buckets.add(entry);
+        bucketMap.put(bucket.getName(), entry);
         return true;
     }
 
     QueueBucket remove(String bucketName) {
-        final QueueBucket bucket = bucketMap.get(bucketName);
-        if (bucket == null)
+        final Entry entry = bucketMap.remove(bucketName);
+        if (entry == null)
             return null;
-        final int index = findInsertionPoint(bucket, buckets);
-        if (index < 0)
-            throw new IllegalStateException("Unexpected: bucket with name=" + bucketName + " does not exist");
-        // we have now found a bucket that has the same position due to its usage value. The actual bucket we are
-        // interested in (with the same name) may be the same one or it may be to the left or right a few positions.
-        int remPos = buckets.get(index).getName().equals(bucketName)? index : -1;
-        if (remPos < 0)
-            remPos = findWalkingLeft(buckets, index, bucketName, bucket.getDominantUsageShare());
-        if (remPos < 0)
-            remPos = findWalkingRight(buckets, index, bucketName, bucket.getDominantUsageShare());
-        if (remPos < 0) {
-            logger.error("Unexpected: bucket with name=" + bucketName + " not found to remove, traversing " +
-                    buckets.size() + " buckets to remove it");
-            logger.warn("Invalid sorted buckets list: " + getBucketsListString());
-            removeBucketAndResort(bucketName);
-        }
-        else
-            buckets.remove(remPos);
-        bucketMap.remove(bucketName);
-        return bucket;
-    }
-
-    private void removeBucketAndResort(String bucketName) {
-        // workaround the problem: linear traversal of the list to remove the bucket and re-sort if needed
-        // also check on uniqueness of bucket names in the list
-        final HashSet<String> names = new HashSet<>();
-        if (!buckets.isEmpty()) {
-            final Iterator<QueueBucket> iterator = buckets.iterator();
-            QueueBucket prev = null;
-            boolean isSorted = true;
-            while (iterator.hasNext()) {
-                QueueBucket b = iterator.next();
-                if (!names.add(b.getName())) {
-                    logger.error("Bucket " + b.getName() + " already existed in the list, removing");
-                    isSorted = false;
-                    iterator.remove();
-                }
-                else if (b.getName().equals(bucketName)) {
-                    iterator.remove();
-                } else {
-                    if (prev != null) {
-                        final int compare = comparator.compare(prev, b);
-                        isSorted = isSorted && compare <= 0;
-                    }
-                    prev = b;
-                }
-            }
-            logger.warn("Re-sorting buckets list");
-            resort();
-        }
-    }
-
-    private String getBucketsListString() {
-        StringBuilder builder = new StringBuilder("[");
-        for (QueueBucket b: buckets) {
-            builder.append(b.getName()).append(":").append(b.getDominantUsageShare()).append(", ");
-        }
-        builder.append("]");
-        return builder.toString();
+        buckets.remove(entry);
+        return entry.bucket;
     }
 
     QueueBucket get(String bucketName) {
-        return bucketMap.get(bucketName);
-    }
-
-    private int findWalkingRight(List<QueueBucket> buckets, int index, String bucketName, double dominantUsageShare) {
-        int pos = index;
-        while (++pos < buckets.size() && buckets.get(pos).getDominantUsageShare() == dominantUsageShare) {
-            if (buckets.get(pos).getName().equals(bucketName))
-                return pos;
-        }
-        return -1;
-    }
-
-    private int findWalkingLeft(List<QueueBucket> buckets, int index, String bucketName, double dominantUsageShare) {
-        int pos = index;
-        while (--pos >= 0 && buckets.get(pos).getDominantUsageShare() == dominantUsageShare) {
-            if (buckets.get(pos).getName().equals(bucketName))
-                return pos;
-        }
-        return -1;
-    }
-
-    private int findInsertionPoint(QueueBucket bucket, List<QueueBucket> buckets) {
-        final int i = Collections.binarySearch(buckets, bucket, comparator);
-        if (i >= 0)
-            return i;
-        return -i - 1;
+        final Entry entry = bucketMap.get(bucketName);
+        return entry == null ? null : entry.bucket;
     }
 
+    /**
+     * Get a view of the buckets in sorted order. The view is meant to be iterated, getting a bucket by its index
+     * walks the buckets before it.
+     *
+     * @return An unmodifiable view of the sorted buckets.
+     */
     List<QueueBucket> getSortedList() {
-        return Collections.unmodifiableList(buckets);
+        return sortedList;
     }
 
     void resort() {
-        List<QueueBucket> old = new ArrayList<>(buckets);
+        final List<Entry> old = new ArrayList<>(buckets);
         bucketMap.clear();
         buckets.clear();
-        for(QueueBucket b: old)
-            add(b);
+        for (Entry e : old)
+            add(e.bucket);
     }
 }
@@ -141,6 +141,20 @@ class Tier implements UsageTrackedQueue {
         return null;
     }
 
+    /**
+     * Record, for each bucket, the position the current scheduling iteration reached, for the next iteration to
+     * continue from.
+     */
+    void suspend() {
+        for (QueueBucket bucket : sortedBuckets.getSortedList())
+            bucket.suspend();
+    }
+
+    void clearResumePoints() {
+        for (QueueBucket bucket : sortedBuckets.getSortedList())
+            bucket.clearResumePoint();
+    }
+
     @Override
     public void assignTask(QueuableTask t) throws TaskQueueException {
         // assigning the task changes resource usage and therefore, sorting order must be updated.
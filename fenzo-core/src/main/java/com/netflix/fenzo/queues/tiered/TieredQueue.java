@@ -39,8 +39,11 @@ public class TieredQueue implements InternalTaskQueue {
 
     private static final Logger logger = LoggerFactory.getLogger(TieredQueue.class);
     private final List<Tier> tiers;
-    private Iterator<Tier> iterator = null;
+    private ListIterator<Tier> iterator = null;
     private Tier currTier = null;
+    // tier to start the next iteration from when the previous one was suspended, -1 to start from the first tier
+    private int resumeTierNumber = -1;
+    private boolean resumed = false;
     private final BlockingQueue<QueuableTask> tasksToQueue;
     private final BlockingQueue<TieredQueueSlas> slasQueue;
     private final TierSlas tierSlas = new TierSlas();
@@ -106,7 +109,9 @@ public class TieredQueue implements InternalTaskQueue {
     @Override
     public Assignable<QueuableTask> next() throws TaskQueueException {
         if (iterator == null) {
-            iterator = tiers.iterator();
+            resumed = resumeTierNumber >= 0;
+            iterator = tiers.listIterator(resumed ? resumeTierNumber : 0);
+            resumeTierNumber = -1;
             currTier = null;
         }
         if (currTier != null) {
@@ -125,9 +130,35 @@ public class TieredQueue implements InternalTaskQueue {
                     currTier = null; // currTier is done
             }
         }
+        if (resumed) {
+            // all tasks have been considered since the suspended iteration started, next one starts from the top
+            resumed = false;
+            for (Tier tier : tiers)
+                tier.clearResumePoints();
+        }
         return null;
     }
 
+    /**
+     * Record where the current scheduling iteration stopped, so that the iteration after the next {@link #reset()}
+     * continues from there. The next iteration starts from the tier the current one stopped in, and each queue bucket of
+     * that tier continues from the first task it has not returned yet. Buckets that have returned all of their tasks
+     * are skipped until the iteration that continues from here returns {@code null}, after which iterations start
+     * from the first tier again. Tiers keep their priority order and buckets their dominant resource usage order
+     * within each iteration, and no task is considered twice before all other tasks have been considered once.
+     */
+    @Override
+    public void suspend() {
+        if (iterator == null)
+            return;
+        if (currTier != null) {
+            resumeTierNumber = currTier.getTierNumber();
+            currTier.suspend();
+        }
+        else if (iterator.hasNext())
+            resumeTierNumber = iterator.nextIndex();
+    }
+
     @Override
     public boolean reset() throws TaskQueueMultiException {
         setSlaInternal();
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2017 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.fenzo;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+public class ActiveTaskTableTest {
+
+    @Test
+    public void testTaskInBothStates() throws Exception {
+        ActiveTaskTable table = new ActiveTaskTable();
+        final TaskRequest task = TaskRequestProvider.getTaskRequest(1, 10, 1);
+        Assert.assertTrue(table.put(ActiveTaskTable.ASSIGNED, task, null));
+        Assert.assertTrue(table.put(ActiveTaskTable.RUNNING, task, null));
+        Assert.assertFalse(table.put(ActiveTaskTable.RUNNING, task, null));
+        final List<TaskRequest> cleared = new ArrayList<>();
+        table.clearAssigned(cleared::add);
+        Assert.assertEquals(1, cleared.size());
+        Assert.assertEquals(0, table.size(ActiveTaskTable.ASSIGNED));
+        Assert.assertNull(table.getView(ActiveTaskTable.ASSIGNED).get(task.getId()));
+        Assert.assertSame(task, table.getView(ActiveTaskTable.RUNNING).get(task.getId()).getTaskRequest());
+        Assert.assertSame(task, table.removeRunning(task.getId()));
+        Assert.assertNull(table.removeRunning(task.getId()));
+        Assert.assertTrue(table.getView(ActiveTaskTable.RUNNING).isEmpty());
+    }
+
+    @Test
+    public void testViewValuesReusedUntilTaskChanges() throws Exception {
+        ActiveTaskTable table = new ActiveTaskTable();
+        final TaskRequest task = TaskRequestProvider.getTaskRequest(1, 10, 1);
+        table.put(ActiveTaskTable.RUNNING, task, null);
+        table.put(ActiveTaskTable.ASSIGNED, task, null);
+        final Map<String, TaskTracker.ActiveTask> running = table.getView(ActiveTaskTable.RUNNING);
+        final TaskTracker.ActiveTask activeTask = running.get(task.getId());
+        Assert.assertSame(activeTask, running.get(task.getId()));
+        Assert.assertSame(activeTask, running.values().iterator().next());
+        Assert.assertSame(activeTask, running.entrySet().iterator().next().getValue());
+        Assert.assertNotSame(activeTask, table.getView(ActiveTaskTable.ASSIGNED).get(task.getId()));
+        table.put(ActiveTaskTable.RUNNING, task, null);
+        Assert.assertNotSame(activeTask, running.get(task.getId()));
+        table.clearAssigned(t -> {});
+        Assert.assertSame(running.get(task.getId()), running.get(task.getId()));
+    }
+
+    @Test
+    public void testViewsMatchMapsUnderChurn() throws Exception {
+        ActiveTaskTable table = new ActiveTaskTable();
+        Map<String, TaskRequest> running = new HashMap<>();
+        Map<String, TaskRequest> assigned = new HashMap<>();
+        List<TaskRequest> tasks = new ArrayList<>();
+        for (int i = 0; i < 2000; i++)
+            tasks.add(TaskRequestProvider.getTaskRequest(1, 10, 1));
+        Random random = new Random(7);
+        for (int iter = 0; iter < 20; iter++) {
+            for (int i = 0; i < 500; i++) {
+                final TaskRequest task = tasks.get(random.nextInt(tasks.size()));
+                switch (random.nextInt(3)) {
+                    case 0:
+                        Assert.assertEquals(running.put(task.getId(), task) == null,
+                                table.put(ActiveTaskTable.RUNNING, task, null));
+                        break;
+                    case 1:
+                        Assert.assertEquals(assigned.put(task.getId(), task) == null,
+                                table.put(ActiveTaskTable.ASSIGNED, task, null));
+                        break;
+                    default:
+                        Assert.assertSame(running.remove(task.getId()), table.removeRunning(task.getId()));
+                }
+            }
+            assertView(running, table.getView(ActiveTaskTable.RUNNING));
+            assertView(assigned, table.getView(ActiveTaskTable.ASSIGNED));
+            final Set<String> cleared = new HashSet<>();
+            table.clearAssigned(task -> cleared.add(task.getId()));
+            Assert.assertEquals(assigned.keySet(), cleared);
+            assigned.clear();
+            assertView(running, table.getView(ActiveTaskTable.RUNNING));
+            Assert.assertTrue(table.getView(ActiveTaskTable.ASSIGNED).isEmpty());
+        }
+    }
+
+    private void assertView(Map<String, TaskRequest> expected, Map<String, TaskTracker.ActiveTask> view) {
+        Assert.assertEquals(expected.size(), view.size());
+        Assert.assertEquals(expected.keySet(), view.keySet());
+        for (Map.Entry<String, TaskTracker.ActiveTask> entry : view.entrySet())
+            Assert.assertSame(expected.get(entry.getKey()), entry.getValue().getTaskRequest());
+        final Set<TaskRequest> values = new HashSet<>();
+        for (TaskTracker.ActiveTask activeTask : view.values())
+            values.add(activeTask.getTaskRequest());
+        Assert.assertEquals(new HashSet<>(expected.values()), values);
+        for (Map.Entry<String, TaskRequest> entry : expected.entrySet())
+            Assert.assertSame(entry.getValue(), view.get(entry.getKey()).getTaskRequest());
+    }
+}
@@ -0,0 +1,176 @@
+/*
+ * Copyright 2017 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.fenzo;
+
+import org.apache.mesos.Protos;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class AssignableVMsTest {
+
+    private AssignableVMs assignableVMs;
+    private List<VirtualMachineLease> leases;
+
+    @Before
+    public void setUp() throws Exception {
+        assignableVMs = new AssignableVMs(new TaskTracker(), lease -> {}, 1000000, 4, null, false, null);
+        leases = LeaseProvider.getLeases(3, 4, 4000, 1, 100);
+        prepare(leases);
+    }
+
+    private List<AssignableVirtualMachine> prepare(List<VirtualMachineLease> newLeases) {
+        return assignableVMs.prepareAndGetOrderedVMs(newLeases, new AtomicInteger());
+    }
+
+    private AssignableVirtualMachine getVM(String hostname) {
+        return assignableVMs.getVmCollection().getVmByName(hostname).get();
+    }
+
+    private void assertTotals(double cpus, double memory) {
+        Assert.assertEquals(cpus, assignableVMs.getTotalResources().get(VMResource.CPU), 0.001);
+        Assert.assertEquals(memory, assignableVMs.getTotalResources().get(VMResource.Memory), 0.001);
+    }
+
+    @Test
+    public void testUnchangedVMsNotRecomputed() throws Exception {
+        assertTotals(12, 12000);
+        Assert.assertEquals(3, prepare(Collections.emptyList()).size());
+        for (AssignableVirtualMachine avm: assignableVMs.getVmCollection().getAllVMs())
+            Assert.assertFalse(avm.isChangedSincePrepared());
+        assertTotals(12, 12000);
+    }
+
+    @Test
+    public void testChangesUpdateTotals() throws Exception {
+        final String hostname = leases.get(0).hostname();
+        // a new lease on a VM adds to the totals
+        prepare(Collections.singletonList(LeaseProvider.getLeaseOffer(hostname, 4, 4000, 1, 100)));
+        assertTotals(16, 16000);
+        // a task launched on another VM counts towards its resources
+        final String taskHost = leases.get(1).hostname();
+        final TaskRequest task = TaskRequestProvider.getTaskRequest(1, 1000, 1);
+        assignableVMs.setTaskAssigned(task, taskHost);
+        Assert.assertTrue(getVM(taskHost).isChangedSincePrepared());
+        Assert.assertFalse(getVM(hostname).isChangedSincePrepared());
+        prepare(Collections.emptyList());
+        assertTotals(17, 17000);
+        // expiring a lease removes it from the totals
+        assignableVMs.expireLease(leases.get(2).getId());
+        Assert.assertEquals(2, prepare(Collections.emptyList()).size());
+        assertTotals(13, 13000);
+        // and so does the task completing
+        assignableVMs.unAssignTask(task.getId(), taskHost);
+        prepare(Collections.emptyList());
+        assertTotals(12, 12000);
+    }
+
+    @Test
+    public void testDisabledVMNotInTotals() throws Exception {
+        assignableVMs.disableUntil(leases.get(0).hostname(), System.currentTimeMillis() + 1000000L);
+        Assert.assertEquals(2, prepare(Collections.emptyList()).size());
+        assertTotals(8, 8000);
+        assignableVMs.enableVM(leases.get(0).hostname());
+        prepare(Collections.emptyList());
+        assertTotals(8, 8000);
+        prepare(Collections.singletonList(LeaseProvider.getLeaseOffer(leases.get(0).hostname(), 4, 4000, 1, 100)));
+        assertTotals(12, 12000);
+    }
+
+    private static Map<String, Protos.Attribute> getZoneAttributes(String zone) {
+        return Collections.singletonMap("Zone", Protos.Attribute.newBuilder().setName("Zone")
+                .setType(Protos.Value.Type.TEXT)
+                .setText(Protos.Value.Text.newBuilder().setValue(zone)).build());
+    }
+
+    @Test
+    public void testHostAttributeIndex() throws Exception {
+        final List<VirtualMachineLease.Range> ports = Collections.singletonList(new VirtualMachineLease.Range(1, 10));
+        final VirtualMachineLease leaseB = LeaseProvider.getLeaseOffer("zoneHost2", 4, 4000, ports, getZoneAttributes("zoneB"));
+        prepare(Arrays.asList(LeaseProvider.getLeaseOffer("zoneHost1", 4, 4000, ports, getZoneAttributes("zoneA")), leaseB));
+        final HostAttributeIndex index = assignableVMs.getHostAttributeIndex();
+        Assert.assertEquals(Collections.singleton(getVM("zoneHost1")), index.getVMs("Zone", "zoneA"));
+        Assert.assertEquals(Collections.singleton(getVM("zoneHost2")), index.getVMs("Zone", "zoneB"));
+        Assert.assertTrue(index.getVMs("Zone", "zoneC").isEmpty());
+        // a new lease with another value of the attribute moves the VM to that value
+        prepare(Collections.singletonList(
+                LeaseProvider.getLeaseOffer("zoneHost1", 4, 4000, ports, getZoneAttributes("zoneB"))));
+        Assert.assertTrue(index.getVMs("Zone", "zoneA").isEmpty());
+        Assert.assertEquals(2, index.getVMs("Zone", "zoneB").size());
+        // VMs keep their attributes when their leases expire, until they are removed
+        assignableVMs.expireLease(leaseB.getId());
+        prepare(Collections.emptyList());
+        Assert.assertEquals(2, index.getVMs("Zone", "zoneB").size());
+        assignableVMs.purgeInactiveVMs(Collections.emptySet());
+        Assert.assertEquals(Collections.singleton(getVM("zoneHost1")), index.getVMs("Zone", "zoneB"));
+        // VMs are found by hostname without indexing
+        final String hostname = leases.get(0).hostname();
+        Assert.assertEquals(Collections.singleton(getVM(hostname)), index.getVMs("HOSTNAME", hostname));
+    }
+
+    @Test
+    public void testParallelPreparation() throws Exception {
+        final int numHosts = 4 * AssignableVMs.MIN_VMS_PER_PARTITION;
+        final Thread schedulingThread = Thread.currentThread();
+        final AtomicInteger numRejected = new AtomicInteger();
+        final AtomicInteger numRejectedElsewhere = new AtomicInteger();
+        final TaskTracker taskTracker = new TaskTracker();
+        final AssignableVMs parallelVMs = new AssignableVMs(taskTracker, lease -> {
+            numRejected.incrementAndGet();
+            if (Thread.currentThread() != schedulingThread)
+                numRejectedElsewhere.incrementAndGet();
+        }, 1000000, 4, null, false, null);
+        final ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            parallelVMs.setPreparationExecutor(executor, 4);
+            final List<VirtualMachineLease> manyLeases = LeaseProvider.getLeases(numHosts, 4, 4000, 1, 100);
+            final AtomicInteger numAdded = new AtomicInteger();
+            final List<AssignableVirtualMachine> vms = parallelVMs.prepareAndGetOrderedVMs(manyLeases, numAdded);
+            Assert.assertEquals(numHosts, vms.size());
+            Assert.assertEquals(numHosts, numAdded.get());
+            Assert.assertEquals(numHosts * 4.0, parallelVMs.getTotalResources().get(VMResource.CPU), 0.001);
+            // tasks unassigned in preparation are removed from the task tracker
+            final TaskRequest task = TaskRequestProvider.getTaskRequest(1, 1000, 1);
+            parallelVMs.setTaskAssigned(task, manyLeases.get(numHosts - 1).hostname());
+            taskTracker.addRunningTask(task, parallelVMs.getVmCollection().getVmByName(
+                    manyLeases.get(numHosts - 1).hostname()).get());
+            parallelVMs.prepareAndGetOrderedVMs(Collections.emptyList(), new AtomicInteger());
+            Assert.assertEquals(numHosts * 4.0 + 1.0, parallelVMs.getTotalResources().get(VMResource.CPU), 0.001);
+            parallelVMs.unAssignTask(task.getId(), manyLeases.get(numHosts - 1).hostname());
+            parallelVMs.prepareAndGetOrderedVMs(Collections.emptyList(), new AtomicInteger());
+            Assert.assertFalse(taskTracker.getAllRunningTasks().containsKey(task.getId()));
+            Assert.assertEquals(numHosts * 4.0, parallelVMs.getTotalResources().get(VMResource.CPU), 0.001);
+            // leases expired in preparation are rejected by the scheduling thread
+            parallelVMs.expireAllLeases();
+            Assert.assertEquals(0, parallelVMs.prepareAndGetOrderedVMs(Collections.emptyList(),
+                    new AtomicInteger()).size());
+            Assert.assertEquals(numHosts, numRejected.get());
+            Assert.assertEquals(0, numRejectedElsewhere.get());
+        }
+        finally {
+            executor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright 2017 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.fenzo;
+
+import com.netflix.fenzo.plugins.BinPackingFitnessCalculators;
+import com.netflix.fenzo.plugins.ExclusiveHostConstraint;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class AssignableVirtualMachineTest {
+
+    private AssignableVMs assignableVMs;
+    private AssignableVirtualMachine avm;
+
+    @Before
+    public void setUp() throws Exception {
+        assignableVMs = new AssignableVMs(new TaskTracker(), lease -> {}, 1000000, 4, null, false, null);
+        assignableVMs.prepareAndGetOrderedVMs(LeaseProvider.getLeases(1, 4, 4000, 1, 10), new AtomicInteger());
+        avm = assignableVMs.getVmCollection().getAllVMs().iterator().next();
+    }
+
+    @Test
+    public void testRejectionOutcomes() throws Exception {
+        final TaskRequest tooBig = TaskRequestProvider.getTaskRequest(8, 1000, 1);
+        Assert.assertEquals(AssignableVirtualMachine.EVAL_RESOURCES,
+                avm.evaluate(tooBig, BinPackingFitnessCalculators.cpuBinPacker, null));
+        final TaskAssignmentResult result = avm.getEvaluationResult(tooBig);
+        Assert.assertFalse(result.isSuccessful());
+        Assert.assertEquals(1, result.getFailures().size());
+        Assert.assertEquals(VMResource.CPU, result.getFailures().get(0).getResource());
+
+        final TaskRequest noFitness = TaskRequestProvider.getTaskRequest(1, 1000, 1);
+        Assert.assertEquals(AssignableVirtualMachine.EVAL_FITNESS,
+                avm.evaluate(noFitness, new VMTaskFitnessCalculator() {
+                    @Override
+                    public String getName() {
+                        return "zero";
+                    }
+                    @Override
+                    public double calculateFitness(TaskRequest taskRequest, VirtualMachineCurrentState targetVM,
+                                                   TaskTrackerState taskTrackerState) {
+                        return 0.0;
+                    }
+                }, null));
+        Assert.assertEquals(VMResource.Fitness, avm.getEvaluationResult(noFitness).getFailures().get(0).getResource());
+
+        final TaskRequest exclusive = TaskRequestProvider.getTaskRequest(1, 1000, 1,
+                Collections.singletonList(new ExclusiveHostConstraint()), null);
+        avm.setAssignedTask(TaskRequestProvider.getTaskRequest(1, 1000, 1));
+        Assert.assertEquals(AssignableVirtualMachine.EVAL_HARD_CONSTRAINT,
+                avm.evaluate(exclusive, BinPackingFitnessCalculators.cpuBinPacker, null));
+        Assert.assertEquals(ExclusiveHostConstraint.class.getName(),
+                avm.getEvaluationResult(exclusive).getConstraintFailure().getName());
+    }
+
+    @Test
+    public void testSuccessResultCreatedOnRequest() throws Exception {
+        final TaskRequest task = TaskRequestProvider.getTaskRequest(2, 1000, 1);
+        Assert.assertEquals(AssignableVirtualMachine.EVAL_SUCCESS,
+                avm.evaluate(task, BinPackingFitnessCalculators.cpuBinPacker, null));
+        Assert.assertTrue(avm.getLastEvalFitness() > 0.0);
+        final TaskAssignmentResult result = avm.getEvaluationResult(task);
+        Assert.assertTrue(result.isSuccessful());
+        Assert.assertEquals(avm.getLastEvalFitness(), result.getFitness(), 0.0);
+        Assert.assertEquals(avm.getHostname(), result.getHostname());
+    }
+}
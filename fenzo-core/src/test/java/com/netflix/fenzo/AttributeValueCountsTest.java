@@ -0,0 +1,68 @@
+/*
+ * Copyright 2017 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.fenzo;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class AttributeValueCountsTest {
+
+    @Test
+    public void testMinAndMaxFollowCounts() throws Exception {
+        AttributeValueCounts counts = new AttributeValueCounts();
+        counts.add("a");
+        counts.add("a");
+        counts.add("b");
+        assertCounts(counts, 2, 1, 2, 3);
+        counts.add("b");
+        assertCounts(counts, 2, 2, 2, 4);
+        counts.add("c");
+        assertCounts(counts, 3, 1, 2, 5);
+        counts.remove("c");
+        assertCounts(counts, 2, 2, 2, 4);
+        counts.remove("a");
+        counts.remove("a");
+        assertCounts(counts, 1, 2, 2, 2);
+        Assert.assertEquals(0, counts.getCount("a"));
+        counts.remove("b");
+        counts.remove("b");
+        assertCounts(counts, 0, 0, 0, 0);
+        // removing a value not counted leaves the counts alone
+        counts.remove("b");
+        assertCounts(counts, 0, 0, 0, 0);
+    }
+
+    @Test
+    public void testTasksWithoutValue() throws Exception {
+        AttributeValueCounts counts = new AttributeValueCounts();
+        counts.add(null);
+        counts.add("a");
+        Assert.assertEquals(1, counts.getNumWithoutValue());
+        assertCounts(counts, 1, 1, 1, 1);
+        counts.remove(null);
+        Assert.assertEquals(0, counts.getNumWithoutValue());
+        counts.remove("a");
+        Assert.assertTrue(counts.isEmpty());
+    }
+
+    private void assertCounts(AttributeValueCounts counts, int numValues, int min, int max, int total) {
+        Assert.assertEquals(numValues, counts.getNumValues());
+        Assert.assertEquals(min, counts.getMinCount());
+        Assert.assertEquals(max, counts.getMaxCount());
+        Assert.assertEquals(total, counts.getTotal());
+    }
+}
@@ -552,4 +552,102 @@ public class BasicSchedulerTests {
         Assert.assertNotNull(ref.get());
         Assert.assertEquals(2, ref.get().size());
     }
+
+    @Test
+    public void testSnapshotReadableDuringIteration() throws Exception {
+        final AtomicReference<TaskScheduler> schedulerRef = new AtomicReference<>();
+        final AtomicReference<SchedulerSnapshot> seenInIteration = new AtomicReference<>();
+        final AtomicBoolean resourceStatusFailed = new AtomicBoolean();
+        final ConstraintEvaluator c = new ConstraintEvaluator() {
+            @Override
+            public String getName() {
+                return "snapshotReader";
+            }
+
+            @Override
+            public Result evaluate(TaskRequest taskRequest, VirtualMachineCurrentState targetVM, TaskTrackerState taskTrackerState) {
+                seenInIteration.set(schedulerRef.get().getLatestSnapshot());
+                try {
+                    schedulerRef.get().getResourceStatus();
+                } catch (RuntimeException e) {
+                    resourceStatusFailed.set(true);
+                }
+                return new Result(true, "");
+            }
+        };
+        final TaskScheduler scheduler = new TaskScheduler.Builder()
+                .withLeaseOfferExpirySecs(1000000)
+                .withLeaseRejectAction(virtualMachineLease -> {})
+                .withPublishedSnapshots()
+                .build();
+        schedulerRef.set(scheduler);
+        Assert.assertSame(SchedulerSnapshot.EMPTY, scheduler.getLatestSnapshot());
+        final List<VirtualMachineLease> leases = LeaseProvider.getLeases(2, 4, 4000, 1, 10);
+        final TaskRequest t1 = TaskRequestProvider.getTaskRequest(1, 100, 1, Collections.singletonList(c), null);
+        Map<String, VMAssignmentResult> resultMap = scheduler.scheduleOnce(Collections.singletonList(t1), leases).getResultMap();
+        Assert.assertEquals(1, resultMap.size());
+        Assert.assertEquals(0L, seenInIteration.get().getVersion());
+        Assert.assertTrue(resourceStatusFailed.get());
+        SchedulerSnapshot snapshot = scheduler.getLatestSnapshot();
+        Assert.assertEquals(1L, snapshot.getVersion());
+        Assert.assertEquals(resultMap.keySet(), snapshot.getAssignments().keySet());
+        Assert.assertEquals(2, snapshot.getResourceStatus().size());
+        Assert.assertEquals(2, snapshot.getVmCurrentStates().size());
+        Assert.assertTrue(snapshot.getQueuedTasks().isEmpty());
+        final String host = resultMap.keySet().iterator().next();
+        scheduler.getTaskAssigner().call(t1, host);
+        final TaskRequest t2 = TaskRequestProvider.getTaskRequest(1, 100, 1, Collections.singletonList(c), null);
+        scheduler.scheduleOnce(Collections.singletonList(t2), Collections.<VirtualMachineLease>emptyList());
+        Assert.assertSame(snapshot, seenInIteration.get());
+        snapshot = scheduler.getLatestSnapshot();
+        Assert.assertEquals(2L, snapshot.getVersion());
+        Assert.assertEquals(1, snapshot.getAssignments().size());
+    }
+
+    @Test
+    public void testSnapshotNotChangedByLaterChanges() throws Exception {
+        final TaskScheduler scheduler = new TaskScheduler.Builder()
+                .withLeaseOfferExpirySecs(1000000)
+                .withLeaseRejectAction(virtualMachineLease -> {})
+                .withPublishedSnapshots()
+                .build();
+        final String host = "hostA";
+        final List<VirtualMachineLease.Range> ports = Collections.singletonList(new VirtualMachineLease.Range(1, 10));
+        final Map<String, Protos.Attribute> attributes = ResourceSetsTests.getResSetsAttributesMap("ENIs", 3, 8);
+        final TaskRequest.NamedResourceSetRequest sr = new TaskRequest.NamedResourceSetRequest("ENIs", "sg1", 1, 1);
+        final TaskRequest t1 = TaskRequestProvider.getTaskRequest(
+                "grp", 1, 100, 0, 0, 1, null, null, Collections.singletonMap(sr.getResName(), sr));
+        final SchedulingResult result = scheduler.scheduleOnce(Collections.singletonList(t1),
+                Collections.singletonList(LeaseProvider.getLeaseOffer(host, 4, 4000, ports, attributes)));
+        Assert.assertEquals(1, result.getResultMap().size());
+        final SchedulerSnapshot snapshot = scheduler.getLatestSnapshot();
+        Assert.assertEquals(1, snapshot.getVmCurrentStates().size());
+        final VirtualMachineCurrentState state = snapshot.getVmCurrentStates().get(0);
+        Assert.assertEquals(host, state.getHostname());
+        Assert.assertEquals(1, state.getResourceSets().size());
+        final double cpus = state.getCurrAvailableResources().cpuCores();
+        final List<VirtualMachineLease.Range> portRanges = new ArrayList<>(state.getCurrAvailableResources().portRanges());
+        final List<Double> usedCounts = state.getResourceSets().get("ENIs").getUsedCounts();
+        final long disabledUntil = state.getDisabledUntil();
+        Assert.assertTrue(state.getRunningTasks().isEmpty());
+
+        // launch the task, disable the host, and give it a new offer in another iteration
+        scheduler.getTaskAssigner().call(t1, host);
+        scheduler.disableVM(host, 100000L);
+        scheduler.scheduleOnce(Collections.<TaskRequest>emptyList(), Collections.singletonList(
+                LeaseProvider.getLeaseOffer(host, 2, 2000, Collections.singletonList(new VirtualMachineLease.Range(11, 20)), attributes)));
+        scheduler.getTaskUnAssigner().call(t1.getId(), host);
+        Assert.assertEquals(2L, scheduler.getLatestSnapshot().getVersion());
+
+        Assert.assertSame(state, snapshot.getVmCurrentStates().get(0));
+        Assert.assertTrue(state.getRunningTasks().isEmpty());
+        Assert.assertEquals(cpus, state.getCurrAvailableResources().cpuCores(), 0.0);
+        Assert.assertEquals(portRanges.size(), state.getCurrAvailableResources().portRanges().size());
+        for (int i = 0; i < portRanges.size(); i++) {
+            Assert.assertEquals(portRanges.get(i).getBeg(), state.getCurrAvailableResources().portRanges().get(i).getBeg());
+            Assert.assertEquals(portRanges.get(i).getEnd(), state.getCurrAvailableResources().portRanges().get(i).getEnd());
+        }
+        Assert.assertEquals(usedCounts, state.getResourceSets().get("ENIs").getUsedCounts());
+        Assert.assertEquals(disabledUntil, state.getDisabledUntil());
+    }
 }
@@ -26,6 +26,8 @@ import org.slf4j.LoggerFactory;
 import com.netflix.fenzo.functions.Action1;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -209,6 +211,61 @@ public class BinPackingSchedulerTests {
         Assert.assertEquals(1, hosts1);
     }
 
+    // Batch scoring from the capacity frontier must find the same fitness as scoring one host at a time from its
+    // current state, with tasks running on the hosts and tasks assigned earlier in the same iteration.
+    @Test
+    public void testBatchScoringMatchesSingleHostScoring() throws Exception {
+        final VMTaskFitnessCalculator batch = BinPackingFitnessCalculators.cpuMemNetworkBinPacker;
+        final VMTaskFitnessCalculator singleHost = new VMTaskFitnessCalculator() {
+            @Override
+            public String getName() {
+                return "SingleHost" + batch.getName();
+            }
+            @Override
+            public double calculateFitness(TaskRequest taskRequest, VirtualMachineCurrentState targetVM,
+                                           TaskTrackerState taskTrackerState) {
+                return batch.calculateFitness(taskRequest, targetVM, taskTrackerState);
+            }
+        };
+        List<VirtualMachineLease> leases = new ArrayList<>();
+        for(int i=0; i<6; i++)
+            leases.add(LeaseProvider.getLeaseOffer("host" + i, 4 + i, 1000 * (i + 1), 1000 + 100 * i,
+                    Collections.singletonList(new VirtualMachineLease.Range(1, 100))));
+        List<TaskRequest> running = new ArrayList<>();
+        for(int i=0; i<4; i++)
+            running.add(TaskRequestProvider.getTaskRequest(1 + i % 2, 300 * (i + 1), 50 * i, 1));
+        List<TaskRequest> taskRequests = new ArrayList<>();
+        for(int i=0; i<10; i++)
+            taskRequests.add(TaskRequestProvider.getTaskRequest(0.5 + i % 3, 100 + 150 * (i % 4), 20 * (i % 5), 1));
+        final Map<String, String> batchHosts = new HashMap<>();
+        final Map<String, Double> batchFitness = new HashMap<>();
+        scheduleWith(batch, leases, running, taskRequests, batchHosts, batchFitness);
+        final Map<String, String> singleHosts = new HashMap<>();
+        final Map<String, Double> singleFitness = new HashMap<>();
+        scheduleWith(singleHost, leases, running, taskRequests, singleHosts, singleFitness);
+        Assert.assertEquals(taskRequests.size(), batchHosts.size());
+        Assert.assertEquals(singleHosts, batchHosts);
+        for(Map.Entry<String, Double> entry: singleFitness.entrySet())
+            Assert.assertEquals(entry.getValue(), batchFitness.get(entry.getKey()), 1e-9);
+    }
+
+    private void scheduleWith(VMTaskFitnessCalculator fitnessCalculator, List<VirtualMachineLease> leases,
+                              List<TaskRequest> running, List<TaskRequest> taskRequests,
+                              Map<String, String> hosts, Map<String, Double> fitness) {
+        TaskScheduler scheduler = getScheduler(fitnessCalculator);
+        scheduler.scheduleOnce(Collections.<TaskRequest>emptyList(), leases);
+        for(int i=0; i<running.size(); i++)
+            scheduler.getTaskAssigner().call(running.get(i), "host" + i);
+        for(VMAssignmentResult result: scheduler.scheduleOnce(taskRequests,
+                Collections.<VirtualMachineLease>emptyList()).getResultMap().values()) {
+            for(TaskAssignmentResult assigned: result.getTasksAssigned()) {
+                hosts.put(assigned.getTaskId(), result.getHostname());
+                fitness.put(assigned.getTaskId(), assigned.getFitness());
+            }
+        }
+        scheduler.shutdown();
+    }
+
     // ToDo need a test to confirm BinPackingFitnessCalculators.getCpuAndMemoryBinPacker()
 
 }
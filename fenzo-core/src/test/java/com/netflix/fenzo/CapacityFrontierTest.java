@@ -0,0 +1,105 @@
+/*
+ * Copyright 2017 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.fenzo;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+public class CapacityFrontierTest {
+
+    @Test
+    public void testFits() throws Exception {
+        CapacityFrontier frontier = new CapacityFrontier(new ScalarResourceRegistry());
+        frontier.reset(2);
+        frontier.set(0, 1.0, 4.0, 100.0, 1000.0, 0.0, 1000.0, 0.0, 500.0, 2, 10);
+        frontier.set(1, 4.0, 4.0, 100.0, 1000.0, 0.0, 1000.0, 0.0, 500.0, 0, 10);
+        Assert.assertTrue(frontier.fits(0, TaskRequestProvider.getTaskRequest(3, 900, 8)));
+        Assert.assertFalse(frontier.fits(0, TaskRequestProvider.getTaskRequest(3.5, 900, 8)));
+        Assert.assertFalse(frontier.fits(0, TaskRequestProvider.getTaskRequest(1, 901, 8)));
+        Assert.assertFalse(frontier.fits(0, TaskRequestProvider.getTaskRequest(1, 100, 9)));
+        Assert.assertFalse(frontier.fits(1, TaskRequestProvider.getTaskRequest(0.1, 10, 1)));
+        Assert.assertTrue(frontier.fits(1, TaskRequestProvider.getTaskRequest(0, 10, 1)));
+    }
+
+    @Test
+    public void testCandidatesScanAllColumns() throws Exception {
+        final int numSlots = 130;
+        final ScalarResourceRegistry registry = new ScalarResourceRegistry();
+        final int gpuSlot = registry.getSlot("frontierTestGpu");
+        final double[] noGpus = new double[gpuSlot + 1];
+        final double[] twoGpus = new double[gpuSlot + 1];
+        twoGpus[gpuSlot] = 2.0;
+        CapacityFrontier frontier = new CapacityFrontier(registry);
+        frontier.reset(numSlots);
+        for (int s = 0; s < numSlots; s++) {
+            // every other VM has no ports left, and every third VM has GPUs
+            frontier.set(s, 0.0, 4.0, 0.0, 1000.0, 0.0, 1000.0, 0.0, 500.0, s % 2 == 0 ? 10 : 0, 10);
+            frontier.setScalars(s, noGpus, s % 3 == 0 ? twoGpus : noGpus);
+        }
+        int[] out = new int[numSlots];
+        int n = frontier.getCandidates(TaskRequestProvider.getTaskRequest(1, 100, 1), out);
+        Assert.assertEquals(numSlots / 2, n);
+        for (int i = 0; i < n; i++)
+            Assert.assertEquals(2 * i + 1, out[i]);
+        final TaskRequest gpuTask = TaskRequestProvider.getTaskRequest("", 1, 100, 0, 0, 1, null, null, null,
+                Collections.singletonMap("frontierTestGpu", 1.0));
+        n = frontier.getCandidates(gpuTask, out);
+        for (int i = 0; i < n; i++)
+            Assert.assertEquals(3, out[i] % 6);
+        Assert.assertEquals(22, n);
+        Assert.assertEquals(0, frontier.getCandidates(TaskRequestProvider.getTaskRequest("", 1, 100, 0, 0, 0, null,
+                null, null, Collections.singletonMap("frontierTestFpga", 1.0)), out));
+    }
+
+    // tasks skipped on full hosts must still report resource failures from each host
+    @Test
+    public void testSkippedHostsReportFailures() throws Exception {
+        TaskScheduler taskScheduler = new TaskScheduler.Builder()
+                .withLeaseOfferExpirySecs(1000000)
+                .withLeaseRejectAction(virtualMachineLease -> {})
+                .build();
+        final int numHosts = 4;
+        List<VirtualMachineLease> leases = LeaseProvider.getLeases(numHosts, 4, 4000, 1, 100);
+        List<TaskRequest> tasks = new ArrayList<>();
+        for (int i = 0; i < numHosts; i++)
+            tasks.add(TaskRequestProvider.getTaskRequest(3, 100, 1));
+        // each of these fits on an empty host, but not on any host after the above assignments
+        tasks.add(TaskRequestProvider.getTaskRequest(2, 100, 1));
+        tasks.add(TaskRequestProvider.getTaskRequest(1, 3950, 1));
+        final SchedulingResult result = taskScheduler.scheduleOnce(tasks, leases);
+        Assert.assertEquals(numHosts, result.getResultMap().size());
+        final Map<TaskRequest, List<TaskAssignmentResult>> failures = result.getFailures();
+        Assert.assertEquals(2, failures.size());
+        final List<TaskAssignmentResult> cpuFailures = failures.get(tasks.get(numHosts));
+        Assert.assertEquals(numHosts, cpuFailures.size());
+        for (TaskAssignmentResult r : cpuFailures) {
+            Assert.assertEquals(1, r.getFailures().size());
+            Assert.assertEquals(VMResource.CPU, r.getFailures().get(0).getResource());
+            Assert.assertEquals(3.0, r.getFailures().get(0).getUsed(), 0.0);
+        }
+        final List<TaskAssignmentResult> memFailures = failures.get(tasks.get(numHosts + 1));
+        Assert.assertEquals(numHosts, memFailures.size());
+        for (TaskAssignmentResult r : memFailures)
+            Assert.assertEquals(VMResource.Memory, r.getFailures().get(0).getResource());
+        taskScheduler.shutdown();
+    }
+}
@@ -30,6 +30,7 @@ import org.junit.Before;
 import org.junit.Test;
 
 import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class ConstraintsTests {
 
@@ -38,6 +39,8 @@ public class ConstraintsTests {
     Map<String, Protos.Attribute> attributesA = new HashMap<>();
     Map<String, Protos.Attribute> attributesB = new HashMap<>();
     Map<String, Protos.Attribute> attributesC = new HashMap<>();
+    // job of each task created by createJobTask()
+    private final Map<String, String> jobs = new HashMap<>();
 
     @Before
     public void setUp() throws Exception {
@@ -265,6 +268,70 @@ public class ConstraintsTests {
         Assert.assertEquals(tasks.size(), resultMap.size());
     }
 
+    // Test that the balanced host attribute constraint balances the tasks of a task group when created without a
+    // co-tasks getter, in which case it counts the zones of the group's tasks from the task tracker's index.
+    @Test
+    public void testBalancedHostAttrConstraintByCoTaskGroup() throws Exception {
+        BalancedHostAttrConstraint constraint = new BalancedHostAttrConstraint(zoneAttrName, 3);
+        List<TaskRequest> sixTasks = new ArrayList<>();
+        for(int i=0; i<6; i++)
+            sixTasks.add(TaskRequestProvider.getTaskRequest("job1", 1, 100, 0, 1,
+                    Collections.singletonList(constraint), null));
+        final TaskScheduler taskScheduler = getTaskScheduler();
+        final Map<String, VMAssignmentResult> resultMap = taskScheduler.scheduleOnce(sixTasks, getThreeVMs()).getResultMap();
+        Assert.assertEquals(3, resultMap.size());
+        for(VMAssignmentResult r: resultMap.values()) {
+            Assert.assertEquals(2, r.getTasksAssigned().size());
+        }
+    }
+
+    // Test that the unique host attribute constraint, created without a co-tasks getter, keeps co-tasks of each group
+    // in different zones across scheduling iterations, as tasks are assigned, launched, and completed.
+    @Test
+    public void testUniqueHostAttrConstraintByCoTaskGroup() throws Exception {
+        final UniqueHostAttrConstraint constraint = new UniqueHostAttrConstraint(zoneAttrName);
+        final TaskScheduler taskScheduler = new TaskScheduler.Builder()
+                .withLeaseOfferExpirySecs(1000000)
+                .withLeaseRejectAction(virtualMachineLease -> {})
+                .withFitnessCalculator(BinPackingFitnessCalculators.cpuMemBinPacker)
+                .withCoTaskGroupKeyGetter(task -> jobs.get(task.getId()))
+                .build();
+        List<TaskRequest> tasks = new ArrayList<>();
+        for(int i=0; i<6; i++)
+            tasks.add(createJobTask(i < 3 ? "jobA" : "jobB", constraint));
+        Map<String, VMAssignmentResult> resultMap = taskScheduler.scheduleOnce(tasks, getThreeVMs()).getResultMap();
+        Assert.assertEquals(3, resultMap.size());
+        String jobAHostB=null;
+        for(VMAssignmentResult r: resultMap.values()) {
+            Set<String> jobsOnHost = new HashSet<>();
+            for(TaskAssignmentResult a: r.getTasksAssigned()) {
+                Assert.assertTrue(jobsOnHost.add(jobs.get(a.getTaskId())));
+                taskScheduler.getTaskAssigner().call(a.getRequest(), r.getHostname());
+                if("hostB".equals(r.getHostname()) && "jobA".equals(jobs.get(a.getTaskId())))
+                    jobAHostB = a.getTaskId();
+            }
+            Assert.assertEquals(2, jobsOnHost.size());
+        }
+        Assert.assertNotNull(jobAHostB);
+        // every zone already runs a task of jobA
+        final TaskRequest moreA = createJobTask("jobA", constraint);
+        resultMap = taskScheduler.scheduleOnce(Collections.singletonList(moreA), getThreeVMs()).getResultMap();
+        Assert.assertTrue(resultMap.isEmpty());
+        // once jobA's task in zone B completes, zone B can be used again
+        taskScheduler.getTaskUnAssigner().call(jobAHostB, "hostB");
+        resultMap = taskScheduler.scheduleOnce(Collections.singletonList(moreA),
+                Collections.<VirtualMachineLease>emptyList()).getResultMap();
+        Assert.assertEquals(1, resultMap.size());
+        Assert.assertEquals("hostB", resultMap.keySet().iterator().next());
+    }
+
+    private TaskRequest createJobTask(String job, ConstraintEvaluator constraint) {
+        final TaskRequest task = TaskRequestProvider.getTaskRequest(1, 100, 1, Collections.singletonList(constraint),
+                null);
+        jobs.put(task.getId(), job);
+        return task;
+    }
+
     // tests that a task with exclusive host constraint gets assigned a host that has no other tasks on it
     @Test
     public void testExclusiveHostConstraint() throws Exception {
@@ -376,6 +443,92 @@ public class ConstraintsTests {
         Assert.assertTrue(found);
     }
 
+    // Tests that a host attribute value constraint shared by tasks is evaluated once per zone in an iteration, and
+    // that its cached results still restrict the tasks to hosts in the required zone. The hosts are not filtered by
+    // the required zone, so that the constraint is evaluated on hosts of all zones.
+    @Test
+    public void testHostAttrValueConstraintEvaluatedOncePerValue() throws Exception {
+        List<VirtualMachineLease> leases = new ArrayList<>();
+        List<VirtualMachineLease.Range> ports = new ArrayList<>();
+        ports.add(new VirtualMachineLease.Range(1, 10));
+        for(int i=0; i<3; i++) {
+            leases.add(LeaseProvider.getLeaseOffer("hostA" + i, 2, 2000, ports, attributesA));
+            leases.add(LeaseProvider.getLeaseOffer("hostB" + i, 2, 2000, ports, attributesB));
+            leases.add(LeaseProvider.getLeaseOffer("hostC" + i, 2, 2000, ports, attributesC));
+        }
+        final AtomicInteger numEvaluations = new AtomicInteger();
+        HostAttrValueConstraint c = new HostAttrValueConstraint(zoneAttrName, new Func1<String, String>() {
+            @Override
+            public String call(String s) {
+                return "zoneB";
+            }
+        }) {
+            @Override
+            public Result evaluate(TaskRequest taskRequest, VirtualMachineCurrentState targetVM, TaskTrackerState taskTrackerState) {
+                numEvaluations.incrementAndGet();
+                return super.evaluate(taskRequest, targetVM, taskTrackerState);
+            }
+
+            @Override
+            public Map<String, Set<String>> getRequiredHostAttributeValues(TaskRequest taskRequest) {
+                return null;
+            }
+        };
+        List<TaskRequest> tasks = new ArrayList<>();
+        for(int i=0; i<6; i++)
+            tasks.add(TaskRequestProvider.getTaskRequest(1, 1000, 1, Collections.singletonList(c), null));
+        Map<String, VMAssignmentResult> resultMap = getTaskScheduler().scheduleOnce(tasks, leases).getResultMap();
+        int numAssigned=0;
+        for(VMAssignmentResult result: resultMap.values()) {
+            Assert.assertTrue(result.getHostname().startsWith("hostB"));
+            numAssigned += result.getTasksAssigned().size();
+        }
+        Assert.assertEquals(tasks.size(), numAssigned);
+        Assert.assertEquals(numZones, numEvaluations.get());
+    }
+
+    // Tests that a task with a host attribute value constraint is tried only on the hosts with the required value, and
+    // that the other hosts still report the constraint's failure when the task can't be assigned
+    @Test
+    public void testHostAttrValueConstraintTriesOnlyHostsWithValue() throws Exception {
+        List<VirtualMachineLease> leases = getThreeVMs();
+        final Set<String> triedHosts = new HashSet<>();
+        HostAttrValueConstraint c = new HostAttrValueConstraint(zoneAttrName, new Func1<String, String>() {
+            @Override
+            public String call(String s) {
+                return "zoneC";
+            }
+        });
+        VMTaskFitnessCalculator hostRecorder = new VMTaskFitnessCalculator() {
+            @Override
+            public String getName() {
+                return "HostRecorder";
+            }
+
+            @Override
+            public double calculateFitness(TaskRequest taskRequest, VirtualMachineCurrentState targetVM, TaskTrackerState taskTrackerState) {
+                triedHosts.add(targetVM.getHostname());
+                return 1.0;
+            }
+        };
+        TaskScheduler taskScheduler = getTaskScheduler();
+        TaskRequest fits = TaskRequestProvider.getTaskRequest(1, 1000, 1, Collections.singletonList(c),
+                Collections.singletonList(hostRecorder));
+        TaskRequest tooLarge = TaskRequestProvider.getTaskRequest(8, 1000, 1, Collections.singletonList(c), null);
+        SchedulingResult result = taskScheduler.scheduleOnce(Arrays.asList(fits, tooLarge), leases);
+        Assert.assertEquals(Collections.singleton("hostC"), result.getResultMap().keySet());
+        Assert.assertEquals(Collections.singleton("hostC"), triedHosts);
+        List<TaskAssignmentResult> failures = result.getFailures().get(tooLarge);
+        Assert.assertNotNull(failures);
+        Assert.assertEquals(leases.size(), failures.size());
+        for(TaskAssignmentResult failure: failures) {
+            if(failure.getHostname().equals("hostC"))
+                Assert.assertNull(failure.getConstraintFailure());
+            else
+                Assert.assertEquals(c.getName(), failure.getConstraintFailure().getName());
+        }
+    }
+
     @Test
     public void testHostnameValueConstraint() throws Exception {
         final List<VirtualMachineLease> threeVMs = getThreeVMs();
@@ -0,0 +1,186 @@
+/*
+ * Copyright 2017 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.fenzo;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+public class EvaluationParallelismPoliciesTest {
+
+    @Test
+    public void testDefaultPolicy() throws Exception {
+        final EvaluationParallelismPolicy policy = EvaluationParallelismPolicies.DEFAULT;
+        Assert.assertEquals(1, policy.getNumWorkers(30, 8));
+        Assert.assertEquals(2, policy.getNumWorkers(31, 8));
+        Assert.assertEquals(8, policy.getNumWorkers(10000, 8));
+        Assert.assertEquals(10, policy.getVMsPerClaim(10000, 8));
+    }
+
+    @Test
+    public void testAdaptivePolicy() throws Exception {
+        final EvaluationParallelismPolicy policy = EvaluationParallelismPolicies.adaptive(100000L, 10000L);
+        // behaves as the default policy until measured
+        Assert.assertEquals(EvaluationParallelismPolicies.DEFAULT.getNumWorkers(1000, 8), policy.getNumWorkers(1000, 8));
+        // 1000 VMs taking 100 micros with 1 worker is 100 nanos per VM
+        policy.evaluated(1000, 1, 100000L);
+        Assert.assertEquals(100.0, ((EvaluationParallelismPolicies.AdaptivePolicy) policy).getNanosPerVM(), 0.001);
+        // cheap VMs don't need more workers until there is enough work for each
+        Assert.assertEquals(1, policy.getNumWorkers(1000, 8));
+        Assert.assertEquals(5, policy.getNumWorkers(5000, 8));
+        Assert.assertEquals(8, policy.getNumWorkers(100000, 8));
+        Assert.assertEquals(100, policy.getVMsPerClaim(100000, 8));
+        // VMs getting expensive to evaluate moves the average towards more workers and smaller claims
+        for (int i = 0; i < 100; i++)
+            policy.evaluated(1000, 2, 5000000L);
+        Assert.assertEquals(8, policy.getNumWorkers(1000, 8));
+        Assert.assertEquals(1, policy.getVMsPerClaim(1000, 8));
+    }
+
+    // a shared executor that is busy must not hold up scheduling, nor be shut down with the scheduler
+    @Test
+    public void testBusySharedExecutor() throws Exception {
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        final CountDownLatch blocker = new CountDownLatch(1);
+        executor.execute(() -> {
+            try {
+                blocker.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        TaskScheduler taskScheduler = new TaskScheduler.Builder()
+                .withLeaseOfferExpirySecs(1000000)
+                .withLeaseRejectAction(virtualMachineLease -> {})
+                .withSchedulingExecutor(executor)
+                .withSchedulingParallelism(4, 4)
+                .build();
+        final int numHosts = 200;
+        List<VirtualMachineLease> leases = LeaseProvider.getLeases(numHosts, 4, 4000, 1, 100);
+        List<TaskRequest> tasks = new ArrayList<>();
+        for (int i = 0; i < numHosts; i++)
+            tasks.add(TaskRequestProvider.getTaskRequest(2, 100, 1));
+        final SchedulingResult result = taskScheduler.scheduleOnce(tasks, leases);
+        int assigned = 0;
+        for (VMAssignmentResult r : result.getResultMap().values())
+            assigned += r.getTasksAssigned().size();
+        Assert.assertEquals(numHosts, assigned);
+        taskScheduler.shutdown();
+        Assert.assertFalse(executor.isShutdown());
+        blocker.countDown();
+        executor.shutdown();
+        Assert.assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testWithdrawnWorkersNotLeftInExecutorQueue() throws Exception {
+        final ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>());
+        final CountDownLatch blocker = new CountDownLatch(1);
+        executor.execute(() -> {
+            try {
+                blocker.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        TaskScheduler taskScheduler = new TaskScheduler.Builder()
+                .withLeaseOfferExpirySecs(1000000)
+                .withLeaseRejectAction(virtualMachineLease -> {})
+                .withSchedulingExecutor(executor)
+                .withSchedulingParallelism(4, 4)
+                .build();
+        final int numHosts = 50;
+        List<TaskRequest> tasks = new ArrayList<>();
+        for (int i = 0; i < numHosts; i++)
+            tasks.add(TaskRequestProvider.getTaskRequest(2, 100, 1));
+        taskScheduler.scheduleOnce(tasks, LeaseProvider.getLeases(numHosts, 4, 4000, 1, 100));
+        // the calling thread did all the work, and took back the workers the blocked executor never started
+        Assert.assertTrue(executor.getQueue().isEmpty());
+        taskScheduler.shutdown();
+        blocker.countDown();
+        executor.shutdown();
+        Assert.assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testQueuedWorkersReusedAcrossTasks() throws Exception {
+        // a wrapped executor whose queue can't be reached to remove workers from
+        final ThreadPoolExecutor pool = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>());
+        final ExecutorService executor = Executors.unconfigurableExecutorService(pool);
+        final CountDownLatch blocker = new CountDownLatch(1);
+        executor.execute(() -> {
+            try {
+                blocker.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        TaskScheduler taskScheduler = new TaskScheduler.Builder()
+                .withLeaseOfferExpirySecs(1000000)
+                .withLeaseRejectAction(virtualMachineLease -> {})
+                .withSchedulingExecutor(executor)
+                .withSchedulingParallelism(4, 4)
+                .build();
+        final int numHosts = 50;
+        for (int iter = 0; iter < 3; iter++) {
+            List<TaskRequest> tasks = new ArrayList<>();
+            for (int i = 0; i < numHosts; i++)
+                tasks.add(TaskRequestProvider.getTaskRequest(1, 10, 1));
+            taskScheduler.scheduleOnce(tasks, iter == 0 ?
+                    LeaseProvider.getLeases(numHosts, 4, 4000, 1, 100) : Collections.<VirtualMachineLease>emptyList());
+        }
+        // at most one runnable queued per worker slot other than the calling thread's
+        Assert.assertTrue("Queued: " + pool.getQueue().size(), pool.getQueue().size() <= 3);
+        taskScheduler.shutdown();
+        blocker.countDown();
+        executor.shutdown();
+        Assert.assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testSerialScheduler() throws Exception {
+        TaskScheduler taskScheduler = new TaskScheduler.Builder()
+                .withLeaseOfferExpirySecs(1000000)
+                .withLeaseRejectAction(virtualMachineLease -> {})
+                .withSchedulingParallelism(1, 1)
+                .withEvaluationParallelismPolicy(EvaluationParallelismPolicies.adaptive())
+                .build();
+        final int numHosts = 50;
+        List<VirtualMachineLease> leases = LeaseProvider.getLeases(numHosts, 4, 4000, 1, 100);
+        List<TaskRequest> tasks = new ArrayList<>();
+        for (int i = 0; i < numHosts * 5; i++)
+            tasks.add(TaskRequestProvider.getTaskRequest(1, 100, 1));
+        final SchedulingResult result = taskScheduler.scheduleOnce(tasks, leases);
+        int assigned = 0;
+        for (VMAssignmentResult r : result.getResultMap().values())
+            assigned += r.getTasksAssigned().size();
+        Assert.assertEquals(numHosts * 4, assigned);
+        Assert.assertEquals(numHosts, result.getFailures().size());
+        taskScheduler.shutdown();
+    }
+}
@@ -0,0 +1,216 @@
+/*
+ * Copyright 2017 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.fenzo;
+
+import com.netflix.fenzo.plugins.HostAttrValueConstraint;
+import org.apache.mesos.Protos;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class FailureReporterTest {
+
+    private static TaskScheduler getScheduler(FailureReportingMode mode, double samplingFraction) {
+        return new TaskScheduler.Builder()
+                .withLeaseOfferExpirySecs(1000000)
+                .withLeaseRejectAction(virtualMachineLease -> {})
+                .withFailureReportingMode(mode)
+                .withMaxClosestMissesPerTask(3)
+                .withSampledFailureDetails(samplingFraction)
+                .build();
+    }
+
+    private static List<VirtualMachineLease> getLeases() {
+        List<VirtualMachineLease> leases = new ArrayList<>();
+        // hosts with increasing cpus, all too small for the task
+        for (int i = 1; i <= 8; i++)
+            leases.add(LeaseProvider.getLeaseOffer("host" + i, i, 4000, 1, 100));
+        return leases;
+    }
+
+    @Test
+    public void testAggregatedFailures() throws Exception {
+        final TaskScheduler scheduler = getScheduler(FailureReportingMode.Aggregated, 0.0);
+        final TaskRequest task = TaskRequestProvider.getTaskRequest(10, 100, 1);
+        final SchedulingResult result = scheduler.scheduleOnce(Collections.singletonList(task), getLeases());
+        Assert.assertTrue(result.getResultMap().isEmpty());
+        final TaskFailureSummary summary = result.getFailureSummaries().get(task);
+        Assert.assertNotNull(summary);
+        Assert.assertFalse(summary.isDetailed());
+        Assert.assertEquals(8, summary.getNumVMsEvaluated());
+        Assert.assertEquals(8, summary.getResourceFailureCounts().get(VMResource.CPU).intValue());
+        Assert.assertNull(summary.getResourceFailureCounts().get(VMResource.Memory));
+        Assert.assertTrue(summary.getConstraintFailureCounts().isEmpty());
+        final List<TaskAssignmentResult> closest = result.getFailures().get(task);
+        Assert.assertEquals(3, closest.size());
+        Assert.assertEquals("host8", closest.get(0).getHostname());
+        Assert.assertEquals("host7", closest.get(1).getHostname());
+        Assert.assertEquals("host6", closest.get(2).getHostname());
+        scheduler.shutdown();
+    }
+
+    @Test
+    public void testAggregatedCountsMatchFullDetail() throws Exception {
+        final List<VirtualMachineLease> leases = new ArrayList<>();
+        // hosts short of cpus, short of memory, or both, for a task of 4 cpus and 2000 memory
+        for (int i = 1; i <= 4; i++) {
+            leases.add(LeaseProvider.getLeaseOffer("cpuShort" + i, i - 0.5, 4000, 1, 100));
+            leases.add(LeaseProvider.getLeaseOffer("memoryShort" + i, 8, 400 * i, 1, 100));
+            leases.add(LeaseProvider.getLeaseOffer("bothShort" + i, i - 0.5, 400 * i, 1, 100));
+        }
+        final TaskScheduler aggregated = getScheduler(FailureReportingMode.Aggregated, 0.0);
+        final TaskRequest task = TaskRequestProvider.getTaskRequest(4, 2000, 1);
+        final SchedulingResult result = aggregated.scheduleOnce(Collections.singletonList(task), leases);
+        aggregated.shutdown();
+        final TaskScheduler sampling = getScheduler(FailureReportingMode.Aggregated, 1.0);
+        final TaskRequest sampledTask = TaskRequestProvider.getTaskRequest(4, 2000, 1);
+        final SchedulingResult sampledResult = sampling.scheduleOnce(Collections.singletonList(sampledTask), leases);
+        sampling.shutdown();
+        final TaskFailureSummary summary = result.getFailureSummaries().get(task);
+        final TaskFailureSummary sampledSummary = sampledResult.getFailureSummaries().get(sampledTask);
+        Assert.assertFalse(summary.isDetailed());
+        Assert.assertEquals(12, summary.getNumVMsEvaluated());
+        Assert.assertEquals(sampledSummary.getNumVMsEvaluated(), summary.getNumVMsEvaluated());
+        Assert.assertEquals(8, summary.getResourceFailureCounts().get(VMResource.CPU).intValue());
+        Assert.assertEquals(8, summary.getResourceFailureCounts().get(VMResource.Memory).intValue());
+        Assert.assertEquals(sampledSummary.getResourceFailureCounts(), summary.getResourceFailureCounts());
+        // the closest misses are created only for the 3 hosts closest to fitting the task
+        final List<TaskAssignmentResult> closest = result.getFailures().get(task);
+        Assert.assertEquals(3, closest.size());
+        Assert.assertEquals("cpuShort4", closest.get(0).getHostname());
+        Assert.assertEquals("memoryShort4", closest.get(1).getHostname());
+        Assert.assertEquals("bothShort4", closest.get(2).getHostname());
+        Assert.assertEquals(VMResource.CPU, closest.get(0).getFailures().get(0).getResource());
+        Assert.assertEquals(12, sampledResult.getFailures().get(sampledTask).size());
+    }
+
+    // A zone constraint evaluated on every host it is tried on, without reusing its results across hosts
+    private static class CountingZoneConstraint extends HostAttrValueConstraint {
+        private final AtomicInteger numEvaluated = new AtomicInteger();
+
+        CountingZoneConstraint() {
+            super("zone", taskId -> "zoneA");
+        }
+
+        @Override
+        public Result evaluate(TaskRequest taskRequest, VirtualMachineCurrentState targetVM,
+                               TaskTrackerState taskTrackerState) {
+            numEvaluated.incrementAndGet();
+            return super.evaluate(taskRequest, targetVM, taskTrackerState);
+        }
+
+        @Override
+        public List<String> getHostAttributeNames() {
+            return null;
+        }
+    }
+
+    private static Map<String, Protos.Attribute> getZone(String zone) {
+        return Collections.singletonMap("zone", Protos.Attribute.newBuilder().setName("zone")
+                .setType(Protos.Value.Type.TEXT)
+                .setText(Protos.Value.Text.newBuilder().setValue(zone)).build());
+    }
+
+    // hosts of zoneA too small for a 4 cpu task, and larger hosts of zoneB
+    private static List<VirtualMachineLease> getZoneLeases() {
+        final List<VirtualMachineLease> leases = new ArrayList<>();
+        final List<VirtualMachineLease.Range> ports = Collections.singletonList(new VirtualMachineLease.Range(1, 100));
+        leases.add(LeaseProvider.getLeaseOffer("hostA1", 1, 4000, ports, getZone("zoneA")));
+        leases.add(LeaseProvider.getLeaseOffer("hostA2", 2, 4000, ports, getZone("zoneA")));
+        for (int i = 1; i <= 18; i++)
+            leases.add(LeaseProvider.getLeaseOffer("hostB" + i, 8, 4000, ports, getZone("zoneB")));
+        return leases;
+    }
+
+    @Test
+    public void testAggregatedFailuresDontEvaluateFilteredVMs() throws Exception {
+        final TaskScheduler scheduler = getScheduler(FailureReportingMode.Aggregated, 0.0);
+        final CountingZoneConstraint constraint = new CountingZoneConstraint();
+        final TaskRequest task = TaskRequestProvider.getTaskRequest(4, 100, 1,
+                Collections.singletonList(constraint), null);
+        final SchedulingResult result = scheduler.scheduleOnce(Collections.singletonList(task), getZoneLeases());
+        Assert.assertTrue(result.getResultMap().isEmpty());
+        // tried on the 2 hosts of zoneA, and evaluated again on one host of zoneB, for its result as a closest miss
+        Assert.assertEquals(3, constraint.numEvaluated.get());
+        final TaskFailureSummary summary = result.getFailureSummaries().get(task);
+        Assert.assertEquals(20, summary.getNumVMsEvaluated());
+        Assert.assertEquals(2, summary.getResourceFailureCounts().get(VMResource.CPU).intValue());
+        Assert.assertEquals(18, summary.getConstraintFailureCounts().get(constraint.getName()).intValue());
+        final List<TaskAssignmentResult> closest = result.getFailures().get(task);
+        Assert.assertEquals(3, closest.size());
+        Assert.assertEquals("hostA2", closest.get(0).getHostname());
+        Assert.assertEquals("hostA1", closest.get(1).getHostname());
+        Assert.assertEquals(constraint.getName(), closest.get(2).getConstraintFailure().getName());
+        scheduler.shutdown();
+
+        // all hosts are evaluated for a task sampled for full detail
+        final TaskScheduler sampling = getScheduler(FailureReportingMode.Aggregated, 1.0);
+        final CountingZoneConstraint sampledConstraint = new CountingZoneConstraint();
+        final TaskRequest sampledTask = TaskRequestProvider.getTaskRequest(4, 100, 1,
+                Collections.singletonList(sampledConstraint), null);
+        final SchedulingResult sampledResult =
+                sampling.scheduleOnce(Collections.singletonList(sampledTask), getZoneLeases());
+        Assert.assertEquals(20, sampledConstraint.numEvaluated.get());
+        Assert.assertEquals(20, sampledResult.getFailures().get(sampledTask).size());
+        Assert.assertEquals(summary.getResourceFailureCounts(),
+                sampledResult.getFailureSummaries().get(sampledTask).getResourceFailureCounts());
+        Assert.assertEquals(summary.getConstraintFailureCounts(),
+                sampledResult.getFailureSummaries().get(sampledTask).getConstraintFailureCounts());
+        sampling.shutdown();
+    }
+
+    @Test
+    public void testSampledFullDetail() throws Exception {
+        final TaskScheduler scheduler = getScheduler(FailureReportingMode.Aggregated, 1.0);
+        final TaskRequest task = TaskRequestProvider.getTaskRequest(10, 100, 1);
+        final SchedulingResult result = scheduler.scheduleOnce(Collections.singletonList(task), getLeases());
+        Assert.assertTrue(result.getFailureSummaries().get(task).isDetailed());
+        Assert.assertEquals(8, result.getFailures().get(task).size());
+        scheduler.shutdown();
+    }
+
+    @Test
+    public void testFullModeHasNoSummaries() throws Exception {
+        final TaskScheduler scheduler = getScheduler(FailureReportingMode.Full, 0.0);
+        final TaskRequest task = TaskRequestProvider.getTaskRequest(10, 100, 1);
+        final SchedulingResult result = scheduler.scheduleOnce(Collections.singletonList(task), getLeases());
+        Assert.assertTrue(result.getFailureSummaries().isEmpty());
+        Assert.assertEquals(8, result.getFailures().get(task).size());
+        scheduler.shutdown();
+    }
+
+    @Test
+    public void testMissDistance() throws Exception {
+        final TaskRequest task = TaskRequestProvider.getTaskRequest(4, 100, 1);
+        final TaskAssignmentResult cpuShort = new TaskAssignmentResult(null, task, false,
+                Collections.singletonList(new AssignmentFailure(VMResource.CPU, 4.0, 2.0, 5.0, "")), null, 0.0);
+        final TaskAssignmentResult cpuAndMemoryShort = new TaskAssignmentResult(null, task, false,
+                Arrays.asList(new AssignmentFailure(VMResource.CPU, 4.0, 2.0, 5.0, ""),
+                        new AssignmentFailure(VMResource.Memory, 100.0, 950.0, 1000.0, "")), null, 0.0);
+        final TaskAssignmentResult constraint = new TaskAssignmentResult(null, task, false, null,
+                new ConstraintFailure("c", "failed"), 0.0);
+        Assert.assertEquals(0.25, FailureReporter.getMissDistance(cpuShort), 0.0001);
+        Assert.assertEquals(0.75, FailureReporter.getMissDistance(cpuAndMemoryShort), 0.0001);
+        Assert.assertTrue(FailureReporter.getMissDistance(constraint) > FailureReporter.getMissDistance(cpuAndMemoryShort));
+    }
+}
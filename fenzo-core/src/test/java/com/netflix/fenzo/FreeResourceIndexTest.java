@@ -0,0 +1,80 @@
+/*
+ * Copyright 2017 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.fenzo;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class FreeResourceIndexTest {
+
+    private static CapacityFrontier createFrontier(int numSlots) {
+        CapacityFrontier frontier = new CapacityFrontier(new ScalarResourceRegistry());
+        frontier.reset(numSlots);
+        for (int s = 0; s < numSlots; s++)
+            frontier.set(s, 0.0, 32.0, 0.0, 64000.0, 0.0, 1000.0, 0.0, 10000.0, 0, 100);
+        return frontier;
+    }
+
+    private static void setUsed(CapacityFrontier frontier, int slot, double cpus, double memory) {
+        frontier.set(slot, cpus, 32.0, memory, 64000.0, 0.0, 1000.0, 0.0, 10000.0, 0, 100);
+    }
+
+    @Test
+    public void testCandidatesExcludeFullVMs() throws Exception {
+        final int numSlots = 200;
+        final CapacityFrontier frontier = createFrontier(numSlots);
+        // fill up all but every tenth VM before building the index
+        for (int s = 0; s < numSlots; s++)
+            if (s % 10 != 0)
+                setUsed(frontier, s, 31.0, 1000.0);
+        frontier.buildIndex();
+        int[] out = new int[numSlots];
+        final int n = frontier.getCandidates(TaskRequestProvider.getTaskRequest(16, 1000, 1), out);
+        Assert.assertEquals(numSlots / 10, n);
+        for (int i = 0; i < n; i++)
+            Assert.assertEquals(i * 10, out[i]);
+        // small tasks need to visit every VM
+        Assert.assertEquals(numSlots, frontier.getCandidates(TaskRequestProvider.getTaskRequest(0.5, 10, 1), out));
+    }
+
+    @Test
+    public void testCandidatesFollowAssignments() throws Exception {
+        final int numSlots = 100;
+        final CapacityFrontier frontier = createFrontier(numSlots);
+        frontier.buildIndex();
+        int[] out = new int[numSlots];
+        final TaskRequest task = TaskRequestProvider.getTaskRequest(8, 48000, 1);
+        Assert.assertEquals(numSlots, frontier.getCandidates(task, out));
+        List<Integer> expected = new ArrayList<>();
+        for (int s = 0; s < numSlots; s++) {
+            if (s % 3 == 0)
+                setUsed(frontier, s, 0.0, 40000.0);
+            else
+                expected.add(s);
+        }
+        final int n = frontier.getCandidates(task, out);
+        Assert.assertEquals(expected.size(), n);
+        for (int i = 0; i < n; i++)
+            Assert.assertEquals(expected.get(i).intValue(), out[i]);
+        // every candidate the index leaves out must not fit
+        for (int s = 0; s < numSlots; s += 3)
+            Assert.assertFalse(frontier.fits(s, task));
+    }
+}
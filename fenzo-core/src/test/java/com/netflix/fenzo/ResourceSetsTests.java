@@ -721,4 +721,38 @@ public class ResourceSetsTests {
         Assert.assertEquals(VMResource.ResourceSet,
                 result.getFailures().values().iterator().next().get(0).getFailures().iterator().next().getResource());
     }
+
+    private static TaskRequest getResSetTask(String resValue, int numSubResources) {
+        TaskRequest.NamedResourceSetRequest sr = new TaskRequest.NamedResourceSetRequest("ENIs", resValue, 1, numSubResources);
+        return TaskRequestProvider.getTaskRequest("grp", 1, 100, 0, 0, 0, null, null,
+                Collections.singletonMap(sr.getResName(), sr));
+    }
+
+    // Test that the resource set picked for a task is the lowest indexed one of those assigned the requested name with
+    // enough sub-resources left, or else the lowest indexed free one, as resource sets are consumed and released.
+    @Test
+    public void testResSetPickedByNameAndIndex() throws Exception {
+        PreferentialNamedConsumableResourceSet resSet = new PreferentialNamedConsumableResourceSet("ENIs", 4, 2);
+        final TaskRequest t1 = getResSetTask("sg1", 1);
+        final TaskRequest t2 = getResSetTask("sg2", 1);
+        Assert.assertEquals(0, resSet.consume(t1).getIndex());
+        Assert.assertEquals(1, resSet.consume(t2).getIndex());
+        Assert.assertEquals(0, resSet.consume(getResSetTask("sg1", 1)).getIndex());
+        // set 0 is full, the next free set is taken
+        Assert.assertEquals(2, resSet.consume(getResSetTask("sg1", 1)).getIndex());
+        // a task not needing sub-resources goes to the first set with sub-resources used, even if it is full
+        Assert.assertEquals(0, resSet.consume(getResSetTask("sg1", 0)).getIndex());
+        // a new name is offered only the free set, with the lowest fitness
+        Assert.assertEquals(0.5 / 3.0, resSet.getFitness(getResSetTask("sg3", 1)), 0.0001);
+        Assert.assertEquals(1.0, resSet.getFitness(getResSetTask("sg1", 1)), 0.0001);
+        // releasing a task frees up room in its set, and releasing the last one frees the set
+        Assert.assertTrue(resSet.release(t1));
+        Assert.assertFalse(resSet.release(t1));
+        Assert.assertEquals(0, resSet.consume(getResSetTask("sg1", 1)).getIndex());
+        Assert.assertTrue(resSet.release(t2));
+        Assert.assertEquals(1, resSet.consume(getResSetTask("sg3", 1)).getIndex());
+        Assert.assertEquals(3, resSet.consume(getResSetTask("sg4", 2)).getIndex());
+        // no set left for another name
+        Assert.assertEquals(0.0, resSet.getFitness(getResSetTask("sg5", 1)), 0.0);
+    }
 }
@@ -0,0 +1,81 @@
+/*
+ * Copyright 2017 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.fenzo;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+public class SampledEvaluationTest {
+
+    private static TaskScheduler getScheduler(int sampleSize) {
+        return new TaskScheduler.Builder()
+                .withLeaseOfferExpirySecs(1000000)
+                .withLeaseRejectAction(virtualMachineLease -> {})
+                .withSchedulingParallelism(1, 1)
+                .withSampledEvaluation(sampleSize)
+                .build();
+    }
+
+    @Test
+    public void testSampleBoundsEvaluations() throws Exception {
+        final TaskScheduler scheduler = getScheduler(2);
+        final int numHosts = 100;
+        final int numTasks = 10;
+        List<TaskRequest> tasks = new ArrayList<>();
+        for (int i = 0; i < numTasks; i++)
+            tasks.add(TaskRequestProvider.getTaskRequest(1, 100, 1));
+        final SchedulingResult result = scheduler.scheduleOnce(tasks, LeaseProvider.getLeases(numHosts, 4, 4000, 1, 100));
+        int assigned = 0;
+        for (VMAssignmentResult r : result.getResultMap().values())
+            assigned += r.getTasksAssigned().size();
+        Assert.assertEquals(numTasks, assigned);
+        Assert.assertEquals(numTasks * 2, result.getNumAllocations());
+        // rotating start spreads tasks across hosts
+        Assert.assertTrue(result.getResultMap().size() > 1);
+        scheduler.shutdown();
+    }
+
+    @Test
+    public void testFallbackToFullScan() throws Exception {
+        final TaskScheduler scheduler = getScheduler(3);
+        final int numHosts = 50;
+        List<VirtualMachineLease> leases = LeaseProvider.getLeases(numHosts, 1, 4000, 1, 100);
+        // only one host is large enough for the task
+        leases.add(LeaseProvider.getLeaseOffer("bighost", 8, 4000, 1, 100));
+        final TaskRequest task = TaskRequestProvider.getTaskRequest(4, 100, 1);
+        final SchedulingResult result = scheduler.scheduleOnce(Collections.singletonList(task), leases);
+        Assert.assertEquals(Collections.singleton("bighost"), result.getResultMap().keySet());
+        Assert.assertEquals(numHosts + 1, result.getNumAllocations());
+        scheduler.shutdown();
+    }
+
+    @Test
+    public void testNoSampling() throws Exception {
+        final TaskScheduler scheduler = getScheduler(0);
+        final int numHosts = 20;
+        final SchedulingResult result = scheduler.scheduleOnce(
+                Collections.singletonList(TaskRequestProvider.getTaskRequest(1, 100, 1)),
+                LeaseProvider.getLeases(numHosts, 4, 4000, 1, 100));
+        Assert.assertEquals(1, result.getResultMap().size());
+        Assert.assertEquals(numHosts, result.getNumAllocations());
+        scheduler.shutdown();
+    }
+}
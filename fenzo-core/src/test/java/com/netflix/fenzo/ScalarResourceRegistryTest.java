@@ -0,0 +1,74 @@
+/*
+ * Copyright 2017 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.fenzo;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+public class ScalarResourceRegistryTest {
+
+    @Test
+    public void testSlotsAreInterned() throws Exception {
+        final ScalarResourceRegistry registry = new ScalarResourceRegistry();
+        final int gpu = registry.getSlot("registryTestGpu");
+        final int fpga = registry.getSlot("registryTestFpga");
+        Assert.assertNotEquals(gpu, fpga);
+        Assert.assertEquals(gpu, registry.getSlot("registryTest" + "Gpu"));
+        Assert.assertEquals("registryTestGpu", registry.getName(gpu));
+        for (int i = 0; i < 20; i++)
+            Assert.assertEquals("registryTest" + i, registry.getName(registry.getSlot("registryTest" + i)));
+        Assert.assertEquals("registryTestFpga", registry.getName(fpga));
+    }
+
+    @Test
+    public void testLookupsDoNotRegister() throws Exception {
+        final ScalarResourceRegistry registry = new ScalarResourceRegistry();
+        Assert.assertEquals(-1, registry.findSlot("registryTestGpu"));
+        final double[] unavailable = registry.toVector(Collections.singletonMap("registryTestGpu", 1.0));
+        Assert.assertEquals(-1, registry.findSlot("registryTestGpu"));
+        Assert.assertTrue(unavailable.length > 0 && unavailable[0] > Double.MAX_VALUE);
+        Assert.assertEquals(0, registry.toVector(Collections.singletonMap("registryTestGpu", 0.0)).length);
+        final int gpu = registry.getSlot("registryTestGpu");
+        Assert.assertEquals(gpu, registry.findSlot("registryTestGpu"));
+        // registries of different schedulers are independent
+        Assert.assertEquals(-1, new ScalarResourceRegistry().findSlot("registryTestGpu"));
+    }
+
+    @Test
+    public void testVectorAndMapConversions() throws Exception {
+        final ScalarResourceRegistry registry = new ScalarResourceRegistry();
+        final int a = registry.getSlot("registryTestA");
+        registry.getSlot("registryTestB");
+        final Map<String, Double> values = new HashMap<>();
+        values.put("registryTestA", 2.0);
+        values.put("registryTestB", null);
+        final double[] vector = registry.toVector(values);
+        Assert.assertEquals(2.0, vector[a], 0.0);
+        Assert.assertEquals(0, registry.toVector(null).length);
+
+        final BitSet present = new BitSet();
+        present.set(a);
+        final Map<String, Double> map = registry.toMap(vector, present);
+        Assert.assertEquals(1, map.size());
+        Assert.assertEquals(2.0, map.get("registryTestA"), 0.0);
+    }
+}
@@ -131,4 +131,23 @@ public class ScalarResourceTests {
         }
         Assert.assertEquals((int)(scalars2OnHost*2.0), tasksAssigned);
     }
+
+    // Test that asking for a scalar resource that no host has does not get the task assigned, and that looking up
+    // the resource on a host does not find it either
+    @Test
+    public void testScalarResourceNotOnAnyHost() throws Exception {
+        final TaskScheduler scheduler = getScheduler();
+        final TaskRequest task = TaskRequestProvider.getTaskRequest(null, 1, 100, 1, 1, 1, null, null, null, Collections.singletonMap("fpga", 1.0));
+        final VirtualMachineLease host1 = LeaseProvider.getLeaseOffer("host1", 4.0, 4000.0, 100, 1024,
+                Collections.singletonList(new VirtualMachineLease.Range(1, 10)), null, Collections.singletonMap("gpu", 4.0));
+        final SchedulingResult result = scheduler.scheduleOnce(Collections.singletonList(task), Collections.singletonList(host1));
+        Assert.assertEquals(1, result.getFailures().size());
+        Assert.assertEquals(0, result.getResultMap().size());
+        final AssignmentFailure failure = result.getFailures().values().iterator().next().get(0).getFailures().get(0);
+        Assert.assertEquals(VMResource.Other, failure.getResource());
+        Assert.assertEquals(0.0, failure.getAvailable(), 0.0);
+        final VirtualMachineLease available = scheduler.getVmCurrentStates().get(0).getCurrAvailableResources();
+        Assert.assertNull(available.getScalarValue("fpga"));
+        Assert.assertEquals(Collections.singletonMap("gpu", 4.0), available.getScalarValues());
+    }
 }
@@ -0,0 +1,83 @@
+/*
+ * Copyright 2017 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.fenzo;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+public class SchedulerMetricsTest {
+
+    @Test
+    public void testPhasesReportedEachIteration() throws Exception {
+        final DefaultSchedulerMetrics metrics = new DefaultSchedulerMetrics();
+        final TaskScheduler taskScheduler = new TaskScheduler.Builder()
+                .withLeaseOfferExpirySecs(1000000)
+                .withLeaseRejectAction(lease -> {})
+                .withSchedulerMetrics(metrics)
+                .build();
+        List<TaskRequest> tasks = new ArrayList<>();
+        for (int i = 0; i < 5; i++)
+            tasks.add(TaskRequestProvider.getTaskRequest(1, 100, 1));
+        // the last task does not fit on any VM
+        tasks.add(TaskRequestProvider.getTaskRequest(8, 100, 1));
+        taskScheduler.scheduleOnce(tasks, LeaseProvider.getLeases(2, 4, 4000, 1, 10));
+        taskScheduler.scheduleOnce(Collections.emptyList(), Collections.emptyList());
+        Assert.assertEquals(2, metrics.getNumIterations());
+        Assert.assertEquals(2, metrics.getIterationHistogram().getCount());
+        Assert.assertEquals(5, metrics.getNumTasksAssigned());
+        Assert.assertEquals(1, metrics.getNumTasksFailed());
+        Assert.assertEquals(2, metrics.getNumLeasesAdded());
+        Assert.assertTrue(metrics.getNumAllocationTrials() > 0);
+        Assert.assertEquals(0, metrics.getNumBudgetExhaustedIterations());
+        for (SchedulerMetrics.Phase phase : SchedulerMetrics.Phase.values()) {
+            final boolean servicePhase = phase == SchedulerMetrics.Phase.QueueReset ||
+                    phase == SchedulerMetrics.Phase.TaskLaunch;
+            Assert.assertEquals(phase.toString(), servicePhase ? 0 : 2, metrics.getPhaseHistogram(phase).getCount());
+        }
+        final LatencyHistogram evaluation = metrics.getPhaseHistogram(SchedulerMetrics.Phase.Evaluation);
+        Assert.assertTrue(evaluation.getMaxNanos() > 0L);
+        Assert.assertTrue(metrics.getPhaseHistogram(SchedulerMetrics.Phase.Resources).getTotalNanos() > 0L);
+        Assert.assertTrue(evaluation.getTotalNanos() <= metrics.getIterationHistogram().getTotalNanos());
+        taskScheduler.shutdown();
+    }
+
+    @Test
+    public void testHistogramPercentiles() throws Exception {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        Assert.assertEquals(0L, histogram.getPercentileNanos(50.0));
+        for (int i = 0; i < 90; i++)
+            histogram.record(100L);
+        for (int i = 0; i < 10; i++)
+            histogram.record(5000L);
+        histogram.record(-1L);
+        Assert.assertEquals(101, histogram.getCount());
+        Assert.assertEquals(90 * 100L + 10 * 5000L, histogram.getTotalNanos());
+        Assert.assertEquals(5000L, histogram.getMaxNanos());
+        Assert.assertEquals(1, histogram.getBucketCounts()[0]);
+        Assert.assertEquals(90, histogram.getBucketCounts()[LatencyHistogram.getBucket(100L)]);
+        // 100 falls in the bucket of 64 to 127
+        Assert.assertEquals(127L, histogram.getPercentileNanos(50.0));
+        Assert.assertEquals(127L, histogram.getPercentileNanos(90.0));
+        // the upper bound of 5000's bucket is capped at the max value recorded
+        Assert.assertEquals(5000L, histogram.getPercentileNanos(99.0));
+        Assert.assertEquals(0L, histogram.getPercentileNanos(0.0));
+    }
+}
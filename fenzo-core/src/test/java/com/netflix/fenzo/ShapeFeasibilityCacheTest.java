@@ -0,0 +1,112 @@
+/*
+ * Copyright 2017 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.fenzo;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+public class ShapeFeasibilityCacheTest {
+
+    @Test
+    public void testEntryCreatedForRepeatedShapesOnly() throws Exception {
+        ShapeFeasibilityCache cache = new ShapeFeasibilityCache();
+        cache.prepare(4);
+        Assert.assertNull(cache.getEntry(TaskRequestProvider.getTaskRequest(1, 100, 1)));
+        Assert.assertNull(cache.getEntry(TaskRequestProvider.getTaskRequest(2, 100, 1)));
+        final ShapeFeasibilityCache.Entry entry = cache.getEntry(TaskRequestProvider.getTaskRequest(1, 100, 1));
+        Assert.assertNotNull(entry);
+        Assert.assertSame(entry, cache.getEntry(TaskRequestProvider.getTaskRequest(1, 100, 1)));
+    }
+
+    @Test
+    public void testInvalidateOnAssignment() throws Exception {
+        ShapeFeasibilityCache cache = new ShapeFeasibilityCache();
+        cache.prepare(2);
+        final TaskRequest task = TaskRequestProvider.getTaskRequest(1, 100, 1);
+        cache.getEntry(task);
+        final ShapeFeasibilityCache.Entry entry = cache.getEntry(task);
+        cache.recordInfeasible(entry, 1);
+        Assert.assertFalse(cache.isKnownInfeasible(entry, 0));
+        Assert.assertTrue(cache.isKnownInfeasible(entry, 1));
+        cache.invalidate(1);
+        Assert.assertFalse(cache.isKnownInfeasible(entry, 1));
+    }
+
+    // a task of the same shape failing a hard constraint on a VM must not keep other tasks of the shape off the VM
+    @Test
+    public void testConstraintFailuresNotRecorded() throws Exception {
+        TaskScheduler taskScheduler = new TaskScheduler.Builder()
+                .withLeaseOfferExpirySecs(1000000)
+                .withLeaseRejectAction(virtualMachineLease -> {})
+                .build();
+        final ConstraintEvaluator failing = new ConstraintEvaluator() {
+            @Override
+            public String getName() {
+                return "failing";
+            }
+            @Override
+            public Result evaluate(TaskRequest taskRequest, VirtualMachineCurrentState targetVM,
+                                   TaskTrackerState taskTrackerState) {
+                return new Result(false, "always fails");
+            }
+        };
+        List<TaskRequest> tasks = new ArrayList<>();
+        tasks.add(TaskRequestProvider.getTaskRequest(1, 10, 1));
+        tasks.add(TaskRequestProvider.getTaskRequest(1, 10, 1, Collections.singletonList(failing), null));
+        tasks.add(TaskRequestProvider.getTaskRequest(1, 10, 1));
+        final SchedulingResult result = taskScheduler.scheduleOnce(tasks, LeaseProvider.getLeases(1, 4, 100, 1, 100));
+        Assert.assertEquals(2, result.getResultMap().values().iterator().next().getTasksAssigned().size());
+        Assert.assertEquals(1, result.getFailures().size());
+        final List<TaskAssignmentResult> failures = result.getFailures().get(tasks.get(1));
+        Assert.assertEquals("failing", failures.get(0).getConstraintFailure().getName());
+        taskScheduler.shutdown();
+    }
+
+    // same shaped tasks beyond capacity must report failures that reflect usage after all assignments
+    @Test
+    public void testFailuresReflectAssignmentsOfSameShape() throws Exception {
+        TaskScheduler taskScheduler = new TaskScheduler.Builder()
+                .withLeaseOfferExpirySecs(1000000)
+                .withLeaseRejectAction(virtualMachineLease -> {})
+                .build();
+        final int numHosts = 10;
+        List<VirtualMachineLease> leases = LeaseProvider.getLeases(numHosts, 4, 100, 1, 100);
+        List<TaskRequest> tasks = new ArrayList<>();
+        for (int i = 0; i < numHosts * 5; i++)
+            tasks.add(TaskRequestProvider.getTaskRequest(1, 10, 1));
+        final SchedulingResult result = taskScheduler.scheduleOnce(tasks, leases);
+        int assigned = 0;
+        for (VMAssignmentResult r: result.getResultMap().values())
+            assigned += r.getTasksAssigned().size();
+        Assert.assertEquals(numHosts * 4, assigned);
+        final Map<TaskRequest, List<TaskAssignmentResult>> failures = result.getFailures();
+        Assert.assertEquals(numHosts, failures.size());
+        for (List<TaskAssignmentResult> l: failures.values()) {
+            Assert.assertEquals(numHosts, l.size());
+            for (TaskAssignmentResult r: l) {
+                Assert.assertEquals(VMResource.CPU, r.getFailures().get(0).getResource());
+                Assert.assertEquals(4.0, r.getFailures().get(0).getUsed(), 0.0);
+            }
+        }
+        taskScheduler.shutdown();
+    }
+}
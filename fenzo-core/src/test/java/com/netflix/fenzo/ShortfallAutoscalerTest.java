@@ -18,6 +18,7 @@ package com.netflix.fenzo;
 
 import com.netflix.fenzo.functions.Action0;
 import com.netflix.fenzo.functions.Action1;
+import com.netflix.fenzo.plugins.BinPackingFitnessCalculators;
 import com.netflix.fenzo.queues.QAttributes;
 import com.netflix.fenzo.queues.QueuableTask;
 import com.netflix.fenzo.queues.TaskQueue;
@@ -34,7 +35,9 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
 
@@ -188,6 +191,64 @@ public class ShortfallAutoscalerTest {
         schedulingService.shutdown();
     }
 
+    // Tests that the shortfall covers all queued tasks when scheduling iterations have a task budget, and that the
+    // pseudo scheduling iterations are not reported to the scheduler metrics
+    @Test
+    public void testShortfallWithIterationBudget() throws Exception {
+        final AutoScaleRule rule = AutoScaleRuleProvider.createRule(hostAttrVal1, minIdle1, maxIdle1, coolDownSecs,
+                1, 1000);
+        BlockingQueue<Integer> scaleUpReqQ = new LinkedBlockingQueue<>();
+        final Set<SchedulingResult> metricsResults = Collections.newSetFromMap(new ConcurrentHashMap<>());
+        final Set<SchedulingResult> callbackResults = Collections.newSetFromMap(new ConcurrentHashMap<>());
+        final TaskScheduler scheduler = new TaskScheduler.Builder()
+                .withAutoScaleByAttributeName(hostAttrName)
+                .withAutoScaleRule(rule)
+                .withAutoScalerCallback(action -> {
+                    if (action instanceof ScaleUpAction)
+                        scaleUpReqQ.offer(((ScaleUpAction) action).getScaleUpCount());
+                })
+                .withFitnessCalculator(BinPackingFitnessCalculators.cpuMemBinPacker)
+                .withLeaseOfferExpirySecs(3600)
+                .withLeaseRejectAction(lease -> Assert.fail("Unexpected to reject lease " + lease.hostname()))
+                .withMaxTasksPerSchedulingIteration(cpus1)
+                .withSchedulerMetrics(new SchedulerMetrics() {
+                    @Override
+                    public void phaseCompleted(Phase phase, long elapsedNanos) {
+                    }
+
+                    @Override
+                    public void iterationCompleted(SchedulingResult result, long elapsedNanos) {
+                        metricsResults.add(result);
+                    }
+                })
+                .build();
+        TaskQueue queue = TaskQueues.createTieredQueue(1);
+        final TaskSchedulingService schedulingService = getSchedulingService(queue, () -> {}, scheduler,
+                callbackResults::add);
+        final int numTasks = rule.getMaxIdleHostsToKeep() * 8 * cpus1;
+        final List<VirtualMachineLease> leases = new ArrayList<>();
+        leases.add(LeaseProvider.getLeaseOffer("host1", cpus1, cpus1 * memMultiplier, ports, attributes1));
+        leases.add(LeaseProvider.getLeaseOffer("host2", cpus1, cpus1 * memMultiplier, ports, attributes1));
+        schedulingService.addLeases(leases);
+        schedulingService.start();
+        try {
+            Thread.sleep(200);
+            for (int i = 0; i < numTasks; i++)
+                queue.queueTask(QueuableTaskProvider.wrapTask(qA1, TaskRequestProvider.getTaskRequest(1, memMultiplier, 1)));
+            Integer scaleUpNoticed = scaleUpReqQ.poll(coolDownSecs * 2, TimeUnit.SECONDS);
+            Assert.assertNotNull(scaleUpNoticed);
+            Assert.assertEquals((numTasks - leases.size() * cpus1) / cpus1, scaleUpNoticed.intValue());
+        }
+        finally {
+            schedulingService.shutdown();
+        }
+        Thread.sleep(200);
+        Assert.assertFalse(metricsResults.isEmpty());
+        // at most the last iteration may be reported to the metrics without reaching the callback
+        metricsResults.removeAll(callbackResults);
+        Assert.assertTrue(metricsResults.size() <= 1);
+    }
+
     @Test
     public void testShortfallScaleup2groups() throws Exception {
         final AutoScaleRule rule1 = AutoScaleRuleProvider.createWithMaxSize(hostAttrVal1, minIdle1, maxIdle1, coolDownSecs,
@@ -111,4 +111,43 @@ public class SingleOfferModelTests {
             Assert.assertEquals(1, e.getValue().getLeasesUsed().size());
         }
     }
+
+    @Test
+    public void testPortsReleasedWhenNotLaunchedOrCompleted() throws Exception {
+        final VirtualMachineLease host1 = LeaseProvider.getLeaseOffer("host1", 4, 4000, 1, 4);
+        final TaskRequest t1 = TaskRequestProvider.getTaskRequest(1, 1000, 2);
+        final TaskRequest t2 = TaskRequestProvider.getTaskRequest(1, 1000, 2);
+        Map<String, VMAssignmentResult> resultMap =
+                taskScheduler.scheduleOnce(Arrays.asList(t1, t2), Collections.singletonList(host1)).getResultMap();
+        Assert.assertEquals(2, resultMap.get("host1").getTasksAssigned().size());
+        final Set<Integer> ports = new HashSet<>();
+        List<Integer> t1Ports = null;
+        for(TaskAssignmentResult r: resultMap.get("host1").getTasksAssigned()) {
+            ports.addAll(r.getAssignedPorts());
+            if(r.getRequest() == t1)
+                t1Ports = r.getAssignedPorts();
+        }
+        Assert.assertEquals(new HashSet<>(Arrays.asList(1, 2, 3, 4)), ports);
+        // launch only t1, t2's ports can be assigned again
+        taskScheduler.getTaskAssigner().call(t1, "host1");
+        final TaskRequest t3 = TaskRequestProvider.getTaskRequest(1, 1000, 2);
+        resultMap = taskScheduler.scheduleOnce(Collections.singletonList(t3), Collections.<VirtualMachineLease>emptyList())
+                .getResultMap();
+        Assert.assertEquals(1, resultMap.size());
+        final List<Integer> t3Ports = resultMap.get("host1").getTasksAssigned().iterator().next().getAssignedPorts();
+        Assert.assertTrue(Collections.disjoint(t1Ports, t3Ports));
+        taskScheduler.getTaskAssigner().call(t3, "host1");
+        // all ports are used by running tasks
+        final TaskRequest t4 = TaskRequestProvider.getTaskRequest(1, 1000, 2);
+        resultMap = taskScheduler.scheduleOnce(Collections.singletonList(t4), Collections.<VirtualMachineLease>emptyList())
+                .getResultMap();
+        Assert.assertEquals(0, resultMap.size());
+        // t1 completes, its ports can be assigned again
+        taskScheduler.getTaskUnAssigner().call(t1.getId(), "host1");
+        resultMap = taskScheduler.scheduleOnce(Collections.singletonList(t4), Collections.<VirtualMachineLease>emptyList())
+                .getResultMap();
+        Assert.assertEquals(1, resultMap.size());
+        Assert.assertEquals(new HashSet<>(t1Ports),
+                new HashSet<>(resultMap.get("host1").getTasksAssigned().iterator().next().getAssignedPorts()));
+    }
 }
@@ -135,6 +135,41 @@ public class TaskSchedulingServiceTest {
         );
     }
 
+    @Test
+    public void testSnapshotPublishedAfterLaunch() throws Exception {
+        final CountDownLatch latch = new CountDownLatch(1);
+        final AtomicReference<SchedulerSnapshot> snapshotRef = new AtomicReference<>();
+        TaskQueue queue = TaskQueues.createTieredQueue(2);
+        final TaskScheduler scheduler = new TaskScheduler.Builder()
+                .withLeaseOfferExpirySecs(1000000)
+                .withLeaseRejectAction(virtualMachineLease -> {})
+                .withPublishedSnapshots()
+                .build();
+        final AtomicReference<TaskSchedulingService> serviceRef = new AtomicReference<>();
+        final TaskSchedulingService schedulingService = getSchedulingService(queue, scheduler, 100L, schedulingResult -> {
+            if (schedulingResult.getResultMap().size() > 0) {
+                snapshotRef.set(serviceRef.get().getLatestSnapshot());
+                latch.countDown();
+                scheduler.shutdown();
+            }
+        });
+        serviceRef.set(schedulingService);
+        Assert.assertSame(SchedulerSnapshot.EMPTY, schedulingService.getLatestSnapshot());
+        schedulingService.start();
+        schedulingService.addLeases(LeaseProvider.getLeases(1, 4, 4000, 1, 10));
+        final QueuableTask task = QueuableTaskProvider.wrapTask(tier1bktA, TaskRequestProvider.getTaskRequest(1, 100, 1));
+        queue.queueTask(task);
+        if (!latch.await(20000, TimeUnit.MILLISECONDS))
+            Assert.fail("Did not assign resources in time");
+        final SchedulerSnapshot snapshot = snapshotRef.get();
+        Assert.assertTrue(snapshot.getVersion() > 0L);
+        Assert.assertEquals(1, snapshot.getAssignments().size());
+        Assert.assertEquals(1, snapshot.getResourceStatus().size());
+        Assert.assertTrue(snapshot.getQueuedTasks().get(TaskQueue.TaskState.LAUNCHED).contains(task));
+        final Collection<QueuableTask> queued = snapshot.getQueuedTasks().get(TaskQueue.TaskState.QUEUED);
+        Assert.assertTrue(queued == null || queued.isEmpty());
+    }
+
     @Test
     public void testMultipleTaskAssignments() throws Exception {
         int numTasks = 4;
@@ -23,6 +23,7 @@ import org.junit.Before;
 import org.junit.Test;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
@@ -124,6 +125,37 @@ public class VMCollectionTest {
         }
     }
 
+    @Test
+    public void testLookupsAndGroupMoves() throws Exception {
+        final ConcurrentMap<String, String> vmIdTohostNames = new ConcurrentHashMap<>();
+        final ConcurrentMap<String, String> leasesToHostnames = new ConcurrentHashMap<>();
+        final Map<String, AssignableVirtualMachine> avms = new HashMap<>();
+        VMCollection vms = createVmCollection(vmIdTohostNames, leasesToHostnames, new TaskTracker(), avms);
+        final VirtualMachineLease lease = LeaseProvider.getLeaseOffer("host1", 4, 4000, 0, 0, ports, null,
+                Collections.emptyMap());
+        vms.addLease(lease);
+        vms.addLease(LeaseProvider.getLeaseOffer("host2", 4, 4000, 0, 0, ports, null, Collections.emptyMap()));
+        final AssignableVirtualMachine host1 = avms.get("host1");
+        Assert.assertSame(host1, vms.getVmByName("host1").get());
+        Assert.assertSame(host1, vms.getVmByLeaseId(lease.getId()).get());
+        Assert.assertFalse(vms.getVmByName("host3").isPresent());
+        final Collection<AssignableVirtualMachine> all = vms.getAllVMs();
+        Assert.assertEquals(2, all.size());
+        Assert.assertSame(all, vms.getAllVMs());
+        // a lease with the grouping attribute moves the VM out of the default group
+        vms.addLease(LeaseProvider.getLeaseOffer("host1", 4, 4000, 0, 0, ports, attributes1, Collections.emptyMap()));
+        Assert.assertSame(host1, vms.getVmByName("host1").get());
+        Assert.assertEquals(2, vms.size());
+        Assert.assertEquals(1, vms.size(attributeVal1));
+        Assert.assertEquals(1, vms.size("DEFAULT"));
+        Assert.assertNotSame(all, vms.getAllVMs());
+        Assert.assertEquals(2, vms.getAllVMs().size());
+        Assert.assertSame(host1, vms.remove(host1));
+        Assert.assertFalse(vms.getVmByName("host1").isPresent());
+        Assert.assertEquals(0, vms.size(attributeVal1));
+        Assert.assertEquals(1, vms.getAllVMs().size());
+    }
+
     private VMCollection createVmCollection(ConcurrentMap<String, String> vmIdTohostNames,
                                             ConcurrentMap<String, String> leasesToHostnames, TaskTracker taskTracker,
                                             Map<String, AssignableVirtualMachine> avms) {
@@ -136,11 +168,12 @@ public class VMCollectionTest {
                     leaseRejectAction,
                     2,
                     taskTracker,
-                    false
+                    false,
+                    new ScalarResourceRegistry()
             );
             avms.put(s, avm);
             return avm;
-        }, AutoScalerTest.hostAttrName);
+        }, AutoScalerTest.hostAttrName, vmIdTohostNames, leasesToHostnames);
     }
 
     private AutoScaleRule getAutoScaleRule(final String name, final int maxSize) {
@@ -65,6 +65,35 @@ public class SortedBucketsTest {
         }
     }
 
+    @Test
+    public void testEqualSharesInOrderAddedAndRemovalAfterUsageChange() throws Exception {
+        UsageTrackedQueue.ResUsage parentUsage = new UsageTrackedQueue.ResUsage();
+        QAttributes tier1bktA = new QAttributes.QAttributesAdaptor(1, "Parent");
+        parentUsage.addUsage(QueuableTaskProvider.wrapTask(tier1bktA, TaskRequestProvider.getTaskRequest(100, 1000, 100)));
+        SortedBuckets sortedBuckets = new SortedBuckets(parentUsage);
+        final QueueBucket a = new QueueBucket(1, "A", parentUsage, null);
+        final QueueBucket b = new QueueBucket(1, "B", parentUsage, null);
+        final QueueBucket c = new QueueBucket(1, "C", parentUsage, null);
+        Assert.assertTrue(sortedBuckets.add(a));
+        Assert.assertTrue(sortedBuckets.add(b));
+        Assert.assertTrue(sortedBuckets.add(c));
+        Assert.assertFalse(sortedBuckets.add(new QueueBucket(1, "B", parentUsage, null)));
+        Assert.assertEquals(Arrays.asList(a, b, c), sortedBuckets.getSortedList());
+        // a bucket re-added with the same share goes after the others with that share
+        Assert.assertSame(a, sortedBuckets.remove("A"));
+        sortedBuckets.add(a);
+        Assert.assertEquals(Arrays.asList(b, c, a), sortedBuckets.getSortedList());
+        // a bucket whose usage changed while in the list is still found to remove, and sorted when added back
+        b.launchTask(QueuableTaskProvider.wrapTask(new QAttributes.QAttributesAdaptor(1, "B"),
+                TaskRequestProvider.getTaskRequest(10, 100, 10)));
+        Assert.assertSame(b, sortedBuckets.remove("B"));
+        Assert.assertNull(sortedBuckets.remove("B"));
+        Assert.assertEquals(Arrays.asList(c, a), sortedBuckets.getSortedList());
+        sortedBuckets.add(b);
+        Assert.assertEquals(Arrays.asList(c, a, b), sortedBuckets.getSortedList());
+        Assert.assertSame(b, sortedBuckets.get("B"));
+    }
+
     @Test
     public void testDominantResourceUsageRebalancing() throws Exception {
         TieredQueue queue = new TieredQueue(3);
@@ -23,11 +23,13 @@ import com.netflix.fenzo.queues.*;
 import com.netflix.fenzo.TaskSchedulingService;
 import com.netflix.fenzo.sla.ResAllocs;
 import com.netflix.fenzo.sla.ResAllocsBuilder;
+import org.apache.mesos.Protos;
 import org.junit.Assert;
 import org.junit.Test;
 
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Random;
 import java.util.concurrent.CountDownLatch;
@@ -359,6 +361,147 @@ public class TieredQueueTest {
         return tierAllocs;
     }
 
+    @Test
+    public void testSuspendAndResume() throws Exception {
+        TieredQueue queue = new TieredQueue(2);
+        QAttributes tier1bktA = new QAttributes.QAttributesAdaptor(0, "A");
+        QAttributes tier2bktC = new QAttributes.QAttributesAdaptor(1, "C");
+        for (int i=0; i<3; i++) {
+            queue.queueTask(QueuableTaskProvider.wrapTask(tier1bktA, TaskRequestProvider.getTaskRequest(1, 100, 1)));
+            queue.queueTask(QueuableTaskProvider.wrapTask(tier2bktC, TaskRequestProvider.getTaskRequest(1, 100, 1)));
+        }
+        queue.reset();
+        // stop after all of tier 0 and the first task of tier 1
+        for (int i=0; i<4; i++)
+            Assert.assertEquals(i < 3 ? 0 : 1, queue.next().getTask().getQAttributes().getTierNumber());
+        queue.suspend();
+        queue.getUsageTracker().reset();
+        // a new task in the higher tier waits until the suspended iteration is complete
+        queue.queueTask(QueuableTaskProvider.wrapTask(tier1bktA, TaskRequestProvider.getTaskRequest(1, 100, 1)));
+        queue.reset();
+        Assignable<QueuableTask> taskOrFailure;
+        int resumed=0;
+        while ((taskOrFailure = queue.next()) != null) {
+            Assert.assertEquals(1, taskOrFailure.getTask().getQAttributes().getTierNumber());
+            resumed++;
+        }
+        Assert.assertEquals(2, resumed);
+        queue.getUsageTracker().reset();
+        // then iterations start from the highest tier again
+        queue.reset();
+        int total=0;
+        while ((taskOrFailure = queue.next()) != null) {
+            Assert.assertEquals(total < 4 ? 0 : 1, taskOrFailure.getTask().getQAttributes().getTierNumber());
+            total++;
+        }
+        Assert.assertEquals(7, total);
+    }
+
+    @Test
+    public void testTaskBudgetPerIteration() throws Exception {
+        final int maxTasks = 3;
+        final int numTasks = 10;
+        TaskQueue queue = new TieredQueue(2);
+        final TaskScheduler scheduler = new TaskScheduler.Builder()
+                .withLeaseOfferExpirySecs(1000000)
+                .withLeaseRejectAction(virtualMachineLease -> {})
+                .withMaxTasksPerSchedulingIteration(maxTasks)
+                .build();
+        final CountDownLatch latch = new CountDownLatch(numTasks);
+        final AtomicInteger budgetExhausted = new AtomicInteger();
+        final AtomicReference<String> error = new AtomicReference<>();
+        final TaskSchedulingService schedulingService = getSchedulingService(queue, scheduler, schedulingResult -> {
+            if (schedulingResult.isBudgetExhausted())
+                budgetExhausted.incrementAndGet();
+            int assigned = 0;
+            for (VMAssignmentResult r: schedulingResult.getResultMap().values())
+                assigned += r.getTasksAssigned().size();
+            if (assigned > maxTasks)
+                error.set("Assigned " + assigned + " tasks in one iteration");
+            for (int i=0; i<assigned; i++)
+                latch.countDown();
+        });
+        final QAttributes qAttributes = new QAttributes.QAttributesAdaptor(0, "A");
+        for (int i=0; i<numTasks; i++)
+            queue.queueTask(QueuableTaskProvider.wrapTask(qAttributes, TaskRequestProvider.getTaskRequest(1, 100, 1)));
+        schedulingService.addLeases(LeaseProvider.getLeases(12, 4, 4000, 1, 100));
+        schedulingService.start();
+        try {
+            Assert.assertTrue("Timeout waiting for all tasks to get assigned", latch.await(10, TimeUnit.SECONDS));
+            Assert.assertNull(error.get());
+            Assert.assertTrue(budgetExhausted.get() >= numTasks / maxTasks);
+        }
+        finally {
+            schedulingService.shutdown();
+        }
+    }
+
+    // Each iteration gets a new lease that takes longer to add than the iteration's time budget; tasks must still
+    // get assigned instead of the budget running out before the first task of every iteration
+    @Test
+    public void testTimeBudgetExceededByVmPreparation() throws Exception {
+        final int numTasks = 5;
+        final long prepareMillis = 50L;
+        TaskQueue queue = new TieredQueue(2);
+        final TaskScheduler scheduler = new TaskScheduler.Builder()
+                .withLeaseOfferExpirySecs(1000000)
+                .withLeaseRejectAction(virtualMachineLease -> {})
+                .withMaxSchedulingIterationMillis(1)
+                .build();
+        final CountDownLatch latch = new CountDownLatch(numTasks);
+        final AtomicInteger hostCount = new AtomicInteger();
+        final AtomicReference<TaskSchedulingService> serviceRef = new AtomicReference<>();
+        final TaskSchedulingService schedulingService = getSchedulingService(queue, scheduler, schedulingResult -> {
+            int assigned = 0;
+            for (VMAssignmentResult r: schedulingResult.getResultMap().values())
+                assigned += r.getTasksAssigned().size();
+            for (int i=0; i<assigned; i++)
+                latch.countDown();
+            serviceRef.get().addLeases(Collections.singletonList(
+                    getSlowLease("host" + hostCount.incrementAndGet(), prepareMillis)));
+        });
+        serviceRef.set(schedulingService);
+        final QAttributes qAttributes = new QAttributes.QAttributesAdaptor(0, "A");
+        for (int i=0; i<numTasks; i++)
+            queue.queueTask(QueuableTaskProvider.wrapTask(qAttributes, TaskRequestProvider.getTaskRequest(1, 100, 1)));
+        schedulingService.addLeases(Collections.singletonList(getSlowLease("host0", prepareMillis)));
+        schedulingService.start();
+        try {
+            Assert.assertTrue("Timeout waiting for all tasks to get assigned", latch.await(10, TimeUnit.SECONDS));
+        }
+        finally {
+            schedulingService.shutdown();
+        }
+    }
+
+    // A lease with a single CPU, which sleeps while the scheduler reads its resources into the VM
+    private VirtualMachineLease getSlowLease(String hostname, long sleepMillis) {
+        final VirtualMachineLease lease = LeaseProvider.getLeaseOffer(hostname, 1, 4000, 1, 100);
+        return new VirtualMachineLease() {
+            @Override public String getId() { return lease.getId(); }
+            @Override public long getOfferedTime() { return lease.getOfferedTime(); }
+            @Override public String hostname() { return lease.hostname(); }
+            @Override public String getVMID() { return lease.getVMID(); }
+            @Override public double cpuCores() { return lease.cpuCores(); }
+            @Override public double memoryMB() { return lease.memoryMB(); }
+            @Override public double networkMbps() { return lease.networkMbps(); }
+            @Override public double diskMB() { return lease.diskMB(); }
+            @Override public List<Range> portRanges() { return lease.portRanges(); }
+            @Override public Protos.Offer getOffer() { return lease.getOffer(); }
+            @Override public Map<String, Protos.Attribute> getAttributeMap() { return lease.getAttributeMap(); }
+            @Override public Double getScalarValue(String name) { return lease.getScalarValue(name); }
+            @Override
+            public Map<String, Double> getScalarValues() {
+                try {
+                    Thread.sleep(sleepMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return lease.getScalarValues();
+            }
+        };
+    }
+
     private TaskSchedulingService getSchedulingService(TaskQueue queue, TaskScheduler scheduler,
                                                        Action1<SchedulingResult> resultCallback) {
         return new TaskSchedulingService.Builder()